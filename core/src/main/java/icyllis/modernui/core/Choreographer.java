@@ -97,6 +97,11 @@ public final class Choreographer {
         return new Choreographer(looper);
     });
 
+    // 60Hz until frames are observed, frames further apart are not consecutive
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 16_666_667;
+    private static final long MIN_FRAME_INTERVAL_NANOS = 2_000_000;
+    private static final long MAX_FRAME_INTERVAL_NANOS = 50_000_000;
+
     private static final int MSG_DO_FRAME = 0;
     private static final int MSG_DO_SCHEDULE_CALLBACK = 1;
 
@@ -145,6 +150,8 @@ public final class Choreographer {
     private final Object mLock = new Object();
 
     private final Handler mHandler;
+    // delayed callbacks become due by the clock of the looper's queue
+    private final MessageQueue mQueue;
 
     private CallbackRecord mCallbackPool;
 
@@ -153,9 +160,14 @@ public final class Choreographer {
     private boolean mFrameScheduled;
     private boolean mCallbacksRunning;
     private long mLastFrameTimeNanos;
+    private long mFrameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+    // the time the last frame actually started, in the System.nanoTime() time base,
+    // which advances even if frames are run on a virtual clock without a window
+    private long mFrameStartNanos;
 
     private Choreographer(@NonNull Looper looper) {
         mHandler = new Handler(looper, this::handleMessage);
+        mQueue = looper.mQueue;
         mLastFrameTimeNanos = Long.MIN_VALUE;
 
         mCallbackQueues = new CallbackQueue[CALLBACK_LAST + 1];
@@ -283,7 +295,7 @@ public final class Choreographer {
         }
 
         synchronized (mLock) {
-            final long now = Core.timeMillis();
+            final long now = mQueue.timeNanos() / 1000000;
             final long dueTime = now + delayMillis;
             mCallbackQueues[callbackType].addCallbackLocked(dueTime, action, token);
 
@@ -431,6 +443,38 @@ public final class Choreographer {
         }
     }
 
+    /**
+     * Returns the estimated interval between consecutive frames, which is measured
+     * from the frame times while frames are produced continuously.
+     *
+     * @return The frame interval, in nanoseconds.
+     */
+    @ApiStatus.Internal
+    public long getFrameIntervalNanos() {
+        synchronized (mLock) {
+            return mFrameIntervalNanos;
+        }
+    }
+
+    /**
+     * Returns the time by which the work of the current frame should be done to not delay
+     * the next frame, that is the time the frame actually started plus the frame interval.
+     * Work that can be done later, such as prefetching, can run in a {@link #CALLBACK_COMMIT}
+     * callback as long as {@link System#nanoTime()} is before the deadline.
+     * <p>
+     * The deadline is measured in real time, also when frames are run with a virtual frame
+     * time, so that the work done after a frame is bounded by what the frame left of the
+     * frame interval.
+     *
+     * @return The frame deadline, in the {@link System#nanoTime()} time base.
+     */
+    @ApiStatus.Internal
+    public long getFrameDeadlineNanos() {
+        synchronized (mLock) {
+            return mFrameStartNanos + mFrameIntervalNanos;
+        }
+    }
+
     private void scheduleFrameLocked(long now) {
         if (!mFrameScheduled) {
             mFrameScheduled = true;
@@ -445,8 +489,52 @@ public final class Choreographer {
         }
     }
 
+    /**
+     * Returns whether a frame has been scheduled and is waiting for its frame time.
+     *
+     * @return true if a frame is pending
+     */
+    @ApiStatus.Internal
+    public boolean isFrameScheduled() {
+        synchronized (mLock) {
+            return mFrameScheduled;
+        }
+    }
+
+    /**
+     * Runs a frame now with the given frame time, instead of waiting for the frame
+     * scheduled on the looper. This is used by view roots that drive their own frame
+     * clock, the frame time must not go backwards. The pending frame message is removed,
+     * then the messages that are due are dispatched before the frame, as a looper would.
+     * Callbacks and messages posted with a delay become due by the clock of the looper's
+     * queue, see {@link Looper#setVirtualTimeNanos(long)}.
+     * <p>
+     * This must be called on the looper thread.
+     *
+     * @param frameTimeNanos the frame start time, in nanoseconds
+     * @return false if the frame time went backwards and no frame was run
+     */
+    @ApiStatus.Internal
+    public boolean runFrame(long frameTimeNanos) {
+        synchronized (mLock) {
+            if (frameTimeNanos < mLastFrameTimeNanos) {
+                return false;
+            }
+            // run the due callbacks even if no frame was scheduled,
+            // and don't schedule another frame while dispatching
+            mFrameScheduled = true;
+        }
+        mHandler.removeMessages(MSG_DO_FRAME);
+        Looper.dispatchPending();
+        performFrame(frameTimeNanos);
+        return true;
+    }
+
     void doFrame() {
-        final long frameTimeNanos = Core.timeNanos();
+        performFrame(mQueue.timeNanos());
+    }
+
+    private void performFrame(final long frameTimeNanos) {
         try {
             synchronized (mLock) {
                 if (!mFrameScheduled) {
@@ -460,7 +548,14 @@ public final class Choreographer {
                 }
 
                 mFrameScheduled = false;
+                final long interval = frameTimeNanos - mLastFrameTimeNanos;
+                if (mLastFrameTimeNanos != Long.MIN_VALUE &&
+                        interval >= MIN_FRAME_INTERVAL_NANOS && interval <= MAX_FRAME_INTERVAL_NANOS) {
+                    // consecutive frames, smooth out the jitter
+                    mFrameIntervalNanos += (interval - mFrameIntervalNanos) >> 3;
+                }
                 mLastFrameTimeNanos = frameTimeNanos;
+                mFrameStartNanos = System.nanoTime();
             }
 
             AnimationUtils.lockAnimationClock(frameTimeNanos / 1000000);
@@ -489,7 +584,7 @@ public final class Choreographer {
             // We use "now" to determine when callbacks become due because it's possible
             // for earlier processing phases in a frame to post callbacks that should run
             // in a following phase, such as an input event that causes an animation to start.
-            final long now = Core.timeMillis();
+            final long now = mQueue.timeNanos() / 1000000;
             callbacks = mCallbackQueues[callbackType].extractDueCallbacksLocked(now);
             if (callbacks == null) {
                 return;
@@ -501,7 +596,7 @@ public final class Choreographer {
                 if (DEBUG_FRAMES) {
                     LOGGER.info(MARKER, "RunCallback: type=" + callbackType
                             + ", action=" + c.action + ", token=" + c.token
-                            + ", latencyMillis=" + (Core.timeMillis() - c.dueTime));
+                            + ", latencyMillis=" + (mQueue.timeNanos() / 1000000 - c.dueTime));
                 }
                 c.run(frameTimeNanos);
             }
@@ -520,7 +615,7 @@ public final class Choreographer {
     void doScheduleCallback(int callbackType) {
         synchronized (mLock) {
             if (!mFrameScheduled) {
-                final long now = Core.timeMillis();
+                final long now = mQueue.timeNanos() / 1000000;
                 if (mCallbackQueues[callbackType].hasDueCallbacksLocked(now)) {
                     scheduleFrameLocked(now);
                 }
@@ -21,6 +21,7 @@ package icyllis.modernui.core;
 import icyllis.modernui.annotation.NonNull;
 import icyllis.modernui.annotation.Nullable;
 
+import java.util.Collection;
 import java.util.Objects;
 
 /**
@@ -361,6 +362,43 @@ public class Handler {
         return sendMessageAtFrontOfQueue(getPostMessage(r));
     }
 
+    /**
+     * Causes the Runnables to be added to the message queue, in iteration order,
+     * like calling {@link #post} for each, but wakes up the looper at most once.
+     * Use this to deliver a burst of results to the thread to which this handler
+     * is attached.
+     *
+     * @param rs The Runnables that will be executed.
+     * @return Returns true if the Runnables were successfully placed in to the
+     * message queue.  Returns false on failure, usually because the
+     * looper processing the message queue is exiting.
+     */
+    public final boolean postAll(@NonNull Collection<? extends Runnable> rs) {
+        return postAllDelayed(rs, 0);
+    }
+
+    /**
+     * Causes the Runnables to be added to the message queue, in iteration order,
+     * to be run after the specified amount of time elapses, like calling
+     * {@link #postDelayed} for each, but wakes up the looper at most once.
+     * <b>The time-base is {@link Core#timeMillis}.</b>
+     *
+     * @param rs          The Runnables that will be executed.
+     * @param delayMillis The delay (in milliseconds) until the Runnables
+     *                    will be executed.
+     * @return Returns true if the Runnables were successfully placed in to the
+     * message queue.  Returns false on failure, usually because the
+     * looper processing the message queue is exiting.
+     */
+    public final boolean postAllDelayed(@NonNull Collection<? extends Runnable> rs, long delayMillis) {
+        final Message[] msgs = new Message[rs.size()];
+        int count = 0;
+        for (Runnable r : rs) {
+            msgs[count++] = getPostMessage(Objects.requireNonNull(r));
+        }
+        return enqueueMessages(msgs, count, delayMillis);
+    }
+
     /**
      * Remove any pending posts of Runnable r that are in the message queue.
      */
@@ -447,7 +485,35 @@ public class Handler {
         if (delayMillis < 0) {
             delayMillis = 0;
         }
-        return sendMessageAtTime(msg, Core.timeMillis() + delayMillis);
+        return enqueueMessage(msg, getTimeNanosAfter(delayMillis));
+    }
+
+    private long getTimeNanosAfter(long delayMillis) {
+        return getTimeNanosAfter(mQueue.timeNanos(), delayMillis);
+    }
+
+    private static long getTimeNanosAfter(long now, long delayMillis) {
+        final long delayNanos = MessageQueue.millisToNanos(delayMillis);
+        return delayNanos > Long.MAX_VALUE - now
+                ? Long.MAX_VALUE
+                : now + delayNanos;
+    }
+
+    // Converts an absolute time in milliseconds to the queue's time base in nanoseconds,
+    // relative to now, so that messages sent in the same millisecond as post() keep the
+    // order they are sent in, and a later time keeps its delay from now.
+    private long getTimeNanosAt(long timeMillis) {
+        if (timeMillis <= 0) {
+            // the front of the queue
+            return 0;
+        }
+        final long now = mQueue.timeNanos();
+        final long nowMillis = now / 1000000L;
+        if (timeMillis < nowMillis) {
+            // already due, before the messages sent in this millisecond
+            return timeMillis * 1000000L;
+        }
+        return getTimeNanosAfter(now, timeMillis - nowMillis);
     }
 
     /**
@@ -455,6 +521,8 @@ public class Handler {
      * before the absolute time (in milliseconds) <var>timeMillis</var>.
      * <b>The time-base is {@link Core#timeMillis}.</b>
      * Time spent in deep sleep will add a delay to execution.
+     * A time in the current millisecond is delivered in order with the messages
+     * posted now, as with {@link #post}.
      * You will receive it in {@link #handleMessage}, in the thread attached
      * to this handler.
      *
@@ -469,7 +537,53 @@ public class Handler {
      * occurs then the message will be dropped.
      */
     public final boolean sendMessageAtTime(@NonNull Message msg, long timeMillis) {
-        return enqueueMessage(msg, timeMillis);
+        return enqueueMessage(msg, getTimeNanosAt(timeMillis));
+    }
+
+    /**
+     * Enqueue a message into the message queue after all pending messages
+     * before the absolute time (in nanoseconds) <var>timeNanos</var>.
+     * <b>The time-base is {@link Core#timeNanos}.</b>
+     * You will receive it in {@link #handleMessage}, in the thread attached
+     * to this handler.
+     *
+     * @param timeNanos The absolute time at which the message should be
+     *                  delivered, using the
+     *                  {@link Core#timeNanos} time-base.
+     * @return Returns true if the message was successfully placed in to the
+     * message queue.  Returns false on failure, usually because the
+     * looper processing the message queue is exiting.
+     * @see #sendMessageAtTime(Message, long)
+     */
+    public final boolean sendMessageAtTimeNanos(@NonNull Message msg, long timeNanos) {
+        return enqueueMessage(msg, Math.max(timeNanos, 0));
+    }
+
+    /**
+     * Pushes messages onto the end of the message queue after all pending messages
+     * before the current time, in iteration order, like calling {@link #sendMessage}
+     * for each, but wakes up the looper at most once.
+     *
+     * @return Returns true if the messages were successfully placed in to the
+     * message queue.  Returns false on failure, usually because the
+     * looper processing the message queue is exiting.
+     */
+    public final boolean sendMessages(@NonNull Collection<Message> msgs) {
+        return sendMessagesDelayed(msgs, 0);
+    }
+
+    /**
+     * Enqueue messages into the message queue after all pending messages
+     * before (current time + delayMillis), in iteration order, like calling
+     * {@link #sendMessageDelayed} for each, but wakes up the looper at most once.
+     *
+     * @return Returns true if the messages were successfully placed in to the
+     * message queue.  Returns false on failure, usually because the
+     * looper processing the message queue is exiting.
+     */
+    public final boolean sendMessagesDelayed(@NonNull Collection<Message> msgs, long delayMillis) {
+        final Message[] array = msgs.toArray(new Message[0]);
+        return enqueueMessages(array, array.length, delayMillis);
     }
 
     /**
@@ -488,12 +602,26 @@ public class Handler {
         return enqueueMessage(msg, 0);
     }
 
-    private boolean enqueueMessage(@NonNull Message msg, long timeMillis) {
+    private boolean enqueueMessage(@NonNull Message msg, long timeNanos) {
         msg.target = this;
         if (mAsynchronous) {
             msg.setAsynchronous(true);
         }
-        return mQueue.enqueueMessage(msg, timeMillis);
+        return mQueue.enqueueMessage(msg, timeNanos);
+    }
+
+    private boolean enqueueMessages(@NonNull Message[] msgs, int count, long delayMillis) {
+        for (int i = 0; i < count; i++) {
+            final Message msg = msgs[i];
+            msg.target = this;
+            if (mAsynchronous) {
+                msg.setAsynchronous(true);
+            }
+        }
+        if (delayMillis < 0) {
+            delayMillis = 0;
+        }
+        return mQueue.enqueueMessages(msgs, count, getTimeNanosAfter(delayMillis));
     }
 
     /**
@@ -75,6 +75,11 @@ public final class Looper {
      */
     private long mSlowDeliveryThresholdMs;
 
+    /**
+     * If set, the looper records the wait and execution time of each message.
+     */
+    private volatile LooperProfiler mProfiler;
+
     /**
      * True if a message delivery takes longer than {@link #mSlowDeliveryThresholdMs}.
      */
@@ -138,7 +143,11 @@ public final class Looper {
             // No message indicates that the message queue is quitting.
             return false;
         }
+        dispatch(me, msg);
+        return true;
+    }
 
+    private static void dispatch(@NonNull final Looper me, @NonNull final Message msg) {
         // Make sure the observer won't change while processing a transaction.
         final Observer observer = sObserver;
 
@@ -147,8 +156,13 @@ public final class Looper {
         final boolean logSlowDelivery = (slowDeliveryThresholdMs > 0) && (msg.when > 0);
         final boolean logSlowDispatch = (slowDispatchThresholdMs > 0);
 
-        final long dispatchStart = logSlowDelivery || logSlowDispatch ? Core.timeMillis() : 0;
+        final LooperProfiler profiler = me.mProfiler;
+
+        // delivery times are compared with the clock of the queue, which may be virtual
+        final long queueTime = logSlowDelivery || profiler != null ? me.mQueue.timeNanos() : 0;
+        final long dispatchStart = logSlowDispatch ? Core.timeMillis() : 0;
         final long dispatchEnd;
+        final long profileStart = profiler != null ? Core.timeNanos() : 0;
         final Object token = observer == null ? null : observer.messageDispatchStarting();
         try {
             msg.target.dispatchMessage(msg);
@@ -162,14 +176,18 @@ public final class Looper {
             }
             throw exception;
         }
+        if (profiler != null) {
+            profiler.record(msg, queueTime, profileStart, Core.timeNanos());
+        }
         if (logSlowDelivery) {
+            final long deliveryTime = queueTime / 1000000L;
             if (me.mSlowDeliveryDetected) {
-                if (dispatchStart - msg.when <= 10) {
+                if (deliveryTime - msg.when <= 10) {
                     ModernUI.LOGGER.warn(MARKER, "Drained");
                     me.mSlowDeliveryDetected = false;
                 }
             } else {
-                if (showSlowLog(slowDeliveryThresholdMs, msg.when, dispatchStart, "delivery", msg)) {
+                if (showSlowLog(slowDeliveryThresholdMs, msg.when, deliveryTime, "delivery", msg)) {
                     // Once we write a slow delivery log, suppress until the queue drains.
                     me.mSlowDeliveryDetected = true;
                 }
@@ -180,7 +198,6 @@ public final class Looper {
         }
 
         msg.recycleUnchecked();
-        return true;
     }
 
     /**
@@ -203,6 +220,54 @@ public final class Looper {
             ;
     }
 
+    /**
+     * Dispatches the messages in the current thread's queue that are due now, without
+     * blocking. This is for threads that drive their own loop instead of calling
+     * {@link #loop()}, for example, to render view trees without a window. Messages
+     * enqueued while dispatching are left for the next call.
+     * <p>
+     * Messages are due by the queue's clock, which is {@link Core#timeNanos()} unless
+     * the thread drives it with {@link #setVirtualTimeNanos(long)}.
+     *
+     * @return the number of messages dispatched
+     */
+    public static int dispatchPending() {
+        final Looper me = myLooper();
+        if (me == null) {
+            throw new RuntimeException("No Looper; Looper.prepare() wasn't called on this thread.");
+        }
+        final MessageQueue queue = me.mQueue;
+        final long now = queue.timeNanos();
+        final long sequence = queue.peekSequence();
+        int count = 0;
+        Message msg;
+        while ((msg = queue.poll(now, sequence)) != null) {
+            dispatch(me, msg);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Makes the current thread's queue deliver messages by a virtual clock, instead of
+     * {@link Core#timeNanos()}, and advances that clock to the given time. The time
+     * must not be negative or go backwards. Handlers stamp messages and {@link Choreographer} posts
+     * delayed callbacks by this clock, so a thread that renders frames with its own
+     * frame times, and without a window, sees delays elapse with those frame times.
+     * Messages already pending keep their remaining delays.
+     *
+     * @param timeNanos the current virtual time, in nanoseconds
+     * @see #dispatchPending()
+     */
+    @ApiStatus.Internal
+    public static void setVirtualTimeNanos(long timeNanos) {
+        final Looper me = myLooper();
+        if (me == null) {
+            throw new RuntimeException("No Looper; Looper.prepare() wasn't called on this thread.");
+        }
+        me.mQueue.setVirtualTimeNanos(timeNanos);
+    }
+
     private static boolean showSlowLog(long threshold, long measureStart, long measureEnd,
                                        String what, Message msg) {
         final long actualTime = measureEnd - measureStart;
@@ -256,6 +321,44 @@ public final class Looper {
         mSlowDeliveryThresholdMs = slowDeliveryThresholdMs;
     }
 
+    /**
+     * Sets a profiler to record the queue wait time and execution time of each message
+     * dispatched by this looper, or null to stop profiling. A profiler can only be attached
+     * to one looper at a time.
+     *
+     * @throws IllegalStateException the profiler is attached to another looper
+     */
+    public void setProfiler(@Nullable LooperProfiler profiler) {
+        synchronized (this) {
+            final LooperProfiler old = mProfiler;
+            if (old == profiler) {
+                return;
+            }
+            if (profiler != null) {
+                synchronized (profiler) {
+                    if (profiler.mLooper != null) {
+                        throw new IllegalStateException("Profiler is attached to " + profiler.mLooper);
+                    }
+                    profiler.mLooper = this;
+                }
+            }
+            if (old != null) {
+                synchronized (old) {
+                    old.mLooper = null;
+                }
+            }
+            mProfiler = profiler;
+        }
+    }
+
+    /**
+     * Returns the profiler set by {@link #setProfiler}.
+     */
+    @Nullable
+    public LooperProfiler getProfiler() {
+        return mProfiler;
+    }
+
     /**
      * Quits the looper.
      * <p>
@@ -312,6 +415,26 @@ public final class Looper {
         return mQueue;
     }
 
+    /**
+     * Returns the number of messages this looper has dispatched.
+     * <p>
+     * This method is safe to call from any thread.
+     */
+    public long getMessageCount() {
+        return mQueue.getMessageCount();
+    }
+
+    /**
+     * Returns the number of times this looper's thread has been signaled to
+     * wake up for new messages, this is also the number of unpark or GLFW empty
+     * events posted to it.
+     * <p>
+     * This method is safe to call from any thread.
+     */
+    public long getWakeUpCount() {
+        return mQueue.getWakeUpCount();
+    }
+
     @NonNull
     @Override
     public String toString() {
@@ -319,6 +442,65 @@ public final class Looper {
                 + ") {" + Integer.toHexString(System.identityHashCode(this)) + "}";
     }
 
+    /**
+     * Samples the message and wake-up counts of a looper, and derives rates over
+     * the interval between two samples. This object is not thread-safe.
+     */
+    public static final class Metrics {
+
+        private long mMessageCount;
+        private long mWakeUpCount;
+        private long mTimeNanos;
+
+        private float mMessagesPerWakeUp;
+        private float mWakeUpsPerSecond;
+
+        /**
+         * Samples the looper and updates the rates since the previous sample.
+         * The first sample only records the counts.
+         */
+        public void update(@NonNull Looper looper) {
+            final long messageCount = looper.getMessageCount();
+            final long wakeUpCount = looper.getWakeUpCount();
+            final long now = System.nanoTime();
+            if (mTimeNanos != 0) {
+                final long messages = messageCount - mMessageCount;
+                final long wakeUps = wakeUpCount - mWakeUpCount;
+                final long elapsed = now - mTimeNanos;
+                mMessagesPerWakeUp = wakeUps > 0 ? (float) messages / wakeUps : messages;
+                mWakeUpsPerSecond = elapsed > 0 ? wakeUps * 1.0E9f / elapsed : 0;
+            }
+            mMessageCount = messageCount;
+            mWakeUpCount = wakeUpCount;
+            mTimeNanos = now;
+        }
+
+        /**
+         * Returns the average number of messages dispatched per wake-up in the last interval.
+         * A value greater than 1 means messages were coalesced by batching or by arriving
+         * while the looper was busy.
+         */
+        public float getMessagesPerWakeUp() {
+            return mMessagesPerWakeUp;
+        }
+
+        /**
+         * Returns the number of wake-ups per second in the last interval.
+         */
+        public float getWakeUpsPerSecond() {
+            return mWakeUpsPerSecond;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Metrics{" +
+                    "messagesPerWakeUp=" + mMessagesPerWakeUp +
+                    ", wakeUpsPerSecond=" + mWakeUpsPerSecond +
+                    '}';
+        }
+    }
+
     public interface Observer {
 
         /**
@@ -0,0 +1,393 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2019-2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.core;
+
+import icyllis.modernui.annotation.NonNull;
+import icyllis.modernui.annotation.Nullable;
+import org.jetbrains.annotations.UnmodifiableView;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records how long messages wait in the {@link MessageQueue} before dispatch and how long
+ * they take to execute, per target class, into fixed-bucket log-linear histograms.
+ * The target class is the class of the message callback if posted as a Runnable, otherwise
+ * the class of the Handler callback or the Handler.
+ * <p>
+ * A profiler is attached to a single looper via {@link Looper#setProfiler}, and it's only
+ * updated by that looper's thread. Recording doesn't allocate memory except the first time
+ * a target class is seen. {@link #snapshot()} can be called from any thread.
+ */
+public final class LooperProfiler {
+
+    // Each power of two is divided into 2^SUB_BUCKET_BITS linear sub-buckets,
+    // so a recorded value is within 1/8 of its actual value.
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // Covers values up to 2^40 nanoseconds, about 18 minutes, larger values are clamped.
+    private static final int MAX_EXPONENT = 40;
+
+    /**
+     * The number of buckets of each histogram.
+     */
+    public static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private static final VarHandle LONG_ARRAY = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final ConcurrentHashMap<Class<?>, Entry> mEntries = new ConcurrentHashMap<>();
+
+    private volatile long mSlowDispatchThresholdNanos;
+    @Nullable
+    private volatile SlowDispatchListener mSlowDispatchListener;
+
+    // the looper this profiler is attached to
+    volatile Looper mLooper;
+
+    /**
+     * Creates a profiler without slow dispatch detection.
+     */
+    public LooperProfiler() {
+    }
+
+    /**
+     * Creates a profiler that flags dispatches taking longer than the given threshold.
+     *
+     * @param slowDispatchThresholdNanos the threshold in nanoseconds, 0 to disable
+     */
+    public LooperProfiler(long slowDispatchThresholdNanos) {
+        mSlowDispatchThresholdNanos = slowDispatchThresholdNanos;
+    }
+
+    /**
+     * Sets the execution time in nanoseconds, beyond which a dispatch is counted as slow
+     * and reported to the listener. 0 disables slow dispatch detection.
+     */
+    public void setSlowDispatchThresholdNanos(long slowDispatchThresholdNanos) {
+        mSlowDispatchThresholdNanos = slowDispatchThresholdNanos;
+    }
+
+    public long getSlowDispatchThresholdNanos() {
+        return mSlowDispatchThresholdNanos;
+    }
+
+    /**
+     * Sets a listener to be called on the looper thread after a slow dispatch.
+     */
+    public void setSlowDispatchListener(@Nullable SlowDispatchListener listener) {
+        mSlowDispatchListener = listener;
+    }
+
+    /**
+     * Returns the index of the bucket that holds the given value.
+     */
+    public static int getBucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) Math.max(value, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        // the highest bit is implied
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Returns the smallest value that is in the given bucket.
+     */
+    public static long getBucketLowerBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        long subBucket = index & (SUB_BUCKET_COUNT - 1);
+        return (SUB_BUCKET_COUNT | subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Returns the largest value that is in the given bucket.
+     */
+    public static long getBucketUpperBound(int index) {
+        if (index == BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+        return getBucketLowerBound(index + 1) - 1;
+    }
+
+    @NonNull
+    static Class<?> getTargetClass(@NonNull Message msg) {
+        if (msg.callback != null) {
+            return msg.callback.getClass();
+        }
+        return Objects.requireNonNullElse(msg.target.mCallback, msg.target).getClass();
+    }
+
+    /**
+     * Called on the looper thread after a message was dispatched.
+     *
+     * @param msg           the message, before recycled
+     * @param queueTime     the dispatch start time, in the {@link MessageQueue#timeNanos()}
+     *                      time-base of {@link Message#whenNanos}, which may be virtual
+     * @param dispatchStart the dispatch start time, in the {@link Core#timeNanos()} time-base
+     * @param dispatchEnd   the dispatch end time, in the {@link Core#timeNanos()} time-base
+     */
+    void record(@NonNull Message msg, long queueTime, long dispatchStart, long dispatchEnd) {
+        final Class<?> target = getTargetClass(msg);
+        Entry entry = mEntries.get(target);
+        if (entry == null) {
+            entry = mEntries.computeIfAbsent(target, Entry::new);
+        }
+        // front of queue messages have no delivery time
+        final long waitNanos = msg.whenNanos > 0 ? Math.max(queueTime - msg.whenNanos, 0) : -1;
+        final long executionNanos = dispatchEnd - dispatchStart;
+        if (waitNanos >= 0) {
+            entry.mWaitTime.record(waitNanos);
+        }
+        entry.mExecutionTime.record(executionNanos);
+
+        final long threshold = mSlowDispatchThresholdNanos;
+        if (threshold > 0 && executionNanos >= threshold) {
+            //noinspection NonAtomicOperationOnVolatileField
+            entry.mSlowCount++;
+            final SlowDispatchListener listener = mSlowDispatchListener;
+            if (listener != null) {
+                listener.onSlowDispatch(target, Math.max(waitNanos, 0), executionNanos);
+            }
+        }
+    }
+
+    /**
+     * Returns the statistics of each target class recorded so far. Values are cumulative
+     * since this profiler was created.
+     * <p>
+     * This method is safe to call from any thread. Since the looper keeps recording while
+     * copying, a snapshot may not be exactly consistent across histograms.
+     */
+    @NonNull
+    @UnmodifiableView
+    public Map<Class<?>, Stats> snapshot() {
+        final HashMap<Class<?>, Stats> result = new HashMap<>();
+        for (Entry entry : mEntries.values()) {
+            result.put(entry.mTarget, new Stats(entry.mTarget,
+                    entry.mWaitTime.snapshot(),
+                    entry.mExecutionTime.snapshot(),
+                    entry.mSlowCount));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Called on the looper thread when a dispatch took longer than the threshold.
+     */
+    @FunctionalInterface
+    public interface SlowDispatchListener {
+
+        /**
+         * @param target         the target class
+         * @param waitNanos      the time the message waited in queue, in nanoseconds
+         * @param executionNanos the execution time, in nanoseconds
+         */
+        void onSlowDispatch(@NonNull Class<?> target, long waitNanos, long executionNanos);
+    }
+
+    private static final class Entry {
+
+        final Class<?> mTarget;
+        final LiveHistogram mWaitTime = new LiveHistogram();
+        final LiveHistogram mExecutionTime = new LiveHistogram();
+        volatile long mSlowCount;
+
+        Entry(Class<?> target) {
+            mTarget = target;
+        }
+    }
+
+    /**
+     * Single-writer histogram, readers see each bucket atomically.
+     */
+    private static final class LiveHistogram {
+
+        final long[] mCounts = new long[BUCKET_COUNT];
+        volatile long mSum;
+        volatile long mMax;
+
+        void record(long value) {
+            final long[] counts = mCounts;
+            final int index = getBucketIndex(value);
+            LONG_ARRAY.setOpaque(counts, index, (long) LONG_ARRAY.getOpaque(counts, index) + 1);
+            //noinspection NonAtomicOperationOnVolatileField
+            mSum += value;
+            if (value > mMax) {
+                mMax = value;
+            }
+        }
+
+        @NonNull
+        Histogram snapshot() {
+            final long[] counts = new long[mCounts.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = (long) LONG_ARRAY.getOpaque(mCounts, i);
+            }
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            return new Histogram(counts, count, mSum, mMax);
+        }
+    }
+
+    /**
+     * An immutable copy of a histogram, values are in nanoseconds.
+     */
+    public static final class Histogram {
+
+        private final long[] mCounts;
+        private final long mTotalCount;
+        private final long mSum;
+        private final long mMax;
+
+        Histogram(long[] counts, long totalCount, long sum, long max) {
+            mCounts = counts;
+            mTotalCount = totalCount;
+            mSum = sum;
+            mMax = max;
+        }
+
+        /**
+         * Returns the number of recorded values.
+         */
+        public long getTotalCount() {
+            return mTotalCount;
+        }
+
+        /**
+         * Returns the number of recorded values in the given bucket.
+         *
+         * @see #getBucketLowerBound(int)
+         * @see #getBucketUpperBound(int)
+         */
+        public long getCount(int index) {
+            return mCounts[index];
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+
+        public double getMean() {
+            return mTotalCount != 0 ? (double) mSum / mTotalCount : 0;
+        }
+
+        /**
+         * Returns the value that the given percentage of recorded values are less than
+         * or equal to, up to the bucket precision.
+         *
+         * @param percentile between 0 and 100
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (mTotalCount == 0) {
+                return 0;
+            }
+            final long target = Math.max((long) Math.ceil(
+                    Math.min(Math.max(percentile, 0), 100) / 100 * mTotalCount), 1);
+            long count = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                count += mCounts[i];
+                if (count >= target) {
+                    return Math.min(getBucketUpperBound(i), mMax);
+                }
+            }
+            return mMax;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Histogram{" +
+                    "count=" + mTotalCount +
+                    ", mean=" + (long) getMean() +
+                    ", p50=" + getValueAtPercentile(50) +
+                    ", p99=" + getValueAtPercentile(99) +
+                    ", max=" + mMax +
+                    '}';
+        }
+    }
+
+    /**
+     * Statistics of a target class.
+     */
+    public static final class Stats {
+
+        private final Class<?> mTarget;
+        private final Histogram mWaitTime;
+        private final Histogram mExecutionTime;
+        private final long mSlowCount;
+
+        Stats(Class<?> target, Histogram waitTime, Histogram executionTime, long slowCount) {
+            mTarget = target;
+            mWaitTime = waitTime;
+            mExecutionTime = executionTime;
+            mSlowCount = slowCount;
+        }
+
+        @NonNull
+        public Class<?> getTarget() {
+            return mTarget;
+        }
+
+        /**
+         * Returns the histogram of the time between the targeted delivery time and the
+         * dispatch start time. Messages posted at the front of the queue are not included.
+         */
+        @NonNull
+        public Histogram getWaitTime() {
+            return mWaitTime;
+        }
+
+        /**
+         * Returns the histogram of the dispatch time.
+         */
+        @NonNull
+        public Histogram getExecutionTime() {
+            return mExecutionTime;
+        }
+
+        /**
+         * Returns the number of dispatches that took longer than the slow dispatch threshold.
+         */
+        public long getSlowCount() {
+            return mSlowCount;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "target=" + mTarget.getName() +
+                    ", waitTime=" + mWaitTime +
+                    ", executionTime=" + mExecutionTime +
+                    ", slowCount=" + mSlowCount +
+                    '}';
+        }
+    }
+}
@@ -67,6 +67,17 @@ public final class Message {
      */
     long when;
 
+    /**
+     * The targeted delivery time of this message. The time-base is
+     * {@link Core#timeNanos()}. This is the actual key in the message queue.
+     */
+    long whenNanos;
+
+    /**
+     * Breaks ties between messages with the same delivery time, in enqueue order.
+     */
+    long sequence;
+
     Handler target;
 
     Runnable callback;
@@ -270,6 +281,8 @@ public final class Message {
         arg2 = 0;
         obj = null;
         when = 0;
+        whenNanos = 0;
+        sequence = 0;
         target = null;
         callback = null;
 
@@ -26,7 +26,10 @@ import org.apache.logging.log4j.MarkerManager;
 import org.lwjgl.glfw.GLFW;
 
 import javax.annotation.concurrent.GuardedBy;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.concurrent.locks.LockSupport;
 
 /**
@@ -42,23 +45,61 @@ public final class MessageQueue {
     private static final Marker MARKER = MarkerManager.getMarker("MessageQueue");
     private static final boolean DEBUG = false;
 
+    private static final VarHandle INBOX;
+    private static final VarHandle SEQUENCE;
+    private static final VarHandle WAKE_UP_COUNT;
+
+    static {
+        try {
+            var lookup = MethodHandles.lookup();
+            INBOX = lookup.findVarHandle(MessageQueue.class, "mInbox", Message.class);
+            SEQUENCE = lookup.findVarHandle(MessageQueue.class, "mSequence", long.class);
+            WAKE_UP_COUNT = lookup.findVarHandle(MessageQueue.class, "mWakeUpCount", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     // Null means the main thread, otherwise the looper thread
     private final Thread mThread;
 
+    // Messages enqueued by any thread, linked by Message.next in reverse order.
+    // Producers push without locking, the queue moves them into the heaps
+    // in batch under the lock, which is almost always held by the looper thread.
+    @SuppressWarnings("unused")
+    private volatile Message mInbox;
+    // The next sequence number, ordering messages with the same delivery time.
+    @SuppressWarnings("unused")
+    private volatile long mSequence;
+
     @GuardedBy("this")
-    Message mMessages;
+    private final MessageHeap mSyncMessages = new MessageHeap();
+    @GuardedBy("this")
+    private final MessageHeap mAsyncMessages = new MessageHeap();
+    // Sync barriers sorted by delivery time, linked by Message.next.
+    @GuardedBy("this")
+    private Message mBarriers;
+
     @GuardedBy("this")
     private final ArrayList<IdleHandler> mIdleHandlers = new ArrayList<>();
     private IdleHandler[] mPendingIdleHandlers;
-    @GuardedBy("this")
-    private boolean mQuitting;
+    private volatile boolean mQuitting;
     private volatile boolean mPolling;
 
     // Indicates whether next() is blocked waiting in pollOnce() with a non-zero timeout.
-    @GuardedBy("this")
-    private boolean mBlocked;
+    private volatile boolean mBlocked;
+    // The time at which a blocked next() wakes up by itself, or Long.MAX_VALUE.
+    private volatile long mWakeTimeNanos = Long.MAX_VALUE;
     private boolean mDisposed;
 
+    // The time of a clock driven by the looper thread, or Long.MIN_VALUE to follow Core.timeNanos().
+    private volatile long mVirtualTimeNanos = Long.MIN_VALUE;
+
+    // Metrics, the message count is only written by the looper thread.
+    private volatile long mMessageCount;
+    @SuppressWarnings("unused")
+    private volatile long mWakeUpCount;
+
     // The next barrier token.
     // Barriers are indicated by messages with a null target whose arg1 field carries the token.
     @GuardedBy("this")
@@ -77,8 +118,9 @@ public final class MessageQueue {
      */
     public boolean isIdle() {
         synchronized (this) {
-            final long now = Core.timeMillis();
-            return mMessages == null || now < mMessages.when;
+            drainInboxLocked();
+            final long now = timeNanos();
+            return now < peekHeadTimeLocked();
         }
     }
 
@@ -124,9 +166,160 @@ public final class MessageQueue {
      * @return True if the looper is currently polling for events.
      */
     public boolean isPolling() {
+        // If the loop is quitting then it must not be idling.
+        return !mQuitting && mPolling;
+    }
+
+    /**
+     * Returns the current time of the clock that this queue delivers messages by.
+     * This is {@link Core#timeNanos()}, unless the looper thread drives the queue
+     * with a virtual clock.
+     *
+     * @see #setVirtualTimeNanos(long)
+     */
+    long timeNanos() {
+        final long now = mVirtualTimeNanos;
+        return now != Long.MIN_VALUE ? now : Core.timeNanos();
+    }
+
+    /**
+     * Makes this queue deliver messages by a virtual clock, and advances that clock to
+     * the given time, which must not be negative or go backwards. When the virtual clock
+     * is enabled, the pending messages are rebased onto it, keeping their remaining delays,
+     * and the messages that are already due are due at the given time.
+     * This is for threads that drive their own loop without a window, see
+     * {@link Looper#dispatchPending()}.
+     *
+     * @param timeNanos the current virtual time, in nanoseconds
+     */
+    void setVirtualTimeNanos(long timeNanos) {
+        if (timeNanos < 0) {
+            throw new IllegalArgumentException("Negative virtual time " + timeNanos);
+        }
         synchronized (this) {
-            // If the loop is quitting then it must not be idling.
-            return !mQuitting && mPolling;
+            final long now = mVirtualTimeNanos;
+            if (now == Long.MIN_VALUE) {
+                drainInboxLocked();
+                final long delta = timeNanos - Core.timeNanos();
+                if (delta != 0) {
+                    mSyncMessages.offsetTimes(delta, timeNanos);
+                    mAsyncMessages.offsetTimes(delta, timeNanos);
+                    // the offset is monotonic, the barriers stay sorted
+                    for (Message p = mBarriers; p != null; p = p.next) {
+                        offsetTime(p, delta, timeNanos);
+                    }
+                }
+            } else if (timeNanos < now) {
+                throw new IllegalArgumentException("Virtual time went backwards");
+            }
+            mVirtualTimeNanos = timeNanos;
+        }
+    }
+
+    // Shifts the delivery time of a message, except for messages at the front of
+    // the queue or never delivered, saturating on overflow. Messages that would be
+    // due before the given time are due at that time.
+    static void offsetTime(@NonNull Message msg, long delta, long minWhenNanos) {
+        final long when = msg.whenNanos;
+        if (when == 0 || when == Long.MAX_VALUE) {
+            return;
+        }
+        final long newWhen;
+        if (delta > 0) {
+            newWhen = when > Long.MAX_VALUE - delta ? Long.MAX_VALUE : when + delta;
+        } else {
+            newWhen = Math.max(when + delta, minWhenNanos);
+        }
+        msg.whenNanos = newWhen;
+        msg.when = newWhen / 1000000L;
+    }
+
+    // Returns the sequence number the next enqueued message will have, messages
+    // with a lower sequence number were enqueued before.
+    long peekSequence() {
+        return mSequence;
+    }
+
+    /**
+     * Converts a delivery time in the {@link Core#timeMillis()} time-base to
+     * the {@link Core#timeNanos()} time-base, saturating on overflow.
+     */
+    static long millisToNanos(long timeMillis) {
+        if (timeMillis >= Long.MAX_VALUE / 1000000L) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(timeMillis, 0) * 1000000L;
+    }
+
+    // Returns true if a is to be delivered before b.
+    static boolean isBefore(@NonNull Message a, @NonNull Message b) {
+        return a.whenNanos < b.whenNanos ||
+                (a.whenNanos == b.whenNanos && a.sequence < b.sequence);
+    }
+
+    // Moves messages enqueued by other threads into the heaps.
+    // Producers check mQuitting without the lock, so messages pushed after quit
+    // are recycled here, quit() drains the inbox before it sets mQuitting.
+    @GuardedBy("this")
+    private void drainInboxLocked() {
+        if (mInbox == null) {
+            return;
+        }
+        Message msg = (Message) INBOX.getAndSet(this, (Message) null);
+        while (msg != null) {
+            final Message next = msg.next;
+            msg.next = null;
+            if (mQuitting) {
+                IllegalStateException e = new IllegalStateException(
+                        msg.target + " sending message to a Handler on a dead thread");
+                ModernUI.LOGGER.warn(MARKER, e.getMessage(), e);
+                msg.recycleUnchecked();
+            } else if (msg.isAsynchronous()) {
+                mAsyncMessages.add(msg);
+            } else {
+                mSyncMessages.add(msg);
+            }
+            msg = next;
+        }
+    }
+
+    // Returns the delivery time of the first message or barrier, or Long.MAX_VALUE.
+    @GuardedBy("this")
+    private long peekHeadTimeLocked() {
+        long when = Long.MAX_VALUE;
+        Message msg;
+        if ((msg = mSyncMessages.peek()) != null) {
+            when = msg.whenNanos;
+        }
+        if ((msg = mAsyncMessages.peek()) != null) {
+            when = Math.min(when, msg.whenNanos);
+        }
+        if ((msg = mBarriers) != null) {
+            when = Math.min(when, msg.whenNanos);
+        }
+        return when;
+    }
+
+    /**
+     * Returns the number of messages returned to the looper so far.
+     */
+    long getMessageCount() {
+        return mMessageCount;
+    }
+
+    /**
+     * Returns the number of times the looper thread was signaled to wake up so far.
+     */
+    long getWakeUpCount() {
+        return mWakeUpCount;
+    }
+
+    private void wake() {
+        WAKE_UP_COUNT.getAndAdd(this, 1L);
+        if (mThread == null) {
+            GLFW.glfwPostEmptyEvent();
+        } else {
+            LockSupport.unpark(mThread);
         }
     }
 
@@ -139,14 +332,14 @@ public final class MessageQueue {
             return null;
         }
         int pendingIdleHandlerCount = -1; // -1 only during first iteration
-        int nextPollTimeoutMillis = 0;
+        long nextPollTimeoutNanos = 0;
         for (;;) {
             if (mThread == null) {
                 // Handling main thread
                 mPolling = true;
-                if (nextPollTimeoutMillis < 0) {
+                if (nextPollTimeoutNanos < 0) {
                     GLFW.glfwWaitEvents();
-                } else if (nextPollTimeoutMillis == 0) {
+                } else if (nextPollTimeoutNanos == 0) {
                     GLFW.glfwPollEvents();
                 } else {
                     // There is a GLFW bug on Windows:
@@ -161,52 +354,52 @@ public final class MessageQueue {
                     // to run TinyFileDialogs on the UI thread.
                     //
                     // UI thread never block render thread, so this doesn't matter.
-                    GLFW.glfwWaitEventsTimeout(nextPollTimeoutMillis / 1000D);
+                    GLFW.glfwWaitEventsTimeout(nextPollTimeoutNanos / 1.0E9);
                 }
                 mPolling = false;
             } else {
                 // Blocking
                 mPolling = true;
-                if (nextPollTimeoutMillis < 0) {
+                if (nextPollTimeoutNanos < 0) {
                     LockSupport.park();
-                } else if (nextPollTimeoutMillis > 0) {
-                    LockSupport.parkNanos(nextPollTimeoutMillis * 1000000L);
+                } else if (nextPollTimeoutNanos > 0) {
+                    LockSupport.parkNanos(nextPollTimeoutNanos);
                 }
                 mPolling = false;
             }
 
             synchronized (this) {
+                drainInboxLocked();
                 // Try to retrieve the next message.  Return if found.
-                final long now = Core.timeMillis();
-                Message prevMsg = null;
-                Message msg = mMessages;
-                if (msg != null && msg.target == null) {
-                    // Stalled by a barrier.  Find the next asynchronous message in the queue.
-                    do {
-                        prevMsg = msg;
-                        msg = msg.next;
-                    } while (msg != null && !msg.isAsynchronous());
+                final long now = timeNanos();
+                final Message sync = mSyncMessages.peek();
+                final Message async = mAsyncMessages.peek();
+                Message msg = sync == null || (async != null && isBefore(async, sync))
+                        ? async : sync;
+                if (msg != null && mBarriers != null && isBefore(mBarriers, msg)) {
+                    // Stalled by a barrier.  Take the next asynchronous message.
+                    msg = async;
                 }
                 if (msg != null) {
-                    if (now < msg.when) {
+                    if (now < msg.whenNanos) {
                         // Next message is not ready.  Set a timeout to wake up when it is ready.
-                        nextPollTimeoutMillis = (int) Math.min(msg.when - now, Integer.MAX_VALUE);
+                        nextPollTimeoutNanos = msg.whenNanos - now;
                     } else {
                         // Got a message.
                         mBlocked = false;
-                        if (prevMsg != null) {
-                            prevMsg.next = msg.next;
+                        if (msg == async) {
+                            mAsyncMessages.poll();
                         } else {
-                            mMessages = msg.next;
+                            mSyncMessages.poll();
                         }
-                        msg.next = null;
                         if (DEBUG) ModernUI.LOGGER.info(MARKER, "Returning message: " + msg);
-                        msg.markInUse();
+                        //noinspection NonAtomicOperationOnVolatileField
+                        mMessageCount++;
                         return msg;
                     }
                 } else {
                     // No more messages.
-                    nextPollTimeoutMillis = -1;
+                    nextPollTimeoutNanos = -1;
                 }
 
                 // Process the quit message now that all pending messages have been handled.
@@ -219,12 +412,21 @@ public final class MessageQueue {
                 // Idle handles only run if the queue is empty or if the first message
                 // in the queue (possibly a barrier) is due to be handled in the future.
                 if (pendingIdleHandlerCount < 0
-                        && (mMessages == null || now < mMessages.when)) {
+                        && now < peekHeadTimeLocked()) {
                     pendingIdleHandlerCount = mIdleHandlers.size();
                 }
                 if (pendingIdleHandlerCount <= 0) {
                     // No idle handlers to run.  Loop and wait some more.
+                    // Publish the wake-up time before blocking, producers read them
+                    // without the lock to decide whether to wake us up.
+                    mWakeTimeNanos = nextPollTimeoutNanos < 0
+                            ? Long.MAX_VALUE
+                            : now + nextPollTimeoutNanos;
                     mBlocked = true;
+                    if (mInbox != null) {
+                        // Raced with a producer, look again without waiting.
+                        nextPollTimeoutNanos = 0;
+                    }
                     continue;
                 }
 
@@ -259,7 +461,45 @@ public final class MessageQueue {
 
             // While calling an idle handler, a new message could have been delivered
             // so go back and look again for a pending message without waiting.
-            nextPollTimeoutMillis = 0;
+            nextPollTimeoutNanos = 0;
+        }
+    }
+
+    /**
+     * Retrieves the next message that is due at the given time without blocking.
+     * Idle handlers are not run. Messages enqueued since the given sequence number
+     * was taken are not retrieved, neither is anything after them.
+     *
+     * @param nowNanos       the current time in the {@link #timeNanos()} time base
+     * @param beforeSequence the value of {@link #peekSequence()} to stop at
+     * @return the next message, or null if none is due
+     */
+    @Nullable
+    Message poll(long nowNanos, long beforeSequence) {
+        synchronized (this) {
+            if (mDisposed) {
+                return null;
+            }
+            drainInboxLocked();
+            final Message sync = mSyncMessages.peek();
+            final Message async = mAsyncMessages.peek();
+            Message msg = sync == null || (async != null && isBefore(async, sync))
+                    ? async : sync;
+            if (msg != null && mBarriers != null && isBefore(mBarriers, msg)) {
+                msg = async;
+            }
+            if (msg == null || nowNanos < msg.whenNanos ||
+                    Math.abs(msg.sequence) >= beforeSequence) {
+                return null;
+            }
+            if (msg == async) {
+                mAsyncMessages.poll();
+            } else {
+                mSyncMessages.poll();
+            }
+            //noinspection NonAtomicOperationOnVolatileField
+            mMessageCount++;
+            return msg;
         }
     }
 
@@ -268,6 +508,7 @@ public final class MessageQueue {
             if (mQuitting) {
                 return;
             }
+            drainInboxLocked();
             mQuitting = true;
 
             if (safe) {
@@ -276,11 +517,7 @@ public final class MessageQueue {
                 removeAllMessagesLocked();
             }
 
-            if (mThread == null) {
-                GLFW.glfwPostEmptyEvent();
-            } else {
-                LockSupport.unpark(mThread);
-            }
+            wake();
         }
     }
 
@@ -306,29 +543,29 @@ public final class MessageQueue {
      * passed to {@link #removeSyncBarrier} to release the barrier.
      */
     public int postSyncBarrier() {
-        final long when = Core.timeMillis();
+        final long when = timeNanos();
         // Enqueue a new sync barrier token.
         // We don't need to wake the queue because the purpose of a barrier is to stall it.
         synchronized (this) {
             final int token = mNextBarrierToken++;
             final Message msg = Message.obtain();
             msg.markInUse();
-            msg.when = when;
+            msg.when = when / 1000000L;
+            msg.whenNanos = when;
+            msg.sequence = (long) SEQUENCE.getAndAdd(this, 1L);
             msg.arg1 = token;
 
             Message prev = null;
-            Message p = mMessages;
-            if (when != 0) {
-                while (p != null && p.when <= when) {
-                    prev = p;
-                    p = p.next;
-                }
+            Message p = mBarriers;
+            while (p != null && isBefore(p, msg)) {
+                prev = p;
+                p = p.next;
             }
             msg.next = p;
             if (prev != null) { // invariant: p == prev.next
                 prev.next = msg;
             } else {
-                mMessages = msg;
+                mBarriers = msg;
             }
             return token;
         }
@@ -346,8 +583,8 @@ public final class MessageQueue {
         // If the queue is no longer stalled by a barrier then wake it.
         synchronized (this) {
             Message prev = null;
-            Message p = mMessages;
-            while (p != null && (p.target != null || p.arg1 != token)) {
+            Message p = mBarriers;
+            while (p != null && p.arg1 != token) {
                 prev = p;
                 p = p.next;
             }
@@ -360,152 +597,160 @@ public final class MessageQueue {
                 prev.next = p.next;
                 needWake = false;
             } else {
-                mMessages = p.next;
-                needWake = mMessages == null || mMessages.target != null;
+                mBarriers = p.next;
+                needWake = mBlocked;
             }
             p.recycleUnchecked();
 
             // If the loop is quitting then it is already awake.
             // We can assume mDisposed is false because mQuitting is false.
             if (needWake && !mQuitting) {
-                if (mThread == null) {
-                    GLFW.glfwPostEmptyEvent();
-                } else {
-                    LockSupport.unpark(mThread);
-                }
+                wake();
             }
         }
     }
 
-    boolean enqueueMessage(@NonNull Message msg, long when) {
-        if (msg.target == null) {
-            throw new IllegalArgumentException("Message must have a target.");
+    boolean enqueueMessage(@NonNull Message msg, long whenNanos) {
+        if (!prepareMessage(msg, whenNanos)) {
+            return false;
         }
+        final long sequence = (long) SEQUENCE.getAndAdd(this, 1L);
+        // Messages at the front of the queue are delivered in reverse order
+        msg.sequence = whenNanos == 0 ? -sequence : sequence;
+        pushMessages(msg, msg, whenNanos);
+        return true;
+    }
 
-        synchronized (this) {
-            if (msg.isInUse()) {
-                throw new IllegalStateException(msg + " This message is already in use.");
+    /**
+     * Enqueues messages that have the same delivery time, in the given order, and wakes up
+     * the looper at most once. All messages must have a target and not be in use, and
+     * each message must appear only once. Invalid messages are checked before any is
+     * enqueued.
+     *
+     * @param msgs      the messages to enqueue
+     * @param count     the number of messages
+     * @param whenNanos the delivery time
+     * @return false if the looper is quitting, messages are recycled
+     */
+    boolean enqueueMessages(@NonNull Message[] msgs, int count, long whenNanos) {
+        // Mark messages in use while checking, so a message that appears twice fails
+        // as if it were enqueued twice, instead of forming a cycle
+        for (int i = 0; i < count; i++) {
+            final Message msg = msgs[i];
+            final RuntimeException e;
+            if (msg.target == null) {
+                e = new IllegalArgumentException("Message must have a target.");
+            } else if (msg.isInUse()) {
+                e = new IllegalStateException(msg + " This message is already in use.");
+            } else {
+                msg.markInUse();
+                continue;
             }
-
-            if (mQuitting) {
-                IllegalStateException e = new IllegalStateException(
-                        msg.target + " sending message to a Handler on a dead thread");
-                ModernUI.LOGGER.warn(MARKER, e.getMessage(), e);
-                msg.recycle();
-                return false;
+            // Nothing is enqueued, give back the messages checked so far
+            for (int j = 0; j < i; j++) {
+                msgs[j].flags &= ~Message.FLAG_IN_USE;
             }
-
-            msg.markInUse();
-            msg.when = when;
-            Message p = mMessages;
-            boolean needWake;
-            if (p == null || when == 0 || when < p.when) {
-                // New head, wake up the event queue if blocked.
-                msg.next = p;
-                mMessages = msg;
-                needWake = mBlocked;
-            } else {
-                // Inserted within the middle of the queue.  Usually we don't have to wake
-                // up the event queue unless there is a barrier at the head of the queue
-                // and the message are the earliest asynchronous message in the queue.
-                needWake = mBlocked && p.target == null && msg.isAsynchronous();
-                Message prev;
-                for (;;) {
-                    prev = p;
-                    p = p.next;
-                    if (p == null || when < p.when) {
-                        break;
-                    }
-                    if (needWake && p.isAsynchronous()) {
-                        needWake = false;
-                    }
-                }
-                msg.next = p; // invariant: p == prev.next
-                prev.next = msg;
+            throw e;
+        }
+        if (count == 0) {
+            return !mQuitting;
+        }
+        if (mQuitting) {
+            IllegalStateException e = new IllegalStateException(
+                    msgs[0].target + " sending messages to a Handler on a dead thread");
+            ModernUI.LOGGER.warn(MARKER, e.getMessage(), e);
+            for (int i = 0; i < count; i++) {
+                msgs[i].recycleUnchecked();
             }
+            return false;
+        }
+        // Reserve consecutive sequence numbers for the batch
+        final long sequence = (long) SEQUENCE.getAndAdd(this, (long) count);
+        Message next = null;
+        for (int i = count - 1; i >= 0; i--) {
+            final Message msg = msgs[i];
+            msg.when = whenNanos / 1000000L;
+            msg.whenNanos = whenNanos;
+            // Messages at the front of the queue are delivered in reverse order
+            msg.sequence = whenNanos == 0 ? -(sequence + i) : sequence + i;
+            msg.next = next;
+            next = msg;
+        }
+        pushMessages(msgs[0], msgs[count - 1], whenNanos);
+        return true;
+    }
 
-            // We can assume mDisposed is false because mQuitting is false.
-            if (needWake) {
-                if (mThread == null) {
-                    GLFW.glfwPostEmptyEvent();
-                } else {
-                    LockSupport.unpark(mThread);
-                }
-            }
+    private boolean prepareMessage(@NonNull Message msg, long whenNanos) {
+        if (msg.target == null) {
+            throw new IllegalArgumentException("Message must have a target.");
         }
+        if (msg.isInUse()) {
+            throw new IllegalStateException(msg + " This message is already in use.");
+        }
+
+        if (mQuitting) {
+            IllegalStateException e = new IllegalStateException(
+                    msg.target + " sending message to a Handler on a dead thread");
+            ModernUI.LOGGER.warn(MARKER, e.getMessage(), e);
+            msg.recycle();
+            return false;
+        }
+
+        msg.markInUse();
+        msg.when = whenNanos / 1000000L;
+        msg.whenNanos = whenNanos;
         return true;
     }
 
+    // Pushes a chain of messages linked by Message.next to the inbox, this is lock-free.
+    private void pushMessages(@NonNull Message first, @NonNull Message last, long whenNanos) {
+        Message head;
+        do {
+            head = mInbox;
+            last.next = head;
+        } while (!INBOX.weakCompareAndSet(this, head, first));
+
+        // Wake up the event queue if it's blocked and may sleep past the message.
+        // This may wake it up for a message stalled by a barrier, which is harmless.
+        // If the queue quit meanwhile, the message is recycled and it is already awake.
+        if (mBlocked && whenNanos < mWakeTimeNanos && !mQuitting) {
+            wake();
+        }
+    }
+
     boolean hasMessages(Handler h, int what, Object object) {
         if (h == null) {
             return false;
         }
 
         synchronized (this) {
-            Message p = mMessages;
-            while (p != null) {
-                if (p.target == h && p.what == what && (object == null || p.obj == object)) {
-                    return true;
-                }
-                p = p.next;
-            }
-            return false;
+            drainInboxLocked();
+            return mSyncMessages.anyMatch(h, what, null, object, MessageHeap.MATCH_WHAT) ||
+                    mAsyncMessages.anyMatch(h, what, null, object, MessageHeap.MATCH_WHAT);
         }
     }
 
     boolean hasMessages(@NonNull Handler h, Runnable r) {
         synchronized (this) {
-            Message p = mMessages;
-            while (p != null) {
-                if (p.target == h && p.callback == r) {
-                    return true;
-                }
-                p = p.next;
-            }
-            return false;
+            drainInboxLocked();
+            return mSyncMessages.anyMatch(h, 0, r, null, MessageHeap.MATCH_CALLBACK) ||
+                    mAsyncMessages.anyMatch(h, 0, r, null, MessageHeap.MATCH_CALLBACK);
         }
     }
 
     boolean hasMessages(@NonNull Handler h) {
         synchronized (this) {
-            Message p = mMessages;
-            while (p != null) {
-                if (p.target == h) {
-                    return true;
-                }
-                p = p.next;
-            }
-            return false;
+            drainInboxLocked();
+            return mSyncMessages.anyMatch(h, 0, null, null, 0) ||
+                    mAsyncMessages.anyMatch(h, 0, null, null, 0);
         }
     }
 
     void removeMessages(@NonNull Handler h, int what, Object object) {
         synchronized (this) {
-            Message p = mMessages;
-
-            // Remove all messages at front.
-            while (p != null && p.target == h && p.what == what
-                    && (object == null || p.obj == object)) {
-                Message n = p.next;
-                mMessages = n;
-                p.recycleUnchecked();
-                p = n;
-            }
-
-            // Remove all messages after front.
-            while (p != null) {
-                Message n = p.next;
-                if (n != null) {
-                    if (n.target == h && n.what == what
-                            && (object == null || n.obj == object)) {
-                        Message nn = n.next;
-                        n.recycleUnchecked();
-                        p.next = nn;
-                        continue;
-                    }
-                }
-                p = n;
-            }
+            drainInboxLocked();
+            mSyncMessages.removeAll(h, what, null, object, MessageHeap.MATCH_WHAT);
+            mAsyncMessages.removeAll(h, what, null, object, MessageHeap.MATCH_WHAT);
         }
     }
 
@@ -515,97 +760,203 @@ public final class MessageQueue {
         }
 
         synchronized (this) {
-            Message p = mMessages;
-
-            // Remove all messages at front.
-            while (p != null && p.target == h && p.callback == r
-                    && (object == null || p.obj == object)) {
-                Message n = p.next;
-                mMessages = n;
-                p.recycleUnchecked();
-                p = n;
-            }
-
-            // Remove all messages after front.
-            while (p != null) {
-                Message n = p.next;
-                if (n != null) {
-                    if (n.target == h && n.callback == r
-                            && (object == null || n.obj == object)) {
-                        Message nn = n.next;
-                        n.recycleUnchecked();
-                        p.next = nn;
-                        continue;
-                    }
-                }
-                p = n;
-            }
+            drainInboxLocked();
+            mSyncMessages.removeAll(h, 0, r, object, MessageHeap.MATCH_CALLBACK);
+            mAsyncMessages.removeAll(h, 0, r, object, MessageHeap.MATCH_CALLBACK);
         }
     }
 
     void removeCallbacksAndMessages(@NonNull Handler h, Object object) {
         synchronized (this) {
-            Message p = mMessages;
-
-            // Remove all messages at front.
-            while (p != null && p.target == h
-                    && (object == null || p.obj == object)) {
-                Message n = p.next;
-                mMessages = n;
-                p.recycleUnchecked();
-                p = n;
-            }
-
-            // Remove all messages after front.
-            while (p != null) {
-                Message n = p.next;
-                if (n != null) {
-                    if (n.target == h && (object == null || n.obj == object)) {
-                        Message nn = n.next;
-                        n.recycleUnchecked();
-                        p.next = nn;
-                        continue;
-                    }
-                }
-                p = n;
-            }
+            drainInboxLocked();
+            mSyncMessages.removeAll(h, 0, null, object, 0);
+            mAsyncMessages.removeAll(h, 0, null, object, 0);
         }
     }
 
     private void removeAllMessagesLocked() {
-        Message p = mMessages;
+        mSyncMessages.removeAfter(Long.MIN_VALUE);
+        mAsyncMessages.removeAfter(Long.MIN_VALUE);
+        Message p = mBarriers;
         while (p != null) {
             Message n = p.next;
             p.recycleUnchecked();
             p = n;
         }
-        mMessages = null;
+        mBarriers = null;
     }
 
     private void removeAllFutureMessagesLocked() {
-        final long now = Core.timeMillis();
-        Message p = mMessages;
-        if (p != null) {
-            if (p.when > now) {
-                removeAllMessagesLocked();
-            } else {
-                Message n;
-                for (;;) {
-                    n = p.next;
-                    if (n == null) {
-                        return;
-                    }
-                    if (n.when > now) {
-                        break;
-                    }
-                    p = n;
+        final long now = timeNanos();
+        mSyncMessages.removeAfter(now);
+        mAsyncMessages.removeAfter(now);
+        Message prev = null;
+        Message p = mBarriers;
+        while (p != null && p.whenNanos <= now) {
+            prev = p;
+            p = p.next;
+        }
+        if (prev != null) {
+            prev.next = null;
+        } else {
+            mBarriers = null;
+        }
+        while (p != null) {
+            Message n = p.next;
+            p.recycleUnchecked();
+            p = n;
+        }
+    }
+
+    /**
+     * A binary min-heap of messages ordered by delivery time, then sequence.
+     */
+    static final class MessageHeap {
+
+        static final int MATCH_WHAT = 1;
+        static final int MATCH_CALLBACK = 2;
+
+        private Message[] mHeap = new Message[16];
+        private int mSize;
+
+        @Nullable
+        Message peek() {
+            return mSize != 0 ? mHeap[0] : null;
+        }
+
+        void add(@NonNull Message msg) {
+            if (mSize == mHeap.length) {
+                mHeap = Arrays.copyOf(mHeap, mSize << 1);
+            }
+            siftUp(mSize++, msg);
+        }
+
+        @Nullable
+        Message poll() {
+            if (mSize == 0) {
+                return null;
+            }
+            final Message[] heap = mHeap;
+            final Message result = heap[0];
+            final Message last = heap[--mSize];
+            heap[mSize] = null;
+            if (mSize != 0) {
+                siftDown(0, last);
+            }
+            return result;
+        }
+
+        private void siftUp(int k, Message msg) {
+            final Message[] heap = mHeap;
+            while (k > 0) {
+                int parent = (k - 1) >>> 1;
+                Message e = heap[parent];
+                if (!isBefore(msg, e)) {
+                    break;
+                }
+                heap[k] = e;
+                k = parent;
+            }
+            heap[k] = msg;
+        }
+
+        private void siftDown(int k, Message msg) {
+            final Message[] heap = mHeap;
+            final int size = mSize;
+            final int half = size >>> 1;
+            while (k < half) {
+                int child = (k << 1) + 1;
+                Message c = heap[child];
+                int right = child + 1;
+                if (right < size && isBefore(heap[right], c)) {
+                    c = heap[child = right];
+                }
+                if (!isBefore(c, msg)) {
+                    break;
+                }
+                heap[k] = c;
+                k = child;
+            }
+            heap[k] = msg;
+        }
+
+        private static boolean matches(Message p, Handler h, int what, Runnable r,
+                                       Object object, int mode) {
+            if (p.target != h) {
+                return false;
+            }
+            if (mode == MATCH_WHAT) {
+                return p.what == what && (object == null || p.obj == object);
+            }
+            if (mode == MATCH_CALLBACK && p.callback != r) {
+                return false;
+            }
+            return object == null || p.obj == object;
+        }
+
+        boolean anyMatch(Handler h, int what, Runnable r, Object object, int mode) {
+            final Message[] heap = mHeap;
+            for (int i = 0, e = mSize; i < e; i++) {
+                if (matches(heap[i], h, what, r, object, mode)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Recycles matched messages, then restores the heap order in linear time.
+        void removeAll(Handler h, int what, Runnable r, Object object, int mode) {
+            final Message[] heap = mHeap;
+            final int size = mSize;
+            int j = 0;
+            for (int i = 0; i < size; i++) {
+                Message p = heap[i];
+                if (matches(p, h, what, r, object, mode)) {
+                    p.recycleUnchecked();
+                } else {
+                    heap[j++] = p;
                 }
-                p.next = null;
-                do {
-                    p = n;
-                    n = p.next;
+            }
+            if (j != size) {
+                Arrays.fill(heap, j, size, null);
+                mSize = j;
+                heapify();
+            }
+        }
+
+        // Recycles messages to be delivered after the given time.
+        void removeAfter(long whenNanos) {
+            final Message[] heap = mHeap;
+            final int size = mSize;
+            int j = 0;
+            for (int i = 0; i < size; i++) {
+                Message p = heap[i];
+                if (p.whenNanos > whenNanos) {
                     p.recycleUnchecked();
-                } while (n != null);
+                } else {
+                    heap[j++] = p;
+                }
+            }
+            if (j != size) {
+                Arrays.fill(heap, j, size, null);
+                mSize = j;
+                heapify();
+            }
+        }
+
+        // Shifts the delivery times of all messages, then restores the heap order.
+        void offsetTimes(long delta, long minWhenNanos) {
+            final Message[] heap = mHeap;
+            for (int i = 0, e = mSize; i < e; i++) {
+                offsetTime(heap[i], delta, minWhenNanos);
+            }
+            heapify();
+        }
+
+        private void heapify() {
+            final Message[] heap = mHeap;
+            for (int i = (mSize >>> 1) - 1; i >= 0; i--) {
+                siftDown(i, heap[i]);
             }
         }
     }
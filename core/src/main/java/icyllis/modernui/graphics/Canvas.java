@@ -23,6 +23,8 @@ import icyllis.arc3d.core.TextBlob;
 import icyllis.modernui.annotation.*;
 import icyllis.modernui.graphics.text.*;
 import icyllis.modernui.view.Gravity;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.apache.logging.log4j.Marker;
 import org.apache.logging.log4j.MarkerManager;
 import org.jetbrains.annotations.ApiStatus;
@@ -1278,6 +1280,24 @@ public abstract class Canvas {
                     nGlyphs,
                     font,
                     x, y, paint);
+        } else if (font instanceof TrueTypeFont trueTypeFont) {
+            // glyph IDs from the font tables are the same as those of the AWT font
+            var fontPaint = new FontPaint();
+            fontPaint.setFontSize(paint.getTextSize());
+            fontPaint.setFontStyle(trueTypeFont.getStyle());
+            fontPaint.setAntiAlias(paint.isTextAntiAlias());
+            fontPaint.setLinearMetrics(paint.isLinearText());
+            var glyphs = new IntArrayList(text.length);
+            var positions = new FloatArrayList(text.length * 2);
+            trueTypeFont.doSimpleLayout(text, 0, text.length, fontPaint,
+                    glyphs, positions, 0, 0);
+            drawGlyphs(glyphs.elements(),
+                    0,
+                    positions.elements(),
+                    0,
+                    glyphs.size(),
+                    font,
+                    x, y, paint);
         }
     }
 
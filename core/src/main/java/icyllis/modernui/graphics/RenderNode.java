@@ -18,15 +18,29 @@
 
 package icyllis.modernui.graphics;
 
+import icyllis.arc3d.core.DisplayList;
+import icyllis.arc3d.core.DisplayListRecorder;
+import icyllis.arc3d.core.RecordingCanvas;
 import icyllis.arc3d.core.SharedPtr;
 import icyllis.arc3d.core.Surface;
 
 import javax.annotation.Nonnull;
 
-//TODO wip
+/**
+ * RenderNode is used to build hardware accelerated rendering hierarchies. Each RenderNode
+ * contains both a display list as well as a set of properties that affect the rendering
+ * of the display list.
+ * <p>
+ * The display list is replayed with the properties applied, so changing a property such as
+ * translation, scale or alpha does not require the content to be recorded again.
+ */
+//TODO wip, layer properties are not supported yet
 public final class RenderNode extends RenderProperties {
 
+    private DisplayListRecorder mRecorder;
     private Canvas mCurrentRecordingCanvas;
+
+    private DisplayList mDisplayList;
     @SharedPtr
     public Surface mLayerSurface;
 
@@ -61,8 +75,10 @@ public final class RenderNode extends RenderProperties {
         if (mCurrentRecordingCanvas != null) {
             throw new IllegalStateException("Recording currently in progress - missing #endRecording() call?");
         }
-        //mCurrentRecordingCanvas = RecordingCanvas.obtain(this, width, height);
-        return mCurrentRecordingCanvas;
+        if (mRecorder == null) {
+            mRecorder = new DisplayListRecorder();
+        }
+        return mCurrentRecordingCanvas = new ArcCanvas(mRecorder.beginRecording(width, height));
     }
 
     /**
@@ -76,9 +92,94 @@ public final class RenderNode extends RenderProperties {
         if (mCurrentRecordingCanvas == null) {
             throw new IllegalStateException("No recording in progress, forgot to call #beginRecording()?");
         }
-        Canvas canvas = mCurrentRecordingCanvas;
         mCurrentRecordingCanvas = null;
-        //canvas.finishRecording(this);
-        //canvas.recycle();
+        DisplayList displayList = mRecorder.finishRecording();
+        if (mDisplayList != null) {
+            mDisplayList.close();
+        }
+        mDisplayList = displayList;
+    }
+
+    /**
+     * Returns whether the RenderNode is currently recording.
+     *
+     * @see #beginRecording(int, int)
+     */
+    public boolean isRecording() {
+        return mCurrentRecordingCanvas != null;
+    }
+
+    /**
+     * Returns whether the RenderNode has a display list. If this returns false, the RenderNode
+     * should be re-recorded with {@link #beginRecording(int, int)} and {@link #endRecording()}.
+     *
+     * @return true if the RenderNode has a display list, false otherwise.
+     */
+    public boolean hasDisplayList() {
+        return mDisplayList != null;
+    }
+
+    /**
+     * Returns whether the RenderNode has a display list that was recorded with the
+     * given viewport size.
+     *
+     * @param width  the width of the recording viewport
+     * @param height the height of the recording viewport
+     * @return true if the display list can be reused for the given size
+     */
+    public boolean hasDisplayList(int width, int height) {
+        final DisplayList displayList = mDisplayList;
+        return displayList != null &&
+                displayList.getWidth() == width &&
+                displayList.getHeight() == height;
+    }
+
+    /**
+     * Reset native resources. This is called when cleaning up the state of display lists
+     * during destruction of hardware resources, to ensure that we do not hold onto
+     * obsolete resources after related resources are gone.
+     */
+    public void discardDisplayList() {
+        if (mDisplayList != null) {
+            mDisplayList.close();
+            mDisplayList = null;
+        }
+    }
+
+    /**
+     * Draws the recorded content of this RenderNode into the given canvas, render properties
+     * are not applied, the caller is responsible for setting up the matrix, clip and alpha.
+     * This does nothing if the RenderNode has no display list.
+     *
+     * @param canvas the canvas to draw into
+     * @return true if the content was drawn, false if the canvas is not supported
+     */
+    public boolean drawContent(@Nonnull Canvas canvas) {
+        if (canvas instanceof ArcCanvas arcCanvas) {
+            if (mDisplayList != null) {
+                mDisplayList.draw(arcCanvas.getCanvas());
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the given canvas is recording into a RenderNode. Commands drawn into
+     * such a canvas are not executed until the display list is replayed.
+     *
+     * @param canvas the canvas to test
+     * @return true if the canvas is a recording canvas
+     */
+    public static boolean isRecordingCanvas(@Nonnull Canvas canvas) {
+        return canvas instanceof ArcCanvas arcCanvas &&
+                arcCanvas.getCanvas() instanceof RecordingCanvas;
+    }
+
+    /**
+     * Returns the number of recorded commands in the display list, for debugging purposes.
+     */
+    public int getDisplayListOpCount() {
+        return mDisplayList != null ? mDisplayList.getOpCount() : 0;
     }
 }
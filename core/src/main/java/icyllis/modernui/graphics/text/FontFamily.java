@@ -24,6 +24,7 @@ import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.UnmodifiableView;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
@@ -128,9 +129,57 @@ public final class FontFamily {
         return createFamily(font, register);
     }
 
+    /**
+     * Creates a family from a font file. If <var>directShaping</var> is true, the regular
+     * style measures simple runs from the font tables directly rather than AWT glyph vectors,
+     * see {@link TrueTypeFont}.
+     */
+    @NonNull
+    public static FontFamily createFamily(@NonNull File file, boolean register,
+                                          boolean directShaping)
+            throws java.awt.FontFormatException, IOException {
+        if (!directShaping) {
+            return createFamily(file, register);
+        }
+        try (var stream = new FileInputStream(file)) {
+            return createFamily(stream, register, true);
+        }
+    }
+
+    /**
+     * Creates a family from a font stream. If <var>directShaping</var> is true, the regular
+     * style measures simple runs from the font tables directly rather than AWT glyph vectors,
+     * see {@link TrueTypeFont}.
+     */
+    @NonNull
+    public static FontFamily createFamily(@NonNull InputStream stream, boolean register,
+                                          boolean directShaping)
+            throws java.awt.FontFormatException, IOException {
+        if (!directShaping) {
+            return createFamily(stream, register);
+        }
+        byte[] data = stream.readAllBytes();
+        var font = java.awt.Font.createFont(java.awt.Font.TRUETYPE_FONT,
+                new ByteArrayInputStream(data));
+        final Font regular;
+        try {
+            regular = new TrueTypeFont(font, ByteBuffer.wrap(data));
+        } catch (IllegalArgumentException e) {
+            var ex = new java.awt.FontFormatException(e.getMessage());
+            ex.initCause(e);
+            throw ex;
+        }
+        return createFamily(new FontFamily(font, regular), font, register);
+    }
+
     @NonNull
     private static FontFamily createFamily(@NonNull java.awt.Font font, boolean register) {
-        FontFamily family = new FontFamily(font);
+        return createFamily(new FontFamily(font), font, register);
+    }
+
+    @NonNull
+    private static FontFamily createFamily(@NonNull FontFamily family,
+                                           @NonNull java.awt.Font font, boolean register) {
         if (register) {
             String name = family.getFamilyName();
             sSystemFontMap.putIfAbsent(name, family);
@@ -201,7 +250,11 @@ public final class FontFamily {
     }
 
     private FontFamily(@NonNull java.awt.Font font) {
-        mFont = new OutlineFont(font);
+        this(font, new OutlineFont(font));
+    }
+
+    private FontFamily(@NonNull java.awt.Font font, @NonNull Font regular) {
+        mFont = regular;
         mBold = new OutlineFont(font.deriveFont(java.awt.Font.BOLD));
         mItalic = new OutlineFont(font.deriveFont(java.awt.Font.ITALIC));
         mBoldItalic = new OutlineFont(font.deriveFont(java.awt.Font.BOLD | java.awt.Font.ITALIC));
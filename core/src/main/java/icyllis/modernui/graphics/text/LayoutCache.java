@@ -20,17 +20,22 @@ package icyllis.modernui.graphics.text;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
 import icyllis.modernui.annotation.NonNull;
 import icyllis.modernui.graphics.MathUtil;
-import icyllis.modernui.util.Pools;
 
 import javax.annotation.concurrent.ThreadSafe;
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Globally shared layout cache. Useful when recycling layouts, or raw data source and
- * layout information are separated. Max memory usage: 7~10 MB.
+ * layout information are separated. Entries are weighed by their memory usage, and the
+ * total is bounded by a memory budget, {@link #DEFAULT_MEMORY_BUDGET} by default.
  *
  * @see LayoutPiece
  * @since 2.6
@@ -57,8 +62,22 @@ public final class LayoutCache {
      */
     public static final int COMPUTE_GLYPHS_PIXEL_BOUNDS = 0x2;
 
-    private static final Pools.Pool<LookupKey> sLookupKeys = Pools.newSynchronizedPool(3);
+    /**
+     * The default memory budget, in bytes.
+     *
+     * @see #setMemoryBudget(long)
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 8 * 1024 * 1024;
+
+    // the size of a cache node object
+    private static final int NODE_SIZE = 40;
+
+    private static final ThreadLocal<LookupKey> sLookupKeys = ThreadLocal.withInitial(LookupKey::new);
+    private static final ConcurrentStatsCounter sStatsCounter = new ConcurrentStatsCounter();
     private static volatile Cache<Key, LayoutPiece> sCache;
+    // the eviction policy of sCache, written before sCache
+    private static Policy.Eviction<Key, LayoutPiece> sEviction;
+    private static long sMemoryBudget = DEFAULT_MEMORY_BUDGET;
 
     /**
      * Get or create the layout piece from the global cache with given requirements.
@@ -89,50 +108,93 @@ public final class LayoutCache {
             return new LayoutPiece(buf, contextStart, contextLimit, start, limit, isRtl, paint,
                     null, computeFlags);
         }
-        if (sCache == null) {
-            synchronized (LayoutCache.class) {
-                if (sCache == null) {
-                    sCache = Caffeine.newBuilder()
-                            //TODO make this configurable
-                            .maximumSize(5000)
-                            //.expireAfterAccess(5, TimeUnit.MINUTES)
-                            .build();
-                }
-            }
-        }
-        LookupKey key = sLookupKeys.acquire();
-        if (key == null) {
-            key = new LookupKey();
-        }
-        LayoutPiece piece = sCache.getIfPresent(
-                key.update(buf, contextStart, contextLimit, start, limit, paint, isRtl));
+        final Cache<Key, LayoutPiece> cache = getCache();
+        // the lookup key is confined to this thread, and it is no longer used once
+        // copied, so creating layout can re-enter this method
+        final LookupKey key = sLookupKeys.get()
+                .update(buf, contextStart, contextLimit, start, limit, paint, isRtl);
+        LayoutPiece piece = cache.getIfPresent(key);
         if (piece == null) {
             // create new
             final Key k = key.copy();
-            // recycle the lookup key earlier, since creating layout is heavy
-            sLookupKeys.release(key);
+            key.clear();
+            long startTime = System.nanoTime();
             piece = new LayoutPiece(buf, contextStart, contextLimit, start, limit, isRtl, paint,
                     null, computeFlags);
+            sStatsCounter.recordLoadSuccess(System.nanoTime() - startTime);
             // there may be a race, but we don't care
-            sCache.put(k, piece);
+            cache.put(k, piece);
         } else {
             int currFlags = (piece.mComputeFlags & computeFlags);
             if (currFlags != computeFlags) {
                 // re-compute for more info
                 final Key k = key.copy();
-                // recycle the lookup key earlier, since creating layout is heavy
-                sLookupKeys.release(key);
+                key.clear();
+                long startTime = System.nanoTime();
                 piece = new LayoutPiece(buf, contextStart, contextLimit, start, limit, isRtl, paint,
                         piece, currFlags ^ computeFlags); // <- compute the difference
+                sStatsCounter.recordLoadSuccess(System.nanoTime() - startTime);
                 // override old value
-                sCache.put(k, piece);
+                cache.put(k, piece);
             } else {
-                sLookupKeys.release(key);
+                key.clear();
             }
         }
         return piece;
     }
 
+    @NonNull
+    private static Cache<Key, LayoutPiece> getCache() {
+        Cache<Key, LayoutPiece> cache = sCache;
+        if (cache == null) {
+            synchronized (LayoutCache.class) {
+                cache = sCache;
+                if (cache == null) {
+                    cache = Caffeine.newBuilder()
+                            .maximumWeight(sMemoryBudget)
+                            .weigher(LayoutCache::weigh)
+                            .recordStats(() -> sStatsCounter)
+                            .build();
+                    sEviction = cache.policy().eviction().orElseThrow();
+                    sCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    private static int weigh(@NonNull Key key, @NonNull LayoutPiece piece) {
+        return key.getMemoryUsage() + piece.getMemoryUsage() + NODE_SIZE;
+    }
+
+    /**
+     * Sets the maximum memory usage of the cache, in bytes. If the current memory usage
+     * exceeds the new budget, entries are evicted. This can be called at any time.
+     *
+     * @param budget the memory budget in bytes, 0 disables the cache
+     * @see #DEFAULT_MEMORY_BUDGET
+     */
+    public static void setMemoryBudget(long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("Negative budget " + budget);
+        }
+        synchronized (LayoutCache.class) {
+            sMemoryBudget = budget;
+            if (sCache != null) {
+                sEviction.setMaximum(budget);
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum memory usage of the cache, in bytes.
+     */
+    public static long getMemoryBudget() {
+        synchronized (LayoutCache.class) {
+            return sMemoryBudget;
+        }
+    }
+
     /**
      * Returns the approximate number of entries in this cache.
      */
@@ -144,7 +206,8 @@ public final class LayoutCache {
     }
 
     /**
-     * This only returns measurable memory usage, in other words, at least
+     * This only returns measurable memory usage, in other words, at least.
+     * The total weight of entries is maintained by the cache, this method is O(1).
      *
      * @return memory usage in bytes
      */
@@ -152,13 +215,16 @@ public final class LayoutCache {
         if (sCache == null) {
             return 0;
         }
-        int size = 0;
-        for (var entry : sCache.asMap().entrySet()) {
-            size += entry.getKey().getMemoryUsage();
-            size += entry.getValue().getMemoryUsage();
-            size += 40; // a node object
-        }
-        return size;
+        return (int) Math.min(sEviction.weightedSize().orElse(0), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns a snapshot of the cumulative statistics of the cache, since the cache
+     * was first used.
+     */
+    @NonNull
+    public static Stats getStats() {
+        return new Stats(sStatsCounter.snapshot());
     }
 
     /**
@@ -170,13 +236,112 @@ public final class LayoutCache {
         }
     }
 
+    /**
+     * Statistics of the cache, all values are cumulative and never decrease.
+     */
+    public static final class Stats {
+
+        private final long mHitCount;
+        private final long mMissCount;
+        private final long mLoadCount;
+        private final long mTotalLoadTime;
+        private final long mEvictionCount;
+        private final long mEvictionWeight;
+
+        private Stats(@NonNull CacheStats stats) {
+            mHitCount = stats.hitCount();
+            mMissCount = stats.missCount();
+            mLoadCount = stats.loadCount();
+            mTotalLoadTime = stats.totalLoadTime();
+            mEvictionCount = stats.evictionCount();
+            mEvictionWeight = stats.evictionWeight();
+        }
+
+        /**
+         * Returns the number of lookups that found a layout piece.
+         */
+        public long getHitCount() {
+            return mHitCount;
+        }
+
+        /**
+         * Returns the number of lookups that created a layout piece.
+         */
+        public long getMissCount() {
+            return mMissCount;
+        }
+
+        /**
+         * Returns the ratio of hits to lookups, or 1 if there's no lookup.
+         */
+        public double getHitRate() {
+            long requestCount = mHitCount + mMissCount;
+            return requestCount == 0 ? 1.0 : (double) mHitCount / requestCount;
+        }
+
+        /**
+         * Returns the number of layout pieces created, including re-computations
+         * for additional info.
+         */
+        public long getLoadCount() {
+            return mLoadCount;
+        }
+
+        /**
+         * Returns the total time spent creating layout pieces, in nanoseconds.
+         */
+        public long getTotalLoadTime() {
+            return mTotalLoadTime;
+        }
+
+        /**
+         * Returns the average time spent creating a layout piece, in nanoseconds.
+         */
+        public double getAverageLoadPenalty() {
+            return mLoadCount == 0 ? 0.0 : (double) mTotalLoadTime / mLoadCount;
+        }
+
+        /**
+         * Returns the number of entries evicted due to the memory budget.
+         */
+        public long getEvictionCount() {
+            return mEvictionCount;
+        }
+
+        /**
+         * Returns the total memory usage of entries evicted due to the memory budget,
+         * in bytes.
+         */
+        public long getEvictionWeight() {
+            return mEvictionWeight;
+        }
+
+        @Override
+        public String toString() {
+            return "LayoutCache.Stats{" +
+                    "hitCount=" + mHitCount +
+                    ", missCount=" + mMissCount +
+                    ", hitRate=" + getHitRate() +
+                    ", loadCount=" + mLoadCount +
+                    ", totalLoadTime=" + mTotalLoadTime +
+                    ", evictionCount=" + mEvictionCount +
+                    ", evictionWeight=" + mEvictionWeight +
+                    '}';
+        }
+    }
+
     /**
      * The cache key.
      */
     private static class Key {
 
-        // for Lookup case, this is only a pointer to the argument
+        // for Lookup case, this is only a pointer to the argument,
+        // otherwise this is a chunk of the char arena, shared with other keys
         char[] mChars;
+        // the contextual range in mChars
+        int mOffset;
+        int mCount;
+        // relative to contextual range
         int mStart;
         int mLimit;
         FontCollection mFont;
@@ -184,6 +349,8 @@ public final class LayoutCache {
         float mSize;
         Locale mLocale;
         boolean mIsRtl;
+        // computed once from all the above
+        long mHash;
 
         private Key() {
         }
@@ -191,11 +358,10 @@ public final class LayoutCache {
         /**
          * Copy constructor, used as a key stored in the cache
          */
-        private Key(@NonNull LookupKey key) {
+        private Key(@NonNull Key key) {
             // deep copy chars
-            mChars = new char[key.mContextLimit - key.mContextStart];
-            System.arraycopy(key.mChars, key.mContextStart,
-                    mChars, 0, mChars.length);
+            CharArena.intern(this, key.mChars, key.mOffset, key.mCount);
+            mCount = key.mCount;
             mStart = key.mStart;
             mLimit = key.mLimit;
             // shared pointers
@@ -204,66 +370,56 @@ public final class LayoutCache {
             mSize = key.mSize;
             mLocale = key.mLocale;
             mIsRtl = key.mIsRtl;
+            mHash = key.mHash;
         }
 
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
-            // we never compare with a LookupKey
-            if (o.getClass() != Key.class) {
-                throw new IllegalStateException();
-            }
-            Key key = (Key) o;
+            if (!(o instanceof Key key)) return false;
 
+            if (mHash != key.mHash) return false;
             if (mStart != key.mStart) return false;
             if (mLimit != key.mLimit) return false;
             if (mFlags != key.mFlags) return false;
             if (mSize != key.mSize) return false;
             if (mIsRtl != key.mIsRtl) return false;
-            if (!Arrays.equals(mChars, key.mChars))
+            if (!Arrays.equals(mChars, mOffset, mOffset + mCount,
+                    key.mChars, key.mOffset, key.mOffset + key.mCount)) {
                 return false;
+            }
             if (!mFont.equals(key.mFont)) return false;
             return mLocale.equals(key.mLocale);
         }
 
         @Override
         public int hashCode() {
-            int result = 1;
-            for (char c : mChars) {
-                result = 31 * result + c;
-            }
-            result = 31 * result + mFont.hashCode();
-            result = 31 * result + mFlags;
-            result = 31 * result + Float.floatToIntBits(mSize);
-            result = 31 * result + mStart;
-            result = 31 * result + mLimit;
-            result = 31 * result + mLocale.hashCode();
-            result = 31 * result + (mIsRtl ? 1 : 0);
-            return result;
+            return (int) (mHash ^ (mHash >>> 32));
         }
 
         private int getMemoryUsage() {
-            return MathUtil.align8(12 + 16 + 8 + 8 + 4 + 4 + 8 + 1 + (mChars.length << 1));
+            // chars are counted by the share of the arena
+            return MathUtil.align8(12 + 4 + 4 + 4 + 4 + 4 + 4 + 4 + 4 + 4 + 1 + 8) + (mCount << 1);
         }
     }
 
     /**
-     * A reusable key used for looking-up, compared against the base Key class.
+     * A reusable key used for looking-up, confined to a thread.
      */
     private static class LookupKey extends Key {
 
-        private int mContextStart;
-        private int mContextLimit;
+        // FNV-1a 64-bit prime, the multiplier of the polynomial rolling hash
+        private static final long PRIME = 0x100000001B3L;
 
         public LookupKey() {
         }
 
         @NonNull
-        public Key update(@NonNull char[] text, int contextStart, int contextLimit,
-                          int start, int limit, @NonNull FontPaint paint, boolean dir) {
+        public LookupKey update(@NonNull char[] text, int contextStart, int contextLimit,
+                                int start, int limit, @NonNull FontPaint paint, boolean dir) {
             mChars = text;
-            mContextStart = contextStart;
-            mContextLimit = contextLimit;
+            mOffset = contextStart;
+            mCount = contextLimit - contextStart;
             // relative to contextual range
             mStart = start - contextStart;
             mLimit = limit - contextStart;
@@ -272,45 +428,33 @@ public final class LayoutCache {
             mSize = paint.getFontSize();
             mLocale = paint.mLocale;
             mIsRtl = dir;
-            return this;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            // we never compare with a LookupKey
-            if (o.getClass() != Key.class) {
-                throw new IllegalStateException();
-            }
-            Key key = (Key) o;
 
-            if (mStart != key.mStart) return false;
-            if (mLimit != key.mLimit) return false;
-            if (mFlags != key.mFlags) return false;
-            if (mSize != key.mSize) return false;
-            if (mIsRtl != key.mIsRtl) return false;
-            if (!Arrays.equals(mChars, mContextStart, mContextLimit,
-                    key.mChars, 0, key.mChars.length)) {
-                return false;
+            long h = 0xCBF29CE484222325L;
+            for (int i = contextStart; i < contextLimit; i++) {
+                h = (h + text[i]) * PRIME;
             }
-            if (!mFont.equals(key.mFont)) return false;
-            return mLocale.equals(key.mLocale);
+            h = (h + mFont.hashCode()) * PRIME;
+            h = (h + mFlags) * PRIME;
+            h = (h + Float.floatToIntBits(mSize)) * PRIME;
+            h = (h + mStart) * PRIME;
+            h = (h + mLimit) * PRIME;
+            h = (h + mLocale.hashCode()) * PRIME;
+            h = (h + (mIsRtl ? 1 : 0)) * PRIME;
+            // finalization mix of MurmurHash3, so that the low bits depend on all chars
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            h *= 0xC4CEB9FE1A85EC53L;
+            h ^= h >>> 33;
+            mHash = h;
+            return this;
         }
 
-        @Override
-        public int hashCode() {
-            int result = 1;
-            for (int i = mContextStart; i < mContextLimit; i++) {
-                result = 31 * result + mChars[i];
-            }
-            result = 31 * result + mFont.hashCode();
-            result = 31 * result + mFlags;
-            result = 31 * result + Float.floatToIntBits(mSize);
-            result = 31 * result + mStart;
-            result = 31 * result + mLimit;
-            result = 31 * result + mLocale.hashCode();
-            result = 31 * result + (mIsRtl ? 1 : 0);
-            return result;
+        /**
+         * Releases the reference to the text.
+         */
+        public void clear() {
+            mChars = null;
         }
 
         @NonNull
@@ -318,4 +462,47 @@ public final class LayoutCache {
             return new Key(this);
         }
     }
+
+    /**
+     * A chunk of chars shared by stored keys, so that each key does not hold its own
+     * array. Chars are allocated by bumping an atomic offset, and a full chunk is
+     * replaced by a new one. A chunk is garbage collected once all its keys are evicted.
+     */
+    private static final class CharArena {
+
+        // 8 KB per chunk
+        private static final int CHUNK_SIZE = 4096;
+        // a long text has its own array, so that a chunk is not mostly occupied by it
+        private static final int MAX_INTERN_LENGTH = CHUNK_SIZE / 8;
+
+        private static final AtomicReference<CharArena> sCurrent =
+                new AtomicReference<>(new CharArena());
+
+        private final char[] mChars = new char[CHUNK_SIZE];
+        private final AtomicInteger mUsed = new AtomicInteger();
+
+        /**
+         * Copies the char range into the arena, and sets the chars and offset of the key.
+         */
+        static void intern(@NonNull Key dst, @NonNull char[] src, int offset, int count) {
+            if (count > MAX_INTERN_LENGTH) {
+                dst.mChars = Arrays.copyOfRange(src, offset, offset + count);
+                dst.mOffset = 0;
+                return;
+            }
+            for (;;) {
+                final CharArena arena = sCurrent.get();
+                final int pos = arena.mUsed.getAndAdd(count);
+                if (pos + count <= CHUNK_SIZE) {
+                    // ranges are disjoint, no other thread writes to it
+                    System.arraycopy(src, offset, arena.mChars, pos, count);
+                    dst.mChars = arena.mChars;
+                    dst.mOffset = pos;
+                    return;
+                }
+                // full, a failed CAS means another thread has replaced it
+                sCurrent.compareAndSet(arena, new CharArena());
+            }
+        }
+    }
 }
@@ -105,13 +105,16 @@ public final class OutlineFont implements Font {
         }
         if (size <= 96) {
             int key = (int) (size * FontPaint.INV_FONT_SIZE_GRANULARITY + 0.5f);
-            var value = mFonts.get(key);
-            if (value != null) {
+            // text can be measured concurrently
+            synchronized (mFonts) {
+                var value = mFonts.get(key);
+                if (value != null) {
+                    return value;
+                }
+                value = mFont.deriveFont(key / FontPaint.INV_FONT_SIZE_GRANULARITY);
+                mFonts.put(key, value);
                 return value;
             }
-            value = mFont.deriveFont(key / FontPaint.INV_FONT_SIZE_GRANULARITY);
-            mFonts.put(key, value);
-            return value;
         }
         return mFont.deriveFont(size);
     }
@@ -0,0 +1,778 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2019-2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.graphics.text;
+
+import icyllis.arc3d.core.Typeface;
+import icyllis.modernui.annotation.NonNull;
+import icyllis.modernui.annotation.Nullable;
+import icyllis.modernui.graphics.Rect;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.awt.font.TextAttribute;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A font that maps characters and measures glyphs from the TrueType/OpenType tables
+ * directly (cmap, hhea, hmtx, glyf and kerning from GPOS or kern), without creating
+ * AWT glyph vectors. Glyph IDs and advances are written straight into the output arrays.
+ * <p>
+ * Only runs whose characters are each a grapheme cluster and need no contextual shaping
+ * are laid out this way, that is, left-to-right Latin, Greek, Cyrillic, CJK and Hangul
+ * syllables without combining marks. Other runs are delegated to the AWT path of the same
+ * font, and so is rendering, since glyph IDs are identical.
+ * <p>
+ * Like AWT glyph vectors of a font without the kerning attribute, pair kerning is not
+ * applied by default, so that a run measures the same on both paths. If kerning is
+ * enabled, it is enabled for the AWT font as well.
+ */
+public final class TrueTypeFont implements Font {
+
+    private static final int TAG_TTCF = 0x74746366;
+    private static final int TAG_HEAD = 0x68656164;
+    private static final int TAG_HHEA = 0x68686561;
+    private static final int TAG_MAXP = 0x6D617870;
+    private static final int TAG_HMTX = 0x686D7478;
+    private static final int TAG_CMAP = 0x636D6170;
+    private static final int TAG_LOCA = 0x6C6F6361;
+    private static final int TAG_GLYF = 0x676C7966;
+    private static final int TAG_KERN = 0x6B65726E;
+    private static final int TAG_GPOS = 0x47504F53;
+
+    // no adjustment for a glyph pair in a subtable
+    private static final int NO_KERNING = Integer.MIN_VALUE;
+
+    private final OutlineFont mFallback;
+    private final java.awt.Font mFont;
+
+    // big-endian font data, shared with glyph bounds lookup
+    private final ByteBuffer mData;
+
+    private final int mUnitsPerEm;
+    private final int mAscender; // positive
+    private final int mDescender; // positive
+    private final int mLineGap;
+    private final int mXMin, mYMin, mXMax, mYMax;
+
+    // uint16 advance width of each glyph
+    private final char[] mAdvances;
+    // uint16 glyph ID of each BMP char
+    private final char[] mCharToGlyph;
+
+    // glyph bounds from glyf, or -1 if this is a CFF font
+    private final int mLocaOffset;
+    private final int mGlyfOffset;
+    private final boolean mLongLoca;
+
+    // kerning lookups, each lookup is a list of subtables
+    private final PairSubtable[][] mKerning;
+    // whether kerning is applied in layout
+    private final boolean mKerningEnabled;
+
+    /**
+     * Creates a font from the font file data.
+     *
+     * @param font the AWT font created from the same data, used for names,
+     *             complex runs and rendering
+     * @param data the content of a TrueType, OpenType or collection file, the first
+     *             font of a collection is used
+     * @throws IllegalArgumentException the data is malformed or has no required tables
+     */
+    public TrueTypeFont(@NonNull java.awt.Font font, @NonNull ByteBuffer data) {
+        this(font, data, false);
+    }
+
+    /**
+     * Creates a font from the font file data.
+     *
+     * @param font    the AWT font created from the same data, used for names,
+     *                complex runs and rendering
+     * @param data    the content of a TrueType, OpenType or collection file, the first
+     *                font of a collection is used
+     * @param kerning whether to apply pair kerning, then the kerning attribute is also
+     *                set on the AWT font
+     * @throws IllegalArgumentException the data is malformed or has no required tables
+     */
+    public TrueTypeFont(@NonNull java.awt.Font font, @NonNull ByteBuffer data, boolean kerning) {
+        Objects.requireNonNull(font);
+        if (kerning) {
+            font = font.deriveFont(Map.of(TextAttribute.KERNING, TextAttribute.KERNING_ON));
+        }
+        mKerningEnabled = kerning;
+        mFont = font;
+        mFallback = new OutlineFont(font);
+        mData = data = data.duplicate().order(java.nio.ByteOrder.BIG_ENDIAN);
+        try {
+            int base = data.position();
+            if (data.getInt(base) == TAG_TTCF) {
+                // first font in the collection
+                base += data.getInt(base + 12);
+            }
+            final int numTables = u16(data, base + 4);
+            int head = -1, hhea = -1, maxp = -1, hmtx = -1, cmap = -1;
+            int loca = -1, glyf = -1, kern = -1, gpos = -1;
+            for (int i = 0; i < numTables; i++) {
+                int record = base + 12 + i * 16;
+                int offset = data.position() + data.getInt(record + 8);
+                switch (data.getInt(record)) {
+                    case TAG_HEAD -> head = offset;
+                    case TAG_HHEA -> hhea = offset;
+                    case TAG_MAXP -> maxp = offset;
+                    case TAG_HMTX -> hmtx = offset;
+                    case TAG_CMAP -> cmap = offset;
+                    case TAG_LOCA -> loca = offset;
+                    case TAG_GLYF -> glyf = offset;
+                    case TAG_KERN -> kern = offset;
+                    case TAG_GPOS -> gpos = offset;
+                }
+            }
+            if (head < 0 || hhea < 0 || maxp < 0 || hmtx < 0 || cmap < 0) {
+                throw new IllegalArgumentException("Missing required tables");
+            }
+
+            mUnitsPerEm = u16(data, head + 18);
+            mXMin = data.getShort(head + 36);
+            mYMin = data.getShort(head + 38);
+            mXMax = data.getShort(head + 40);
+            mYMax = data.getShort(head + 42);
+            mLongLoca = data.getShort(head + 50) != 0;
+
+            mAscender = data.getShort(hhea + 4);
+            mDescender = -data.getShort(hhea + 6);
+            mLineGap = data.getShort(hhea + 8);
+            final int numHMetrics = u16(data, hhea + 34);
+
+            final int numGlyphs = u16(data, maxp + 4);
+            mAdvances = new char[numGlyphs];
+            for (int i = 0; i < numGlyphs; i++) {
+                // the last advance applies to remaining glyphs
+                mAdvances[i] = data.getChar(hmtx + Math.min(i, numHMetrics - 1) * 4);
+            }
+
+            mCharToGlyph = new char[0x10000];
+            readCmap(data, cmap);
+
+            if (loca >= 0 && glyf >= 0) {
+                mLocaOffset = loca;
+                mGlyfOffset = glyf;
+            } else {
+                mLocaOffset = -1;
+                mGlyfOffset = -1;
+            }
+
+            PairSubtable[][] kerning = null;
+            if (gpos >= 0) {
+                kerning = readGpos(data, gpos);
+            }
+            if (kerning == null && kern >= 0) {
+                kerning = readKern(data, kern);
+            }
+            mKerning = kerning != null ? kerning : new PairSubtable[0][];
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed font data", e);
+        }
+    }
+
+    private static int u16(ByteBuffer data, int offset) {
+        return data.getChar(offset);
+    }
+
+    private void readCmap(ByteBuffer data, int cmap) {
+        final int numTables = u16(data, cmap + 2);
+        int bmp = -1, full = -1;
+        for (int i = 0; i < numTables; i++) {
+            int record = cmap + 4 + i * 8;
+            int platform = u16(data, record);
+            int encoding = u16(data, record + 2);
+            int subtable = cmap + data.getInt(record + 4);
+            int format = u16(data, subtable);
+            if (platform == 0 || (platform == 3 && (encoding == 1 || encoding == 10))) {
+                if (format == 4 && bmp < 0) {
+                    bmp = subtable;
+                } else if (format == 12 && full < 0) {
+                    full = subtable;
+                }
+            }
+        }
+        final char[] table = mCharToGlyph;
+        if (full >= 0) {
+            final int numGroups = data.getInt(full + 12);
+            for (int i = 0; i < numGroups; i++) {
+                int group = full + 16 + i * 12;
+                int startChar = data.getInt(group);
+                int endChar = Math.min(data.getInt(group + 4), 0xFFFF);
+                int startGlyph = data.getInt(group + 8);
+                for (int c = startChar; c <= endChar; c++) {
+                    table[c] = (char) (startGlyph + c - startChar);
+                }
+            }
+        } else if (bmp >= 0) {
+            final int segCountX2 = u16(data, bmp + 6);
+            final int endCodes = bmp + 14;
+            final int startCodes = endCodes + segCountX2 + 2;
+            final int idDeltas = startCodes + segCountX2;
+            final int idRangeOffsets = idDeltas + segCountX2;
+            for (int i = 0; i < segCountX2; i += 2) {
+                int start = u16(data, startCodes + i);
+                int end = u16(data, endCodes + i);
+                int delta = data.getShort(idDeltas + i);
+                int rangeOffset = u16(data, idRangeOffsets + i);
+                for (int c = start; c <= end && c != 0xFFFF; c++) {
+                    int glyph;
+                    if (rangeOffset == 0) {
+                        glyph = (c + delta) & 0xFFFF;
+                    } else {
+                        glyph = u16(data, idRangeOffsets + i + rangeOffset + (c - start) * 2);
+                        if (glyph != 0) {
+                            glyph = (glyph + delta) & 0xFFFF;
+                        }
+                    }
+                    table[c] = (char) glyph;
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("No Unicode cmap");
+        }
+    }
+
+    @Nullable
+    private PairSubtable[][] readGpos(ByteBuffer data, int gpos) {
+        final int featureList = gpos + u16(data, gpos + 6);
+        final int lookupList = gpos + u16(data, gpos + 8);
+        // lookups referenced by kern features of any script
+        final BitSet lookupIndices = new BitSet();
+        final int featureCount = u16(data, featureList);
+        for (int i = 0; i < featureCount; i++) {
+            int record = featureList + 2 + i * 6;
+            if (data.getInt(record) != TAG_KERN) {
+                continue;
+            }
+            int feature = featureList + u16(data, record + 4);
+            int count = u16(data, feature + 2);
+            for (int j = 0; j < count; j++) {
+                lookupIndices.set(u16(data, feature + 4 + j * 2));
+            }
+        }
+        if (lookupIndices.isEmpty()) {
+            return null;
+        }
+        final ArrayList<PairSubtable[]> lookups = new ArrayList<>();
+        for (int index = lookupIndices.nextSetBit(0); index >= 0;
+             index = lookupIndices.nextSetBit(index + 1)) {
+            int lookup = lookupList + u16(data, lookupList + 2 + index * 2);
+            int type = u16(data, lookup);
+            int subtableCount = u16(data, lookup + 4);
+            final ArrayList<PairSubtable> subtables = new ArrayList<>(subtableCount);
+            for (int j = 0; j < subtableCount; j++) {
+                int subtable = lookup + u16(data, lookup + 6 + j * 2);
+                int subtableType = type;
+                if (type == 9) {
+                    // extension positioning
+                    subtableType = u16(data, subtable + 2);
+                    subtable += data.getInt(subtable + 4);
+                }
+                if (subtableType != 2) {
+                    continue;
+                }
+                int format = u16(data, subtable);
+                if (format == 1) {
+                    subtables.add(readPairPosFormat1(data, subtable));
+                } else if (format == 2) {
+                    subtables.add(readPairPosFormat2(data, subtable));
+                }
+            }
+            if (!subtables.isEmpty()) {
+                lookups.add(subtables.toArray(new PairSubtable[0]));
+            }
+        }
+        return lookups.isEmpty() ? null : lookups.toArray(new PairSubtable[0][]);
+    }
+
+    // byte offset of XAdvance in a value record, or -1
+    private static int xAdvanceOffset(int valueFormat) {
+        if ((valueFormat & 0x4) == 0) {
+            return -1;
+        }
+        return Integer.bitCount(valueFormat & 0x3) * 2;
+    }
+
+    private static int valueRecordSize(int valueFormat) {
+        return Integer.bitCount(valueFormat & 0xFF) * 2;
+    }
+
+    @NonNull
+    private PairSubtable readPairPosFormat1(ByteBuffer data, int subtable) {
+        final int[] firstGlyphs = readCoverage(data, subtable + u16(data, subtable + 2));
+        final int valueFormat1 = u16(data, subtable + 4);
+        final int valueFormat2 = u16(data, subtable + 6);
+        final int xAdvance = xAdvanceOffset(valueFormat1);
+        final int recordSize = 2 + valueRecordSize(valueFormat1) + valueRecordSize(valueFormat2);
+        final int pairSetCount = Math.min(u16(data, subtable + 8), firstGlyphs.length);
+        final IntArrayList keys = new IntArrayList();
+        final IntArrayList values = new IntArrayList();
+        for (int i = 0; i < pairSetCount; i++) {
+            int pairSet = subtable + u16(data, subtable + 10 + i * 2);
+            int count = u16(data, pairSet);
+            for (int j = 0; j < count; j++) {
+                int record = pairSet + 2 + j * recordSize;
+                keys.add(firstGlyphs[i] << 16 | u16(data, record));
+                values.add(xAdvance < 0 ? 0 : data.getShort(record + 2 + xAdvance));
+            }
+        }
+        return new PairList(keys.toIntArray(), values.toIntArray());
+    }
+
+    @NonNull
+    private PairSubtable readPairPosFormat2(ByteBuffer data, int subtable) {
+        final int numGlyphs = mAdvances.length;
+        final BitSet coverage = new BitSet(numGlyphs);
+        for (int glyph : readCoverage(data, subtable + u16(data, subtable + 2))) {
+            coverage.set(glyph);
+        }
+        final int valueFormat1 = u16(data, subtable + 4);
+        final int valueFormat2 = u16(data, subtable + 6);
+        final char[] classDef1 = readClassDef(data, subtable + u16(data, subtable + 8), numGlyphs);
+        final char[] classDef2 = readClassDef(data, subtable + u16(data, subtable + 10), numGlyphs);
+        final int class1Count = u16(data, subtable + 12);
+        final int class2Count = u16(data, subtable + 14);
+        final int xAdvance = xAdvanceOffset(valueFormat1);
+        final int recordSize = valueRecordSize(valueFormat1) + valueRecordSize(valueFormat2);
+        final short[] values = new short[class1Count * class2Count];
+        if (xAdvance >= 0) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = data.getShort(subtable + 16 + i * recordSize + xAdvance);
+            }
+        }
+        return new ClassPairs(coverage, classDef1, classDef2, class1Count, class2Count, values);
+    }
+
+    // returns glyphs in coverage index order
+    @NonNull
+    private static int[] readCoverage(ByteBuffer data, int coverage) {
+        final int format = u16(data, coverage);
+        final IntArrayList glyphs = new IntArrayList();
+        if (format == 1) {
+            int count = u16(data, coverage + 2);
+            for (int i = 0; i < count; i++) {
+                glyphs.add(u16(data, coverage + 4 + i * 2));
+            }
+        } else if (format == 2) {
+            int count = u16(data, coverage + 2);
+            for (int i = 0; i < count; i++) {
+                int record = coverage + 4 + i * 6;
+                int start = u16(data, record);
+                int end = u16(data, record + 2);
+                int index = u16(data, record + 4);
+                for (int glyph = start; glyph <= end; glyph++) {
+                    glyphs.size(Math.max(glyphs.size(), index + 1));
+                    glyphs.set(index++, glyph);
+                }
+            }
+        }
+        return glyphs.toIntArray();
+    }
+
+    // returns the class of each glyph, 0 by default
+    @NonNull
+    private static char[] readClassDef(ByteBuffer data, int classDef, int numGlyphs) {
+        final char[] classes = new char[numGlyphs];
+        final int format = u16(data, classDef);
+        if (format == 1) {
+            int start = u16(data, classDef + 2);
+            int count = u16(data, classDef + 4);
+            for (int i = 0; i < count && start + i < numGlyphs; i++) {
+                classes[start + i] = data.getChar(classDef + 6 + i * 2);
+            }
+        } else if (format == 2) {
+            int count = u16(data, classDef + 2);
+            for (int i = 0; i < count; i++) {
+                int record = classDef + 4 + i * 6;
+                int start = u16(data, record);
+                int end = Math.min(u16(data, record + 2), numGlyphs - 1);
+                Arrays.fill(classes, start, end + 1, data.getChar(record + 4));
+            }
+        }
+        return classes;
+    }
+
+    @Nullable
+    private static PairSubtable[][] readKern(ByteBuffer data, int kern) {
+        if (u16(data, kern) != 0) {
+            // Apple kern table is not supported
+            return null;
+        }
+        final int numTables = u16(data, kern + 2);
+        final ArrayList<PairSubtable[]> lookups = new ArrayList<>();
+        int subtable = kern + 4;
+        for (int i = 0; i < numTables; i++) {
+            int length = u16(data, subtable + 2);
+            int coverage = u16(data, subtable + 4);
+            // horizontal format 0 kerning values, not minimum or cross-stream
+            if ((coverage & 0xFF07) == 0x0001) {
+                int count = u16(data, subtable + 6);
+                int[] keys = new int[count];
+                int[] values = new int[count];
+                for (int j = 0; j < count; j++) {
+                    int pair = subtable + 14 + j * 6;
+                    keys[j] = data.getInt(pair);
+                    values[j] = data.getShort(pair + 4);
+                }
+                lookups.add(new PairSubtable[]{new PairList(keys, values)});
+            }
+            subtable += length;
+        }
+        return lookups.isEmpty() ? null : lookups.toArray(new PairSubtable[0][]);
+    }
+
+    /**
+     * Returns whether pair kerning is applied in layout.
+     */
+    public boolean isKerningEnabled() {
+        return mKerningEnabled;
+    }
+
+    /**
+     * Returns the kerning between two glyphs in font units, from the tables,
+     * whether kerning is enabled or not.
+     */
+    public int getKerning(int leftGlyph, int rightGlyph) {
+        int value = 0;
+        for (PairSubtable[] lookup : mKerning) {
+            // the first subtable that applies
+            for (PairSubtable subtable : lookup) {
+                int v = subtable.get(leftGlyph, rightGlyph);
+                if (v != NO_KERNING) {
+                    value += v;
+                    break;
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the glyph ID of the given BMP char, 0 if missing.
+     */
+    public int getGlyph(char c) {
+        return mCharToGlyph[c];
+    }
+
+    /**
+     * Returns the advance width of the given glyph in font units.
+     */
+    public int getAdvance(int glyph) {
+        return glyph < mAdvances.length ? mAdvances[glyph] : 0;
+    }
+
+    public int getUnitsPerEm() {
+        return mUnitsPerEm;
+    }
+
+    @Override
+    public int getStyle() {
+        return mFont.getStyle();
+    }
+
+    @Override
+    public String getFullName(@NonNull Locale locale) {
+        return mFont.getFontName(locale);
+    }
+
+    @Override
+    public String getFamilyName(@NonNull Locale locale) {
+        return mFont.getFamily(locale);
+    }
+
+    @Override
+    public int getMetrics(@NonNull FontPaint paint, @Nullable FontMetricsInt fm) {
+        if (paint.getFontStyle() != getStyle()) {
+            throw new IllegalArgumentException();
+        }
+        final float scale = paint.getFontSize() / mUnitsPerEm;
+        // round like AWT font metrics
+        final float descent = mDescender * scale;
+        int ascent = (int) (0.95f + mAscender * scale);
+        int intDescent = (int) (0.95f + descent);
+        int leading = (int) (0.95f + descent + mLineGap * scale) - intDescent;
+        if (fm != null) {
+            fm.extendBy(-ascent, intDescent, leading);
+        }
+        return ascent + intDescent + leading;
+    }
+
+    @Override
+    public boolean hasGlyph(int ch, int vs) {
+        if (ch > 0xFFFF || vs != 0) {
+            return mFallback.hasGlyph(ch, vs);
+        }
+        return mCharToGlyph[ch] != 0;
+    }
+
+    /**
+     * Returns whether the char can be laid out with cmap and hmtx only, so it is a grapheme
+     * cluster on its own, and needs no contextual shaping.
+     */
+    private static boolean isSimpleChar(char c) {
+        if (c < 0x0300) return c != '\r'; // CR LF is a cluster
+        if (c < 0x0370) return false; // combining diacritical marks
+        if (c < 0x0483) return true; // Greek, Cyrillic
+        if (c < 0x048A) return false; // Cyrillic combining marks
+        if (c < 0x0530) return true;
+        if (c < 0x2000) return false; // RTL and complex scripts
+        if (c < 0x200C) return true; // spaces
+        if (c < 0x2010) return false; // joiners and bidi marks
+        if (c < 0x2028) return true;
+        if (c < 0x2030) return false; // separators and bidi controls
+        if (c < 0x205F) return true;
+        if (c < 0x3000) return false;
+        if (c < 0x302A) return true; // CJK symbols
+        if (c < 0x3030) return false; // CJK tone marks
+        if (c < 0x3099) return true; // Hiragana
+        if (c < 0x309B) return false; // combining voiced sound marks
+        if (c < 0x3100) return true; // Katakana
+        if (c < 0x3400) return false;
+        if (c < 0xA000) return true; // CJK ideographs
+        if (c < 0xAC00) return false;
+        if (c < 0xD7A4) return true; // Hangul syllables
+        return c >= 0xFF01 && c < 0xFF5F; // fullwidth ASCII
+    }
+
+    // control chars have no glyph and zero advance
+    private static boolean isControlChar(char c) {
+        return c < 0x20 || (c >= 0x7F && c < 0xA0);
+    }
+
+    private static boolean isSimpleRun(char[] buf, int start, int limit) {
+        for (int i = start; i < limit; i++) {
+            if (!isSimpleChar(buf[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public float doSimpleLayout(char[] buf, int start, int limit,
+                                FontPaint paint, IntArrayList glyphs,
+                                FloatArrayList positions, float x, float y) {
+        if (!isSimpleRun(buf, start, limit)) {
+            return mFallback.doSimpleLayout(buf, start, limit,
+                    paint, glyphs, positions, x, y);
+        }
+        return layoutRun(buf, start, limit, paint, glyphs, positions,
+                null, 0, null, x, y);
+    }
+
+    @Override
+    public float doComplexLayout(char[] buf,
+                                 int contextStart, int contextLimit,
+                                 int layoutStart, int layoutLimit,
+                                 boolean isRtl, FontPaint paint,
+                                 IntArrayList glyphs, FloatArrayList positions,
+                                 float[] advances, int advanceOffset,
+                                 Rect bounds, float x, float y) {
+        if (isRtl || !isSimpleRun(buf, layoutStart, layoutLimit)) {
+            return mFallback.doComplexLayout(buf, contextStart, contextLimit,
+                    layoutStart, layoutLimit, isRtl, paint,
+                    glyphs, positions, advances, advanceOffset, bounds, x, y);
+        }
+        return layoutRun(buf, layoutStart, layoutLimit, paint, glyphs, positions,
+                advances, advanceOffset, bounds, x, y);
+    }
+
+    private float layoutRun(char[] buf, int start, int limit, FontPaint paint,
+                            IntArrayList glyphs, FloatArrayList positions,
+                            float[] advances, int advanceOffset,
+                            Rect bounds, float x, float y) {
+        if (paint.getFontStyle() != getStyle()) {
+            throw new IllegalArgumentException();
+        }
+        final float scale = paint.getFontSize() / mUnitsPerEm;
+        // fractional metrics off, like AWT
+        final boolean round = !paint.isLinearMetrics();
+        final boolean kerning = mKerningEnabled && mKerning.length != 0;
+        float advance = 0;
+        int prevGlyph = -1;
+        int prevIndex = -1;
+        for (int i = start; i < limit; i++) {
+            final char c = buf[i];
+            if (isControlChar(c)) {
+                prevGlyph = -1;
+                continue;
+            }
+            final int glyph = mCharToGlyph[c];
+            if (kerning && prevGlyph >= 0) {
+                float k = getKerning(prevGlyph, glyph) * scale;
+                if (round) {
+                    k = Math.round(k);
+                }
+                advance += k;
+                // belongs to the previous cluster
+                if (advances != null) {
+                    advances[prevIndex - advanceOffset] += k;
+                }
+            }
+            if (glyphs != null) {
+                glyphs.add(glyph);
+            }
+            if (positions != null) {
+                positions.add(x + advance);
+                positions.add(y);
+            }
+            if (bounds != null) {
+                unionGlyphBounds(glyph, x + advance, y, scale, bounds);
+            }
+            float adv = getAdvance(glyph) * scale;
+            if (round) {
+                adv = Math.round(adv);
+            }
+            if (advances != null) {
+                advances[i - advanceOffset] = adv;
+            }
+            advance += adv;
+            prevGlyph = glyph;
+            prevIndex = i;
+        }
+        return advance;
+    }
+
+    private void unionGlyphBounds(int glyph, float x, float y, float scale, Rect bounds) {
+        int xMin, yMin, xMax, yMax;
+        if (mLocaOffset >= 0) {
+            final ByteBuffer data = mData;
+            final int offset, next;
+            if (mLongLoca) {
+                offset = data.getInt(mLocaOffset + glyph * 4);
+                next = data.getInt(mLocaOffset + glyph * 4 + 4);
+            } else {
+                offset = u16(data, mLocaOffset + glyph * 2) * 2;
+                next = u16(data, mLocaOffset + glyph * 2 + 2) * 2;
+            }
+            if (offset == next) {
+                // no outline
+                return;
+            }
+            final int header = mGlyfOffset + offset;
+            xMin = data.getShort(header + 2);
+            yMin = data.getShort(header + 4);
+            xMax = data.getShort(header + 6);
+            yMax = data.getShort(header + 8);
+        } else {
+            // CFF outlines, use the font bounding box
+            xMin = mXMin;
+            yMin = mYMin;
+            xMax = mXMax;
+            yMax = mYMax;
+        }
+        // y-up to y-down
+        bounds.union((int) Math.floor(x + xMin * scale), (int) Math.floor(y - yMax * scale),
+                (int) Math.ceil(x + xMax * scale), (int) Math.ceil(y - yMin * scale));
+    }
+
+    @Override
+    public Typeface getNativeTypeface() {
+        return mFallback.getNativeTypeface();
+    }
+
+    @Override
+    public String toString() {
+        return "TrueTypeFont{" +
+                "mFont=" + mFont +
+                ", mUnitsPerEm=" + mUnitsPerEm +
+                ", mNumGlyphs=" + mAdvances.length +
+                '}';
+    }
+
+    /**
+     * A pair adjustment subtable.
+     */
+    private interface PairSubtable {
+
+        // returns NO_KERNING if this subtable does not apply
+        int get(int left, int right);
+    }
+
+    /**
+     * Explicit glyph pairs, from GPOS pair adjustment format 1 or kern format 0.
+     */
+    private static final class PairList implements PairSubtable {
+
+        // left << 16 | right, sorted
+        private final int[] mKeys;
+        private final int[] mValues;
+
+        PairList(int[] keys, int[] values) {
+            // sort keys and values together, keys are unique in valid fonts
+            final long[] pairs = new long[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                pairs[i] = (long) keys[i] << 32 | (values[i] & 0xFFFFFFFFL);
+            }
+            Arrays.sort(pairs);
+            mKeys = new int[pairs.length];
+            mValues = new int[pairs.length];
+            for (int i = 0; i < pairs.length; i++) {
+                mKeys[i] = (int) (pairs[i] >>> 32);
+                mValues[i] = (int) pairs[i];
+            }
+        }
+
+        @Override
+        public int get(int left, int right) {
+            int index = Arrays.binarySearch(mKeys, left << 16 | right);
+            return index >= 0 ? mValues[index] : NO_KERNING;
+        }
+    }
+
+    /**
+     * Class-based pairs, from GPOS pair adjustment format 2.
+     */
+    private static final class ClassPairs implements PairSubtable {
+
+        private final BitSet mCoverage;
+        private final char[] mClassDef1;
+        private final char[] mClassDef2;
+        private final int mClass1Count;
+        private final int mClass2Count;
+        private final short[] mValues;
+
+        ClassPairs(BitSet coverage, char[] classDef1, char[] classDef2,
+                   int class1Count, int class2Count, short[] values) {
+            mCoverage = coverage;
+            mClassDef1 = classDef1;
+            mClassDef2 = classDef2;
+            mClass1Count = class1Count;
+            mClass2Count = class2Count;
+            mValues = values;
+        }
+
+        @Override
+        public int get(int left, int right) {
+            if (!mCoverage.get(left)) {
+                return NO_KERNING;
+            }
+            int class1 = left < mClassDef1.length ? mClassDef1[left] : 0;
+            int class2 = right < mClassDef2.length ? mClassDef2[right] : 0;
+            if (class1 >= mClass1Count || class2 >= mClass2Count) {
+                return 0;
+            }
+            return mValues[class1 * mClass2Count + class2];
+        }
+    }
+}
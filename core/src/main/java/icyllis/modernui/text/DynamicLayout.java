@@ -18,6 +18,7 @@
 
 package icyllis.modernui.text;
 
+import icyllis.modernui.graphics.Canvas;
 import icyllis.modernui.graphics.text.FontMetricsInt;
 import icyllis.modernui.text.style.UpdateLayout;
 import icyllis.modernui.text.style.WrapTogetherSpan;
@@ -56,6 +57,7 @@ public class DynamicLayout extends Layout {
         b.mFallbackLineSpacing = true; // default true
         b.mEllipsizedWidth = width;
         b.mEllipsize = null;
+        b.mIncremental = false;
         return b;
     }
 
@@ -83,6 +85,7 @@ public class DynamicLayout extends Layout {
         private boolean mFallbackLineSpacing;
         private TextUtils.TruncateAt mEllipsize;
         private int mEllipsizedWidth;
+        private boolean mIncremental;
 
         private Builder() {
         }
@@ -199,6 +202,24 @@ public class DynamicLayout extends Layout {
             return this;
         }
 
+        /**
+         * Set whether to lay out the text incrementally. If set, a text change longer than
+         * a block (about 4,000 characters, aligned to paragraphs), including the initial text,
+         * is split into pending blocks. A pending block is a single line with an estimated
+         * height, one line per paragraph, until it is laid out by {@link #layoutVisibleBlocks}
+         * or an edit touches it. This makes creation and large pastes of huge documents
+         * independent of the text length, at the cost of approximate heights for the text
+         * that has not been drawn yet. The default is {@code false}.
+         *
+         * @param incremental whether to lay out blocks outside the viewport on demand
+         * @return this builder, useful for chaining
+         */
+        @Nonnull
+        public Builder setIncremental(boolean incremental) {
+            mIncremental = incremental;
+            return this;
+        }
+
         /**
          * Build the {@link DynamicLayout} after options have been set.
          *
@@ -223,6 +244,12 @@ public class DynamicLayout extends Layout {
 
     private static final int PRIORITY = 128;
     private static final int BLOCK_MINIMUM_CHARACTER_LENGTH = 400;
+    // The minimum length of a pending block in incremental mode.
+    private static final int PENDING_BLOCK_LENGTH = 4096;
+
+    // The directions of pending blocks, identity is used to tell the pending lines
+    private static final Directions PENDING_DIRECTIONS =
+            new Directions(new int[]{0, Directions.RUN_LENGTH_MASK});
 
     // START, DIR, and TAB share the same entry.
     private static final int START = 0;
@@ -253,6 +280,7 @@ public class DynamicLayout extends Layout {
     private boolean mEllipsize;
     private int mEllipsizedWidth;
     private TextUtils.TruncateAt mEllipsizeAt;
+    private final boolean mIncremental;
 
     private PackedIntVector mInts;
     private PackedObjectVector<Directions> mObjects;
@@ -282,6 +310,7 @@ public class DynamicLayout extends Layout {
 
         mDisplay = b.mDisplay;
         mIncludePad = b.mIncludePad;
+        mIncremental = b.mIncremental;
 
         generate(b);
     }
@@ -454,11 +483,42 @@ public class DynamicLayout extends Layout {
         // find affected region of old layout
 
         int startline = getLineForOffset(where);
-        int startv = getLineTop(startline);
 
         int endline = getLineForOffset(where + before);
         if (where + after == len)
             endline = getLineCount();
+
+        if (mIncremental) {
+            // pending blocks have no line breaks, extend to cover them entirely
+            if (isLinePending(startline)) {
+                int diff = where - getLineStart(startline);
+                before += diff;
+                after += diff;
+                where -= diff;
+            }
+            if (endline < getLineCount() && isLinePending(endline) &&
+                    getLineStart(endline) < where + before) {
+                int diff = getLineStart(endline + 1) - (where + before);
+                before += diff;
+                after += diff;
+                endline++;
+            }
+            if (after > PENDING_BLOCK_LENGTH) {
+                insertPendingBlocks(text, where, before, after, startline, endline);
+                return;
+            }
+        }
+
+        replaceLines(text, where, before, after, startline, endline);
+    }
+
+    /**
+     * Lays out the text in the given range, and replaces the lines of old text.
+     */
+    private void replaceLines(CharSequence text, int where, int before, int after,
+                              int startline, int endline) {
+        final int len = text.length();
+        int startv = getLineTop(startline);
         int endv = getLineTop(endline);
         boolean islast = (endline == getLineCount());
 
@@ -568,6 +628,124 @@ public class DynamicLayout extends Layout {
         }
     }
 
+    /**
+     * Replaces the lines of old text with pending blocks of the given range. Each block
+     * is estimated to take one line per paragraph.
+     */
+    private void insertPendingBlocks(CharSequence text, int where, int before, int after,
+                                     int startline, int endline) {
+        final int len = text.length();
+        final int end = where + after;
+        final int startv = getLineTop(startline);
+        final int endv = getLineTop(endline);
+
+        final FontMetricsInt fm = new FontMetricsInt();
+        getPaint().getFontMetricsInt(fm);
+        final int lineHeight = fm.descent - fm.ascent;
+
+        // find blocks and estimate their heights
+        IntArrayList blocks = new IntArrayList();
+        int ht = 0;
+        for (int blockStart = where, blockEnd; blockStart < end; blockStart = blockEnd) {
+            blockEnd = TextUtils.indexOf(text, '\n', blockStart + PENDING_BLOCK_LENGTH, end);
+            if (blockEnd < 0) {
+                blockEnd = end;
+            } else {
+                blockEnd++;
+            }
+            int paragraphs = 1;
+            for (int i = TextUtils.indexOf(text, '\n', blockStart, blockEnd);
+                 i >= 0 && i < blockEnd - 1;
+                 i = TextUtils.indexOf(text, '\n', i + 1, blockEnd)) {
+                paragraphs++;
+            }
+            blocks.add(blockStart);
+            blocks.add(ht);
+            ht += paragraphs * lineHeight;
+        }
+        // like StaticLayout, an empty line follows the trailing line feed
+        if (end == len && (end == 0 || text.charAt(end - 1) == '\n')) {
+            blocks.add(end);
+            blocks.add(ht);
+            ht += lineHeight;
+        }
+
+        mInts.deleteAt(startline, endline - startline);
+        mObjects.deleteAt(startline, endline - startline);
+
+        mInts.adjustValuesBelow(startline, START, after - before);
+        mInts.adjustValuesBelow(startline, TOP, startv - endv + ht);
+
+        final int[] ints = new int[mEllipsize ? COLUMNS_ELLIPSIZE : COLUMNS_NORMAL];
+        final Directions[] objects = {PENDING_DIRECTIONS};
+        final int n = blocks.size() >> 1;
+        for (int i = 0; i < n; i++) {
+            ints[START] = blocks.getInt(i << 1) | DIR_LEFT_TO_RIGHT << DIR_SHIFT;
+            ints[TOP] = startv + blocks.getInt((i << 1) + 1);
+            ints[DESCENT] = fm.descent;
+            mInts.insertAt(startline + i, ints);
+            mObjects.insertAt(startline + i, objects);
+        }
+
+        updateBlocks(startline, endline - 1, n);
+    }
+
+    /**
+     * Returns whether the given line is a pending block that has not been laid out.
+     * This is always false if the layout is not incremental.
+     *
+     * @param line the line number
+     * @return true if the line is pending
+     * @see Builder#setIncremental(boolean)
+     */
+    public boolean isLinePending(int line) {
+        return mIncremental && line < getLineCount() &&
+                mObjects.getValue(line, 0) == PENDING_DIRECTIONS;
+    }
+
+    /**
+     * Lays out the pending blocks that are visible on the canvas. In incremental mode, this
+     * should be called before computing the line range for draw. The heights of laid out blocks
+     * may be different from the estimated ones, and this returns true in that case, then the
+     * caller may need to request a new layout pass.
+     *
+     * @param canvas the canvas used to draw this Layout
+     * @return whether the height of this layout changed
+     * @see Builder#setIncremental(boolean)
+     */
+    public boolean layoutVisibleBlocks(@Nonnull Canvas canvas) {
+        if (!mIncremental) {
+            return false;
+        }
+        final int height = getHeight();
+        // laid out blocks may be shorter than estimated, then more blocks become visible
+        for (; ; ) {
+            final long range = getLineRangeForDraw(canvas);
+            if (range < 0) {
+                break;
+            }
+            int firstLine = (int) (range >>> 32);
+            int lastLine = (int) (range & 0xFFFFFFFFL);
+            int line = firstLine;
+            while (line <= lastLine && !isLinePending(line)) {
+                line++;
+            }
+            if (line > lastLine) {
+                break;
+            }
+            final int start = getLineStart(line);
+            final int count = getLineStart(line + 1) - start;
+            replaceLines(mDisplay, start, count, count, line, line + 1);
+        }
+        return height != getHeight();
+    }
+
+    @Override
+    public void draw(@Nonnull Canvas canvas) {
+        layoutVisibleBlocks(canvas);
+        super.draw(canvas);
+    }
+
     /**
      * Create the initial block structure, cutting the text into blocks of at least
      * BLOCK_MINIMUM_CHARACTER_SIZE characters, aligned on the ends of paragraphs.
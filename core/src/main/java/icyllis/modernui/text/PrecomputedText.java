@@ -22,12 +22,15 @@ import icyllis.modernui.annotation.*;
 import icyllis.modernui.graphics.text.FontMetricsInt;
 import icyllis.modernui.graphics.text.LineBreakConfig;
 import icyllis.modernui.text.style.MetricAffectingSpan;
+import icyllis.modernui.util.GrowingArrayUtils;
 import org.intellij.lang.annotations.MagicConstant;
 import org.jetbrains.annotations.ApiStatus;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntConsumer;
 
 /**
  * A text which has the character metrics data.
@@ -279,6 +282,9 @@ public class PrecomputedText implements Spannable {
     }
 
 
+    // The minimum number of chars of a task, when paragraphs are measured concurrently.
+    private static final int PARALLEL_BATCH_LENGTH = 4096;
+
     // The original text.
     private final @NonNull SpannableString mText;
 
@@ -309,6 +315,25 @@ public class PrecomputedText implements Spannable {
      * @return A {@link PrecomputedText}
      */
     public static PrecomputedText create(@NonNull CharSequence text, @NonNull Params params) {
+        return create(text, params, null);
+    }
+
+    /**
+     * Create a new {@link PrecomputedText}, like {@link #create(CharSequence, Params)}, but
+     * paragraphs are measured concurrently on the given executor. This method blocks until
+     * all paragraphs are measured, the executor must not run tasks on the calling thread
+     * only, otherwise it will deadlock.
+     * <p>
+     * Paragraphs are independent of each other, this is useful for text with a large number
+     * of paragraphs, such as logs.
+     *
+     * @param text     the text to be measured
+     * @param params   parameters that define how text will be precomputed
+     * @param executor the executor to measure paragraphs, or null to measure sequentially
+     * @return A {@link PrecomputedText}
+     */
+    public static PrecomputedText create(@NonNull CharSequence text, @NonNull Params params,
+                                         @Nullable Executor executor) {
         ParagraphInfo[] paraInfo = null;
         if (text instanceof final PrecomputedText hintPct) {
             final PrecomputedText.Params hintParams = hintPct.getParams();
@@ -322,7 +347,7 @@ public class PrecomputedText implements Spannable {
                     // To be able to use PrecomputedText for new params, at least break strategy and
                     // hyphenation frequency must be the same.
                     paraInfo = createMeasuredParagraphsFromPrecomputedText(
-                            hintPct, params, true /* compute layout */);
+                            hintPct, params, true /* compute layout */, executor);
                     break;
                 case Params.UNUSABLE:
                     // Unable to use anything in PrecomputedText. Create PrecomputedText as the
@@ -332,13 +357,29 @@ public class PrecomputedText implements Spannable {
         }
         if (paraInfo == null) {
             paraInfo = createMeasuredParagraphs(
-                    text, params, 0, text.length(), true /* computeLayout */);
+                    text, params, 0, text.length(), true /* computeLayout */, executor);
         }
         return new PrecomputedText(text, 0, text.length(), params, paraInfo);
     }
 
     private static ParagraphInfo[] createMeasuredParagraphsFromPrecomputedText(
-            @NonNull PrecomputedText pct, @NonNull Params params, boolean computeLayout) {
+            @NonNull PrecomputedText pct, @NonNull Params params, boolean computeLayout,
+            @Nullable Executor executor) {
+        if (executor != null) {
+            final int[] paraEnds = new int[pct.getParagraphCount()];
+            for (int i = 0; i < paraEnds.length; ++i) {
+                paraEnds[i] = pct.getParagraphEnd(i);
+            }
+            final ParagraphInfo[] result = new ParagraphInfo[paraEnds.length];
+            forEachParagraph(paraEnds, pct.getStart(), executor, i -> {
+                final int paraStart = pct.getParagraphStart(i);
+                result[i] = new ParagraphInfo(paraEnds[i], MeasuredParagraph.buildForStaticLayout(
+                        params.getTextPaint(), params.getLineBreakConfig(), pct, paraStart, paraEnds[i],
+                        params.getTextDirection(), computeLayout,
+                        null /* no recycle */));
+            });
+            return result;
+        }
         ArrayList<ParagraphInfo> result = new ArrayList<>();
         for (int i = 0; i < pct.getParagraphCount(); ++i) {
             final int paraStart = pct.getParagraphStart(i);
@@ -355,11 +396,48 @@ public class PrecomputedText implements Spannable {
     public static ParagraphInfo[] createMeasuredParagraphs(
             @NonNull CharSequence text, @NonNull Params params,
             @IntRange(from = 0) int start, @IntRange(from = 0) int end, boolean computeLayout) {
-        ArrayList<ParagraphInfo> result = new ArrayList<>();
+        return createMeasuredParagraphs(text, params, start, end, computeLayout, null);
+    }
 
+    /**
+     * Measures paragraphs in the given range. If an executor is given, paragraphs are
+     * measured concurrently on it, and this method waits for all of them.
+     */
+    @ApiStatus.Internal
+    public static ParagraphInfo[] createMeasuredParagraphs(
+            @NonNull CharSequence text, @NonNull Params params,
+            @IntRange(from = 0) int start, @IntRange(from = 0) int end, boolean computeLayout,
+            @Nullable Executor executor) {
         Objects.requireNonNull(text);
         Objects.requireNonNull(params);
 
+        if (executor != null) {
+            // find paragraphs first, this is cheap compared to measurement
+            int[] paraEnds = new int[16];
+            int count = 0;
+            int paraEnd;
+            for (int paraStart = start; paraStart < end; paraStart = paraEnd) {
+                paraEnd = TextUtils.indexOf(text, '\n', paraStart, end);
+                if (paraEnd < 0) {
+                    paraEnd = end;
+                } else {
+                    paraEnd++;
+                }
+                paraEnds = GrowingArrayUtils.append(paraEnds, count++, paraEnd);
+            }
+            final int[] ends = Arrays.copyOf(paraEnds, count);
+            final ParagraphInfo[] result = new ParagraphInfo[count];
+            forEachParagraph(ends, start, executor, i -> {
+                final int paraStart = i == 0 ? start : ends[i - 1];
+                result[i] = new ParagraphInfo(ends[i], MeasuredParagraph.buildForStaticLayout(
+                        params.getTextPaint(), params.getLineBreakConfig(), text, paraStart, ends[i],
+                        params.getTextDirection(), computeLayout, null /* no recycle */));
+            });
+            return result;
+        }
+
+        ArrayList<ParagraphInfo> result = new ArrayList<>();
+
         int paraEnd;
         for (int paraStart = start; paraStart < end; paraStart = paraEnd) {
             paraEnd = TextUtils.indexOf(text, '\n', paraStart, end);
@@ -378,6 +456,56 @@ public class PrecomputedText implements Spannable {
         return result.toArray(new ParagraphInfo[0]);
     }
 
+    /**
+     * Runs the action for each paragraph on the executor, and waits for all of them.
+     * Paragraphs are batched into tasks of at least {@link #PARALLEL_BATCH_LENGTH} chars,
+     * and the last batch runs on the calling thread. If any task failed, its exception
+     * is rethrown. The action must only modify the state of the given paragraph.
+     *
+     * @param paraEnds the end offsets of paragraphs
+     * @param start    the start offset of the first paragraph
+     * @param executor the executor to run tasks
+     * @param action   the action that accepts a paragraph index
+     */
+    static void forEachParagraph(@NonNull int[] paraEnds, int start,
+                                 @NonNull Executor executor, @NonNull IntConsumer action) {
+        final int count = paraEnds.length;
+        final ArrayList<CompletableFuture<Void>> tasks = new ArrayList<>();
+        int batchStart = 0;
+        int batchOffset = start;
+        for (int i = 0; i < count; i++) {
+            if (paraEnds[i] - batchOffset < PARALLEL_BATCH_LENGTH || i == count - 1) {
+                continue;
+            }
+            final int from = batchStart, to = i + 1;
+            tasks.add(CompletableFuture.runAsync(() -> {
+                for (int j = from; j < to; j++) {
+                    action.accept(j);
+                }
+            }, executor));
+            batchStart = to;
+            batchOffset = paraEnds[i];
+        }
+        // the remaining
+        for (int j = batchStart; j < count; j++) {
+            action.accept(j);
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
+        try {
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
     // Use PrecomputedText.create instead.
     private PrecomputedText(@NonNull CharSequence text, @IntRange(from = 0) int start,
                             @IntRange(from = 0) int end, @NonNull Params params,
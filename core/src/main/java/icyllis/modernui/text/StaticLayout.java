@@ -30,6 +30,7 @@ import org.apache.logging.log4j.Marker;
 import org.apache.logging.log4j.MarkerManager;
 
 import java.util.*;
+import java.util.concurrent.Executor;
 
 /**
  * StaticLayout is a Layout for text that will not be edited after it
@@ -75,6 +76,7 @@ public class StaticLayout extends Layout {
         b.mEllipsize = null;
         b.mMaxLines = Integer.MAX_VALUE;
         b.mLineBreakConfig = LineBreakConfig.NONE;
+        b.mExecutor = null;
         return b;
     }
 
@@ -110,6 +112,8 @@ public class StaticLayout extends Layout {
         @Nullable
         private int[] mRightIndents;
         private LineBreakConfig mLineBreakConfig = LineBreakConfig.NONE;
+        @Nullable
+        private Executor mExecutor;
 
         private Builder() {
         }
@@ -129,6 +133,7 @@ public class StaticLayout extends Layout {
             mPaint = null;
             mLeftIndents = null;
             mRightIndents = null;
+            mExecutor = null;
         }
 
         /**
@@ -310,6 +315,26 @@ public class StaticLayout extends Layout {
             return this;
         }
 
+        /**
+         * Set the executor to measure and break paragraphs concurrently. Paragraphs are
+         * independent of each other, and line positions are assigned after all of them
+         * are done. {@link #build()} still blocks until the layout is complete, so the
+         * executor must not run tasks on the calling thread only, otherwise it will deadlock.
+         * <p>
+         * This is useful for text with a large number of paragraphs, such as logs. When
+         * indents are set, paragraphs are measured concurrently but broken sequentially,
+         * since line widths depend on line numbers. The default is {@code null}, indicating
+         * paragraphs are processed sequentially on the calling thread.
+         *
+         * @param executor the executor to process paragraphs, or null
+         * @return this builder, useful for chaining
+         */
+        @NonNull
+        public Builder setExecutor(@Nullable Executor executor) {
+            mExecutor = executor;
+            return this;
+        }
+
         /**
          * Build the {@link StaticLayout} after options have been set.
          * <p>
@@ -480,7 +505,7 @@ public class StaticLayout extends Layout {
                                     .setTextDirection(textDir)
                                     .setLineBreakConfig(b.mLineBreakConfig)
                                     .build();
-                    precomputed = PrecomputedText.create(precomputed, newParams);
+                    precomputed = PrecomputedText.create(precomputed, newParams, b.mExecutor);
                     paragraphInfo = precomputed.getParagraphInfo();
                     break;
                 case PrecomputedText.Params.USABLE:
@@ -494,7 +519,26 @@ public class StaticLayout extends Layout {
             final PrecomputedText.Params param = new PrecomputedText.Params(paint,
                     b.mLineBreakConfig, textDir);
             paragraphInfo = PrecomputedText.createMeasuredParagraphs(source, param, bufStart,
-                    bufEnd, false /* computeLayout */);
+                    bufEnd, false /* computeLayout */, b.mExecutor);
+        }
+
+        // line breaks of each paragraph, if they are computed concurrently
+        LineBreaker.Result[] lineBreaks = null;
+        // with indents, line widths depend on the line number, which is known only after
+        // all preceding paragraphs are broken
+        if (b.mExecutor != null && indents == null && paragraphInfo.length > 1) {
+            final PrecomputedText.ParagraphInfo[] paras = paragraphInfo;
+            final int[] paraEnds = new int[paras.length];
+            for (int i = 0; i < paras.length; i++) {
+                paraEnds[i] = paras[i].paragraphEnd;
+            }
+            final LineBreaker.Result[] results = new LineBreaker.Result[paras.length];
+            PrecomputedText.forEachParagraph(paraEnds, bufStart, b.mExecutor, i -> {
+                final int paraStart = i == 0 ? bufStart : paraEnds[i - 1];
+                results[i] = computeLineBreaks(spanned, paraStart, paraEnds[i], paras[i].measured,
+                        outerWidth, new LineBreaker.ParagraphConstraints(), null, 0);
+            });
+            lineBreaks = results;
         }
 
         for (int paraIndex = 0; paraIndex < paragraphInfo.length; paraIndex++) {
@@ -502,34 +546,8 @@ public class StaticLayout extends Layout {
                     ? bufStart : paragraphInfo[paraIndex - 1].paragraphEnd;
             final int paraEnd = paragraphInfo[paraIndex].paragraphEnd;
 
-            int firstWidthLineCount = 1;
-            int firstWidth = outerWidth;
-            int restWidth = outerWidth;
-
             List<LineHeightSpan> chooseHt = Collections.emptyList();
             if (spanned != null) {
-                List<LeadingMarginSpan> leadingMarginSpans = getParagraphSpans(spanned, paraStart, paraEnd,
-                        LeadingMarginSpan.class);
-                for (LeadingMarginSpan lms : leadingMarginSpans) {
-                    firstWidth -= lms.getLeadingMargin(true);
-                    restWidth -= lms.getLeadingMargin(false);
-
-                    // LeadingMarginSpan2 is odd.  The count affects all
-                    // leading margin spans, not just this particular one
-                    if (lms instanceof LeadingMarginSpan2) {
-                        firstWidthLineCount = Math.max(firstWidthLineCount,
-                                ((LeadingMarginSpan2) lms).getLeadingMarginLineCount());
-                    }
-                }
-
-                List<TrailingMarginSpan> trailingMarginSpans = getParagraphSpans(spanned, paraStart, paraEnd,
-                        TrailingMarginSpan.class);
-                for (TrailingMarginSpan tms : trailingMarginSpans) {
-                    int margin = tms.getTrailingMargin();
-                    firstWidth -= margin;
-                    restWidth -= margin;
-                }
-
                 chooseHt = getParagraphSpans(spanned, paraStart, paraEnd, LineHeightSpan.class);
 
                 if (!chooseHt.isEmpty()) {
@@ -554,31 +572,14 @@ public class StaticLayout extends Layout {
                 }
             }
 
-            // tab stop locations
-            float[] variableTabStops = null;
-            if (spanned != null) {
-                List<TabStopSpan> spans = getParagraphSpans(spanned, paraStart,
-                        paraEnd, TabStopSpan.class);
-                if (!spans.isEmpty()) {
-                    float[] stops = new float[spans.size()];
-                    for (int i = 0; i < spans.size(); i++) {
-                        stops[i] = (float) spans.get(i).getTabStop();
-                    }
-                    Arrays.sort(stops, 0, stops.length);
-                    variableTabStops = stops;
-                }
-            }
-
             final MeasuredParagraph measuredPara = paragraphInfo[paraIndex].measured;
             final int[] spanEndCache = measuredPara.getSpanEndCache().elements();
             final int[] fmCache = measuredPara.getFontMetrics().elements();
 
-            constraints.setWidth(restWidth);
-            constraints.setIndent(firstWidth);
-            constraints.setTabStops(variableTabStops, TAB_INCREMENT);
-
-            LineBreaker.Result res = LineBreaker.computeLineBreaks(
-                    measuredPara.getMeasuredText(), constraints, indents, mLineCount);
+            LineBreaker.Result res = lineBreaks != null
+                    ? lineBreaks[paraIndex]
+                    : computeLineBreaks(spanned, paraStart, paraEnd, measuredPara,
+                    outerWidth, constraints, indents, mLineCount);
             int breakCount = res.getLineCount();
             if (breakCount > lineBreakCapacity) {
                 lineBreakCapacity = breakCount;
@@ -712,6 +713,64 @@ public class StaticLayout extends Layout {
         }
     }
 
+    /**
+     * Computes line breaks of a paragraph, this only reads the text and the measured paragraph,
+     * and can be called from any thread.
+     */
+    @NonNull
+    private static LineBreaker.Result computeLineBreaks(@Nullable Spanned spanned, int paraStart, int paraEnd,
+                                                        @NonNull MeasuredParagraph measuredPara, int outerWidth,
+                                                        @NonNull LineBreaker.ParagraphConstraints constraints,
+                                                        @Nullable int[] indents, int lineNumber) {
+        int firstWidthLineCount = 1;
+        int firstWidth = outerWidth;
+        int restWidth = outerWidth;
+
+        // tab stop locations
+        float[] variableTabStops = null;
+        if (spanned != null) {
+            List<LeadingMarginSpan> leadingMarginSpans = getParagraphSpans(spanned, paraStart, paraEnd,
+                    LeadingMarginSpan.class);
+            for (LeadingMarginSpan lms : leadingMarginSpans) {
+                firstWidth -= lms.getLeadingMargin(true);
+                restWidth -= lms.getLeadingMargin(false);
+
+                // LeadingMarginSpan2 is odd.  The count affects all
+                // leading margin spans, not just this particular one
+                if (lms instanceof LeadingMarginSpan2) {
+                    firstWidthLineCount = Math.max(firstWidthLineCount,
+                            ((LeadingMarginSpan2) lms).getLeadingMarginLineCount());
+                }
+            }
+
+            List<TrailingMarginSpan> trailingMarginSpans = getParagraphSpans(spanned, paraStart, paraEnd,
+                    TrailingMarginSpan.class);
+            for (TrailingMarginSpan tms : trailingMarginSpans) {
+                int margin = tms.getTrailingMargin();
+                firstWidth -= margin;
+                restWidth -= margin;
+            }
+
+            List<TabStopSpan> spans = getParagraphSpans(spanned, paraStart,
+                    paraEnd, TabStopSpan.class);
+            if (!spans.isEmpty()) {
+                float[] stops = new float[spans.size()];
+                for (int i = 0; i < spans.size(); i++) {
+                    stops[i] = (float) spans.get(i).getTabStop();
+                }
+                Arrays.sort(stops, 0, stops.length);
+                variableTabStops = stops;
+            }
+        }
+
+        constraints.setWidth(restWidth);
+        constraints.setIndent(firstWidth);
+        constraints.setTabStops(variableTabStops, TAB_INCREMENT);
+
+        return LineBreaker.computeLineBreaks(
+                measuredPara.getMeasuredText(), constraints, indents, lineNumber);
+    }
+
     private int out(final CharSequence text, final int start, final int end, int above, int below,
                     int top, int bottom, int v, final List<LineHeightSpan> chooseHt, final int[] chooseHtv,
                     final FontMetricsInt fm, final boolean hasTab,
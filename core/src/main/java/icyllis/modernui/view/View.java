@@ -31,6 +31,7 @@ import icyllis.modernui.transition.Transition;
 import icyllis.modernui.util.*;
 import icyllis.modernui.view.ContextMenu.ContextMenuInfo;
 import icyllis.modernui.view.menu.MenuBuilder;
+import it.unimi.dsi.fastutil.longs.Long2LongArrayMap;
 import org.apache.logging.log4j.Marker;
 import org.apache.logging.log4j.MarkerManager;
 import org.intellij.lang.annotations.MagicConstant;
@@ -42,6 +43,7 @@ import java.lang.ref.WeakReference;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 
 import static icyllis.modernui.ModernUI.LOGGER;
@@ -2006,6 +2008,17 @@ public class View implements Drawable.Callback {
      */
     final RenderNode mRenderNode = new RenderNode();
 
+    /**
+     * Lazily created, recorded into the parent's display list to draw this view.
+     */
+    private DisplayListDrawable mDisplayListDrawable;
+
+    /**
+     * The scroll offset the display list was recorded with.
+     */
+    private int mRecordedScrollX;
+    private int mRecordedScrollY;
+
     /**
      * The opacity of the View. This is a value from 0 to 1, where 0 means
      * completely transparent and 1 means completely opaque.
@@ -2176,6 +2189,24 @@ public class View implements Drawable.Callback {
      */
     int mOldHeightMeasureSpec = Integer.MIN_VALUE;
 
+    /**
+     * Measured width and height (with states) keyed by the width and height measure specs,
+     * cleared when layout is requested. Lazily created.
+     */
+    private Long2LongArrayMap mMeasureCache;
+
+    /**
+     * Used for benchmarking and debugging, see {@link #setMeasureCacheEnabled(boolean)}.
+     * View roots on different threads read this.
+     */
+    private static volatile boolean sIgnoreMeasureCache;
+
+    /**
+     * The number of {@link #onMeasure(int, int)} calls avoided by the measure cache.
+     * View roots on different threads measure in parallel, so this is an adder.
+     */
+    private static final LongAdder sAvoidedMeasureCount = new LongAdder();
+
     private Drawable mBackground;
     private boolean mBackgroundSizeChanged;
 
@@ -2413,6 +2444,19 @@ public class View implements Drawable.Callback {
      * This method is called by ViewGroup.drawChild() to have each child view draw itself.
      */
     final void draw(@NonNull Canvas canvas, @NonNull ViewGroup group, boolean clip) {
+        if (RenderNode.isRecordingCanvas(canvas)) {
+            // the parent is being recorded, only record a reference to this view, then this
+            // view is composited with its current properties each time the parent is replayed
+            DisplayListDrawable drawable = mDisplayListDrawable;
+            if (drawable == null) {
+                mDisplayListDrawable = drawable = new DisplayListDrawable();
+            }
+            drawable.mGroup = group;
+            drawable.mClip = clip;
+            ((ArcCanvas) canvas).getCanvas().drawDrawable(drawable);
+            return;
+        }
+
         final boolean identity = hasIdentityMatrix();
         if (clip && identity &&
                 canvas.quickReject(mLeft, mTop, mRight, mBottom)) {
@@ -2427,8 +2471,6 @@ public class View implements Drawable.Callback {
         }
 
         computeScroll();
-        int sx = mScrollX;
-        int sy = mScrollY;
 
         int saveCount = canvas.save();
         canvas.translate(mLeft, mTop);
@@ -2446,8 +2488,6 @@ public class View implements Drawable.Callback {
             hasSpace = canvas.clipRect(0, 0, mRight - mLeft, mBottom - mTop);
         }
 
-        canvas.translate(-sx, -sy);
-
         if (hasSpace) {
             /*if (alpha < 0.999f) {
                 canvas.saveLayer(sx, sy, sx + mRight - mLeft, sy + mBottom - mTop, (int) (alpha * 255));
@@ -2458,24 +2498,102 @@ public class View implements Drawable.Callback {
             // additional, this only works if clip is rectangular in device space....
             if (alpha < 0.999f && canvas instanceof ArcCanvas ac) {
                 try (AlphaFilterCanvas afc = new AlphaFilterCanvas(ac.getCanvas(), alpha)) {
-                    Canvas filterCanvas = new ArcCanvas(afc);
-                    if ((mPrivateFlags & PFLAG_SKIP_DRAW) == PFLAG_SKIP_DRAW) {
-                        dispatchDraw(filterCanvas);
-                    } else {
-                        draw(filterCanvas);
-                    }
+                    drawDisplayList(new ArcCanvas(afc));
                 }
             } else {
-                if ((mPrivateFlags & PFLAG_SKIP_DRAW) == PFLAG_SKIP_DRAW) {
-                    dispatchDraw(canvas);
-                } else {
-                    draw(canvas);
-                }
+                drawDisplayList(canvas);
             }
         }
         canvas.restoreToCount(saveCount);
     }
 
+    /**
+     * Draws the content of this view via its display list, the display list is recorded
+     * again only if this view was invalidated or resized.
+     */
+    private void drawDisplayList(@NonNull Canvas canvas) {
+        if (canvas instanceof ArcCanvas) {
+            // the scroll offset is recorded in the display list
+            updateDisplayListIfDirty();
+            mRenderNode.drawContent(canvas);
+        } else {
+            // the canvas cannot replay display lists
+            canvas.translate(-mScrollX, -mScrollY);
+            drawContent(canvas);
+        }
+    }
+
+    private void drawContent(@NonNull Canvas canvas) {
+        if ((mPrivateFlags & PFLAG_SKIP_DRAW) == PFLAG_SKIP_DRAW) {
+            dispatchDraw(canvas);
+        } else {
+            draw(canvas);
+        }
+    }
+
+    /**
+     * Records the display list of this view's content if it is invalid, that is, this view
+     * was invalidated, requested layout, scrolled, or its size changed since the last
+     * recording. The content is recorded in scrolled coordinates, as it is drawn directly,
+     * so that quick rejects in the content see the visible rect. Render properties are
+     * applied when the display list is drawn. Children are recorded as references, so
+     * they are re-recorded separately.
+     */
+    final void updateDisplayListIfDirty() {
+        final RenderNode renderNode = mRenderNode;
+        final int width = mRight - mLeft;
+        final int height = mBottom - mTop;
+        final int sx = mScrollX;
+        final int sy = mScrollY;
+        if ((mPrivateFlags & PFLAG_DRAWING_CACHE_VALID) != 0 &&
+                (mPrivateFlags & PFLAG_INVALIDATED) == 0 &&
+                sx == mRecordedScrollX && sy == mRecordedScrollY &&
+                renderNode.hasDisplayList(width, height)) {
+            return;
+        }
+        final Canvas canvas = renderNode.beginRecording(width, height);
+        try {
+            // the recording bounds are (0,0,width,height), which become the scrolled rect
+            canvas.translate(-sx, -sy);
+            drawContent(canvas);
+        } finally {
+            renderNode.endRecording();
+        }
+        mRecordedScrollX = sx;
+        mRecordedScrollY = sy;
+        mPrivateFlags |= PFLAG_DRAWN | PFLAG_DRAWING_CACHE_VALID;
+        mPrivateFlags &= ~PFLAG_INVALIDATED;
+    }
+
+    /**
+     * Releases the display list, it will be recorded again the next time this view is drawn.
+     */
+    private void cleanupDraw() {
+        mRenderNode.discardDisplayList();
+    }
+
+    /**
+     * Referenced by the display list of the parent, composites this view with its current
+     * render properties and display list each time the parent's display list is replayed.
+     */
+    private final class DisplayListDrawable extends icyllis.arc3d.core.Drawable {
+
+        ViewGroup mGroup;
+        boolean mClip;
+
+        // the canvas wrapper of the last replay
+        private ArcCanvas mCanvas;
+
+        @Override
+        protected void onDraw(@NonNull icyllis.arc3d.core.Canvas canvas) {
+            ArcCanvas wrapper = mCanvas;
+            if (wrapper == null || wrapper.getCanvas() != canvas) {
+                mCanvas = wrapper = new ArcCanvas(canvas);
+            }
+            draw(wrapper, mGroup, mClip);
+        }
+    }
+
     /**
      * Base method that directly draws this view and its background, foreground,
      * overlay and all children to the given canvas. When implementing a view,
@@ -2724,6 +2842,14 @@ public class View implements Drawable.Callback {
         int oldB = mBottom;
         int oldR = mRight;
 
+        if ((mPrivateFlags3 & PFLAG3_MEASURE_NEEDED_BEFORE_LAYOUT) != 0) {
+            // the last measure was served from the cache, but children must be measured
+            // with the final specs before they are laid out
+            onMeasure(mOldWidthMeasureSpec, mOldHeightMeasureSpec);
+            mPrivateFlags3 &= ~PFLAG3_MEASURE_NEEDED_BEFORE_LAYOUT;
+            sAvoidedMeasureCount.decrement();
+        }
+
         boolean changed = setFrame(l, t, r, b);
 
         if (changed || (mPrivateFlags & PFLAG_LAYOUT_REQUIRED) != 0) {
@@ -2823,7 +2949,12 @@ public class View implements Drawable.Callback {
             int newHeight = bottom - top;
             boolean sizeChanged = (newWidth != oldWidth) || (newHeight != oldHeight);
 
-            invalidate();
+            if (sizeChanged) {
+                invalidate();
+            } else {
+                // only moved, the content can be reused
+                invalidateViewProperty();
+            }
 
             mLeft = left;
             mTop = top;
@@ -2883,9 +3014,15 @@ public class View implements Drawable.Callback {
      * @see #onMeasure(int, int)
      */
     public final void measure(int widthMeasureSpec, int heightMeasureSpec) {
-        boolean needsLayout = (mPrivateFlags & PFLAG_FORCE_LAYOUT) == PFLAG_FORCE_LAYOUT;
+        final long key = (long) widthMeasureSpec << 32 | (long) heightMeasureSpec & 0xFFFFFFFFL;
+        if (mMeasureCache == null) {
+            mMeasureCache = new Long2LongArrayMap(2);
+        }
 
-        if (!needsLayout) {
+        final boolean forceLayout = (mPrivateFlags & PFLAG_FORCE_LAYOUT) == PFLAG_FORCE_LAYOUT;
+        boolean needsLayout = false;
+
+        if (!forceLayout) {
             // Optimize layout by avoiding an extra EXACTLY pass when the view is
             // already measured as the correct size. In API 23 and below, this
             // extra pass is required to make LinearLayout re-distribute weight.
@@ -2898,14 +3035,25 @@ public class View implements Drawable.Callback {
             needsLayout = specChanged && (!isSpecExactly || !matchesSpecSize);
         }
 
-        if (needsLayout) {
+        if (forceLayout || needsLayout) {
             // remove the flag first anyway
             mPrivateFlags &= ~PFLAG_MEASURED_DIMENSION_SET;
 
             resolveRtlPropertiesIfNeeded();
 
-            // measure ourselves, this should set the measured dimension flag back
-            onMeasure(widthMeasureSpec, heightMeasureSpec);
+            // parents measure children with alternating specs, e.g. LinearLayout with
+            // weights, if nothing has changed since then, reuse the previous result
+            if (forceLayout || sIgnoreMeasureCache || !mMeasureCache.containsKey(key)) {
+                // measure ourselves, this should set the measured dimension flag back
+                onMeasure(widthMeasureSpec, heightMeasureSpec);
+                mPrivateFlags3 &= ~PFLAG3_MEASURE_NEEDED_BEFORE_LAYOUT;
+            } else {
+                long value = mMeasureCache.get(key);
+                setMeasuredDimension((int) (value >> 32), (int) value);
+                // children may be measured with other specs, onMeasure() before layout
+                mPrivateFlags3 |= PFLAG3_MEASURE_NEEDED_BEFORE_LAYOUT;
+                sAvoidedMeasureCount.increment();
+            }
 
             // the flag should be added in onMeasure() by calling setMeasuredDimension()
             if ((mPrivateFlags & PFLAG_MEASURED_DIMENSION_SET) == 0) {
@@ -2919,6 +3067,39 @@ public class View implements Drawable.Callback {
 
         mOldWidthMeasureSpec = widthMeasureSpec;
         mOldHeightMeasureSpec = heightMeasureSpec;
+
+        mMeasureCache.put(key, (long) mMeasuredWidth << 32 | (long) mMeasuredHeight & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the number of {@link #onMeasure(int, int)} calls that have been avoided by
+     * the per-view measure cache, in all view hierarchies. A view that was measured from
+     * the cache may still have to call onMeasure() before layout, which is not counted.
+     * This is a debugging and benchmarking statistic, the count is not a snapshot
+     * while views are being measured concurrently.
+     *
+     * @return the number of avoided onMeasure() calls
+     * @see #resetAvoidedMeasureCount()
+     */
+    public static long getAvoidedMeasureCount() {
+        return sAvoidedMeasureCount.sum();
+    }
+
+    /**
+     * Resets the counter returned by {@link #getAvoidedMeasureCount()} to zero.
+     */
+    public static void resetAvoidedMeasureCount() {
+        sAvoidedMeasureCount.reset();
+    }
+
+    /**
+     * Enables or disables the per-view measure cache, which is enabled by default.
+     * This is used to compare the layout performance in benchmarks.
+     *
+     * @param enabled whether to reuse measured sizes for repeated measure specs
+     */
+    public static void setMeasureCacheEnabled(boolean enabled) {
+        sIgnoreMeasureCache = !enabled;
     }
 
     /**
@@ -3879,7 +4060,7 @@ public class View implements Drawable.Callback {
         if ((changed & VISIBILITY_MASK) != 0) {
             // If the view is invisible, cleanup its display list to free up resources
             if (newVisibility != VISIBLE && mAttachInfo != null) {
-                //cleanupDraw();
+                cleanupDraw();
             }
 
             if (mParent instanceof ViewGroup parent) {
@@ -3928,6 +4109,17 @@ public class View implements Drawable.Callback {
      * {@link #postInvalidate()}.
      */
     public final void invalidate() {
+        // the content must be recorded again, even if we are not visible now
+        mPrivateFlags &= ~PFLAG_DRAWING_CACHE_VALID;
+        invalidateViewProperty();
+    }
+
+    /**
+     * Quick invalidation for View property changes (alpha, translationXY, etc.).
+     * The content of this View is not changed, so its display list will be reused
+     * and only re-composited with the new properties, without calling {@link #onDraw(Canvas)}.
+     */
+    final void invalidateViewProperty() {
         if ((mViewFlags & VISIBILITY_MASK) != VISIBLE &&
                 (!(mParent instanceof ViewGroup) ||
                         !((ViewGroup) mParent).isViewTransitioning(this))) {
@@ -6878,7 +7070,11 @@ public class View implements Drawable.Callback {
      */
     public void setElevation(float elevation) {
         if (mRenderNode.setElevation(elevation)) {
-            invalidate();
+            invalidateViewProperty();
+            // Z affects the drawing order of the parent
+            if (mParent instanceof View parent) {
+                parent.invalidate();
+            }
         }
     }
 
@@ -6903,7 +7099,7 @@ public class View implements Drawable.Callback {
      */
     public void setTranslationX(float translationX) {
         if (mRenderNode.setTranslationX(translationX)) {
-            invalidate();
+            invalidateViewProperty();
         }
     }
 
@@ -6929,7 +7125,7 @@ public class View implements Drawable.Callback {
      */
     public void setTranslationY(float translationY) {
         if (mRenderNode.setTranslationY(translationY)) {
-            invalidate();
+            invalidateViewProperty();
         }
     }
 
@@ -6947,7 +7143,11 @@ public class View implements Drawable.Callback {
      */
     public void setTranslationZ(float translationZ) {
         if (mRenderNode.setTranslationZ(translationZ)) {
-            invalidate();
+            invalidateViewProperty();
+            // Z affects the drawing order of the parent
+            if (mParent instanceof View parent) {
+                parent.invalidate();
+            }
         }
     }
 
@@ -6976,7 +7176,7 @@ public class View implements Drawable.Callback {
      */
     public void setRotation(float rotation) {
         if (mRenderNode.setRotationZ(rotation)) {
-            invalidate();
+            invalidateViewProperty();
         }
     }
 
@@ -7006,7 +7206,7 @@ public class View implements Drawable.Callback {
      */
     public void setRotationY(float rotationY) {
         if (mRenderNode.setRotationY(rotationY)) {
-            invalidate();
+            invalidateViewProperty();
         }
     }
 
@@ -7036,7 +7236,7 @@ public class View implements Drawable.Callback {
      */
     public void setRotationX(float rotationX) {
         if (mRenderNode.setRotationX(rotationX)) {
-            invalidate();
+            invalidateViewProperty();
         }
     }
 
@@ -7064,7 +7264,7 @@ public class View implements Drawable.Callback {
      */
     public void setScaleX(float scaleX) {
         if (mRenderNode.setScaleX(scaleX)) {
-            invalidate();
+            invalidateViewProperty();
         }
     }
 
@@ -7092,7 +7292,7 @@ public class View implements Drawable.Callback {
      */
     public void setScaleY(float scaleY) {
         if (mRenderNode.setScaleY(scaleY)) {
-            invalidate();
+            invalidateViewProperty();
         }
     }
 
@@ -7125,7 +7325,7 @@ public class View implements Drawable.Callback {
      */
     public void setPivotX(float pivotX) {
         if (mRenderNode.setPivotX(pivotX)) {
-            invalidate();
+            invalidateViewProperty();
         }
     }
 
@@ -7157,7 +7357,7 @@ public class View implements Drawable.Callback {
      */
     public void setPivotY(float pivotY) {
         if (mRenderNode.setPivotY(pivotY)) {
-            invalidate();
+            invalidateViewProperty();
         }
     }
 
@@ -7179,7 +7379,7 @@ public class View implements Drawable.Callback {
      */
     public void resetPivot() {
         if (mRenderNode.resetPivot()) {
-            invalidate();
+            invalidateViewProperty();
         }
     }
 
@@ -7253,7 +7453,7 @@ public class View implements Drawable.Callback {
     public void setAlpha(float alpha) {
         if (mAlpha != alpha) {
             mAlpha = alpha;
-            invalidate();
+            invalidateViewProperty();
         }
     }
 
@@ -7267,7 +7467,7 @@ public class View implements Drawable.Callback {
     public final void setTransitionAlpha(float alpha) {
         if (mTransitionAlpha != alpha) {
             mTransitionAlpha = alpha;
-            invalidate();
+            invalidateViewProperty();
         }
     }
 
@@ -7435,7 +7635,7 @@ public class View implements Drawable.Callback {
         // be in its final state when re-attached.
         jumpDrawablesToCurrentState();
 
-        /*cleanupDraw();*/
+        cleanupDraw();
         if ((mViewFlags & TOOLTIP) == TOOLTIP) {
             hideTooltip();
         }
@@ -8552,6 +8752,10 @@ public class View implements Drawable.Callback {
             mAttachInfo.mViewRequestingLayout = this;
         }
 
+        if (mMeasureCache != null) {
+            mMeasureCache.clear();
+        }
+
         mPrivateFlags |= PFLAG_FORCE_LAYOUT;
         mPrivateFlags |= PFLAG_INVALIDATED;
 
@@ -8579,6 +8783,9 @@ public class View implements Drawable.Callback {
      * on the parent.
      */
     public void forceLayout() {
+        if (mMeasureCache != null) {
+            mMeasureCache.clear();
+        }
         mPrivateFlags |= PFLAG_FORCE_LAYOUT;
         mPrivateFlags |= PFLAG_INVALIDATED;
     }
@@ -11730,7 +11937,7 @@ public class View implements Drawable.Callback {
             mTop += offset;
             mBottom += offset;
             mRenderNode.offsetTopAndBottom(offset);
-            invalidate();
+            invalidateViewProperty();
         }
     }
 
@@ -11744,7 +11951,7 @@ public class View implements Drawable.Callback {
             mLeft += offset;
             mRight += offset;
             mRenderNode.offsetLeftAndRight(offset);
-            invalidate();
+            invalidateViewProperty();
         }
     }
 
@@ -162,6 +162,16 @@ public abstract class ViewRoot implements ViewParent, AttachInfo.Callbacks {
         return mView;
     }
 
+    /**
+     * Checks that the view hierarchy is accessed from the thread that owns this view root.
+     * By default, this is the UI thread.
+     *
+     * @throws IllegalStateException called from another thread
+     */
+    protected void checkThread() {
+        Core.checkUiThread();
+    }
+
     boolean startDragAndDrop(@NonNull View view, @Nullable Object data, @Nullable View.DragShadow shadow, int flags) {
         /*if (master.dragEvent != null) {
             ModernUI.LOGGER.error(View.MARKER, "startDragAndDrop failed by another ongoing operation");
@@ -687,7 +697,7 @@ public abstract class ViewRoot implements ViewParent, AttachInfo.Callbacks {
     }
 
     void invalidate() {
-        Core.checkUiThread();
+        checkThread();
         mInvalidated = true;
         if (!mWillDrawSoon) {
             if (mIsDrawing) {
@@ -843,7 +853,7 @@ public abstract class ViewRoot implements ViewParent, AttachInfo.Callbacks {
     @Override
     public void requestLayout() {
         if (!mHandlingLayoutInLayoutRequest) {
-            Core.checkUiThread();
+            checkThread();
             mLayoutRequested = true;
             scheduleTraversals();
         }
@@ -856,13 +866,13 @@ public abstract class ViewRoot implements ViewParent, AttachInfo.Callbacks {
 
     @Override
     public void requestChildFocus(View child, View focused) {
-        Core.checkUiThread();
+        checkThread();
         scheduleTraversals();
     }
 
     @Override
     public void clearChildFocus(View child) {
-        Core.checkUiThread();
+        checkThread();
         scheduleTraversals();
     }
 
@@ -871,7 +881,7 @@ public abstract class ViewRoot implements ViewParent, AttachInfo.Callbacks {
      */
     @Override
     public View focusSearch(View focused, int direction) {
-        Core.checkUiThread();
+        checkThread();
         if (!(mView instanceof ViewGroup)) {
             return null;
         }
@@ -881,7 +891,7 @@ public abstract class ViewRoot implements ViewParent, AttachInfo.Callbacks {
     @Override
     public View keyboardNavigationClusterSearch(View currentCluster,
                                                 @FocusDirection int direction) {
-        Core.checkUiThread();
+        checkThread();
         return FocusFinder.getInstance().findNextKeyboardNavigationCluster(
                 mView, currentCluster, direction);
     }
@@ -897,7 +907,7 @@ public abstract class ViewRoot implements ViewParent, AttachInfo.Callbacks {
 
     @Override
     public void focusableViewAvailable(View v) {
-        Core.checkUiThread();
+        checkThread();
         if (mView != null) {
             if (!mView.hasFocus()) {
                 // the one case where will transfer focus away from the current one
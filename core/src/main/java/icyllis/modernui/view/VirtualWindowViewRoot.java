@@ -18,6 +18,236 @@
 
 package icyllis.modernui.view;
 
-//TODO
-public class VirtualWindowViewRoot {
+import icyllis.arc3d.core.ColorInfo;
+import icyllis.arc3d.core.RefCnt;
+import icyllis.arc3d.core.SharedPtr;
+import icyllis.arc3d.core.Surface;
+import icyllis.arc3d.core.j2d.RasterDevice;
+import icyllis.modernui.annotation.ColorInt;
+import icyllis.modernui.annotation.NonNull;
+import icyllis.modernui.annotation.Nullable;
+import icyllis.modernui.core.Looper;
+import icyllis.modernui.graphics.*;
+
+/**
+ * A view root without a window. It measures, lays out and draws a view tree on the
+ * thread that creates it, and frames are run by the caller with a virtual frame time,
+ * so animations advance exactly as the caller steps the clock. This is useful to render
+ * view trees into images on a server, for snapshot tests, and to benchmark layout.
+ * <p>
+ * By default, the view tree is drawn on the CPU into a {@link Bitmap} that has the
+ * size of the frame. Alternatively, {@link #setSurface(Surface)} draws into an offscreen
+ * surface provided by the caller, who is also responsible for submitting its work.
+ * <p>
+ * The creating thread must have a {@link Looper}, each thread has its own choreographer
+ * and animation clock, so view roots on different threads run independently in parallel.
+ * Messages posted to the view tree are dispatched at the beginning of each frame, the
+ * thread does not need to loop its looper. From the first frame on, the thread's message
+ * queue follows the frame clock, so delayed messages and callbacks become due as the
+ * caller steps the clock, see {@link Looper#setVirtualTimeNanos(long)}. Views cannot be
+ * shared between view roots.
+ * <pre>{@code
+ * Looper.prepare();
+ * var root = new VirtualWindowViewRoot();
+ * root.setView(view);
+ * root.setFrame(640, 480);
+ * root.doFrame(0);
+ * root.getBitmap().saveToPath(Bitmap.SaveFormat.PNG, 0, path);
+ * root.close();
+ * }</pre>
+ */
+public class VirtualWindowViewRoot extends ViewRoot implements AutoCloseable {
+
+    private final Thread mThread;
+
+    private long mFrameTimeNanos = Long.MIN_VALUE;
+    private int mFrameCount;
+    private boolean mDrawn;
+
+    @ColorInt
+    private int mClearColor;
+
+    // CPU target
+    private Bitmap mBitmap;
+    @SharedPtr
+    private icyllis.arc3d.core.Canvas mRasterCanvas;
+
+    // caller supplied target
+    @SharedPtr
+    private Surface mSurface;
+
+    private ArcCanvas mCanvas;
+
+    /**
+     * Creates a view root that is owned by the current thread.
+     *
+     * @throws IllegalStateException the current thread does not have a looper
+     */
+    public VirtualWindowViewRoot() {
+        if (Looper.myLooper() == null) {
+            throw new IllegalStateException("The current thread must have a looper!");
+        }
+        mThread = Thread.currentThread();
+    }
+
+    @Override
+    protected void checkThread() {
+        if (Thread.currentThread() != mThread) {
+            throw new IllegalStateException("Not called from the owner thread " + mThread +
+                    ", current " + Thread.currentThread());
+        }
+    }
+
+    /**
+     * Sets the color to clear the target with before drawing, the default is transparent.
+     *
+     * @param color the clear color
+     */
+    public void setClearColor(@ColorInt int color) {
+        mClearColor = color;
+    }
+
+    /**
+     * Draws into the given offscreen surface instead of a CPU bitmap, or null to draw into
+     * the CPU bitmap. This view root takes the ownership of the surface. The surface should
+     * be as large as the frame, the drawing commands are recorded into the surface's
+     * recording context, which is snapped and submitted by the caller after each frame.
+     *
+     * @param surface the target surface, or null
+     */
+    public void setSurface(@Nullable @SharedPtr Surface surface) {
+        checkThread();
+        mSurface = RefCnt.move(mSurface, surface);
+        mCanvas = null;
+        releaseBitmap();
+        invalidate();
+    }
+
+    /**
+     * Runs one frame at the given time: advances the thread's message queue to the frame
+     * time and dispatches the messages that are due, then runs input, animations, traversal
+     * (measure, layout and draw if needed) and commit callbacks. The frame time is the
+     * virtual clock, which starts at any non-negative time the caller wants, but must not
+     * go backwards.
+     *
+     * @param frameTimeNanos the frame start time, in nanoseconds
+     * @return true if the view tree was drawn in this frame
+     * @throws IllegalArgumentException the frame time is negative or went backwards
+     */
+    public boolean doFrame(long frameTimeNanos) {
+        checkThread();
+        if (frameTimeNanos < mFrameTimeNanos) {
+            throw new IllegalArgumentException("Frame time went backwards: " +
+                    frameTimeNanos + " < " + mFrameTimeNanos);
+        }
+        // throws if another view root on this thread ran a later frame
+        Looper.setVirtualTimeNanos(frameTimeNanos);
+        mFrameTimeNanos = frameTimeNanos;
+        mDrawn = false;
+        // the choreographer dispatches the pending messages first
+        if (!mChoreographer.runFrame(frameTimeNanos)) {
+            // the thread's choreographer ran a later frame for another view root
+            throw new IllegalArgumentException("Frame time went backwards: " + frameTimeNanos);
+        }
+        mFrameCount++;
+        return mDrawn;
+    }
+
+    /**
+     * Returns whether another frame has been requested, for example, an animation
+     * is running or the view tree has been invalidated. This is shared by all view
+     * roots on the owner thread.
+     *
+     * @return true if {@link #doFrame(long)} has work to do
+     */
+    public boolean isFramePending() {
+        return mTraversalScheduled || mChoreographer.isFrameScheduled();
+    }
+
+    /**
+     * @return the time of the last frame, or {@link Long#MIN_VALUE}
+     */
+    public long getFrameTimeNanos() {
+        return mFrameTimeNanos;
+    }
+
+    /**
+     * @return the number of frames run so far
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Returns the CPU bitmap containing the last drawn frame. The bitmap is reallocated
+     * when the frame size changes, and is closed with this view root.
+     *
+     * @return the bitmap, or null if drawing into a surface or nothing was drawn
+     */
+    @Nullable
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    @Override
+    protected Canvas beginDrawLocked(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        icyllis.arc3d.core.Canvas canvas;
+        if (mSurface != null) {
+            canvas = mSurface.getCanvas();
+        } else {
+            if (mBitmap == null ||
+                    mBitmap.getWidth() != width ||
+                    mBitmap.getHeight() != height) {
+                releaseBitmap();
+                mBitmap = Bitmap.createBitmap(width, height, Bitmap.Format.RGBA_8888);
+                mBitmap.setColorInfo(ColorInfo.CT_RGBA_8888, ColorInfo.AT_PREMUL);
+                mRasterCanvas = new icyllis.arc3d.core.Canvas(
+                        new RasterDevice(mBitmap.getPixmap()));
+                mCanvas = null;
+            }
+            canvas = mRasterCanvas;
+        }
+        if (mCanvas == null) {
+            mCanvas = new ArcCanvas(canvas);
+        }
+        canvas.restoreToCount(1);
+        canvas.clear(mClearColor);
+        return mCanvas;
+    }
+
+    @Override
+    protected void endDrawLocked(@NonNull Canvas canvas) {
+        mDrawn = true;
+    }
+
+    private void releaseBitmap() {
+        if (mRasterCanvas != null) {
+            mRasterCanvas.close();
+            mRasterCanvas = null;
+        }
+        if (mBitmap != null) {
+            mBitmap.close();
+            mBitmap = null;
+        }
+    }
+
+    /**
+     * Detaches the view tree and releases the drawing target.
+     */
+    @Override
+    public void close() {
+        checkThread();
+        unscheduleTraversals();
+        if (mView != null) {
+            mView.dispatchDetachedFromWindow();
+            mView.assignParent(null);
+            mView = null;
+        }
+        mCanvas = null;
+        releaseBitmap();
+        mSurface = RefCnt.move(mSurface);
+    }
 }
@@ -0,0 +1,374 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2019-2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.widget;
+
+import icyllis.modernui.annotation.NonNull;
+import icyllis.modernui.view.MeasureSpec;
+import icyllis.modernui.view.View;
+import icyllis.modernui.view.ViewGroup;
+
+/**
+ * A {@link RecyclerView.LayoutManager} that stacks rows vertically. With a span count
+ * greater than 1, items are arranged in a grid, each line has that many cells of equal
+ * width, and the line is as high as its highest item.
+ * <p>
+ * Layout is incremental: scrolling moves the existing children, adds the lines that
+ * scroll in and recycles the lines that scroll out, the other children are not measured
+ * or bound again. The scroll range is estimated from the average height of the lines on
+ * screen, so the item count does not matter.
+ */
+public class LinearLayoutManager extends RecyclerView.LayoutManager {
+
+    private int mSpanCount;
+
+    // the adapter position of the first child, always the start of a line
+    private int mFirstPosition;
+    // the position to show at the top on the next layout
+    private int mPendingScrollPosition = RecyclerView.NO_POSITION;
+
+    public LinearLayoutManager() {
+        this(1);
+    }
+
+    /**
+     * @param spanCount the number of items per line, 1 for a list
+     */
+    public LinearLayoutManager(int spanCount) {
+        setSpanCount(spanCount);
+    }
+
+    /**
+     * Sets the number of items per line, greater than 1 for a grid.
+     *
+     * @throws IllegalArgumentException the span count is less than 1
+     */
+    public void setSpanCount(int spanCount) {
+        if (spanCount < 1) {
+            throw new IllegalArgumentException("Span count should be at least 1, provided " + spanCount);
+        }
+        if (mSpanCount != spanCount) {
+            mSpanCount = spanCount;
+            requestLayout();
+        }
+    }
+
+    public int getSpanCount() {
+        return mSpanCount;
+    }
+
+    /**
+     * @return the adapter position of the first attached child, or {@link RecyclerView#NO_POSITION}
+     */
+    public int findFirstVisibleItemPosition() {
+        return getChildCount() > 0 ? mFirstPosition : RecyclerView.NO_POSITION;
+    }
+
+    /**
+     * @return the adapter position of the last attached child, or {@link RecyclerView#NO_POSITION}
+     */
+    public int findLastVisibleItemPosition() {
+        final int count = getChildCount();
+        return count > 0 ? mFirstPosition + count - 1 : RecyclerView.NO_POSITION;
+    }
+
+    @Override
+    public void scrollToPosition(int position) {
+        mPendingScrollPosition = position;
+        requestLayout();
+    }
+
+    @Override
+    public void onLayoutChildren(@NonNull RecyclerView.Recycler recycler) {
+        final int itemCount = getItemCount();
+        // find the anchor, the first child that is still there keeps its place
+        int anchorPosition = 0;
+        int anchorTop = getPaddingTop();
+        if (mPendingScrollPosition != RecyclerView.NO_POSITION) {
+            anchorPosition = mPendingScrollPosition;
+            mPendingScrollPosition = RecyclerView.NO_POSITION;
+        } else {
+            for (int i = 0, count = getChildCount(); i < count; i++) {
+                final View child = getChildAt(i);
+                assert child != null;
+                if (!isRemoved(child) && getPosition(child) != RecyclerView.NO_POSITION) {
+                    anchorPosition = getPosition(child);
+                    anchorTop = child.getTop();
+                    break;
+                }
+            }
+        }
+        detachAndScrapAttachedViews(recycler);
+        if (itemCount == 0) {
+            removeAndRecycleScrap(recycler);
+            mFirstPosition = 0;
+            return;
+        }
+        anchorPosition = Math.min(Math.max(anchorPosition, 0), itemCount - 1);
+        anchorPosition -= anchorPosition % mSpanCount;
+
+        mFirstPosition = anchorPosition;
+        int bottom = anchorTop;
+        for (int position = anchorPosition; position < itemCount && bottom < getHeight() - getPaddingBottom();
+             position += mSpanCount) {
+            bottom += addLine(recycler, position, bottom, false);
+        }
+        // rows that are no longer needed, they keep their bindings in the cache
+        removeAndRecycleScrap(recycler);
+        fillTop(recycler);
+        // the content may not reach the bottom, after items were removed at the end
+        final int gap = getHeight() - getPaddingBottom() - getChildBottom();
+        if (gap > 0 && (mFirstPosition > 0 || getChildTop() < getPaddingTop())) {
+            offsetChildrenVertical(gap);
+            fillTop(recycler);
+        }
+    }
+
+    @Override
+    public boolean canScrollVertically(int direction) {
+        final int count = getChildCount();
+        if (count == 0) {
+            return false;
+        }
+        if (direction < 0) {
+            return mFirstPosition > 0 || getChildTop() < getPaddingTop();
+        } else {
+            return mFirstPosition + count < getItemCount() ||
+                    getChildBottom() > getHeight() - getPaddingBottom();
+        }
+    }
+
+    @Override
+    public int scrollVerticallyBy(int dy, @NonNull RecyclerView.Recycler recycler) {
+        if (getChildCount() == 0 || dy == 0) {
+            return 0;
+        }
+        final int itemCount = getItemCount();
+        final int top = getPaddingTop();
+        final int bottom = getHeight() - getPaddingBottom();
+        int consumed;
+        if (dy > 0) {
+            // add lines at the bottom until the content covers the distance, one line at
+            // a time, so a short scroll only adds the lines it reveals
+            int childBottom = getChildBottom();
+            while (childBottom - dy < bottom) {
+                final int next = mFirstPosition + getChildCount();
+                if (next >= itemCount) {
+                    break;
+                }
+                childBottom += addLine(recycler, next, childBottom, false);
+            }
+            consumed = Math.min(dy, Math.max(childBottom - bottom, 0));
+        } else {
+            int childTop = getChildTop();
+            while (childTop - dy > top) {
+                if (mFirstPosition == 0) {
+                    break;
+                }
+                childTop -= addLine(recycler, mFirstPosition - mSpanCount, childTop, true);
+            }
+            consumed = Math.max(dy, Math.min(childTop - top, 0));
+        }
+        if (consumed != 0) {
+            offsetChildrenVertical(-consumed);
+            recycleOutside(recycler, top, bottom);
+        }
+        return consumed;
+    }
+
+    @Override
+    public int collectPrefetchPositions(int dy, @NonNull int[] positions) {
+        final int count = getChildCount();
+        if (count == 0 || dy == 0) {
+            return 0;
+        }
+        // cover twice the last distance at the average line height, at least one line
+        final int lines = Math.max(1, (Math.abs(dy) * 2 + getAverageLineHeight() - 1) /
+                Math.max(getAverageLineHeight(), 1));
+        final int max = Math.min(lines * mSpanCount, positions.length);
+        int n = 0;
+        if (dy > 0) {
+            final int itemCount = getItemCount();
+            for (int position = mFirstPosition + count; n < max && position < itemCount; position++) {
+                positions[n++] = position;
+            }
+        } else {
+            // the line above first, the items of a line in order
+            for (int line = mFirstPosition - mSpanCount; n < max && line >= 0; line -= mSpanCount) {
+                for (int i = 0; i < mSpanCount && n < max; i++) {
+                    positions[n++] = line + i;
+                }
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public int computeVerticalScrollRange() {
+        final int itemCount = getItemCount();
+        if (getChildCount() == 0 || itemCount == 0) {
+            return 0;
+        }
+        final int lines = (itemCount + mSpanCount - 1) / mSpanCount;
+        return (int) Math.min((long) lines * getAverageLineHeight(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int computeVerticalScrollOffset() {
+        if (getChildCount() == 0) {
+            return 0;
+        }
+        final long offset = (long) (mFirstPosition / mSpanCount) * getAverageLineHeight() +
+                getPaddingTop() - getChildTop();
+        return (int) Math.min(Math.max(offset, 0), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int computeVerticalScrollExtent() {
+        return getChildCount() == 0 ? 0 : getHeight() - getPaddingTop() - getPaddingBottom();
+    }
+
+    private int getAverageLineHeight() {
+        final int count = getChildCount();
+        if (count == 0) {
+            return 0;
+        }
+        final int lines = (count + mSpanCount - 1) / mSpanCount;
+        return Math.max((getChildBottom() - getChildTop()) / lines, 1);
+    }
+
+    // the top of the first line
+    private int getChildTop() {
+        final View child = getChildAt(0);
+        return child != null ? child.getTop() : getPaddingTop();
+    }
+
+    // the bottom of the last line
+    private int getChildBottom() {
+        int bottom = Integer.MIN_VALUE;
+        final int count = getChildCount();
+        // the items of the last line
+        for (int i = count - 1 - (count - 1) % mSpanCount; i < count; i++) {
+            final View child = getChildAt(i);
+            assert child != null;
+            bottom = Math.max(bottom, child.getBottom() +
+                    ((ViewGroup.MarginLayoutParams) child.getLayoutParams()).bottomMargin);
+        }
+        return count > 0 ? bottom : getPaddingTop();
+    }
+
+    /**
+     * Adds the line that starts at the given position.
+     *
+     * @param edge  the bottom of the line above, or the top of the line below if above
+     * @param above add the line before the first child
+     * @return the height of the line
+     */
+    private int addLine(@NonNull RecyclerView.Recycler recycler, int position, int edge, boolean above) {
+        final int spanCount = mSpanCount;
+        final int end = Math.min(position + spanCount, getItemCount());
+        final int left = getPaddingLeft();
+        final int cellWidth = (getWidth() - left - getPaddingRight()) / spanCount;
+        final RecyclerView rv = getRecyclerView();
+        assert rv != null;
+
+        int lineHeight = 0;
+        int index = above ? 0 : -1;
+        for (int p = position; p < end; p++) {
+            final View child = recycler.getViewForPosition(p);
+            addView(child, above ? index++ : -1);
+            final ViewGroup.MarginLayoutParams lp = (ViewGroup.MarginLayoutParams) child.getLayoutParams();
+            final int widthSpec = ViewGroup.getChildMeasureSpec(
+                    MeasureSpec.makeMeasureSpec(cellWidth, MeasureSpec.EXACTLY),
+                    lp.leftMargin + lp.rightMargin, lp.width);
+            final int heightSpec = ViewGroup.getChildMeasureSpec(
+                    MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED),
+                    lp.topMargin + lp.bottomMargin, lp.height);
+            // rows that were not bound again keep their measured size for the same specs
+            child.measure(widthSpec, heightSpec);
+            lineHeight = Math.max(lineHeight, child.getMeasuredHeight() + lp.topMargin + lp.bottomMargin);
+        }
+        final int lineTop = above ? edge - lineHeight : edge;
+        int count = end - position;
+        for (int i = 0; i < count; i++) {
+            final View child = rv.getChildAt(above ? i : rv.getChildCount() - count + i);
+            final ViewGroup.MarginLayoutParams lp = (ViewGroup.MarginLayoutParams) child.getLayoutParams();
+            final int childLeft = left + cellWidth * i + lp.leftMargin;
+            final int childTop = lineTop + lp.topMargin;
+            child.layout(childLeft, childTop,
+                    childLeft + child.getMeasuredWidth(), childTop + child.getMeasuredHeight());
+        }
+        if (above) {
+            mFirstPosition = position;
+        }
+        return lineHeight;
+    }
+
+    // recycles whole lines that are entirely outside the viewport
+    private void recycleOutside(@NonNull RecyclerView.Recycler recycler, int top, int bottom) {
+        final int spanCount = mSpanCount;
+        // from the top
+        while (getChildCount() > spanCount) {
+            int lineBottom = Integer.MIN_VALUE;
+            for (int i = 0; i < spanCount; i++) {
+                final View child = getChildAt(i);
+                assert child != null;
+                lineBottom = Math.max(lineBottom, child.getBottom());
+            }
+            if (lineBottom > top) {
+                break;
+            }
+            for (int i = spanCount - 1; i >= 0; i--) {
+                final View child = getChildAt(i);
+                assert child != null;
+                recycler.removeAndRecycleView(child);
+            }
+            mFirstPosition += spanCount;
+        }
+        // from the bottom
+        int count;
+        while ((count = getChildCount()) > spanCount) {
+            final int lineStart = count - 1 - (count - 1) % spanCount;
+            int lineTop = Integer.MAX_VALUE;
+            for (int i = lineStart; i < count; i++) {
+                final View child = getChildAt(i);
+                assert child != null;
+                lineTop = Math.min(lineTop, child.getTop());
+            }
+            if (lineTop < bottom) {
+                break;
+            }
+            for (int i = count - 1; i >= lineStart; i--) {
+                final View child = getChildAt(i);
+                assert child != null;
+                recycler.removeAndRecycleView(child);
+            }
+        }
+    }
+
+    // adds lines above the first child until the top is covered
+    private void fillTop(@NonNull RecyclerView.Recycler recycler) {
+        int childTop = getChildTop();
+        while (childTop > getPaddingTop() && mFirstPosition > 0) {
+            childTop -= addLine(recycler, mFirstPosition - mSpanCount, childTop, true);
+        }
+        if (mFirstPosition == 0 && getChildCount() > 0 && childTop > getPaddingTop()) {
+            offsetChildrenVertical(getPaddingTop() - childTop);
+        }
+    }
+}
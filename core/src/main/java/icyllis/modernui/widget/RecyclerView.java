@@ -0,0 +1,1613 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2019-2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.widget;
+
+import icyllis.modernui.annotation.NonNull;
+import icyllis.modernui.annotation.Nullable;
+import icyllis.modernui.core.Choreographer;
+import icyllis.modernui.core.Context;
+import icyllis.modernui.graphics.MathUtil;
+import icyllis.modernui.graphics.drawable.ShapeDrawable;
+import icyllis.modernui.resources.SystemTheme;
+import icyllis.modernui.util.Observable;
+import icyllis.modernui.util.SparseArray;
+import icyllis.modernui.view.*;
+
+import java.util.ArrayList;
+
+/**
+ * A view group that shows a large data set in a limited window. Only the rows on
+ * screen have views, which are created and bound by an {@link Adapter} through
+ * {@link ViewHolder}s, positioned by a {@link LayoutManager}, and recycled when
+ * they are scrolled out.
+ * <p>
+ * Unlike {@link ListView}, rows are not bound in bulk while scrolling:
+ * <ul>
+ * <li>Scrolling lays out incrementally, only the rows that scroll in are added and
+ * only the rows that scroll out are recycled.</li>
+ * <li>After a frame that scrolled, the rows that will scroll in next are created and
+ * bound ahead of time, in the time left before the {@link Choreographer} frame deadline.
+ * So they are usually ready when they are needed.</li>
+ * <li>Recycled views are kept in a {@link RecycledViewPool} by view type, which can be
+ * shared by lists that use the same view types.</li>
+ * <li>With {@link Adapter#hasStableIds() stable IDs}, {@link Adapter#notifyDataSetChanged()}
+ * matches rows by ID, and only rebinds the rows whose {@link Adapter#getItemVersion(int)}
+ * changed.</li>
+ * </ul>
+ * Only vertical scrolling is supported.
+ */
+public class RecyclerView extends ViewGroup {
+
+    public static final int NO_POSITION = -1;
+    public static final long NO_ID = -1;
+    public static final int INVALID_TYPE = -1;
+
+    // the number of recycled rows kept bound to their positions, in addition to prefetched ones
+    private static final int DEFAULT_CACHE_SIZE = 2;
+
+    // the maximum number of positions prefetched after a frame
+    private static final int MAX_PREFETCH_COUNT = 32;
+
+    final Recycler mRecycler = new Recycler();
+    private final RecyclerViewDataObserver mObserver = new RecyclerViewDataObserver();
+
+    @Nullable
+    Adapter<?> mAdapter;
+    @Nullable
+    LayoutManager mLayout;
+
+    // adapter changes have shifted or invalidated rows since the last layout
+    private boolean mDataChanged;
+
+    private final OverScroller mScroller;
+    private final Runnable mFlinger = this::runFling;
+    private boolean mFlingScheduled;
+    private int mLastFlingY;
+
+    private VelocityTracker mVelocityTracker;
+    private boolean mIsBeingDragged;
+    private int mActivePointerId = MotionEvent.INVALID_POINTER_ID;
+    private int mLastMotionY;
+
+    private final int mTouchSlop;
+    private final int mMinimumVelocity;
+    private final int mMaximumVelocity;
+    private final float mVerticalScrollFactor;
+
+    private final Runnable mPrefetchRunnable = this::prefetch;
+    private boolean mPrefetchScheduled;
+    private int mPrefetchDy;
+    private final int[] mPrefetchPositions = new int[MAX_PREFETCH_COUNT];
+
+    // bind statistics
+    private boolean mInScroll;
+    private long mBindFrameTimeNanos = Long.MIN_VALUE;
+    private int mScrollBindsInFrame;
+    private int mMaxScrollBindsPerFrame;
+    private long mScrollBindCount;
+    private long mPrefetchBindCount;
+
+    public RecyclerView(Context context) {
+        super(context);
+        mScroller = new OverScroller();
+        setFocusableInTouchMode(true);
+        setWillNotDraw(false);
+        final ViewConfiguration configuration = ViewConfiguration.get(context);
+        mTouchSlop = configuration.getScaledTouchSlop();
+        mMinimumVelocity = configuration.getScaledMinimumFlingVelocity();
+        mMaximumVelocity = configuration.getScaledMaximumFlingVelocity();
+        mVerticalScrollFactor = configuration.getScaledVerticalScrollFactor();
+
+        setVerticalScrollBarEnabled(true);
+        ShapeDrawable thumb = new ShapeDrawable();
+        thumb.setShape(ShapeDrawable.VLINE);
+        thumb.setStroke(dp(4), SystemTheme.modulateColor(SystemTheme.COLOR_FOREGROUND, 0.25f));
+        thumb.setCornerRadius(1);
+        setVerticalScrollbarThumbDrawable(thumb);
+        ShapeDrawable track = new ShapeDrawable();
+        track.setShape(ShapeDrawable.VLINE);
+        track.setStroke(dp(4), 0x40808080);
+        track.setSize(dp(4), -1);
+        track.setCornerRadius(1);
+        setVerticalScrollbarTrackDrawable(track);
+    }
+
+    /**
+     * Sets the adapter that provides the rows. Views of the previous adapter are
+     * recycled, and are discarded if the pool is not shared.
+     *
+     * @param adapter the new adapter, or null to show nothing
+     */
+    public void setAdapter(@Nullable Adapter<?> adapter) {
+        if (mAdapter == adapter) {
+            return;
+        }
+        stopScroll();
+        if (mAdapter != null) {
+            mAdapter.unregisterAdapterDataObserver(mObserver);
+        }
+        removeAndRecycleViews();
+        mRecycler.onAdapterChanged();
+        mAdapter = adapter;
+        if (adapter != null) {
+            adapter.registerAdapterDataObserver(mObserver);
+        }
+        requestLayout();
+    }
+
+    @Nullable
+    public Adapter<?> getAdapter() {
+        return mAdapter;
+    }
+
+    /**
+     * Sets the layout manager that positions the rows.
+     *
+     * @param layout the new layout manager, or null to show nothing
+     * @throws IllegalArgumentException the layout manager is used by another view
+     */
+    public void setLayoutManager(@Nullable LayoutManager layout) {
+        if (mLayout == layout) {
+            return;
+        }
+        if (layout != null && layout.mRecyclerView != null) {
+            throw new IllegalArgumentException("LayoutManager " + layout +
+                    " is already attached to a RecyclerView: " + layout.mRecyclerView);
+        }
+        stopScroll();
+        removeAndRecycleViews();
+        if (mLayout != null) {
+            mLayout.mRecyclerView = null;
+        }
+        mLayout = layout;
+        if (layout != null) {
+            layout.mRecyclerView = this;
+        }
+        requestLayout();
+    }
+
+    @Nullable
+    public LayoutManager getLayoutManager() {
+        return mLayout;
+    }
+
+    /**
+     * Shares a pool of recycled views with other lists that use the same view types.
+     *
+     * @param pool the pool to use, or null to use a private one
+     */
+    public void setRecycledViewPool(@Nullable RecycledViewPool pool) {
+        mRecycler.setRecycledViewPool(pool);
+    }
+
+    @NonNull
+    public RecycledViewPool getRecycledViewPool() {
+        return mRecycler.getRecycledViewPool();
+    }
+
+    /**
+     * Sets the number of recycled rows that stay bound to their positions, so that
+     * scrolling back does not need to bind them again. Prefetched rows are not counted.
+     *
+     * @param size the cache size, default is 2
+     */
+    public void setItemViewCacheSize(int size) {
+        mRecycler.setViewCacheSize(size);
+    }
+
+    /**
+     * Returns the view holder of a child view of this list.
+     *
+     * @throws IllegalArgumentException the view is not a child of this list
+     */
+    @NonNull
+    public ViewHolder getChildViewHolder(@NonNull View child) {
+        if (child.getParent() != this || !(child.getLayoutParams() instanceof LayoutParams lp) ||
+                lp.mViewHolder == null) {
+            throw new IllegalArgumentException("View " + child + " is not a direct child of " + this);
+        }
+        return lp.mViewHolder;
+    }
+
+    /**
+     * Scrolls to show the given position at the top, on the next layout.
+     *
+     * @param position the adapter position
+     */
+    public void scrollToPosition(int position) {
+        stopScroll();
+        if (mLayout != null) {
+            mLayout.scrollToPosition(position);
+        }
+    }
+
+    /**
+     * Scrolls by the given distance at once.
+     *
+     * @param dy the distance, positive to scroll the content up
+     * @return the distance actually scrolled
+     */
+    public int scrollVerticallyBy(int dy) {
+        if (mLayout == null || mAdapter == null || dy == 0) {
+            return 0;
+        }
+        final long frameTimeNanos = Choreographer.getInstance().getLastFrameTimeNanos();
+        if (frameTimeNanos != mBindFrameTimeNanos) {
+            mBindFrameTimeNanos = frameTimeNanos;
+            mScrollBindsInFrame = 0;
+        }
+        // the layout manager scrolls from the positions of the last layout
+        layoutIfDataChanged();
+        mInScroll = true;
+        final int consumed;
+        try {
+            consumed = mLayout.scrollVerticallyBy(dy, mRecycler);
+        } finally {
+            mInScroll = false;
+        }
+        mMaxScrollBindsPerFrame = Math.max(mMaxScrollBindsPerFrame, mScrollBindsInFrame);
+        if (consumed != 0) {
+            if (!awakenScrollBars()) {
+                invalidate();
+            }
+            schedulePrefetch(consumed);
+        }
+        return consumed;
+    }
+
+    /**
+     * Scrolls smoothly by the given distance.
+     *
+     * @param dy the distance, positive to scroll the content up
+     */
+    public void smoothScrollBy(int dy) {
+        if (dy == 0) {
+            return;
+        }
+        mLastFlingY = 0;
+        mScroller.startScroll(0, 0, 0, dy);
+        scheduleFling();
+    }
+
+    /**
+     * Flings with the given velocity.
+     *
+     * @param velocityY the velocity in pixels per second, positive to scroll the content up
+     */
+    public void fling(int velocityY) {
+        if (Math.abs(velocityY) < mMinimumVelocity) {
+            return;
+        }
+        velocityY = MathUtil.clamp(velocityY, -mMaximumVelocity, mMaximumVelocity);
+        mLastFlingY = 0;
+        mScroller.fling(0, 0, 0, velocityY,
+                0, 0, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        scheduleFling();
+    }
+
+    /**
+     * Stops any fling or smooth scroll in progress.
+     */
+    public void stopScroll() {
+        mScroller.abortAnimation();
+        if (mFlingScheduled) {
+            mFlingScheduled = false;
+            Choreographer.getInstance().removeCallbacks(Choreographer.CALLBACK_ANIMATION, mFlinger, null);
+        }
+    }
+
+    private void scheduleFling() {
+        if (!mFlingScheduled) {
+            mFlingScheduled = true;
+            Choreographer.getInstance().postCallback(Choreographer.CALLBACK_ANIMATION, mFlinger, null);
+        }
+    }
+
+    // runs in animation callbacks, so that rows are added before the traversal
+    private void runFling() {
+        mFlingScheduled = false;
+        if (!mScroller.computeScrollOffset()) {
+            return;
+        }
+        final int y = mScroller.getCurrY();
+        final int dy = y - mLastFlingY;
+        mLastFlingY = y;
+        if (dy != 0 && scrollVerticallyBy(dy) != dy) {
+            // reached the end
+            mScroller.abortAnimation();
+            return;
+        }
+        if (!mScroller.isFinished()) {
+            scheduleFling();
+        }
+    }
+
+    private void schedulePrefetch(int dy) {
+        mPrefetchDy = dy;
+        if (!mPrefetchScheduled) {
+            mPrefetchScheduled = true;
+            // commit callbacks run after the traversal of the frame
+            Choreographer.getInstance().postCallback(Choreographer.CALLBACK_COMMIT, mPrefetchRunnable, null);
+        }
+    }
+
+    private void prefetch() {
+        mPrefetchScheduled = false;
+        final LayoutManager layout = mLayout;
+        if (layout == null || mAdapter == null || mPrefetchDy == 0 || !isAttachedToWindow()) {
+            return;
+        }
+        layoutIfDataChanged();
+        final int[] positions = mPrefetchPositions;
+        final int count = Math.min(layout.collectPrefetchPositions(mPrefetchDy, positions), positions.length);
+        mRecycler.mPrefetchMax = count;
+        final long deadlineNanos = Choreographer.getInstance().getFrameDeadlineNanos();
+        for (int i = 0; i < count; i++) {
+            final int position = positions[i];
+            if (mRecycler.isCachedForPosition(position)) {
+                continue;
+            }
+            final ViewHolder holder = mRecycler.tryGetViewHolderForPosition(position, deadlineNanos);
+            if (holder == null) {
+                // out of time, continue after the next scroll
+                break;
+            }
+            mRecycler.recycleViewHolder(holder);
+        }
+    }
+
+    /**
+     * Returns the number of rows bound in frame-critical code, that is while scrolling,
+     * because they were not prefetched in time.
+     */
+    public long getScrollBindCount() {
+        return mScrollBindCount;
+    }
+
+    /**
+     * Returns the number of rows bound ahead of time by prefetching.
+     */
+    public long getPrefetchBindCount() {
+        return mPrefetchBindCount;
+    }
+
+    /**
+     * Returns the maximum number of rows bound while scrolling in one frame.
+     */
+    public int getMaxScrollBindsPerFrame() {
+        return mMaxScrollBindsPerFrame;
+    }
+
+    /**
+     * Resets the bind statistics.
+     */
+    public void resetBindStats() {
+        mScrollBindCount = 0;
+        mPrefetchBindCount = 0;
+        mMaxScrollBindsPerFrame = 0;
+        mScrollBindsInFrame = 0;
+    }
+
+    private void removeAndRecycleViews() {
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            final View child = getChildAt(i);
+            final ViewHolder holder = getChildViewHolder(child);
+            removeViewInLayout(child);
+            mRecycler.recycleViewHolder(holder);
+        }
+        mRecycler.clearCache();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        setMeasuredDimension(getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+                getDefaultSize(getSuggestedMinimumHeight(), heightMeasureSpec));
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        if (mAdapter == null || mLayout == null) {
+            removeAndRecycleViews();
+            return;
+        }
+        mDataChanged = false;
+        mLayout.onLayoutChildren(mRecycler);
+    }
+
+    /**
+     * Lays out the rows again before they are scrolled, if the adapter changed since
+     * the last layout, because the requested layout may run after the scroll, for
+     * example in a fling step of an animation callback.
+     */
+    private void layoutIfDataChanged() {
+        if (mDataChanged && isLaidOut() && mAdapter != null && mLayout != null) {
+            mDataChanged = false;
+            mLayout.onLayoutChildren(mRecycler);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        stopScroll();
+        if (mPrefetchScheduled) {
+            mPrefetchScheduled = false;
+            Choreographer.getInstance().removeCallbacks(Choreographer.CALLBACK_COMMIT, mPrefetchRunnable, null);
+        }
+    }
+
+    @Override
+    protected int computeVerticalScrollRange() {
+        return mLayout != null ? mLayout.computeVerticalScrollRange() : 0;
+    }
+
+    @Override
+    protected int computeVerticalScrollOffset() {
+        return mLayout != null ? mLayout.computeVerticalScrollOffset() : 0;
+    }
+
+    @Override
+    protected int computeVerticalScrollExtent() {
+        return mLayout != null ? mLayout.computeVerticalScrollExtent() : 0;
+    }
+
+    private void initOrResetVelocityTracker() {
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        } else {
+            mVelocityTracker.clear();
+        }
+    }
+
+    private void recycleVelocityTracker() {
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(@NonNull MotionEvent ev) {
+        final int action = ev.getAction();
+        if (action == MotionEvent.ACTION_MOVE && mIsBeingDragged) {
+            return true;
+        }
+        switch (action) {
+            case MotionEvent.ACTION_DOWN -> {
+                mLastMotionY = (int) ev.getY();
+                mActivePointerId = ev.getPointerId(0);
+                initOrResetVelocityTracker();
+                mVelocityTracker.addMovement(ev);
+                // catch a fling
+                mIsBeingDragged = !mScroller.isFinished();
+                stopScroll();
+            }
+            case MotionEvent.ACTION_MOVE -> {
+                if (mActivePointerId == MotionEvent.INVALID_POINTER_ID) {
+                    break;
+                }
+                final int y = (int) ev.getY();
+                if (Math.abs(y - mLastMotionY) > mTouchSlop) {
+                    mIsBeingDragged = true;
+                    mLastMotionY = y;
+                    if (mVelocityTracker != null) {
+                        mVelocityTracker.addMovement(ev);
+                    }
+                    final ViewParent parent = getParent();
+                    if (parent != null) {
+                        parent.requestDisallowInterceptTouchEvent(true);
+                    }
+                }
+            }
+            case MotionEvent.ACTION_UP, MotionEvent.ACTION_CANCEL -> {
+                mIsBeingDragged = false;
+                mActivePointerId = MotionEvent.INVALID_POINTER_ID;
+                recycleVelocityTracker();
+            }
+        }
+        return mIsBeingDragged;
+    }
+
+    @Override
+    public boolean onTouchEvent(@NonNull MotionEvent ev) {
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+        switch (ev.getAction()) {
+            case MotionEvent.ACTION_DOWN -> {
+                if (mAdapter == null || mLayout == null) {
+                    return false;
+                }
+                stopScroll();
+                mLastMotionY = (int) ev.getY();
+                mActivePointerId = ev.getPointerId(0);
+            }
+            case MotionEvent.ACTION_MOVE -> {
+                if (mActivePointerId == MotionEvent.INVALID_POINTER_ID) {
+                    break;
+                }
+                final int y = (int) ev.getY();
+                int deltaY = mLastMotionY - y;
+                if (!mIsBeingDragged && Math.abs(deltaY) > mTouchSlop) {
+                    final ViewParent parent = getParent();
+                    if (parent != null) {
+                        parent.requestDisallowInterceptTouchEvent(true);
+                    }
+                    mIsBeingDragged = true;
+                    if (deltaY > 0) {
+                        deltaY -= mTouchSlop;
+                    } else {
+                        deltaY += mTouchSlop;
+                    }
+                }
+                if (mIsBeingDragged) {
+                    mLastMotionY = y;
+                    scrollVerticallyBy(deltaY);
+                }
+            }
+            case MotionEvent.ACTION_UP -> {
+                if (mIsBeingDragged) {
+                    mVelocityTracker.addMovement(ev);
+                    mVelocityTracker.computeCurrentVelocity(1000, mMaximumVelocity);
+                    fling(-(int) mVelocityTracker.getYVelocity());
+                }
+                mIsBeingDragged = false;
+                mActivePointerId = MotionEvent.INVALID_POINTER_ID;
+                recycleVelocityTracker();
+                return true;
+            }
+            case MotionEvent.ACTION_CANCEL -> {
+                mIsBeingDragged = false;
+                mActivePointerId = MotionEvent.INVALID_POINTER_ID;
+                recycleVelocityTracker();
+                return true;
+            }
+        }
+        mVelocityTracker.addMovement(ev);
+        return true;
+    }
+
+    @Override
+    public boolean onGenericMotionEvent(@NonNull MotionEvent event) {
+        if (event.getAction() == MotionEvent.ACTION_SCROLL && mLayout != null) {
+            final float axisValue = event.getAxisValue(MotionEvent.AXIS_VSCROLL);
+            final int delta = Math.round(axisValue * mVerticalScrollFactor);
+            if (delta != 0 && mLayout.canScrollVertically(-delta)) {
+                if (Math.abs(axisValue) > 0.9 && Math.abs(delta) * 6 > mMinimumVelocity) {
+                    fling(-delta * 6);
+                } else {
+                    smoothScrollBy(-delta);
+                }
+                return true;
+            }
+        }
+        return super.onGenericMotionEvent(event);
+    }
+
+    @Override
+    public boolean canScrollVertically(int direction) {
+        return mLayout != null && mLayout.canScrollVertically(direction);
+    }
+
+    @Override
+    public boolean shouldDelayChildPressedState() {
+        return true;
+    }
+
+    @NonNull
+    @Override
+    protected ViewGroup.LayoutParams generateDefaultLayoutParams() {
+        return new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT);
+    }
+
+    @NonNull
+    @Override
+    protected ViewGroup.LayoutParams generateLayoutParams(@NonNull ViewGroup.LayoutParams p) {
+        if (p instanceof MarginLayoutParams) {
+            return new LayoutParams((MarginLayoutParams) p);
+        }
+        return new LayoutParams(p);
+    }
+
+    @Override
+    protected boolean checkLayoutParams(@Nullable ViewGroup.LayoutParams p) {
+        return p instanceof LayoutParams;
+    }
+
+    /**
+     * Layout params of the rows, which link the row views to their view holders.
+     */
+    public static class LayoutParams extends MarginLayoutParams {
+
+        ViewHolder mViewHolder;
+
+        public LayoutParams(int width, int height) {
+            super(width, height);
+        }
+
+        public LayoutParams(@NonNull MarginLayoutParams source) {
+            super(source);
+        }
+
+        public LayoutParams(@NonNull ViewGroup.LayoutParams source) {
+            super(source);
+        }
+
+        /**
+         * @return the adapter position of the row, or {@link #NO_POSITION}
+         */
+        public int getViewAdapterPosition() {
+            return mViewHolder != null ? mViewHolder.mPosition : NO_POSITION;
+        }
+    }
+
+    /**
+     * Describes a row view and its place in the data set. Adapters subclass it to
+     * hold references to the views of a row, so that binding does not look them up.
+     */
+    public abstract static class ViewHolder {
+
+        // bound to the data at mPosition
+        static final int FLAG_BOUND = 1;
+        // the data at mPosition changed, bind again
+        static final int FLAG_UPDATE = 1 << 1;
+        // the data set changed without stable IDs, the position is meaningless
+        static final int FLAG_INVALID = 1 << 2;
+        // the data set changed with stable IDs, find the position by ID
+        static final int FLAG_REMATCH = 1 << 3;
+        // the item was removed
+        static final int FLAG_REMOVED = 1 << 4;
+        // detached from the parent during layout, but still attached to the window
+        static final int FLAG_SCRAP = 1 << 5;
+
+        @NonNull
+        public final View itemView;
+
+        int mPosition = NO_POSITION;
+        long mItemId = NO_ID;
+        int mItemViewType = INVALID_TYPE;
+        long mVersion;
+        int mFlags;
+
+        public ViewHolder(@NonNull View itemView) {
+            this.itemView = itemView;
+        }
+
+        /**
+         * @return the adapter position this holder is bound to, or {@link #NO_POSITION}
+         */
+        public final int getPosition() {
+            return mPosition;
+        }
+
+        /**
+         * @return the stable ID of the item, or {@link #NO_ID}
+         */
+        public final long getItemId() {
+            return mItemId;
+        }
+
+        public final int getItemViewType() {
+            return mItemViewType;
+        }
+
+        boolean hasFlags(int flags) {
+            return (mFlags & flags) != 0;
+        }
+
+        // can be reused for mPosition without binding
+        boolean isValidForPosition() {
+            return (mFlags & (FLAG_BOUND | FLAG_UPDATE | FLAG_INVALID | FLAG_REMATCH | FLAG_REMOVED))
+                    == FLAG_BOUND;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "{" + Integer.toHexString(hashCode()) +
+                    " position=" + mPosition + " id=" + mItemId + " type=" + mItemViewType +
+                    " flags=0x" + Integer.toHexString(mFlags) + "}";
+        }
+    }
+
+    /**
+     * Provides views for the items of a data set.
+     *
+     * @param <VH> the view holder type
+     */
+    public abstract static class Adapter<VH extends ViewHolder> {
+
+        private final AdapterDataObservable mObservable = new AdapterDataObservable();
+        private boolean mHasStableIds;
+
+        /**
+         * Creates a view holder and its views for the given view type.
+         */
+        @NonNull
+        public abstract VH onCreateViewHolder(@NonNull ViewGroup parent, int viewType);
+
+        /**
+         * Updates the views of a holder to show the item at the given position.
+         */
+        public abstract void onBindViewHolder(@NonNull VH holder, int position);
+
+        public abstract int getItemCount();
+
+        /**
+         * Returns the view type of the item, views of different types are not reused
+         * for each other. The default returns 0.
+         */
+        public int getItemViewType(int position) {
+            return 0;
+        }
+
+        /**
+         * Returns the stable ID of the item, if {@link #hasStableIds()}.
+         */
+        public long getItemId(int position) {
+            return NO_ID;
+        }
+
+        /**
+         * Returns the version of the item's content, used with stable IDs. When the
+         * data set changes, a row whose item keeps its ID and version is not bound again.
+         * The default returns 0, so rows are rebound only by {@link #notifyItemChanged(int)}.
+         */
+        public long getItemVersion(int position) {
+            return 0;
+        }
+
+        /**
+         * Called when a holder is put into the pool, to release resources held by
+         * its views.
+         */
+        public void onViewRecycled(@NonNull VH holder) {
+        }
+
+        /**
+         * Sets whether {@link #getItemId(int)} returns a unique and stable ID for each item.
+         *
+         * @throws IllegalStateException the adapter is in use
+         */
+        public void setHasStableIds(boolean hasStableIds) {
+            if (mObservable.hasObservers()) {
+                throw new IllegalStateException("Cannot change whether this adapter has " +
+                        "stable IDs while the adapter has registered observers.");
+            }
+            mHasStableIds = hasStableIds;
+        }
+
+        public final boolean hasStableIds() {
+            return mHasStableIds;
+        }
+
+        @NonNull
+        final VH createViewHolder(@NonNull ViewGroup parent, int viewType) {
+            final VH holder = onCreateViewHolder(parent, viewType);
+            if (holder.itemView.getParent() != null) {
+                throw new IllegalStateException("ViewHolder views must not be attached when" +
+                        " created. Ensure that you are not passing 'true' to the attachToRoot" +
+                        " parameter of LayoutInflater.inflate(..., boolean attachToRoot)");
+            }
+            holder.mItemViewType = viewType;
+            return holder;
+        }
+
+        @SuppressWarnings("unchecked")
+        final void bindViewHolder(@NonNull ViewHolder holder, int position) {
+            onBindViewHolder((VH) holder, position);
+        }
+
+        @SuppressWarnings("unchecked")
+        final void dispatchViewRecycled(@NonNull ViewHolder holder) {
+            onViewRecycled((VH) holder);
+        }
+
+        public void registerAdapterDataObserver(@NonNull AdapterDataObserver observer) {
+            mObservable.registerObserver(observer);
+        }
+
+        public void unregisterAdapterDataObserver(@NonNull AdapterDataObserver observer) {
+            mObservable.unregisterObserver(observer);
+        }
+
+        /**
+         * Notifies that anything may have changed. Without stable IDs, all rows are bound
+         * again. With stable IDs, rows are matched by ID and only the ones whose version
+         * changed are bound again.
+         */
+        public final void notifyDataSetChanged() {
+            mObservable.notifyChanged();
+        }
+
+        public final void notifyItemChanged(int position) {
+            mObservable.notifyItemRangeChanged(position, 1);
+        }
+
+        public final void notifyItemRangeChanged(int positionStart, int itemCount) {
+            mObservable.notifyItemRangeChanged(positionStart, itemCount);
+        }
+
+        public final void notifyItemInserted(int position) {
+            mObservable.notifyItemRangeInserted(position, 1);
+        }
+
+        public final void notifyItemRangeInserted(int positionStart, int itemCount) {
+            mObservable.notifyItemRangeInserted(positionStart, itemCount);
+        }
+
+        public final void notifyItemRemoved(int position) {
+            mObservable.notifyItemRangeRemoved(position, 1);
+        }
+
+        public final void notifyItemRangeRemoved(int positionStart, int itemCount) {
+            mObservable.notifyItemRangeRemoved(positionStart, itemCount);
+        }
+    }
+
+    /**
+     * Observer of the changes of an adapter.
+     */
+    public abstract static class AdapterDataObserver {
+
+        public void onChanged() {
+        }
+
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+        }
+
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+        }
+
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+        }
+    }
+
+    static class AdapterDataObservable extends Observable<AdapterDataObserver> {
+
+        boolean hasObservers() {
+            return !mObservers.isEmpty();
+        }
+
+        void notifyChanged() {
+            for (int i = mObservers.size() - 1; i >= 0; i--) {
+                mObservers.get(i).onChanged();
+            }
+        }
+
+        void notifyItemRangeChanged(int positionStart, int itemCount) {
+            for (int i = mObservers.size() - 1; i >= 0; i--) {
+                mObservers.get(i).onItemRangeChanged(positionStart, itemCount);
+            }
+        }
+
+        void notifyItemRangeInserted(int positionStart, int itemCount) {
+            for (int i = mObservers.size() - 1; i >= 0; i--) {
+                mObservers.get(i).onItemRangeInserted(positionStart, itemCount);
+            }
+        }
+
+        void notifyItemRangeRemoved(int positionStart, int itemCount) {
+            for (int i = mObservers.size() - 1; i >= 0; i--) {
+                mObservers.get(i).onItemRangeRemoved(positionStart, itemCount);
+            }
+        }
+    }
+
+    private class RecyclerViewDataObserver extends AdapterDataObserver {
+
+        @Override
+        public void onChanged() {
+            final boolean stableIds = mAdapter != null && mAdapter.hasStableIds();
+            final int flag = stableIds ? ViewHolder.FLAG_REMATCH : ViewHolder.FLAG_INVALID;
+            for (int i = 0, count = getChildCount(); i < count; i++) {
+                getChildViewHolder(getChildAt(i)).mFlags |= flag;
+            }
+            mRecycler.markCachedViews(flag);
+            mDataChanged = true;
+            requestLayout();
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            final int end = positionStart + itemCount;
+            for (int i = 0, count = getChildCount(); i < count; i++) {
+                final ViewHolder holder = getChildViewHolder(getChildAt(i));
+                if (holder.mPosition >= positionStart && holder.mPosition < end) {
+                    holder.mFlags |= ViewHolder.FLAG_UPDATE;
+                }
+            }
+            mRecycler.markCachedRangeUpdated(positionStart, end);
+            mDataChanged = true;
+            requestLayout();
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            for (int i = 0, count = getChildCount(); i < count; i++) {
+                final ViewHolder holder = getChildViewHolder(getChildAt(i));
+                if (holder.mPosition >= positionStart) {
+                    holder.mPosition += itemCount;
+                }
+            }
+            mRecycler.offsetCachedPositions(positionStart, itemCount);
+            mDataChanged = true;
+            requestLayout();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            final int end = positionStart + itemCount;
+            for (int i = 0, count = getChildCount(); i < count; i++) {
+                final ViewHolder holder = getChildViewHolder(getChildAt(i));
+                if (holder.mPosition >= end) {
+                    holder.mPosition -= itemCount;
+                } else if (holder.mPosition >= positionStart) {
+                    holder.mFlags |= ViewHolder.FLAG_REMOVED;
+                }
+            }
+            mRecycler.removeCachedRange(positionStart, end);
+            mDataChanged = true;
+            requestLayout();
+        }
+    }
+
+    /**
+     * A pool of recycled views by view type, which can be shared across lists that
+     * use the same view types. It also measures how long it takes to create and bind
+     * a view of each type, so that prefetching knows what fits in a frame.
+     */
+    public static class RecycledViewPool {
+
+        private static final int DEFAULT_MAX_SCRAP = 5;
+
+        static class ScrapData {
+
+            final ArrayList<ViewHolder> mScrapHeap = new ArrayList<>();
+            int mMaxScrap = DEFAULT_MAX_SCRAP;
+            long mCreateRunningAverageNs;
+            long mBindRunningAverageNs;
+        }
+
+        private final SparseArray<ScrapData> mScrap = new SparseArray<>();
+
+        // the number of adapters using this pool
+        private int mAttachCount;
+
+        /**
+         * Discards all recycled views.
+         */
+        public void clear() {
+            for (int i = 0; i < mScrap.size(); i++) {
+                mScrap.valueAt(i).mScrapHeap.clear();
+            }
+        }
+
+        /**
+         * Sets the maximum number of recycled views kept for a view type.
+         */
+        public void setMaxRecycledViews(int viewType, int max) {
+            final ScrapData data = getScrapData(viewType);
+            data.mMaxScrap = max;
+            final ArrayList<ViewHolder> heap = data.mScrapHeap;
+            while (heap.size() > max) {
+                heap.remove(heap.size() - 1);
+            }
+        }
+
+        public int getRecycledViewCount(int viewType) {
+            return getScrapData(viewType).mScrapHeap.size();
+        }
+
+        /**
+         * Takes a recycled view of the given type out of the pool.
+         *
+         * @return a view holder, or null if there are none
+         */
+        @Nullable
+        public ViewHolder getRecycledView(int viewType) {
+            final ScrapData data = mScrap.get(viewType);
+            if (data != null && !data.mScrapHeap.isEmpty()) {
+                final ArrayList<ViewHolder> heap = data.mScrapHeap;
+                return heap.remove(heap.size() - 1);
+            }
+            return null;
+        }
+
+        /**
+         * Puts a view holder into the pool, it's discarded if the pool is full.
+         */
+        public void putRecycledView(@NonNull ViewHolder holder) {
+            final ScrapData data = getScrapData(holder.mItemViewType);
+            if (data.mScrapHeap.size() >= data.mMaxScrap) {
+                return;
+            }
+            holder.mPosition = NO_POSITION;
+            holder.mItemId = NO_ID;
+            holder.mFlags = 0;
+            data.mScrapHeap.add(holder);
+        }
+
+        @NonNull
+        private ScrapData getScrapData(int viewType) {
+            ScrapData data = mScrap.get(viewType);
+            if (data == null) {
+                data = new ScrapData();
+                mScrap.put(viewType, data);
+            }
+            return data;
+        }
+
+        private static long runningAverage(long oldAverage, long newValue) {
+            if (oldAverage == 0) {
+                return newValue;
+            }
+            return (oldAverage / 4 * 3) + (newValue / 4);
+        }
+
+        void factorInCreateTime(int viewType, long createTimeNs) {
+            final ScrapData data = getScrapData(viewType);
+            data.mCreateRunningAverageNs = runningAverage(data.mCreateRunningAverageNs, createTimeNs);
+        }
+
+        void factorInBindTime(int viewType, long bindTimeNs) {
+            final ScrapData data = getScrapData(viewType);
+            data.mBindRunningAverageNs = runningAverage(data.mBindRunningAverageNs, bindTimeNs);
+        }
+
+        boolean willCreateInTime(int viewType, long approxCurrentNs, long deadlineNs) {
+            final long expectedDurationNs = getScrapData(viewType).mCreateRunningAverageNs;
+            return expectedDurationNs == 0 || approxCurrentNs + expectedDurationNs < deadlineNs;
+        }
+
+        boolean willBindInTime(int viewType, long approxCurrentNs, long deadlineNs) {
+            final long expectedDurationNs = getScrapData(viewType).mBindRunningAverageNs;
+            return expectedDurationNs == 0 || approxCurrentNs + expectedDurationNs < deadlineNs;
+        }
+
+        void attach() {
+            mAttachCount++;
+        }
+
+        void detach() {
+            mAttachCount--;
+        }
+
+        // discards views of an old adapter if no other list may use them
+        void onAdapterChanged() {
+            if (mAttachCount <= 1) {
+                clear();
+            }
+        }
+    }
+
+    /**
+     * Gives views for adapter positions to the layout manager, and takes back views
+     * that are no longer shown. A view is looked up in this order: rows detached during
+     * the current layout, rows recently recycled or prefetched (by position, or by ID if
+     * the data set changed with stable IDs), the pool, and finally the adapter.
+     */
+    public final class Recycler {
+
+        final ArrayList<ViewHolder> mAttachedScrap = new ArrayList<>();
+        final ArrayList<ViewHolder> mCachedViews = new ArrayList<>();
+
+        private int mViewCacheMax = DEFAULT_CACHE_SIZE;
+        int mPrefetchMax;
+
+        private RecycledViewPool mPool;
+
+        Recycler() {
+        }
+
+        void setViewCacheSize(int size) {
+            mViewCacheMax = size;
+            trimCache();
+        }
+
+        @NonNull
+        RecycledViewPool getRecycledViewPool() {
+            if (mPool == null) {
+                mPool = new RecycledViewPool();
+                mPool.attach();
+            }
+            return mPool;
+        }
+
+        void setRecycledViewPool(@Nullable RecycledViewPool pool) {
+            if (mPool != null) {
+                mPool.detach();
+            }
+            mPool = pool;
+            if (pool != null) {
+                pool.attach();
+            }
+        }
+
+        void onAdapterChanged() {
+            getRecycledViewPool().onAdapterChanged();
+        }
+
+        /**
+         * Returns a view bound to the given adapter position, for the layout manager to
+         * add. Scrolling should add views in order, so that only the rows that scroll in
+         * are requested.
+         */
+        @NonNull
+        public View getViewForPosition(int position) {
+            final ViewHolder holder = tryGetViewHolderForPosition(position, Long.MAX_VALUE);
+            assert holder != null;
+            return holder.itemView;
+        }
+
+        /**
+         * Gets a holder for the position, binding it if needed.
+         *
+         * @param deadlineNs the deadline for prefetching in the {@link System#nanoTime()} time base,
+         *                   or Long.MAX_VALUE to always succeed
+         * @return the holder, or null if it cannot be created and bound before the deadline
+         */
+        @Nullable
+        ViewHolder tryGetViewHolderForPosition(int position, long deadlineNs) {
+            final Adapter<?> adapter = mAdapter;
+            assert adapter != null;
+            if (position < 0 || position >= adapter.getItemCount()) {
+                throw new IndexOutOfBoundsException("Invalid item position " + position +
+                        ", item count: " + adapter.getItemCount());
+            }
+            final boolean prefetch = deadlineNs != Long.MAX_VALUE;
+            ViewHolder holder = getScrapOrCachedViewForPosition(position);
+            final int type;
+            boolean matchedById = false;
+            if (holder == null) {
+                type = adapter.getItemViewType(position);
+                if (adapter.hasStableIds()) {
+                    holder = getScrapOrCachedViewForId(adapter.getItemId(position), type);
+                    matchedById = holder != null;
+                }
+                if (holder == null) {
+                    holder = getRecycledViewPool().getRecycledView(type);
+                }
+                if (holder == null) {
+                    final RecycledViewPool pool = getRecycledViewPool();
+                    final long start = System.nanoTime();
+                    if (prefetch && !pool.willCreateInTime(type, start, deadlineNs)) {
+                        return null;
+                    }
+                    holder = adapter.createViewHolder(RecyclerView.this, type);
+                    pool.factorInCreateTime(type, System.nanoTime() - start);
+                }
+            } else {
+                type = holder.mItemViewType;
+            }
+
+            // a holder matched by ID shows the same item, maybe moved, which is not bound
+            // again unless its content changed
+            boolean bind = !holder.isValidForPosition() ||
+                    (!matchedById && holder.mPosition != position);
+            if (!bind && adapter.hasStableIds() && holder.mVersion != adapter.getItemVersion(position)) {
+                bind = true;
+            }
+            if (bind) {
+                final RecycledViewPool pool = getRecycledViewPool();
+                final long start = System.nanoTime();
+                if (prefetch && !pool.willBindInTime(type, start, deadlineNs)) {
+                    // keep it for later
+                    recycleViewHolder(holder);
+                    return null;
+                }
+                holder.mPosition = position;
+                holder.mItemId = adapter.hasStableIds() ? adapter.getItemId(position) : NO_ID;
+                adapter.bindViewHolder(holder, position);
+                holder.mVersion = adapter.hasStableIds() ? adapter.getItemVersion(position) : 0;
+                holder.mFlags = (holder.mFlags & ViewHolder.FLAG_SCRAP) | ViewHolder.FLAG_BOUND;
+                pool.factorInBindTime(type, System.nanoTime() - start);
+                if (prefetch) {
+                    mPrefetchBindCount++;
+                } else if (mInScroll) {
+                    mScrollBindCount++;
+                    mScrollBindsInFrame++;
+                }
+            } else {
+                holder.mPosition = position;
+            }
+
+            final View itemView = holder.itemView;
+            final ViewGroup.LayoutParams lp = itemView.getLayoutParams();
+            final LayoutParams rvLayoutParams;
+            if (lp == null) {
+                rvLayoutParams = (LayoutParams) generateDefaultLayoutParams();
+                itemView.setLayoutParams(rvLayoutParams);
+            } else if (!checkLayoutParams(lp)) {
+                rvLayoutParams = (LayoutParams) generateLayoutParams(lp);
+                itemView.setLayoutParams(rvLayoutParams);
+            } else {
+                rvLayoutParams = (LayoutParams) lp;
+            }
+            rvLayoutParams.mViewHolder = holder;
+            return holder;
+        }
+
+        @Nullable
+        private ViewHolder getScrapOrCachedViewForPosition(int position) {
+            final ArrayList<ViewHolder> scrap = mAttachedScrap;
+            for (int i = 0, count = scrap.size(); i < count; i++) {
+                final ViewHolder holder = scrap.get(i);
+                if (holder.mPosition == position &&
+                        !holder.hasFlags(ViewHolder.FLAG_INVALID | ViewHolder.FLAG_REMATCH |
+                                ViewHolder.FLAG_REMOVED)) {
+                    scrap.remove(i);
+                    return holder;
+                }
+            }
+            final ArrayList<ViewHolder> cache = mCachedViews;
+            for (int i = 0, count = cache.size(); i < count; i++) {
+                final ViewHolder holder = cache.get(i);
+                if (holder.mPosition == position &&
+                        !holder.hasFlags(ViewHolder.FLAG_INVALID | ViewHolder.FLAG_REMATCH |
+                                ViewHolder.FLAG_REMOVED)) {
+                    cache.remove(i);
+                    return holder;
+                }
+            }
+            return null;
+        }
+
+        @Nullable
+        private ViewHolder getScrapOrCachedViewForId(long id, int type) {
+            final ArrayList<ViewHolder> scrap = mAttachedScrap;
+            for (int i = 0, count = scrap.size(); i < count; i++) {
+                final ViewHolder holder = scrap.get(i);
+                if (holder.mItemId == id && holder.mItemViewType == type &&
+                        !holder.hasFlags(ViewHolder.FLAG_REMOVED)) {
+                    scrap.remove(i);
+                    // found where it belongs
+                    holder.mFlags &= ~ViewHolder.FLAG_REMATCH;
+                    return holder;
+                }
+            }
+            final ArrayList<ViewHolder> cache = mCachedViews;
+            for (int i = 0, count = cache.size(); i < count; i++) {
+                final ViewHolder holder = cache.get(i);
+                if (holder.mItemId == id && holder.mItemViewType == type &&
+                        !holder.hasFlags(ViewHolder.FLAG_REMOVED)) {
+                    cache.remove(i);
+                    holder.mFlags &= ~ViewHolder.FLAG_REMATCH;
+                    return holder;
+                }
+            }
+            return null;
+        }
+
+        boolean isCachedForPosition(int position) {
+            final ArrayList<ViewHolder> cache = mCachedViews;
+            for (int i = 0, count = cache.size(); i < count; i++) {
+                final ViewHolder holder = cache.get(i);
+                if (holder.mPosition == position && holder.isValidForPosition()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Detaches all children into the scrap, so that the layout manager can lay them
+         * out again without binding.
+         */
+        void scrapAttachedViews() {
+            for (int i = getChildCount() - 1; i >= 0; i--) {
+                final View child = getChildAt(i);
+                final ViewHolder holder = getChildViewHolder(child);
+                detachViewFromParent(i);
+                holder.mFlags |= ViewHolder.FLAG_SCRAP;
+                mAttachedScrap.add(holder);
+            }
+        }
+
+        /**
+         * Adds the view of a holder to the list at the given index, attaching it again
+         * if it was detached during this layout.
+         */
+        void addView(@NonNull View child, int index) {
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            final ViewHolder holder = lp.mViewHolder;
+            if (holder.hasFlags(ViewHolder.FLAG_SCRAP)) {
+                holder.mFlags &= ~ViewHolder.FLAG_SCRAP;
+                attachViewToParent(child, index, lp);
+            } else {
+                addViewInLayout(child, index, lp, true);
+            }
+        }
+
+        /**
+         * Recycles the views left in the scrap after a layout.
+         */
+        void clearScrap() {
+            final ArrayList<ViewHolder> scrap = mAttachedScrap;
+            for (int i = scrap.size() - 1; i >= 0; i--) {
+                final ViewHolder holder = scrap.get(i);
+                holder.mFlags &= ~ViewHolder.FLAG_SCRAP;
+                removeDetachedView(holder.itemView, false);
+                recycleViewHolder(holder);
+            }
+            scrap.clear();
+        }
+
+        /**
+         * Removes a child from the list and recycles it.
+         */
+        public void removeAndRecycleView(@NonNull View child) {
+            final ViewHolder holder = getChildViewHolder(child);
+            removeViewInLayout(child);
+            recycleViewHolder(holder);
+        }
+
+        /**
+         * Recycles a holder whose view is not attached. Valid holders are cached by
+         * position, the others go to the pool.
+         */
+        void recycleViewHolder(@NonNull ViewHolder holder) {
+            if (holder.hasFlags(ViewHolder.FLAG_BOUND) &&
+                    !holder.hasFlags(ViewHolder.FLAG_INVALID | ViewHolder.FLAG_REMOVED) &&
+                    mViewCacheMax + mPrefetchMax > 0) {
+                mCachedViews.add(holder);
+                trimCache();
+            } else {
+                addViewHolderToPool(holder);
+            }
+        }
+
+        private void trimCache() {
+            final int max = mViewCacheMax + mPrefetchMax;
+            while (mCachedViews.size() > max) {
+                // the oldest one that is not waiting to scroll in
+                int index = 0;
+                for (int i = 0, count = mCachedViews.size(); i < count; i++) {
+                    if (!isPrefetchPosition(mCachedViews.get(i).mPosition)) {
+                        index = i;
+                        break;
+                    }
+                }
+                addViewHolderToPool(mCachedViews.remove(index));
+            }
+        }
+
+        private boolean isPrefetchPosition(int position) {
+            final int[] positions = mPrefetchPositions;
+            for (int i = 0; i < mPrefetchMax; i++) {
+                if (positions[i] == position) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void addViewHolderToPool(@NonNull ViewHolder holder) {
+            if (mAdapter != null) {
+                mAdapter.dispatchViewRecycled(holder);
+            }
+            getRecycledViewPool().putRecycledView(holder);
+        }
+
+        void clearCache() {
+            for (int i = mCachedViews.size() - 1; i >= 0; i--) {
+                addViewHolderToPool(mCachedViews.get(i));
+            }
+            mCachedViews.clear();
+        }
+
+        void markCachedViews(int flag) {
+            if (flag == ViewHolder.FLAG_INVALID) {
+                clearCache();
+            } else {
+                for (int i = 0, count = mCachedViews.size(); i < count; i++) {
+                    mCachedViews.get(i).mFlags |= flag;
+                }
+            }
+        }
+
+        void markCachedRangeUpdated(int start, int end) {
+            for (int i = 0, count = mCachedViews.size(); i < count; i++) {
+                final ViewHolder holder = mCachedViews.get(i);
+                if (holder.mPosition >= start && holder.mPosition < end) {
+                    holder.mFlags |= ViewHolder.FLAG_UPDATE;
+                }
+            }
+        }
+
+        void offsetCachedPositions(int start, int count) {
+            for (int i = 0, size = mCachedViews.size(); i < size; i++) {
+                final ViewHolder holder = mCachedViews.get(i);
+                if (holder.mPosition >= start) {
+                    holder.mPosition += count;
+                }
+            }
+        }
+
+        void removeCachedRange(int start, int end) {
+            for (int i = mCachedViews.size() - 1; i >= 0; i--) {
+                final ViewHolder holder = mCachedViews.get(i);
+                if (holder.mPosition >= end) {
+                    holder.mPosition -= end - start;
+                } else if (holder.mPosition >= start) {
+                    holder.mFlags |= ViewHolder.FLAG_REMOVED;
+                    addViewHolderToPool(mCachedViews.remove(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Positions the rows of a {@link RecyclerView}. Layout managers add the rows that
+     * become visible and recycle the rows that are no longer visible, with the help
+     * of a {@link Recycler}.
+     */
+    public abstract static class LayoutManager {
+
+        RecyclerView mRecyclerView;
+
+        /**
+         * Lays out all rows from an anchor. All children have been detached into the
+         * scrap of the recycler, the rows that are added again are not bound again.
+         * Subclasses call {@link #addView(View, int)} for the rows they keep.
+         *
+         * @param recycler the recycler
+         */
+        public abstract void onLayoutChildren(@NonNull Recycler recycler);
+
+        /**
+         * Scrolls by the given distance, adds the rows that scroll in and recycles
+         * the rows that scroll out.
+         *
+         * @param dy       the distance, positive to scroll the content up
+         * @param recycler the recycler
+         * @return the distance actually scrolled
+         */
+        public abstract int scrollVerticallyBy(int dy, @NonNull Recycler recycler);
+
+        /**
+         * Collects the positions that will scroll in next, after a scroll by the given
+         * distance, nearest first. They are created and bound in the time left in the frame.
+         *
+         * @param dy        the last scroll distance
+         * @param positions receives the positions
+         * @return the number of positions
+         */
+        public int collectPrefetchPositions(int dy, @NonNull int[] positions) {
+            return 0;
+        }
+
+        /**
+         * Scrolls to show the given position at the top, on the next layout.
+         */
+        public void scrollToPosition(int position) {
+        }
+
+        public abstract boolean canScrollVertically(int direction);
+
+        public int computeVerticalScrollRange() {
+            return 0;
+        }
+
+        public int computeVerticalScrollOffset() {
+            return 0;
+        }
+
+        public int computeVerticalScrollExtent() {
+            return 0;
+        }
+
+        @Nullable
+        public RecyclerView getRecyclerView() {
+            return mRecyclerView;
+        }
+
+        public int getItemCount() {
+            final RecyclerView rv = mRecyclerView;
+            return rv != null && rv.mAdapter != null ? rv.mAdapter.getItemCount() : 0;
+        }
+
+        public int getChildCount() {
+            return mRecyclerView != null ? mRecyclerView.getChildCount() : 0;
+        }
+
+        @Nullable
+        public View getChildAt(int index) {
+            return mRecyclerView != null ? mRecyclerView.getChildAt(index) : null;
+        }
+
+        /**
+         * @return the adapter position of the given child
+         */
+        public int getPosition(@NonNull View child) {
+            return ((LayoutParams) child.getLayoutParams()).getViewAdapterPosition();
+        }
+
+        /**
+         * @return whether the item of the given child has been removed from the adapter
+         */
+        public boolean isRemoved(@NonNull View child) {
+            final ViewHolder holder = ((LayoutParams) child.getLayoutParams()).mViewHolder;
+            return holder != null && holder.hasFlags(ViewHolder.FLAG_REMOVED);
+        }
+
+        /**
+         * Adds a row view from {@link Recycler#getViewForPosition(int)} without requesting
+         * a layout.
+         *
+         * @param child the row view
+         * @param index the child index, or -1 to add last
+         */
+        public void addView(@NonNull View child, int index) {
+            mRecyclerView.mRecycler.addView(child, index);
+        }
+
+        /**
+         * Detaches all children into the scrap of the recycler, then
+         * {@link Recycler#getViewForPosition(int)} returns them without binding.
+         */
+        public void detachAndScrapAttachedViews(@NonNull Recycler recycler) {
+            recycler.scrapAttachedViews();
+        }
+
+        /**
+         * Recycles the children that were detached and not added again.
+         */
+        public void removeAndRecycleScrap(@NonNull Recycler recycler) {
+            recycler.clearScrap();
+        }
+
+        /**
+         * Moves all children vertically.
+         */
+        public void offsetChildrenVertical(int dy) {
+            mRecyclerView.offsetChildrenTopAndBottom(dy);
+        }
+
+        public int getWidth() {
+            return mRecyclerView != null ? mRecyclerView.getWidth() : 0;
+        }
+
+        public int getHeight() {
+            return mRecyclerView != null ? mRecyclerView.getHeight() : 0;
+        }
+
+        public int getPaddingLeft() {
+            return mRecyclerView != null ? mRecyclerView.getPaddingLeft() : 0;
+        }
+
+        public int getPaddingTop() {
+            return mRecyclerView != null ? mRecyclerView.getPaddingTop() : 0;
+        }
+
+        public int getPaddingRight() {
+            return mRecyclerView != null ? mRecyclerView.getPaddingRight() : 0;
+        }
+
+        public int getPaddingBottom() {
+            return mRecyclerView != null ? mRecyclerView.getPaddingBottom() : 0;
+        }
+
+        public void requestLayout() {
+            if (mRecyclerView != null) {
+                mRecyclerView.requestLayout();
+            }
+        }
+    }
+}
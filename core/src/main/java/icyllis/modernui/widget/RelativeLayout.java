@@ -20,8 +20,6 @@ package icyllis.modernui.widget;
 
 import icyllis.modernui.core.Context;
 import icyllis.modernui.graphics.Rect;
-import icyllis.modernui.util.ArrayMap;
-import icyllis.modernui.util.Pools;
 import icyllis.modernui.util.SparseArray;
 import icyllis.modernui.view.Gravity;
 import icyllis.modernui.view.MeasureSpec;
@@ -30,8 +28,8 @@ import icyllis.modernui.view.ViewGroup;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * A Layout where the positions of the children can be described in relation to each other or to the
@@ -295,11 +293,7 @@ public class RelativeLayout extends ViewGroup {
         }
 
         final DependencyGraph graph = mGraph;
-        graph.clear();
-
-        for (int i = 0; i < count; i++) {
-            graph.add(getChildAt(i));
-        }
+        graph.set(this);
 
         graph.getSortedViews(mSortedVerticalChildren, RULES_VERTICAL);
         graph.getSortedViews(mSortedHorizontalChildren, RULES_HORIZONTAL);
@@ -309,7 +303,11 @@ public class RelativeLayout extends ViewGroup {
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         if (mDirtyHierarchy) {
             mDirtyHierarchy = false;
-            sortChildren();
+            // requestLayout() marks the hierarchy dirty, but the children and their
+            // rules rarely change, in which case the last sort is still valid
+            if (!mGraph.isUpToDate(this)) {
+                sortChildren();
+            }
         }
 
         int myWidth = -1;
@@ -1050,6 +1048,12 @@ public class RelativeLayout extends ViewGroup {
 
         private boolean mRulesChanged = false;
 
+        /**
+         * Incremented when the rules change, so that the parent can tell
+         * whether the children need to be sorted again.
+         */
+        private int mRulesVersion;
+
         /**
          * When true, uses the parent as the anchor if the anchor doesn't exist or if
          * the anchor's visibility is GONE.
@@ -1138,6 +1142,7 @@ public class RelativeLayout extends ViewGroup {
             mRules[verb] = subject;
             mInitialRules[verb] = subject;
             mRulesChanged = true;
+            mRulesVersion++;
         }
 
         /**
@@ -1255,6 +1260,7 @@ public class RelativeLayout extends ViewGroup {
 
             mRulesChanged = false;
             mNeedsLayoutResolution = false;
+            mRulesVersion++;
         }
 
         /**
@@ -1311,9 +1317,10 @@ public class RelativeLayout extends ViewGroup {
     private static class DependencyGraph {
 
         /**
-         * List of all views in the graph.
+         * List of all views in the graph, the nodes are reused across rebuilds.
          */
         private final ArrayList<Node> mNodes = new ArrayList<>();
+        private int mNodeCount;
 
         /**
          * List of nodes in the graph. Each node is identified by its
@@ -1322,38 +1329,91 @@ public class RelativeLayout extends ViewGroup {
         private final SparseArray<Node> mKeyNodes = new SparseArray<>();
 
         /**
-         * Temporary data structure used to build the list of roots
-         * for this graph.
+         * The children, their layout params, ids and rule versions that the graph
+         * was built from, used to tell whether the sorted views are still valid.
          */
-        private final ArrayDeque<Node> mRoots = new ArrayDeque<>();
+        private View[] mViews = new View[0];
+        private LayoutParams[] mParams = new LayoutParams[0];
+        private int[] mIds = new int[0];
+        private int[] mVersions = new int[0];
 
         /**
-         * Clears the graph.
+         * Primitive adjacency lists, the dependents of node i are
+         * mDependents[mOffsets[i]] to mDependents[mOffsets[i + 1] - 1], mInDegrees[i]
+         * is the number of distinct nodes that node i depends on.
          */
-        void clear() {
-            for (Node node : mNodes) {
-                node.release();
-            }
-            mNodes.clear();
+        private int[] mOffsets = new int[1];
+        private int[] mDependents = new int[0];
+        private int[] mInDegrees = new int[0];
+        // edges from mEdgeFrom[k] to mEdgeTo[k] before grouping
+        private int[] mEdgeFrom = new int[0];
+        private int[] mEdgeTo = new int[0];
+        private int[] mStack = new int[0];
 
-            mKeyNodes.clear();
-            mRoots.clear();
+        /**
+         * Returns whether the graph was built from the same children in the same order,
+         * with the same ids, layout params and rules.
+         */
+        boolean isUpToDate(@Nonnull ViewGroup parent) {
+            final int count = parent.getChildCount();
+            if (count != mNodeCount) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                final View child = parent.getChildAt(i);
+                final LayoutParams params = (LayoutParams) child.getLayoutParams();
+                if (child != mViews[i] || params != mParams[i] ||
+                        child.getId() != mIds[i] || params.mRulesVersion != mVersions[i]) {
+                    return false;
+                }
+            }
+            return true;
         }
 
         /**
-         * Adds a view to the graph.
-         *
-         * @param view The view to be added as a node to the graph.
+         * Rebuilds the graph from the children of the given parent.
          */
-        void add(@Nonnull View view) {
-            final int id = view.getId();
-            final Node node = Node.acquire(view);
-
-            if (id != View.NO_ID) {
-                mKeyNodes.put(id, node);
+        void set(@Nonnull ViewGroup parent) {
+            final int count = parent.getChildCount();
+            if (mViews.length < count) {
+                final int capacity = Math.max(count, mViews.length + (mViews.length >> 1));
+                mViews = new View[capacity];
+                mParams = new LayoutParams[capacity];
+                mIds = new int[capacity];
+                mVersions = new int[capacity];
+                mOffsets = new int[capacity + 1];
+                mInDegrees = new int[capacity];
+                mStack = new int[capacity];
+            } else if (count < mNodeCount) {
+                // do not keep removed views alive
+                Arrays.fill(mViews, count, mNodeCount, null);
+                Arrays.fill(mParams, count, mNodeCount, null);
             }
-
-            mNodes.add(node);
+            mKeyNodes.clear();
+            for (int i = mNodeCount; i < count; i++) {
+                if (i == mNodes.size()) {
+                    mNodes.add(new Node());
+                }
+            }
+            for (int i = count; i < mNodeCount; i++) {
+                mNodes.get(i).view = null;
+            }
+            for (int i = 0; i < count; i++) {
+                final View child = parent.getChildAt(i);
+                final LayoutParams params = (LayoutParams) child.getLayoutParams();
+                final int id = child.getId();
+                final Node node = mNodes.get(i);
+                node.view = child;
+                node.index = i;
+                if (id != View.NO_ID) {
+                    mKeyNodes.put(id, node);
+                }
+                mViews[i] = child;
+                mParams[i] = params;
+                mIds[i] = id;
+                mVersions[i] = params.mRulesVersion;
+            }
+            mNodeCount = count;
         }
 
         /**
@@ -1367,94 +1427,111 @@ public class RelativeLayout extends ViewGroup {
          * @param rules  The list of rules to take into account.
          */
         void getSortedViews(View[] sorted, int... rules) {
-            final ArrayDeque<Node> roots = findRoots(rules);
-            int index = 0;
+            final int count = mNodeCount;
+            buildEdges(rules);
 
-            Node node;
-            while ((node = roots.pollLast()) != null) {
-                final View view = node.view;
-                final int key = view.getId();
+            final int[] offsets = mOffsets;
+            final int[] dependents = mDependents;
+            final int[] inDegrees = mInDegrees;
+            final int[] stack = mStack;
+            int top = 0;
 
-                sorted[index++] = view;
-
-                final ArrayMap<Node, DependencyGraph> dependents = node.dependents;
-                final int count = dependents.size();
-                for (int i = 0; i < count; i++) {
-                    final Node dependent = dependents.keyAt(i);
-                    final SparseArray<Node> dependencies = dependent.dependencies;
+            // Finds all the roots in the graph: all nodes with no dependencies,
+            // the last one is processed first
+            for (int i = 0; i < count; i++) {
+                if (inDegrees[i] == 0) stack[top++] = i;
+            }
 
-                    dependencies.remove(key);
-                    if (dependencies.size() == 0) {
-                        roots.add(dependent);
+            int index = 0;
+            while (top > 0) {
+                final int node = stack[--top];
+                sorted[index++] = mViews[node];
+
+                for (int k = offsets[node], end = offsets[node + 1]; k < end; k++) {
+                    final int dependent = dependents[k];
+                    if (--inDegrees[dependent] == 0) {
+                        stack[top++] = dependent;
                     }
                 }
             }
 
-            if (index < sorted.length) {
+            if (index < count) {
                 throw new IllegalStateException("Circular dependencies cannot exist"
                         + " in RelativeLayout");
             }
         }
 
         /**
-         * Finds the roots of the graph. A root is a node with no dependency and
-         * with [0..n] dependents.
+         * Builds the adjacency lists for the given rules.
          *
          * @param rulesFilter The list of rules to consider when building the
          *                    dependencies
-         * @return A list of node, each being a root of the graph
          */
-        @Nonnull
-        private ArrayDeque<Node> findRoots(int[] rulesFilter) {
-            final ArrayList<Node> nodes = mNodes;
-
-            // Find roots can be invoked several times, so make sure to clear
-            // all dependents and dependencies before running the algorithm
-            for (final Node node : nodes) {
-                node.dependents.clear();
-                node.dependencies.clear();
+        private void buildEdges(int[] rulesFilter) {
+            final int count = mNodeCount;
+            final int maxEdges = count * rulesFilter.length;
+            if (mEdgeFrom.length < maxEdges) {
+                mEdgeFrom = new int[maxEdges];
+                mEdgeTo = new int[maxEdges];
+                mDependents = new int[maxEdges];
             }
+            final int[] edgeFrom = mEdgeFrom;
+            final int[] edgeTo = mEdgeTo;
+            final int[] offsets = mOffsets;
+            final int[] inDegrees = mInDegrees;
+            Arrays.fill(offsets, 0, count + 1, 0);
 
-            // Builds up the dependents and dependencies for each node of the graph
-            for (final Node node : nodes) {
-                final LayoutParams layoutParams = (LayoutParams) node.view.getLayoutParams();
-                final int[] rules = layoutParams.mRules;
+            int numEdges = 0;
+            for (int i = 0; i < count; i++) {
+                final int[] rules = mParams[i].mRules;
+                final int first = numEdges;
 
                 // Look only the rules passed in parameter, this way we build only the
                 // dependencies for a specific set of rules
-                for (int i : rulesFilter) {
-                    final int rule = rules[i];
+                for (int verb : rulesFilter) {
+                    final int rule = rules[verb];
                     if (rule != NO_ID) {
                         // The node this node depends on
                         final Node dependency = mKeyNodes.get(rule);
                         // Skip unknowns and self dependencies
-                        if (dependency == null || dependency == node) {
+                        if (dependency == null || dependency.index == i) {
                             continue;
                         }
-                        // Add the current node as a dependent
-                        dependency.dependents.put(node, this);
-                        // Add a dependency to the current node
-                        node.dependencies.put(rule, dependency);
+                        // Depend on each node once
+                        boolean duplicate = false;
+                        for (int k = first; k < numEdges; k++) {
+                            if (edgeFrom[k] == dependency.index) {
+                                duplicate = true;
+                                break;
+                            }
+                        }
+                        if (!duplicate) {
+                            edgeFrom[numEdges] = dependency.index;
+                            edgeTo[numEdges] = i;
+                            numEdges++;
+                            offsets[dependency.index + 1]++;
+                        }
                     }
                 }
+                inDegrees[i] = numEdges - first;
             }
 
-            final ArrayDeque<Node> roots = mRoots;
-            roots.clear();
-
-            // Finds all the roots in the graph: all nodes with no dependencies
-            for (final Node node : nodes) {
-                if (node.dependencies.isEmpty()) roots.addLast(node);
+            // Group the edges by their dependency
+            for (int i = 0; i < count; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            final int[] dependents = mDependents;
+            // use the stack as write cursors, it's not in use yet
+            final int[] cursors = mStack;
+            System.arraycopy(offsets, 0, cursors, 0, count);
+            for (int k = 0; k < numEdges; k++) {
+                dependents[cursors[edgeFrom[k]]++] = edgeTo[k];
             }
-
-            return roots;
         }
 
         /**
-         * A node in the dependency graph. A node is a view, its list of dependencies
-         * and its list of dependents.
-         * <p>
-         * A node with no dependent is considered a root of the graph.
+         * A node in the dependency graph, which identifies a child view by its id.
+         * The edges are stored in the graph.
          */
         static class Node {
 
@@ -1467,37 +1544,9 @@ public class RelativeLayout extends ViewGroup {
             View view;
 
             /**
-             * The list of dependents for this node; a dependent is a node
-             * that needs this node to be processed first.
-             */
-            final ArrayMap<Node, DependencyGraph> dependents = new ArrayMap<>();
-
-            /**
-             * The list of dependencies for this node.
+             * The index of the view in the parent.
              */
-            final SparseArray<Node> dependencies = new SparseArray<>();
-
-            // The pool is static, so all nodes instances are shared across
-            // activities, that's why we give it a rather high limit
-            private static final Pools.Pool<Node> sPool = Pools.newSynchronizedPool(100);
-
-            @Nonnull
-            static Node acquire(View view) {
-                Node node = sPool.acquire();
-                if (node == null) {
-                    node = new Node();
-                }
-                node.view = view;
-                return node;
-            }
-
-            void release() {
-                view = null;
-                dependents.clear();
-                dependencies.clear();
-
-                sPool.release(this);
-            }
+            int index;
         }
     }
 }
@@ -37,6 +37,7 @@ import it.unimi.dsi.fastutil.floats.FloatArrayList;
 import org.jetbrains.annotations.VisibleForTesting;
 
 import java.util.*;
+import java.util.concurrent.Executor;
 
 /**
  * A user interface element that displays text to the user. To provide user-editable text,
@@ -158,6 +159,9 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
     private int mLineBreakStyle = DEFAULT_LINE_BREAK_STYLE;
     @LineBreakConfig.LineBreakWordStyle
     private int mLineBreakWordStyle = DEFAULT_LINE_BREAK_WORD_STYLE;
+    @Nullable
+    private Executor mLayoutExecutor;
+    private boolean mIncrementalLayout;
 
     // True if fallback fonts that end up getting used should be allowed to affect line spacing.
     boolean mUseFallbackLineSpacing = true;
@@ -1223,6 +1227,67 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
         return mLineBreakWordStyle;
     }
 
+    /**
+     * Set the executor to measure and break paragraphs of static text layouts concurrently.
+     * Layouts are still created on the UI thread, which waits for the executor, but the time
+     * is divided by the parallelism. This is useful for text with a large number of paragraphs,
+     * such as logs. The executor must not be the UI thread executor.
+     * <p>
+     * This has no effect on editable or selectable text, see {@link StaticLayout.Builder#setExecutor}.
+     * The default is {@code null}, indicating paragraphs are processed sequentially.
+     *
+     * @param executor the executor to process paragraphs, or null
+     */
+    public void setTextLayoutExecutor(@Nullable Executor executor) {
+        if (mLayoutExecutor != executor) {
+            mLayoutExecutor = executor;
+            if (mLayout != null) {
+                nullLayouts();
+                requestLayout();
+                invalidate();
+            }
+        }
+    }
+
+    /**
+     * Set whether to lay out editable or selectable text incrementally. If set, only the
+     * visible part of large text is laid out when it is set, pasted or drawn, and the height
+     * of the rest is estimated. This keeps editing of huge documents responsive.
+     * The default is {@code false}.
+     *
+     * @param incremental whether to lay out text incrementally
+     * @see DynamicLayout.Builder#setIncremental(boolean)
+     */
+    public void setIncrementalLayout(boolean incremental) {
+        if (mIncrementalLayout != incremental) {
+            mIncrementalLayout = incremental;
+            if (mLayout != null) {
+                nullLayouts();
+                requestLayout();
+                invalidate();
+            }
+        }
+    }
+
+    /**
+     * Returns whether editable or selectable text is laid out incrementally.
+     *
+     * @return the value set by {@link #setIncrementalLayout(boolean)}
+     */
+    public boolean isIncrementalLayout() {
+        return mIncrementalLayout;
+    }
+
+    /**
+     * Returns the executor to process paragraphs of text layouts concurrently.
+     *
+     * @return the executor set by {@link #setTextLayoutExecutor}, or null
+     */
+    @Nullable
+    public Executor getTextLayoutExecutor() {
+        return mLayoutExecutor;
+    }
+
     /**
      * Gets the parameters for text layout pre-computation, for use with {@link PrecomputedText}.
      *
@@ -2587,6 +2652,12 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
         }
         canvas.translate(compoundPaddingLeft, extendedPaddingTop + vOffsetText);
 
+        if (layout instanceof DynamicLayout dynamicLayout &&
+                dynamicLayout.layoutVisibleBlocks(canvas)) {
+            // estimated heights were replaced
+            requestLayout();
+        }
+
         final long range = layout.getLineRangeForDraw(canvas);
         if (range >= 0) {
             int firstLine = (int) (range >>> 32);
@@ -2891,7 +2962,8 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
                     .setIncludePad(mIncludePad)
                     .setFallbackLineSpacing(mUseFallbackLineSpacing)
                     .setEllipsize(mBufferType != BufferType.EDITABLE ? effectiveEllipsize : null)
-                    .setEllipsizedWidth(ellipsisWidth);
+                    .setEllipsizedWidth(ellipsisWidth)
+                    .setIncremental(mIncrementalLayout);
             result = builder.build();
         } else {
             if (boring == UNKNOWN_BORING) {
@@ -2941,7 +3013,8 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
                     .setFallbackLineSpacing(mUseFallbackLineSpacing)
                     .setMaxLines(mMaxMode == LINES ? mMaximum : Integer.MAX_VALUE)
                     .setLineBreakConfig(LineBreakConfig.getLineBreakConfig(
-                            mLineBreakStyle, mLineBreakWordStyle));
+                            mLineBreakStyle, mLineBreakWordStyle))
+                    .setExecutor(mLayoutExecutor);
             if (shouldEllipsize) {
                 builder.setEllipsize(effectiveEllipsize)
                         .setEllipsizedWidth(ellipsisWidth);
@@ -2965,6 +3038,16 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
             }
         }
 
+        // a pending block of an incremental layout is one line of many paragraphs,
+        // the text must be measured instead
+        if (layout instanceof DynamicLayout dynamic) {
+            for (int i = 0; i < n; i++) {
+                if (dynamic.isLinePending(i)) {
+                    return -1;
+                }
+            }
+        }
+
         for (int i = 0; i < n; i++) {
             max = Math.max(max, layout.getLineMax(i));
         }
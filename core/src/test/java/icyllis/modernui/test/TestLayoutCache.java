@@ -0,0 +1,95 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.test;
+
+import icyllis.modernui.graphics.text.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Locale;
+
+/**
+ * Measures {@link LayoutCache#getOrCreate} with cache hits, contended by 1, 4 and 16 threads.
+ */
+@Fork(2)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class TestLayoutCache {
+
+    public static final String[] WORDS = {
+            "Modern", "UI", "text", "layout", "cache", "lookup", "without", "allocation",
+            "Hello", "world", "the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog"
+    };
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TestLayoutCache.class.getSimpleName())
+                .jvmArgs("-XX:+UseZGC", "-XX:+ZGenerational")
+                .shouldFailOnError(true).shouldDoGC(true)
+                .build())
+                .run();
+    }
+
+    private char[][] mWords;
+    private FontPaint mPaint;
+    private int mIndex;
+
+    @Setup
+    public void setup() {
+        mWords = new char[WORDS.length][];
+        for (int i = 0; i < WORDS.length; i++) {
+            mWords[i] = WORDS[i].toCharArray();
+        }
+        mPaint = new FontPaint();
+        mPaint.setFont(new FontCollection(FontFamily.SANS_SERIF));
+        mPaint.setLocale(Locale.ROOT);
+        mPaint.setFontSize(16);
+        // populate the cache, so that we measure the lookup path
+        for (char[] word : mWords) {
+            LayoutCache.getOrCreate(word, 0, word.length, 0, word.length, false, mPaint, 0);
+        }
+    }
+
+    private LayoutPiece lookup() {
+        char[] word = mWords[mIndex++ % mWords.length];
+        return LayoutCache.getOrCreate(word, 0, word.length, 0, word.length, false, mPaint, 0);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void threads1(Blackhole blackhole) {
+        blackhole.consume(lookup());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void threads4(Blackhole blackhole) {
+        blackhole.consume(lookup());
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void threads16(Blackhole blackhole) {
+        blackhole.consume(lookup());
+    }
+}
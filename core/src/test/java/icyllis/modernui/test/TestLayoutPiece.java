@@ -0,0 +1,81 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.test;
+
+import icyllis.modernui.graphics.text.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * Measures {@link LayoutPiece} creation with the AWT glyph vector path and the
+ * {@link icyllis.modernui.graphics.text.TrueTypeFont} table path, on cache misses.
+ * <p>
+ * Pass the font file with -Dmodernui.test.font=path/to/font.ttf
+ */
+@Fork(2)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class TestLayoutPiece {
+
+    public static final String TEXT = "The quick brown fox jumps over the lazy dog. " +
+            "Modern UI lays out text in pieces, each piece is a run of one font. " +
+            "AVA, Tomorrow, WAVE, yelling; “quoted” — dashed …";
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TestLayoutPiece.class.getSimpleName())
+                .jvmArgs("-XX:+UseZGC", "-XX:+ZGenerational",
+                        "-Dmodernui.test.font=" + System.getProperty("modernui.test.font"))
+                .shouldFailOnError(true).shouldDoGC(true)
+                .build())
+                .run();
+    }
+
+    @Param({"false", "true"})
+    public boolean directShaping;
+
+    private char[] mText;
+    private FontPaint mPaint;
+
+    @Setup
+    public void setup() throws Exception {
+        mText = TEXT.toCharArray();
+        var family = FontFamily.createFamily(new File(System.getProperty("modernui.test.font")),
+                false, directShaping);
+        mPaint = new FontPaint();
+        mPaint.setFont(new FontCollection(family));
+        mPaint.setLocale(Locale.ROOT);
+        mPaint.setFontSize(16);
+    }
+
+    @Benchmark
+    public void create(Blackhole blackhole) {
+        // always miss
+        LayoutCache.clear();
+        blackhole.consume(LayoutCache.getOrCreate(mText, 0, mText.length, 0, mText.length,
+                false, mPaint, LayoutCache.COMPUTE_CLUSTER_ADVANCES | LayoutCache.COMPUTE_GLYPHS_PIXEL_BOUNDS));
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.test;
+
+import icyllis.modernui.annotation.NonNull;
+import icyllis.modernui.annotation.Nullable;
+import icyllis.modernui.core.Context;
+import icyllis.modernui.core.Looper;
+import icyllis.modernui.resources.Resources;
+import icyllis.modernui.view.*;
+import icyllis.modernui.widget.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+
+import static icyllis.modernui.view.ViewGroup.LayoutParams.MATCH_PARENT;
+import static icyllis.modernui.view.ViewGroup.LayoutParams.WRAP_CONTENT;
+
+/**
+ * Measures traversals of view trees built from the stock layouts, in a
+ * {@link VirtualWindowViewRoot}, so no window is needed.
+ * <p>
+ * Each container has {@link #mFanOut} children and the tree is {@link #mDepth} containers
+ * deep, the leaves are plain views with minimum sizes. {@link #mWrap} makes containers
+ * wrap their content, which chains measurement from the leaves to the root. For
+ * {@code linear_weight}, children share the space by weights, which measures them twice.
+ * For {@code list}, the root is a list view whose items are linear layouts one level
+ * shallower.
+ * <ul>
+ * <li>{@link #measureLayout()} forces a full measure and layout pass on every view.</li>
+ * <li>{@link #requestLayout()} requests layout on the deepest leaf and runs a frame.</li>
+ * <li>{@link #invalidate()} invalidates the deepest leaf and runs a frame, which draws
+ * the tree on the CPU.</li>
+ * </ul>
+ * The GC profiler reports the allocations per pass as {@code gc.alloc.rate.norm}.
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class TestLayoutTraversal {
+
+    public static final int WIDTH = 1280;
+    public static final int HEIGHT = 720;
+
+    // one frame at 60Hz
+    public static final long FRAME_INTERVAL_NANOS = 16_666_667;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TestLayoutTraversal.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .shouldFailOnError(true).shouldDoGC(true)
+                .build())
+                .run();
+    }
+
+    @Param({"linear", "linear_weight", "relative", "grid", "coordinator", "table", "list"})
+    public String mLayout;
+    @Param({"2", "4"})
+    public int mDepth;
+    @Param({"4", "8"})
+    public int mFanOut;
+    @Param({"false", "true"})
+    public boolean mWrap;
+
+    private final Context mContext = new Context() {
+        private final Resources mResources = new Resources();
+
+        @Override
+        public Resources getResources() {
+            return mResources;
+        }
+    };
+
+    private VirtualWindowViewRoot mRoot;
+    private View mHost;
+    private View mLeaf;
+    private View[] mViews;
+    private long mFrameTimeNanos;
+
+    private int mWidthSpec;
+    private int mHeightSpec;
+
+    @Setup
+    public void setup() {
+        // JMH runs the setup and the benchmark on the same thread
+        if (Looper.myLooper() == null) {
+            Looper.prepare();
+        }
+        if (mLayout.equals("list")) {
+            mHost = createList();
+        } else {
+            mHost = createTree(mDepth);
+        }
+        mRoot = new VirtualWindowViewRoot();
+        mRoot.setView(mHost);
+        mRoot.setFrame(WIDTH, HEIGHT);
+        nextFrame();
+
+        var views = new ArrayList<View>();
+        collect(mHost, views);
+        mViews = views.toArray(new View[0]);
+        // the last one is the deepest and the rightmost
+        mLeaf = mViews[mViews.length - 1];
+
+        mWidthSpec = MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY);
+        mHeightSpec = MeasureSpec.makeMeasureSpec(HEIGHT, MeasureSpec.EXACTLY);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mRoot.close();
+    }
+
+    private boolean nextFrame() {
+        mFrameTimeNanos += FRAME_INTERVAL_NANOS;
+        return mRoot.doFrame(mFrameTimeNanos);
+    }
+
+    @Benchmark
+    public View measureLayout() {
+        for (View view : mViews) {
+            view.forceLayout();
+        }
+        View host = mHost;
+        host.measure(mWidthSpec, mHeightSpec);
+        host.layout(0, 0, host.getMeasuredWidth(), host.getMeasuredHeight());
+        return host;
+    }
+
+    @Benchmark
+    public boolean requestLayout() {
+        mLeaf.requestLayout();
+        return nextFrame();
+    }
+
+    @Benchmark
+    public boolean invalidate() {
+        mLeaf.invalidate();
+        return nextFrame();
+    }
+
+    private static void collect(View view, ArrayList<View> out) {
+        out.add(view);
+        // for list views, these are the item views on screen
+        if (view instanceof ViewGroup group) {
+            for (int i = 0; i < group.getChildCount(); i++) {
+                collect(group.getChildAt(i), out);
+            }
+        }
+    }
+
+    private int containerSize() {
+        return mWrap ? WRAP_CONTENT : MATCH_PARENT;
+    }
+
+    @NonNull
+    private View createLeaf(int index) {
+        var leaf = new View(mContext);
+        // vary the sizes, so that wrap_content results differ between siblings
+        leaf.setMinimumWidth(24 + (index % 3) * 8);
+        leaf.setMinimumHeight(16 + (index % 2) * 8);
+        return leaf;
+    }
+
+    @NonNull
+    private View createChild(int depth, int index) {
+        return depth == 0 ? createLeaf(index) : createTree(depth);
+    }
+
+    @NonNull
+    private View createTree(int depth) {
+        int size = containerSize();
+        switch (mLayout) {
+            case "linear", "list" -> {
+                var layout = new LinearLayout(mContext);
+                layout.setOrientation(depth % 2 == 0 ? LinearLayout.VERTICAL : LinearLayout.HORIZONTAL);
+                for (int i = 0; i < mFanOut; i++) {
+                    layout.addView(createChild(depth - 1, i), new LinearLayout.LayoutParams(size, size));
+                }
+                return layout;
+            }
+            case "linear_weight" -> {
+                var layout = new LinearLayout(mContext);
+                boolean vertical = depth % 2 == 0;
+                layout.setOrientation(vertical ? LinearLayout.VERTICAL : LinearLayout.HORIZONTAL);
+                for (int i = 0; i < mFanOut; i++) {
+                    layout.addView(createChild(depth - 1, i), vertical
+                            ? new LinearLayout.LayoutParams(size, 0, 1)
+                            : new LinearLayout.LayoutParams(0, size, 1));
+                }
+                return layout;
+            }
+            case "relative" -> {
+                var layout = new RelativeLayout(mContext);
+                // a chain, each child is below the previous one, every other one is also
+                // to the right of it
+                for (int i = 0; i < mFanOut; i++) {
+                    var child = createChild(depth - 1, i);
+                    child.setId(i + 1);
+                    var params = new RelativeLayout.LayoutParams(size, WRAP_CONTENT);
+                    if (i > 0) {
+                        params.addRule(RelativeLayout.BELOW, i);
+                        if (i % 2 == 1) {
+                            params.addRule(RelativeLayout.RIGHT_OF, i);
+                        }
+                    }
+                    layout.addView(child, params);
+                }
+                return layout;
+            }
+            case "grid" -> {
+                var layout = new GridLayout(mContext);
+                layout.setColumnCount((int) Math.ceil(Math.sqrt(mFanOut)));
+                for (int i = 0; i < mFanOut; i++) {
+                    layout.addView(createChild(depth - 1, i));
+                }
+                return layout;
+            }
+            case "coordinator" -> {
+                var layout = new CoordinatorLayout(mContext);
+                for (int i = 0; i < mFanOut; i++) {
+                    layout.addView(createChild(depth - 1, i), new CoordinatorLayout.LayoutParams(size, size));
+                }
+                return layout;
+            }
+            case "table" -> {
+                var layout = new TableLayout(mContext);
+                // two cells per row
+                for (int i = 0; i < mFanOut; i += 2) {
+                    var row = new TableRow(mContext);
+                    row.addView(createChild(depth - 1, i));
+                    row.addView(createChild(depth - 1, i + 1));
+                    layout.addView(row);
+                }
+                return layout;
+            }
+            default -> throw new IllegalArgumentException(mLayout);
+        }
+    }
+
+    @NonNull
+    private View createList() {
+        var list = new ListView(mContext);
+        list.setAdapter(new BaseAdapter() {
+            @Override
+            public int getCount() {
+                return 200;
+            }
+
+            @Override
+            public Object getItem(int position) {
+                return position;
+            }
+
+            @Override
+            public long getItemId(int position) {
+                return position;
+            }
+
+            @NonNull
+            @Override
+            public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
+                if (convertView != null) {
+                    return convertView;
+                }
+                var item = createTree(mDepth - 1);
+                item.setLayoutParams(new AbsListView.LayoutParams(MATCH_PARENT, WRAP_CONTENT));
+                return item;
+            }
+        });
+        return list;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.test;
+
+import icyllis.modernui.core.Context;
+import icyllis.modernui.resources.Resources;
+import icyllis.modernui.view.MeasureSpec;
+import icyllis.modernui.view.View;
+
+/**
+ * Checks that {@link View#measure(int, int)} skips {@link View#onMeasure(int, int)} when
+ * a view is measured again with a spec pair it was measured with before, as parents do
+ * when they measure children with alternating specs, and that the skipped call is made
+ * before layout.
+ */
+public class TestMeasureCache {
+
+    static class CountingView extends View {
+
+        int mMeasureCount;
+
+        CountingView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            mMeasureCount++;
+            setMeasuredDimension(MeasureSpec.getSize(widthMeasureSpec) / 2,
+                    MeasureSpec.getSize(heightMeasureSpec) / 2);
+        }
+    }
+
+    public static void main(String[] args) {
+        var resources = new Resources();
+        var context = new Context() {
+            @Override
+            public Resources getResources() {
+                return resources;
+            }
+        };
+        final int wide = MeasureSpec.makeMeasureSpec(400, MeasureSpec.AT_MOST);
+        final int narrow = MeasureSpec.makeMeasureSpec(200, MeasureSpec.AT_MOST);
+        final int height = MeasureSpec.makeMeasureSpec(100, MeasureSpec.AT_MOST);
+
+        var view = new CountingView(context);
+        // a first pass clears the layout request
+        view.measure(wide, height);
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+        final int base = view.mMeasureCount;
+        View.resetAvoidedMeasureCount();
+
+        view.measure(narrow, height);
+        check(view.mMeasureCount == base + 1, "measure with other specs", view);
+
+        // the same spec pair as the first pass
+        view.measure(wide, height);
+        check(view.mMeasureCount == base + 1, "repeated measure called onMeasure()", view);
+        check(view.getMeasuredWidth() == 200 && view.getMeasuredHeight() == 50,
+                "cached size " + view.getMeasuredWidth() + "x" + view.getMeasuredHeight(), view);
+        check(View.getAvoidedMeasureCount() == 1, "avoided " + View.getAvoidedMeasureCount(), view);
+
+        // children are measured with the final specs before layout
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+        check(view.mMeasureCount == base + 2, "layout after cached measure", view);
+        check(View.getAvoidedMeasureCount() == 0, "avoided after layout " + View.getAvoidedMeasureCount(), view);
+
+        // with the cache disabled, every measure with changed specs calls onMeasure()
+        View.setMeasureCacheEnabled(false);
+        try {
+            view.measure(narrow, height);
+            view.measure(wide, height);
+            check(view.mMeasureCount == base + 4, "cache disabled", view);
+        } finally {
+            View.setMeasureCacheEnabled(true);
+        }
+
+        // a layout request clears the cache
+        view.requestLayout();
+        view.measure(narrow, height);
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+        view.measure(wide, height);
+        check(view.mMeasureCount == base + 6, "cached after requestLayout()", view);
+
+        System.out.println("OK");
+    }
+
+    static void check(boolean condition, String message, CountingView view) {
+        if (!condition) {
+            throw new AssertionError(message + ", onMeasure() calls: " + view.mMeasureCount);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.test;
+
+import icyllis.modernui.core.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures {@link Handler#sendMessage} throughput from 1 to 8 producer threads to
+ * a looper thread that handles them. Producers back off when the looper is behind
+ * by {@link #MAX_PENDING} messages, so this measures delivery, not queue growth.
+ */
+@Fork(2)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class TestMessageQueue {
+
+    public static final int MAX_PENDING = 1 << 16;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TestMessageQueue.class.getSimpleName())
+                .jvmArgs("-XX:+UseZGC", "-XX:+ZGenerational")
+                .shouldFailOnError(true).shouldDoGC(true)
+                .build())
+                .run();
+    }
+
+    private final AtomicInteger mPending = new AtomicInteger();
+    private Looper mLooper;
+    private Thread mThread;
+    private Handler mHandler;
+
+    @Setup
+    public void setup() {
+        // the time base of message queues
+        Core.initialize();
+        var looper = new CompletableFuture<Looper>();
+        mThread = new Thread(() -> {
+            looper.complete(Looper.prepare());
+            Looper.loop();
+        }, "Looper");
+        mThread.start();
+        mLooper = looper.join();
+        mHandler = new Handler(mLooper, msg -> {
+            mPending.decrementAndGet();
+            return true;
+        });
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        mLooper.quit();
+        mThread.join();
+    }
+
+    private void send() {
+        while (mPending.get() >= MAX_PENDING) {
+            Thread.onSpinWait();
+        }
+        mPending.incrementAndGet();
+        mHandler.sendMessage(Message.obtain());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void producers1() {
+        send();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void producers2() {
+        send();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void producers4() {
+        send();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void producers8() {
+        send();
+    }
+}
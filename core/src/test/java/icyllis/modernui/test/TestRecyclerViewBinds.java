@@ -0,0 +1,156 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.test;
+
+import icyllis.modernui.annotation.NonNull;
+import icyllis.modernui.core.Context;
+import icyllis.modernui.core.Looper;
+import icyllis.modernui.resources.Resources;
+import icyllis.modernui.view.View;
+import icyllis.modernui.view.ViewGroup;
+import icyllis.modernui.view.VirtualWindowViewRoot;
+import icyllis.modernui.widget.LinearLayout;
+import icyllis.modernui.widget.LinearLayoutManager;
+import icyllis.modernui.widget.RecyclerView;
+
+import static icyllis.modernui.view.ViewGroup.LayoutParams.MATCH_PARENT;
+
+/**
+ * Checks that a {@link RecyclerView} scrolling over a table of 1M rows, in a
+ * {@link VirtualWindowViewRoot}, prefetches the rows that scroll in. When it scrolls
+ * by at most a row per frame, at most one item is bound while scrolling in a frame,
+ * also for a grid, where a line of items scrolls in at once.
+ * <p>
+ * Frames are run on a virtual clock, the prefetch deadline is still measured in
+ * real time, see {@link icyllis.modernui.core.Choreographer#getFrameDeadlineNanos()}.
+ */
+public class TestRecyclerViewBinds {
+
+    public static final int ROWS = 1_000_000;
+    public static final int CELLS = 6;
+    public static final int ROW_HEIGHT = 32;
+
+    // one frame at 60Hz
+    public static final long FRAME_INTERVAL_NANOS = 16_666_667;
+
+    public static final int WARMUP_FRAMES = 60;
+    public static final int FRAMES = 600;
+
+    public static void main(String[] args) {
+        Looper.prepare();
+        long frameTimeNanos = 0;
+        for (int spans : new int[]{1, 4}) {
+            for (int step : new int[]{8, ROW_HEIGHT}) {
+                var list = createTable(createContext(), spans);
+                try (var root = new VirtualWindowViewRoot()) {
+                    root.setView(list);
+                    root.setFrame(1280, 720);
+                    root.doFrame(frameTimeNanos += FRAME_INTERVAL_NANOS);
+                    list.scrollToPosition(ROWS / 2);
+                    root.doFrame(frameTimeNanos += FRAME_INTERVAL_NANOS);
+                    // the first lines scroll in before anything is prefetched
+                    for (int i = 0; i < WARMUP_FRAMES; i++) {
+                        list.scrollVerticallyBy(step);
+                        root.doFrame(frameTimeNanos += FRAME_INTERVAL_NANOS);
+                    }
+                    list.resetBindStats();
+                    for (int i = 0; i < FRAMES; i++) {
+                        if (list.scrollVerticallyBy(step) != step) {
+                            throw new AssertionError("spans " + spans + ", step " + step +
+                                    ": reached the end");
+                        }
+                        root.doFrame(frameTimeNanos += FRAME_INTERVAL_NANOS);
+                    }
+                    System.out.printf("spans %d, step %d: scroll binds: %d, prefetch binds: %d, " +
+                                    "max scroll binds per frame: %d%n", spans, step,
+                            list.getScrollBindCount(), list.getPrefetchBindCount(),
+                            list.getMaxScrollBindsPerFrame());
+                    if (list.getMaxScrollBindsPerFrame() > 1) {
+                        throw new AssertionError("spans " + spans + ", step " + step +
+                                ": " + list.getMaxScrollBindsPerFrame() + " binds in a frame");
+                    }
+                    if (list.getPrefetchBindCount() == 0) {
+                        throw new AssertionError("spans " + spans + ", step " + step +
+                                ": nothing was prefetched");
+                    }
+                }
+            }
+        }
+        System.out.println("OK");
+    }
+
+    @NonNull
+    public static Context createContext() {
+        var resources = new Resources();
+        return new Context() {
+            @Override
+            public Resources getResources() {
+                return resources;
+            }
+        };
+    }
+
+    public static class RowHolder extends RecyclerView.ViewHolder {
+
+        final View[] mCells = new View[CELLS];
+
+        RowHolder(@NonNull LinearLayout row) {
+            super(row);
+            for (int i = 0; i < CELLS; i++) {
+                mCells[i] = row.getChildAt(i);
+            }
+        }
+    }
+
+    /**
+     * Creates a list of {@link #ROWS} rows, each one is a horizontal linear layout of
+     * {@link #CELLS} cells. With spans greater than 1, the table is laid out as a grid.
+     */
+    @NonNull
+    public static RecyclerView createTable(@NonNull Context context, int spans) {
+        var list = new RecyclerView(context);
+        list.setLayoutManager(new LinearLayoutManager(spans));
+        list.setAdapter(new RecyclerView.Adapter<RowHolder>() {
+            @NonNull
+            @Override
+            public RowHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+                var row = new LinearLayout(context);
+                row.setOrientation(LinearLayout.HORIZONTAL);
+                for (int i = 0; i < CELLS; i++) {
+                    row.addView(new View(context), new LinearLayout.LayoutParams(0, 24, 1));
+                }
+                row.setLayoutParams(new RecyclerView.LayoutParams(MATCH_PARENT, ROW_HEIGHT));
+                return new RowHolder(row);
+            }
+
+            @Override
+            public void onBindViewHolder(@NonNull RowHolder holder, int position) {
+                for (int i = 0; i < CELLS; i++) {
+                    holder.mCells[i].setMinimumWidth((position + i) % 7 * 4);
+                }
+            }
+
+            @Override
+            public int getItemCount() {
+                return ROWS;
+            }
+        });
+        return list;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.test;
+
+import icyllis.modernui.annotation.NonNull;
+import icyllis.modernui.core.Context;
+import icyllis.modernui.core.Looper;
+import icyllis.modernui.view.View;
+import icyllis.modernui.view.ViewGroup;
+import icyllis.modernui.view.VirtualWindowViewRoot;
+import icyllis.modernui.widget.LinearLayoutManager;
+import icyllis.modernui.widget.RecyclerView;
+
+import static icyllis.modernui.test.TestRecyclerViewBinds.*;
+import static icyllis.modernui.view.ViewGroup.LayoutParams.MATCH_PARENT;
+
+/**
+ * Checks that a {@link RecyclerView} scrolled after items were inserted or removed,
+ * before the next layout, as a fling step does, shows consecutive positions.
+ */
+public class TestRecyclerViewDataChanges {
+
+    static class CountAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+        final Context mContext;
+        int mCount = 1000;
+
+        CountAdapter(Context context) {
+            mContext = context;
+        }
+
+        @NonNull
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            var view = new View(mContext);
+            view.setLayoutParams(new RecyclerView.LayoutParams(MATCH_PARENT, ROW_HEIGHT));
+            return new RecyclerView.ViewHolder(view) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return mCount;
+        }
+    }
+
+    public static void main(String[] args) {
+        Looper.prepare();
+        long frameTimeNanos = 0;
+        var list = new RecyclerView(createContext());
+        var layout = new LinearLayoutManager();
+        list.setLayoutManager(layout);
+        var adapter = new CountAdapter(list.getContext());
+        list.setAdapter(adapter);
+        try (var root = new VirtualWindowViewRoot()) {
+            root.setView(list);
+            root.setFrame(1280, 720);
+            root.doFrame(frameTimeNanos += FRAME_INTERVAL_NANOS);
+            list.scrollToPosition(500);
+            root.doFrame(frameTimeNanos += FRAME_INTERVAL_NANOS);
+            check(list, layout, "initial");
+
+            // rows inserted above, then scrolled down before the layout
+            adapter.mCount += 3;
+            adapter.notifyItemRangeInserted(490, 3);
+            list.scrollVerticallyBy(ROW_HEIGHT * 2);
+            check(list, layout, "scroll down after insert");
+            root.doFrame(frameTimeNanos += FRAME_INTERVAL_NANOS);
+            check(list, layout, "layout after insert");
+
+            // rows removed above, then scrolled up before the layout
+            adapter.mCount -= 3;
+            adapter.notifyItemRangeRemoved(490, 3);
+            list.scrollVerticallyBy(-ROW_HEIGHT * 2);
+            check(list, layout, "scroll up after remove");
+            root.doFrame(frameTimeNanos += FRAME_INTERVAL_NANOS);
+            check(list, layout, "layout after remove");
+
+            // visible rows removed, then scrolled down before the layout
+            final int first = layout.findFirstVisibleItemPosition();
+            adapter.mCount -= 4;
+            adapter.notifyItemRangeRemoved(first + 2, 4);
+            list.scrollVerticallyBy(ROW_HEIGHT * 2);
+            check(list, layout, "scroll down after remove");
+        }
+        System.out.println("OK");
+    }
+
+    static void check(RecyclerView list, LinearLayoutManager layout, String message) {
+        final int first = layout.findFirstVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            throw new AssertionError(message + ": no rows");
+        }
+        for (int i = 0, count = list.getChildCount(); i < count; i++) {
+            final int position = list.getChildViewHolder(list.getChildAt(i)).getPosition();
+            if (position != first + i) {
+                throw new AssertionError(message + ": child " + i + " at position " + position +
+                        ", first position " + first);
+            }
+        }
+    }
+}
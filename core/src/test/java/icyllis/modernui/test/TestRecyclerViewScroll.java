@@ -0,0 +1,100 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.test;
+
+import icyllis.modernui.core.Looper;
+import icyllis.modernui.view.VirtualWindowViewRoot;
+import icyllis.modernui.widget.RecyclerView;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Scrolls a {@link RecyclerView} over a table of 1M rows, in a {@link VirtualWindowViewRoot},
+ * one frame per invocation. Each row is a horizontal linear layout of cells. With
+ * {@link #mSpans} greater than 1, the table is laid out as a grid.
+ * <p>
+ * {@link #scroll()} scrolls by {@link #mStep} pixels per frame, and the teardown prints
+ * how many rows were bound while scrolling, that is in the frame-critical path, against
+ * how many were prefetched after the frames. {@link TestRecyclerViewBinds} checks that
+ * the rows are prefetched in time.
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class TestRecyclerViewScroll {
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TestRecyclerViewScroll.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .shouldFailOnError(true).shouldDoGC(true)
+                .build())
+                .run();
+    }
+
+    @Param({"1", "4"})
+    public int mSpans;
+    @Param({"8", "40"})
+    public int mStep;
+
+    private VirtualWindowViewRoot mRoot;
+    private RecyclerView mList;
+    private long mFrameTimeNanos;
+    private int mDirection = 1;
+
+    @Setup
+    public void setup() {
+        if (Looper.myLooper() == null) {
+            Looper.prepare();
+        }
+        mList = TestRecyclerViewBinds.createTable(TestRecyclerViewBinds.createContext(), mSpans);
+        mRoot = new VirtualWindowViewRoot();
+        mRoot.setView(mList);
+        mRoot.setFrame(1280, 720);
+        nextFrame();
+        mList.scrollToPosition(TestRecyclerViewBinds.ROWS / 2);
+        nextFrame();
+        mList.resetBindStats();
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf("scroll binds: %d, prefetch binds: %d, max scroll binds per frame: %d%n",
+                mList.getScrollBindCount(), mList.getPrefetchBindCount(), mList.getMaxScrollBindsPerFrame());
+        mRoot.close();
+    }
+
+    private boolean nextFrame() {
+        mFrameTimeNanos += TestRecyclerViewBinds.FRAME_INTERVAL_NANOS;
+        return mRoot.doFrame(mFrameTimeNanos);
+    }
+
+    @Benchmark
+    public void scroll(Blackhole bh) {
+        if (mList.scrollVerticallyBy(mStep * mDirection) == 0) {
+            mDirection = -mDirection;
+        }
+        bh.consume(nextFrame());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.test;
+
+import icyllis.modernui.annotation.NonNull;
+import icyllis.modernui.core.Context;
+import icyllis.modernui.core.Looper;
+import icyllis.modernui.view.View;
+import icyllis.modernui.view.ViewGroup;
+import icyllis.modernui.view.VirtualWindowViewRoot;
+import icyllis.modernui.widget.LinearLayoutManager;
+import icyllis.modernui.widget.RecyclerView;
+
+import static icyllis.modernui.test.TestRecyclerViewBinds.*;
+import static icyllis.modernui.view.ViewGroup.LayoutParams.MATCH_PARENT;
+
+/**
+ * Checks that {@link RecyclerView.Adapter#notifyDataSetChanged()} with stable IDs only
+ * rebinds the rows whose version changed, also when rows moved.
+ */
+public class TestRecyclerViewStableIds {
+
+    public static final int COUNT = 1000;
+
+    static class StableAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+        final Context mContext;
+        final long[] mIds = new long[COUNT];
+        final long[] mVersions = new long[COUNT];
+        int mBindCount;
+
+        StableAdapter(Context context) {
+            mContext = context;
+            for (int i = 0; i < COUNT; i++) {
+                mIds[i] = i;
+            }
+            setHasStableIds(true);
+        }
+
+        @NonNull
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            var view = new View(mContext);
+            view.setLayoutParams(new RecyclerView.LayoutParams(MATCH_PARENT, ROW_HEIGHT));
+            return new RecyclerView.ViewHolder(view) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+            mBindCount++;
+        }
+
+        @Override
+        public int getItemCount() {
+            return COUNT;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return mIds[position];
+        }
+
+        @Override
+        public long getItemVersion(int position) {
+            return mVersions[position];
+        }
+    }
+
+    public static void main(String[] args) {
+        Looper.prepare();
+        long frameTimeNanos = 0;
+        var list = new RecyclerView(createContext());
+        list.setLayoutManager(new LinearLayoutManager());
+        var adapter = new StableAdapter(list.getContext());
+        list.setAdapter(adapter);
+        try (var root = new VirtualWindowViewRoot()) {
+            root.setView(list);
+            root.setFrame(1280, 720);
+            root.doFrame(frameTimeNanos += FRAME_INTERVAL_NANOS);
+            if (adapter.mBindCount == 0) {
+                throw new AssertionError("nothing was bound");
+            }
+
+            // one changed item
+            adapter.mBindCount = 0;
+            adapter.mVersions[3]++;
+            adapter.notifyDataSetChanged();
+            root.doFrame(frameTimeNanos += FRAME_INTERVAL_NANOS);
+            check(adapter.mBindCount == 1, "one changed item", adapter);
+
+            // two rows swapped, nothing changed
+            adapter.mBindCount = 0;
+            swap(adapter, 1, 2);
+            adapter.notifyDataSetChanged();
+            root.doFrame(frameTimeNanos += FRAME_INTERVAL_NANOS);
+            check(adapter.mBindCount == 0, "swapped items", adapter);
+
+            // nothing changed
+            adapter.notifyDataSetChanged();
+            root.doFrame(frameTimeNanos += FRAME_INTERVAL_NANOS);
+            check(adapter.mBindCount == 0, "unchanged items", adapter);
+        }
+        System.out.println("OK");
+    }
+
+    static void swap(StableAdapter adapter, int i, int j) {
+        long id = adapter.mIds[i];
+        adapter.mIds[i] = adapter.mIds[j];
+        adapter.mIds[j] = id;
+        long version = adapter.mVersions[i];
+        adapter.mVersions[i] = adapter.mVersions[j];
+        adapter.mVersions[j] = version;
+    }
+
+    static void check(boolean condition, String message, StableAdapter adapter) {
+        if (!condition) {
+            throw new AssertionError(message + ", binds: " + adapter.mBindCount);
+        }
+    }
+}
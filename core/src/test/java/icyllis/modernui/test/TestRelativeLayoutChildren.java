@@ -0,0 +1,100 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.test;
+
+import icyllis.modernui.core.Context;
+import icyllis.modernui.resources.Resources;
+import icyllis.modernui.view.MeasureSpec;
+import icyllis.modernui.view.View;
+import icyllis.modernui.widget.RelativeLayout;
+
+import java.util.Random;
+
+import static icyllis.modernui.view.ViewGroup.LayoutParams.MATCH_PARENT;
+import static icyllis.modernui.view.ViewGroup.LayoutParams.WRAP_CONTENT;
+
+/**
+ * Checks that {@link RelativeLayout} sorts its children again when children are added
+ * and removed between measure passes, while the dependency graph has room for them.
+ * The children form a chain, each one is below the previous one, so each top must be
+ * the bottom of the previous child.
+ */
+public class TestRelativeLayoutChildren {
+
+    public static void main(String[] args) {
+        var resources = new Resources();
+        var context = new Context() {
+            @Override
+            public Resources getResources() {
+                return resources;
+            }
+        };
+        var layout = new RelativeLayout(context);
+        var random = new Random(0x5EED);
+        int nextId = 1;
+        for (int i = 0; i < 5; i++) {
+            addChild(context, layout, nextId++);
+        }
+        for (int step = 0; step < 200; step++) {
+            measureAndCheck(layout, step);
+            int count = layout.getChildCount();
+            // grow and shrink around the capacity of the graph
+            if (count > 1 && random.nextBoolean()) {
+                layout.removeViewAt(count - 1);
+            } else {
+                addChild(context, layout, nextId++);
+            }
+            if (random.nextInt(4) == 0) {
+                // a rule change without adding or removing
+                var params = (RelativeLayout.LayoutParams) layout.getChildAt(0).getLayoutParams();
+                params.addRule(RelativeLayout.CENTER_HORIZONTAL,
+                        random.nextBoolean() ? RelativeLayout.TRUE : 0);
+                layout.requestLayout();
+            }
+        }
+        System.out.println("OK");
+    }
+
+    static void addChild(Context context, RelativeLayout layout, int id) {
+        var child = new View(context);
+        child.setId(id);
+        child.setMinimumHeight(10 + id % 7);
+        var params = new RelativeLayout.LayoutParams(MATCH_PARENT, WRAP_CONTENT);
+        int count = layout.getChildCount();
+        if (count > 0) {
+            params.addRule(RelativeLayout.BELOW, layout.getChildAt(count - 1).getId());
+        }
+        layout.addView(child, params);
+    }
+
+    static void measureAndCheck(RelativeLayout layout, int step) {
+        layout.measure(MeasureSpec.makeMeasureSpec(400, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(4000, MeasureSpec.EXACTLY));
+        layout.layout(0, 0, layout.getMeasuredWidth(), layout.getMeasuredHeight());
+        int expectedTop = 0;
+        for (int i = 0; i < layout.getChildCount(); i++) {
+            View child = layout.getChildAt(i);
+            if (child.getTop() != expectedTop) {
+                throw new AssertionError("step " + step + ", child " + i + " of " +
+                        layout.getChildCount() + ": top " + child.getTop() + ", expected " + expectedTop);
+            }
+            expectedTop = child.getBottom();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.test;
+
+import icyllis.modernui.core.Context;
+import icyllis.modernui.core.Looper;
+import icyllis.modernui.resources.Resources;
+import icyllis.modernui.view.View;
+import icyllis.modernui.view.VirtualWindowViewRoot;
+import icyllis.modernui.widget.RelativeLayout;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import static icyllis.modernui.view.ViewGroup.LayoutParams.MATCH_PARENT;
+import static icyllis.modernui.view.ViewGroup.LayoutParams.WRAP_CONTENT;
+
+/**
+ * Measures a wide form, a {@link RelativeLayout} with a label and a field per row,
+ * that is laid out again when the text of a field changes. {@link #textChanged()}
+ * does not change any rule, {@link #ruleChanged()} moves a label, so the children
+ * have to be sorted again.
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class TestRelativeLayoutForm {
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TestRelativeLayoutForm.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .shouldFailOnError(true).shouldDoGC(true)
+                .build())
+                .run();
+    }
+
+    @Param({"60", "120"})
+    public int mRows;
+
+    private VirtualWindowViewRoot mRoot;
+    private View mField;
+    private RelativeLayout.LayoutParams mLabelParams;
+    private boolean mToggle;
+    private long mFrameTimeNanos;
+
+    @Setup
+    public void setup() {
+        if (Looper.myLooper() == null) {
+            Looper.prepare();
+        }
+        var resources = new Resources();
+        var context = new Context() {
+            @Override
+            public Resources getResources() {
+                return resources;
+            }
+        };
+        var form = new RelativeLayout(context);
+        for (int i = 0; i < mRows; i++) {
+            int labelId = i * 2 + 1;
+            int fieldId = i * 2 + 2;
+
+            var label = new View(context);
+            label.setId(labelId);
+            label.setMinimumWidth(120);
+            label.setMinimumHeight(24);
+            var params = new RelativeLayout.LayoutParams(WRAP_CONTENT, WRAP_CONTENT);
+            if (i > 0) {
+                // below the previous field
+                params.addRule(RelativeLayout.BELOW, labelId - 1);
+            }
+            params.addRule(RelativeLayout.ALIGN_PARENT_START);
+            form.addView(label, params);
+
+            var field = new View(context);
+            field.setId(fieldId);
+            field.setMinimumHeight(32);
+            params = new RelativeLayout.LayoutParams(MATCH_PARENT, WRAP_CONTENT);
+            params.addRule(RelativeLayout.END_OF, labelId);
+            params.addRule(RelativeLayout.ALIGN_TOP, labelId);
+            form.addView(field, params);
+
+            if (i == mRows / 2) {
+                mField = field;
+                mLabelParams = (RelativeLayout.LayoutParams) label.getLayoutParams();
+            }
+        }
+        mRoot = new VirtualWindowViewRoot();
+        mRoot.setView(form);
+        mRoot.setFrame(1280, 720);
+        nextFrame();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mRoot.close();
+    }
+
+    private boolean nextFrame() {
+        mFrameTimeNanos += 16_666_667;
+        return mRoot.doFrame(mFrameTimeNanos);
+    }
+
+    @Benchmark
+    public boolean textChanged() {
+        mField.requestLayout();
+        return nextFrame();
+    }
+
+    @Benchmark
+    public boolean ruleChanged() {
+        mToggle = !mToggle;
+        mLabelParams.addRule(RelativeLayout.CENTER_HORIZONTAL, mToggle ? RelativeLayout.TRUE : 0);
+        mField.requestLayout();
+        return nextFrame();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.test;
+
+import icyllis.modernui.view.MeasureSpec;
+import icyllis.modernui.widget.EditText;
+
+import static icyllis.modernui.test.TestRecyclerViewBinds.createContext;
+
+/**
+ * Checks that a wrap_content {@link EditText} with incremental layout measures a long
+ * text of many short paragraphs as wide as one without, before and after the text is
+ * laid out, even though a pending block of the layout is a single line.
+ */
+public class TestTextViewIncremental {
+
+    public static void main(String[] args) {
+        var sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("Paragraph ").append(i).append('\n');
+        }
+        final String text = sb.toString();
+        final int widthSpec = MeasureSpec.makeMeasureSpec(100000, MeasureSpec.AT_MOST);
+        final int heightSpec = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+
+        var context = createContext();
+        var expected = new EditText(context);
+        expected.setText(text);
+        expected.measure(widthSpec, heightSpec);
+
+        var incremental = new EditText(context);
+        incremental.setIncrementalLayout(true);
+        incremental.setText(text);
+        incremental.measure(widthSpec, heightSpec);
+        check(incremental.getMeasuredWidth() == expected.getMeasuredWidth(),
+                "first measure", incremental, expected);
+
+        // the layout exists now and has pending blocks
+        incremental.forceLayout();
+        incremental.measure(widthSpec, heightSpec);
+        check(incremental.getMeasuredWidth() == expected.getMeasuredWidth(),
+                "measure with existing layout", incremental, expected);
+
+        System.out.println("OK");
+    }
+
+    static void check(boolean condition, String message, EditText actual, EditText expected) {
+        if (!condition) {
+            throw new AssertionError(message + ": width " + actual.getMeasuredWidth() +
+                    ", expected " + expected.getMeasuredWidth());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Modern UI.
+ * Copyright (C) 2024 BloCamLimb. All rights reserved.
+ *
+ * Modern UI is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Modern UI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Modern UI. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.modernui.test;
+
+import icyllis.modernui.graphics.text.*;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Checks that {@link TrueTypeFont} measures a run like the AWT path of {@link OutlineFont},
+ * without kerning by default, and with kerning when it is enabled for both.
+ * <p>
+ * Pass the font file with -Dmodernui.test.font=path/to/font.ttf
+ */
+public class TestTrueTypeFontParity {
+
+    public static final String TEXT = "AVA Tomorrow WAVE Type LT yelling Fo Vo";
+
+    public static void main(String[] args) throws Exception {
+        byte[] data = Files.readAllBytes(Path.of(System.getProperty("modernui.test.font")));
+        var awtFont = java.awt.Font.createFont(java.awt.Font.TRUETYPE_FONT,
+                new ByteArrayInputStream(data));
+        char[] text = TEXT.toCharArray();
+
+        var font = new TrueTypeFont(awtFont, ByteBuffer.wrap(data));
+        float[] expected = layout(new OutlineFont(awtFont), text);
+        float[] actual = layout(font, text);
+        compare("kerning off", expected, actual, 0);
+
+        var kerningFont = new TrueTypeFont(awtFont, ByteBuffer.wrap(data), true);
+        float[] kerningExpected = layout(new OutlineFont(awtFont.deriveFont(java.util.Map.of(
+                java.awt.font.TextAttribute.KERNING, java.awt.font.TextAttribute.KERNING_ON))), text);
+        float[] kerningActual = layout(kerningFont, text);
+        // the shaper of AWT scales and rounds kerning values on its own
+        compare("kerning on", kerningExpected, kerningActual, 1);
+
+        System.out.println("OK");
+    }
+
+    /**
+     * Returns the advances of each char, followed by the total advance.
+     */
+    static float[] layout(Font font, char[] text) {
+        var paint = new FontPaint();
+        paint.setFontSize(16);
+        paint.setFontStyle(font.getStyle());
+        float[] advances = new float[text.length + 1];
+        advances[text.length] = font.doComplexLayout(text, 0, text.length, 0, text.length,
+                false, paint, new IntArrayList(), new FloatArrayList(), advances, 0,
+                null, 0, 0);
+        return advances;
+    }
+
+    static void compare(String message, float[] expected, float[] actual, float tolerance) {
+        for (int i = 0; i < expected.length; i++) {
+            // the total may accumulate the differences
+            float max = i == expected.length - 1 ? tolerance * (expected.length - 1) : tolerance;
+            if (Math.abs(expected[i] - actual[i]) > max) {
+                throw new AssertionError(message + ": advance " + i + " is " + actual[i] +
+                        ", expected " + expected[i]);
+            }
+        }
+        System.out.println(message + ": total advance " + actual[actual.length - 1]);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.core;
+
+import java.util.Arrays;
+
+/**
+ * Blitter is the sink of software rasterization. The {@link ScanConverter} computes
+ * coverage of geometry one pixel row at a time and hands horizontal runs of coverage
+ * to a blitter, the blitter is responsible for combining coverage with source colors
+ * and the destination. All coordinates are in device space and already clipped to
+ * the clip bounds.
+ * <p>
+ * Coverage values are unsigned bytes, 0 means not covered and 255 means fully covered.
+ */
+public abstract class Blitter {
+
+    // scratch row of full coverage or unpacked mask
+    private byte[] mRow = new byte[64];
+
+    protected Blitter() {
+    }
+
+    /**
+     * Blits a horizontal run of varying coverage.
+     *
+     * @param x        the x-coordinate of the first pixel
+     * @param y        the y-coordinate of the row
+     * @param coverage the coverage values, read-only
+     * @param offset   the index of the coverage of the first pixel
+     * @param width    the number of pixels, positive
+     */
+    public abstract void blitAntiH(int x, int y, byte[] coverage, int offset, int width);
+
+    /**
+     * Blits a horizontal run of full coverage.
+     *
+     * @param x     the x-coordinate of the first pixel
+     * @param y     the y-coordinate of the row
+     * @param width the number of pixels, positive
+     */
+    public void blitH(int x, int y, int width) {
+        byte[] row = getFullRow(width);
+        blitAntiH(x, y, row, 0, width);
+    }
+
+    /**
+     * Blits a rectangle of full coverage.
+     */
+    public void blitRect(int x, int y, int width, int height) {
+        for (int bottom = y + height; y < bottom; y++) {
+            blitH(x, y, width);
+        }
+    }
+
+    /**
+     * Blits a rectangle of constant coverage.
+     */
+    public void blitAntiRect(int x, int y, int width, int height, int alpha) {
+        if (alpha == 0xFF) {
+            blitRect(x, y, width, height);
+            return;
+        }
+        byte[] row = getRow(width);
+        Arrays.fill(row, 0, width, (byte) alpha);
+        for (int bottom = y + height; y < bottom; y++) {
+            blitAntiH(x, y, row, 0, width);
+        }
+    }
+
+    /**
+     * Blits a glyph mask, the mask rectangle is (left, top, left + width, top + height)
+     * in device space, and only the pixels in the clip rectangle are blitted.
+     *
+     * @param format   the mask format, see {@link Mask}
+     * @param base     the array base of the mask, or null
+     * @param address  the array offset or native address of the mask
+     * @param rowBytes the row stride of the mask in bytes
+     * @param clip     the clip rectangle in device space, must be contained in the mask
+     *                 rectangle
+     */
+    public void blitMask(byte format, Object base, long address, int rowBytes,
+                         int left, int top, Rect2ic clip) {
+        final int width = clip.width();
+        if (width <= 0) {
+            return;
+        }
+        final var unsafe = PixelUtils.UNSAFE;
+        byte[] row = getRow(width);
+        for (int y = clip.top(); y < clip.bottom(); y++) {
+            long rowAddr = address + (long) (y - top) * rowBytes;
+            switch (format) {
+                case Mask.kA8_Format -> {
+                    long addr = rowAddr + (clip.left() - left);
+                    unsafe.copyMemory(base, addr, row, sun.misc.Unsafe.ARRAY_BYTE_BASE_OFFSET, width);
+                }
+                case Mask.kBW_Format -> {
+                    for (int i = 0, x = clip.left() - left; i < width; i++, x++) {
+                        int bits = unsafe.getByte(base, rowAddr + (x >> 3));
+                        row[i] = (bits & (0x80 >> (x & 7))) != 0 ? (byte) 0xFF : 0;
+                    }
+                }
+                default -> {
+                    // color masks are handled by subclasses
+                    return;
+                }
+            }
+            blitRuns(clip.left(), y, row, width);
+        }
+    }
+
+    /**
+     * Splits the coverage row into non-empty runs.
+     */
+    final void blitRuns(int x, int y, byte[] row, int width) {
+        int i = 0;
+        while (i < width) {
+            while (i < width && row[i] == 0) {
+                i++;
+            }
+            int start = i;
+            while (i < width && row[i] != 0) {
+                i++;
+            }
+            if (i > start) {
+                blitAntiH(x + start, y, row, start, i - start);
+            }
+        }
+    }
+
+    /**
+     * Returns a scratch row of at least the given size, the content is undefined.
+     */
+    final byte[] getRow(int width) {
+        byte[] row = mRow;
+        if (row.length < width) {
+            mRow = row = new byte[Math.max(width, row.length << 1)];
+        }
+        return row;
+    }
+
+    private byte[] getFullRow(int width) {
+        byte[] row = getRow(width);
+        Arrays.fill(row, 0, width, (byte) 0xFF);
+        return row;
+    }
+}
@@ -1671,6 +1671,17 @@ public class Canvas implements AutoCloseable {
         cleanedPaint.reset();
     }
 
+    /**
+     * Draws the drawable using the current matrix and clip. The drawable is drawn
+     * immediately, unless this canvas records commands, in which case the drawable
+     * is referenced and drawn each time the recording is replayed.
+     *
+     * @param drawable the drawable to draw
+     */
+    public final void drawDrawable(@Nonnull Drawable drawable) {
+        onDrawDrawable(drawable);
+    }
+
     /**
      * Returns true if clip is empty; that is, nothing will draw.
      * <p>
@@ -2119,6 +2130,10 @@ public class Canvas implements AutoCloseable {
         }
     }
 
+    protected void onDrawDrawable(Drawable drawable) {
+        drawable.draw(this);
+    }
+
     protected void onClipRect(Rect2fc rect, int clipOp, boolean doAA) {
         topDevice().clipRect(rect, clipOp, doAA);
         computeQuickRejectBounds();
@@ -19,9 +19,268 @@
 
 package icyllis.arc3d.core;
 
+import javax.annotation.Nonnull;
+
 /**
  * This class contains pre-processed graphics operations that can be replayed into
  * a {@link Surface} via Surface::draw(DeferredDisplayList*).
+ * <p>
+ * Currently, a display list is an immutable recording of Canvas commands, created by
+ * {@link DisplayListRecorder}. It can be replayed into any Canvas, any number of times.
+ * <p>
+ * Commands are stored in three flat arrays rather than an object per command:
+ * <ul>
+ *     <li>an int stream of op codes followed by their integer arguments</li>
+ *     <li>a float stream of coordinates and matrices</li>
+ *     <li>an object stream of paints, images, text blobs, etc.</li>
+ * </ul>
+ * Each op consumes its arguments from the three streams in order. Paints are copied
+ * at record time, consecutive equal paints share the same copy. Images and blenders are
+ * referenced by the display list and released by {@link #close()}.
+ * <p>
+ * The recorded matrix commands are relative to the canvas matrix at the time
+ * {@link #draw(Canvas)} is called, including {@link Canvas#setMatrix(Matrix4c)}.
  */
-public class DisplayList {
+public final class DisplayList implements AutoCloseable {
+
+    static final int
+            OP_SAVE = 0,
+            OP_SAVE_LAYER = 1,          // int: has bounds; float: bounds?; obj: paint?
+            OP_RESTORE = 2,
+            OP_TRANSLATE = 3,           // float: dx, dy, dz
+            OP_SCALE = 4,               // float: sx, sy, sz
+            OP_CONCAT = 5,              // float: 16
+            OP_SET_MATRIX = 6,          // float: 16
+            OP_CLIP_RECT = 7,           // int: clip op, aa; float: rect
+            OP_DRAW_PAINT = 8,          // obj: paint
+            OP_DRAW_POINTS = 9,         // int: mode, count; float: pts; obj: paint
+            OP_DRAW_LINE = 10,          // int: cap; float: x0, y0, x1, y1, width; obj: paint
+            OP_DRAW_RECT = 11,          // float: rect; obj: paint
+            OP_DRAW_ROUND_RECT = 12,    // obj: round rect, paint
+            OP_DRAW_CIRCLE = 13,        // float: cx, cy, radius; obj: paint
+            OP_DRAW_ARC = 14,           // int: cap; float: cx, cy, radius, start, sweep, width; obj: paint
+            OP_DRAW_PIE = 15,           // float: cx, cy, radius, start, sweep; obj: paint
+            OP_DRAW_CHORD = 16,         // float: cx, cy, radius, start, sweep; obj: paint
+            OP_DRAW_IMAGE_RECT = 17,    // int: constraint; float: src, dst; obj: image, sampling, paint
+            OP_DRAW_TEXT_BLOB = 18,     // float: x, y; obj: blob, paint
+            OP_DRAW_VERTICES = 19,      // obj: vertices, blender, paint
+            OP_DRAW_DRAWABLE = 20;      // obj: drawable
+
+    private final int mWidth;
+    private final int mHeight;
+
+    private int[] mOps;
+    private float[] mFloats;
+    private Object[] mObjects;
+
+    private final int mOpCount;
+    private final boolean mHasSetMatrix;
+
+    DisplayList(int width, int height,
+                int[] ops, float[] floats, Object[] objects,
+                int opCount, boolean hasSetMatrix) {
+        mWidth = width;
+        mHeight = height;
+        mOps = ops;
+        mFloats = floats;
+        mObjects = objects;
+        mOpCount = opCount;
+        mHasSetMatrix = hasSetMatrix;
+    }
+
+    /**
+     * @return the width of the recording bounds
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * @return the height of the recording bounds
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return the number of recorded commands
+     */
+    public int getOpCount() {
+        return mOpCount;
+    }
+
+    /**
+     * Returns the approximate memory usage of the recorded data in bytes, excluding
+     * images and text blobs shared with others.
+     */
+    public long getMemorySize() {
+        if (mOps == null) {
+            return 0;
+        }
+        return 16L + mOps.length * 4L + 16L + mFloats.length * 4L + 16L + mObjects.length * 8L;
+    }
+
+    /**
+     * Replays the recorded commands into the given canvas. The canvas' save count,
+     * matrix and clip are the same before and after this call.
+     *
+     * @param canvas the canvas to draw into
+     */
+    public void draw(@Nonnull Canvas canvas) {
+        final int[] ops = mOps;
+        if (ops == null) {
+            return;
+        }
+        final float[] f = mFloats;
+        final Object[] o = mObjects;
+        final int saveCount = canvas.save();
+
+        Matrix4 baseMatrix = null;
+        if (mHasSetMatrix) {
+            baseMatrix = new Matrix4();
+            canvas.getLocalToDevice(baseMatrix);
+        }
+        Rect2f rect = null;
+        Rect2f rect2 = null;
+        Matrix4 matrix = null;
+
+        int ip = 0, fp = 0, op = 0;
+        for (int end = ops.length; ip < end; ) {
+            switch (ops[ip++]) {
+                case OP_SAVE -> canvas.save();
+                case OP_SAVE_LAYER -> {
+                    Rect2f bounds = null;
+                    if (ops[ip++] != 0) {
+                        if (rect == null) rect = new Rect2f();
+                        rect.set(f[fp], f[fp + 1], f[fp + 2], f[fp + 3]);
+                        fp += 4;
+                        bounds = rect;
+                    }
+                    canvas.saveLayer(bounds, (Paint) o[op++]);
+                }
+                case OP_RESTORE -> canvas.restore();
+                case OP_TRANSLATE -> {
+                    canvas.translate(f[fp], f[fp + 1], f[fp + 2]);
+                    fp += 3;
+                }
+                case OP_SCALE -> {
+                    canvas.scale(f[fp], f[fp + 1], f[fp + 2]);
+                    fp += 3;
+                }
+                case OP_CONCAT -> {
+                    if (matrix == null) matrix = new Matrix4();
+                    matrix.set(f, fp);
+                    fp += 16;
+                    canvas.concat(matrix);
+                }
+                case OP_SET_MATRIX -> {
+                    if (matrix == null) matrix = new Matrix4();
+                    matrix.set(f, fp);
+                    fp += 16;
+                    assert baseMatrix != null;
+                    canvas.setMatrix(baseMatrix);
+                    canvas.concat(matrix);
+                }
+                case OP_CLIP_RECT -> {
+                    int clipOp = ops[ip++];
+                    boolean doAA = ops[ip++] != 0;
+                    if (rect == null) rect = new Rect2f();
+                    rect.set(f[fp], f[fp + 1], f[fp + 2], f[fp + 3]);
+                    fp += 4;
+                    canvas.clipRect(rect, clipOp, doAA);
+                }
+                case OP_DRAW_PAINT -> canvas.drawPaint((Paint) o[op++]);
+                case OP_DRAW_POINTS -> {
+                    int mode = ops[ip++];
+                    int count = ops[ip++];
+                    canvas.drawPoints(mode, f, fp, count, (Paint) o[op++]);
+                    fp += count * 2;
+                }
+                case OP_DRAW_LINE -> {
+                    int cap = ops[ip++];
+                    canvas.drawLine(f[fp], f[fp + 1], f[fp + 2], f[fp + 3],
+                            cap, f[fp + 4], (Paint) o[op++]);
+                    fp += 5;
+                }
+                case OP_DRAW_RECT -> {
+                    canvas.drawRect(f[fp], f[fp + 1], f[fp + 2], f[fp + 3], (Paint) o[op++]);
+                    fp += 4;
+                }
+                case OP_DRAW_ROUND_RECT -> {
+                    canvas.drawRoundRect((RoundRect) o[op], (Paint) o[op + 1]);
+                    op += 2;
+                }
+                case OP_DRAW_CIRCLE -> {
+                    canvas.drawCircle(f[fp], f[fp + 1], f[fp + 2], (Paint) o[op++]);
+                    fp += 3;
+                }
+                case OP_DRAW_ARC -> {
+                    int cap = ops[ip++];
+                    canvas.drawArc(f[fp], f[fp + 1], f[fp + 2], f[fp + 3], f[fp + 4],
+                            cap, f[fp + 5], (Paint) o[op++]);
+                    fp += 6;
+                }
+                case OP_DRAW_PIE -> {
+                    canvas.drawPie(f[fp], f[fp + 1], f[fp + 2], f[fp + 3], f[fp + 4],
+                            (Paint) o[op++]);
+                    fp += 5;
+                }
+                case OP_DRAW_CHORD -> {
+                    canvas.drawChord(f[fp], f[fp + 1], f[fp + 2], f[fp + 3], f[fp + 4],
+                            (Paint) o[op++]);
+                    fp += 5;
+                }
+                case OP_DRAW_IMAGE_RECT -> {
+                    int constraint = ops[ip++];
+                    if (rect == null) rect = new Rect2f();
+                    if (rect2 == null) rect2 = new Rect2f();
+                    rect.set(f[fp], f[fp + 1], f[fp + 2], f[fp + 3]);
+                    rect2.set(f[fp + 4], f[fp + 5], f[fp + 6], f[fp + 7]);
+                    fp += 8;
+                    canvas.drawImageRect((Image) o[op], rect, rect2,
+                            (SamplingOptions) o[op + 1], (Paint) o[op + 2], constraint);
+                    op += 3;
+                }
+                case OP_DRAW_TEXT_BLOB -> {
+                    canvas.drawTextBlob((TextBlob) o[op], f[fp], f[fp + 1], (Paint) o[op + 1]);
+                    fp += 2;
+                    op += 2;
+                }
+                case OP_DRAW_VERTICES -> {
+                    canvas.drawVertices((Vertices) o[op],
+                            RefCnt.create((Blender) o[op + 1]), (Paint) o[op + 2]);
+                    op += 3;
+                }
+                case OP_DRAW_DRAWABLE -> canvas.drawDrawable((Drawable) o[op++]);
+                default -> throw new AssertionError();
+            }
+        }
+        assert fp == f.length && op == o.length;
+
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Releases the paints, images and blenders referenced by this display list.
+     * After this call, {@link #draw(Canvas)} draws nothing.
+     */
+    @Override
+    public void close() {
+        final Object[] objects = mObjects;
+        if (objects == null) {
+            return;
+        }
+        for (Object obj : objects) {
+            // paints may be shared by multiple ops, but closing is idempotent
+            if (obj instanceof Paint paint) {
+                paint.close();
+            } else if (obj instanceof RefCounted ref) {
+                // images and blenders
+                ref.unref();
+            }
+        }
+        mOps = null;
+        mFloats = null;
+        mObjects = null;
+    }
 }
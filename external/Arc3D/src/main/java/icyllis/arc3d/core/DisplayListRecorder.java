@@ -21,6 +21,10 @@ package icyllis.arc3d.core;
 
 import icyllis.arc3d.engine.RecordingContext;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
 /**
  * This class is intended to be used as:
  * <ul>
@@ -34,6 +38,17 @@ import icyllis.arc3d.engine.RecordingContext;
  * This class never accesses the GPU but performs all the cpu work it can. It
  * is thread-safe (i.e., one can break a scene into tiles and perform their cpu-side
  * work in parallel ahead of time).
+ * <p>
+ * Without a characterization, the recorder records device-independent commands:
+ * <pre>{@code
+ * Canvas canvas = recorder.beginRecording(width, height);
+ * // draw something
+ * DisplayList displayList = recorder.finishRecording();
+ * displayList.draw(anotherCanvas);
+ * }</pre>
+ * The recorder retains its buffers between recordings, so it should be reused for
+ * a sequence of recordings. Different recorders can record on different threads,
+ * but a single recorder can only record one display list at a time.
  */
 public final class DisplayListRecorder implements AutoCloseable {
 
@@ -41,6 +56,25 @@ public final class DisplayListRecorder implements AutoCloseable {
 
     private RecordingContext mContext;
 
+    private RecordingCanvas mRecordingCanvas;
+
+    int[] mOps = new int[32];
+    int mOpSize;
+    float[] mFloats = new float[64];
+    int mFloatSize;
+    Object[] mObjects = new Object[16];
+    int mObjectSize;
+
+    int mOpCount;
+    boolean mHasSetMatrix;
+
+    // the last recorded paint
+    private Paint mLastPaint;
+
+    public DisplayListRecorder() {
+        this(null);
+    }
+
     public DisplayListRecorder(SurfaceCharacterization c) {
         mCharacterization = c;
         if (c != null) {
@@ -48,8 +82,150 @@ public final class DisplayListRecorder implements AutoCloseable {
         }
     }
 
+    /**
+     * Begins recording, returns the canvas to record into. The canvas is owned by
+     * this recorder and is valid until {@link #finishRecording()}.
+     *
+     * @param width  the width of the recording bounds
+     * @param height the height of the recording bounds
+     * @return the canvas to record into
+     * @throws IllegalStateException already recording
+     */
+    @Nonnull
+    public Canvas beginRecording(int width, int height) {
+        if (mRecordingCanvas != null) {
+            throw new IllegalStateException("Already recording");
+        }
+        return mRecordingCanvas = new RecordingCanvas(width, height, this);
+    }
+
+    /**
+     * @return the canvas being recorded into, or null
+     */
+    @Nullable
+    public Canvas getRecordingCanvas() {
+        return mRecordingCanvas;
+    }
+
+    /**
+     * Ends recording, returns the recorded commands. The canvas returned by
+     * {@link #beginRecording(int, int)} is no longer valid.
+     *
+     * @return the display list
+     * @throws IllegalStateException not recording
+     */
+    @Nonnull
+    public DisplayList finishRecording() {
+        final RecordingCanvas canvas = mRecordingCanvas;
+        if (canvas == null) {
+            throw new IllegalStateException("Not recording");
+        }
+        // balance the save stack, the display list does not change the state of the canvas
+        canvas.restoreToCount(1);
+        mRecordingCanvas = null;
+        var displayList = new DisplayList(
+                canvas.getBaseLayerWidth(), canvas.getBaseLayerHeight(),
+                Arrays.copyOf(mOps, mOpSize),
+                Arrays.copyOf(mFloats, mFloatSize),
+                Arrays.copyOf(mObjects, mObjectSize),
+                mOpCount, mHasSetMatrix);
+        canvas.close();
+        reset();
+        return displayList;
+    }
+
+    private void reset() {
+        mOpSize = 0;
+        mFloatSize = 0;
+        // ownership has been transferred to the display list
+        Arrays.fill(mObjects, 0, mObjectSize, null);
+        mObjectSize = 0;
+        mOpCount = 0;
+        mHasSetMatrix = false;
+        mLastPaint = null;
+    }
+
+    void addOp(int op) {
+        if (mOpSize == mOps.length) {
+            mOps = Arrays.copyOf(mOps, mOpSize << 1);
+        }
+        mOps[mOpSize++] = op;
+        mOpCount++;
+    }
+
+    void addInt(int value) {
+        if (mOpSize == mOps.length) {
+            mOps = Arrays.copyOf(mOps, mOpSize << 1);
+        }
+        mOps[mOpSize++] = value;
+    }
+
+    void addFloat(float value) {
+        if (mFloatSize == mFloats.length) {
+            mFloats = Arrays.copyOf(mFloats, mFloatSize << 1);
+        }
+        mFloats[mFloatSize++] = value;
+    }
+
+    void addFloats(float[] src, int offset, int count) {
+        if (mFloatSize + count > mFloats.length) {
+            mFloats = Arrays.copyOf(mFloats, Math.max(mFloatSize << 1, mFloatSize + count));
+        }
+        System.arraycopy(src, offset, mFloats, mFloatSize, count);
+        mFloatSize += count;
+    }
+
+    void addRect(Rect2fc r) {
+        if (mFloatSize + 4 > mFloats.length) {
+            mFloats = Arrays.copyOf(mFloats, mFloatSize << 1);
+        }
+        float[] floats = mFloats;
+        int i = mFloatSize;
+        floats[i] = r.left();
+        floats[i + 1] = r.top();
+        floats[i + 2] = r.right();
+        floats[i + 3] = r.bottom();
+        mFloatSize = i + 4;
+    }
+
+    void addMatrix(Matrix4c matrix) {
+        if (mFloatSize + 16 > mFloats.length) {
+            mFloats = Arrays.copyOf(mFloats, Math.max(mFloatSize << 1, mFloatSize + 16));
+        }
+        matrix.store(mFloats, mFloatSize);
+        mFloatSize += 16;
+    }
+
+    /**
+     * Adds an object, the ownership is transferred to the display list.
+     */
+    void addObject(Object obj) {
+        if (mObjectSize == mObjects.length) {
+            mObjects = Arrays.copyOf(mObjects, mObjectSize << 1);
+        }
+        mObjects[mObjectSize++] = obj;
+    }
+
+    /**
+     * Adds a copy of the paint, or reuses the last copy if they are equal.
+     */
+    void addPaint(@Nullable Paint paint) {
+        if (paint == null) {
+            addObject(null);
+            return;
+        }
+        Paint copy = mLastPaint;
+        if (copy == null || !copy.equals(paint)) {
+            mLastPaint = copy = new Paint(paint);
+        }
+        addObject(copy);
+    }
+
     @Override
     public void close() {
+        if (mRecordingCanvas != null) {
+            finishRecording().close();
+        }
         mContext = RefCnt.move(mContext);
     }
 }
@@ -0,0 +1,55 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.core;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Base class for objects that draw into Canvas.
+ * <p>
+ * Unlike other drawing commands, a Drawable is not snapshotted when it is recorded
+ * into a {@link DisplayList}, the reference is kept and {@link #draw(Canvas)} is called
+ * each time the display list is replayed. So the drawable can change what it draws
+ * without re-recording the display list that contains it.
+ */
+public abstract class Drawable {
+
+    protected Drawable() {
+    }
+
+    /**
+     * Draws into the specified canvas, the canvas' matrix and clip are restored
+     * when this method returns.
+     *
+     * @param canvas the canvas to draw into
+     */
+    public final void draw(@Nonnull Canvas canvas) {
+        final int saveCount = canvas.save();
+        onDraw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Override this to draw the content.
+     *
+     * @param canvas the canvas to draw into
+     */
+    protected abstract void onDraw(@Nonnull Canvas canvas);
+}
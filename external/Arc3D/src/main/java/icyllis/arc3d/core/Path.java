@@ -615,6 +615,18 @@ public class Path implements PathIterable, PathConsumer {
         return mPathRef.mSegmentMask;
     }
 
+    /**
+     * Returns an identity that changes when verbs or points have changed since
+     * the last call. Copies of a path share the same identity until one of them
+     * is modified. The fill rule is not included.
+     * <p>
+     * This can be used as a cache key for data derived from the geometry.
+     */
+    @Nonnull
+    public GenerationID getGenerationID() {
+        return mPathRef.getGenerationID();
+    }
+
     @Nonnull
     @Override
     public PathIterator getPathIterator() {
@@ -944,11 +956,13 @@ public class Path implements PathIterable, PathConsumer {
     static final class PathRef implements RefCounted {
 
         private static final VarHandle USAGE_CNT;
+        private static final VarHandle GENERATION_ID;
 
         static {
             MethodHandles.Lookup lookup = MethodHandles.lookup();
             try {
                 USAGE_CNT = lookup.findVarHandle(PathRef.class, "mUsageCnt", int.class);
+                GENERATION_ID = lookup.findVarHandle(PathRef.class, "mGenerationID", GenerationID.class);
             } catch (NoSuchFieldException | IllegalAccessException e) {
                 throw new RuntimeException(e);
             }
@@ -966,6 +980,9 @@ public class Path implements PathIterable, PathConsumer {
 
         transient volatile int mUsageCnt = 1;
 
+        // assigned lazily, reset when edited
+        transient volatile GenerationID mGenerationID;
+
         // unsorted and finite = dirty
         final Rect2f mBounds = new Rect2f(0, 0, -1, -1);
 
@@ -1030,6 +1047,17 @@ public class Path implements PathIterable, PathConsumer {
             mSegmentMask = other.mSegmentMask;
         }
 
+        @Nonnull
+        GenerationID getGenerationID() {
+            GenerationID id = mGenerationID;
+            if (id == null) {
+                GenerationID newID = new GenerationID();
+                // if another thread won the race, use its value
+                id = GENERATION_ID.compareAndSet(this, null, newID) ? newID : mGenerationID;
+            }
+            return id;
+        }
+
         boolean unique() {
             return (int) USAGE_CNT.getAcquire(this) == 1
                     // the EMPTY's usage is not counted normally, must be excluded here!!
@@ -1094,8 +1122,10 @@ public class Path implements PathIterable, PathConsumer {
             }
         }
 
+        // called when the path is edited
         void dirtyBounds() {
             mBounds.set(0, 0, -1, -1);
+            mGenerationID = null;
         }
 
         boolean boundsIsDirty() {
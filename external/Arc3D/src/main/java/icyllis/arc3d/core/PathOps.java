@@ -0,0 +1,679 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.core;
+
+import icyllis.arc3d.engine.PathUtils;
+import icyllis.arc3d.engine.tessellate.WangsFormula;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+/**
+ * Boolean operations on path fills.
+ * <p>
+ * Curves are flattened into line segments within the tolerance, then a sweep line
+ * moves down through the edges of both operands. The plane is cut into horizontal
+ * bands at every vertex and every edge intersection, so that no two edges cross
+ * inside a band. In each band, the winding numbers of both operands are accumulated
+ * from left to right, and the edges where the result of the operation changes are
+ * kept as the boundary. Horizontal boundaries are found between adjacent bands.
+ * Finally, the boundary pieces are linked into closed contours, and collinear pieces
+ * of the same edge are merged.
+ * <p>
+ * The result is a polygon with {@link PathIterator#FILL_NON_ZERO}, and every covered
+ * region has a winding number of 1 (or -1). Contours of the result never cross each
+ * other, but may touch at vertices.
+ * <p>
+ * This class is not thread-safe, and may be reused to reduce allocation.
+ */
+public final class PathOps {
+
+    /**
+     * The first operand minus the second operand.
+     */
+    public static final int OP_DIFFERENCE = 0;
+    /**
+     * The intersection of the two operands.
+     */
+    public static final int OP_INTERSECT = 1;
+    /**
+     * The union of the two operands.
+     */
+    public static final int OP_UNION = 2;
+    /**
+     * The union of the two operands minus their intersection.
+     */
+    public static final int OP_XOR = 3;
+    /**
+     * The second operand minus the first operand.
+     */
+    public static final int OP_REVERSE_DIFFERENCE = 4;
+
+    private final Flattener mFlattener = new Flattener(this);
+
+    private float mTolerance = PathUtils.DEFAULT_TOLERANCE;
+
+    // input edges, y0 < y1, horizontal edges are dropped
+    private float[] mEdges = new float[64];
+    // bit 0 is the operand, bit 1 is set if the edge goes up
+    private int[] mEdgeFlags = new int[16];
+    // the last boundary piece of each edge, it is extended while the edge stays a boundary
+    private int[] mEdgePieces = new int[16];
+    private int mEdgeCount;
+
+    private int mOp;
+    private boolean mEvenOddA;
+    private boolean mEvenOddB;
+
+    // edges crossing the current band, sorted by x at the middle of the band
+    private int[] mActive = new int[16];
+    private float[] mTopX = new float[16];
+    private float[] mBottomX = new float[16];
+    private int mActiveCount;
+
+    // x of the boundary at the top of the current band and the bottom of the previous band
+    private float[] mBoundaryTop = new float[16];
+    private int mBoundaryTopCount;
+    private float[] mBoundaryBottom = new float[16];
+    private int mBoundaryBottomCount;
+    private float[] mBoundaryNext = new float[16];
+    private int mBoundaryNextCount;
+
+    // directed boundary pieces, x0, y0, x1, y1
+    private float[] mPieces = new float[64];
+    // source edge of each piece, -1 for horizontal pieces
+    private int[] mPieceSources = new int[16];
+    private int mPieceCount;
+
+    /**
+     * Sets the maximum distance between the flattened curves and the exact curves,
+     * in the coordinates of the input paths.
+     */
+    public void setTolerance(float tolerance) {
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException();
+        }
+        mTolerance = tolerance;
+    }
+
+    public float getTolerance() {
+        return mTolerance;
+    }
+
+    /**
+     * Computes the boolean operation of two path fills. The fill rule of each operand
+     * is respected. The result may be one of the operands.
+     *
+     * @param one    the first operand
+     * @param two    the second operand
+     * @param op     one of {@link #OP_DIFFERENCE}, {@link #OP_INTERSECT}, {@link #OP_UNION},
+     *               {@link #OP_XOR} or {@link #OP_REVERSE_DIFFERENCE}
+     * @param result receives the result
+     * @return false if an operand is not finite, the result is unchanged in that case
+     */
+    public boolean op(@Nonnull Path one, @Nonnull Path two, int op, @Nonnull Path result) {
+        if (op < OP_DIFFERENCE || op > OP_REVERSE_DIFFERENCE) {
+            throw new IllegalArgumentException();
+        }
+        if (!one.isFinite() || !two.isFinite()) {
+            return false;
+        }
+        mOp = op;
+        mEvenOddA = one.getFillRule() == PathIterator.FILL_EVEN_ODD;
+        mEvenOddB = two.getFillRule() == PathIterator.FILL_EVEN_ODD;
+        mEdgeCount = 0;
+        mFlattener.reset(0, 1 / mTolerance);
+        one.forEach(mFlattener);
+        mFlattener.reset(1, 1 / mTolerance);
+        two.forEach(mFlattener);
+        sweep();
+        result.reset();
+        result.setFillRule(PathIterator.FILL_NON_ZERO);
+        link(result);
+        return true;
+    }
+
+    /**
+     * Removes self-intersections and overlapping contours of the path fill, so that
+     * the result covers the same area with non-overlapping contours. The result may
+     * be the given path.
+     *
+     * @param path   the path fill to simplify
+     * @param result receives the result
+     * @return false if the path is not finite, the result is unchanged in that case
+     */
+    public boolean simplify(@Nonnull Path path, @Nonnull Path result) {
+        if (!path.isFinite()) {
+            return false;
+        }
+        mOp = OP_UNION;
+        mEvenOddA = path.getFillRule() == PathIterator.FILL_EVEN_ODD;
+        mEvenOddB = false;
+        mEdgeCount = 0;
+        mFlattener.reset(0, 1 / mTolerance);
+        path.forEach(mFlattener);
+        sweep();
+        result.reset();
+        result.setFillRule(PathIterator.FILL_NON_ZERO);
+        link(result);
+        return true;
+    }
+
+    private void addEdge(float x0, float y0, float x1, float y1, int operand) {
+        if (y0 == y1) {
+            // no effect on winding, horizontal boundaries are derived from the bands
+            return;
+        }
+        int flags = operand;
+        if (y0 > y1) {
+            float t = x0;
+            x0 = x1;
+            x1 = t;
+            t = y0;
+            y0 = y1;
+            y1 = t;
+            flags |= 2;
+        }
+        int i = mEdgeCount;
+        if (i == mEdgeFlags.length) {
+            mEdgeFlags = Arrays.copyOf(mEdgeFlags, i << 1);
+            mEdgePieces = new int[i << 1];
+            mEdges = Arrays.copyOf(mEdges, i << 3);
+        }
+        float[] e = mEdges;
+        e[i << 2] = x0;
+        e[(i << 2) | 1] = y0;
+        e[(i << 2) | 2] = x1;
+        e[(i << 2) | 3] = y1;
+        mEdgeFlags[i] = flags;
+        mEdgeCount = i + 1;
+    }
+
+    private float edgeX(int edge, float y) {
+        final float[] e = mEdges;
+        final int i = edge << 2;
+        float x0 = e[i], y0 = e[i | 1];
+        float x1 = e[i | 2], y1 = e[i | 3];
+        if (y <= y0) {
+            return x0;
+        }
+        if (y >= y1) {
+            return x1;
+        }
+        return (float) (x0 + (double) (y - y0) * (x1 - x0) / (y1 - y0));
+    }
+
+    // maps float bits to signed ints that have the same order as the floats
+    private static int sortableBits(float v) {
+        int bits = Float.floatToIntBits(v + 0.0f);
+        return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+    }
+
+    private void sweep() {
+        mActiveCount = 0;
+        mBoundaryBottomCount = 0;
+        mPieceCount = 0;
+        final int edgeCount = mEdgeCount;
+        if (edgeCount == 0) {
+            return;
+        }
+        final float[] e = mEdges;
+        Arrays.fill(mEdgePieces, 0, edgeCount, -1);
+
+        // edges sorted by top, and all distinct vertex y
+        long[] order = new long[edgeCount];
+        float[] events = new float[edgeCount << 1];
+        for (int i = 0; i < edgeCount; i++) {
+            order[i] = ((long) sortableBits(e[(i << 2) | 1]) << 32) | i;
+            events[i << 1] = e[(i << 2) | 1];
+            events[(i << 1) | 1] = e[(i << 2) | 3];
+        }
+        Arrays.sort(order);
+        Arrays.sort(events);
+        int eventCount = 1;
+        for (int i = 1; i < events.length; i++) {
+            if (events[i] != events[eventCount - 1]) {
+                events[eventCount++] = events[i];
+            }
+        }
+
+        int nextEdge = 0;
+        for (int k = 0; k < eventCount - 1; k++) {
+            final float top = events[k];
+            final float end = events[k + 1];
+
+            // remove edges that ended, keep the order of others, the bottom of
+            // the previous band is the top of this band, so pieces share end points
+            int count = 0;
+            for (int i = 0; i < mActiveCount; i++) {
+                int edge = mActive[i];
+                if (e[(edge << 2) | 3] > top) {
+                    mTopX[count] = mBottomX[i];
+                    mActive[count++] = edge;
+                }
+            }
+            mActiveCount = count;
+            // add edges that start here
+            while (nextEdge < edgeCount) {
+                int edge = (int) order[nextEdge];
+                if (e[(edge << 2) | 1] > top) {
+                    break;
+                }
+                if (mActiveCount == mActive.length) {
+                    int cap = mActiveCount << 1;
+                    mActive = Arrays.copyOf(mActive, cap);
+                    mTopX = Arrays.copyOf(mTopX, cap);
+                    mBottomX = Arrays.copyOf(mBottomX, cap);
+                }
+                mTopX[mActiveCount] = e[edge << 2];
+                mActive[mActiveCount++] = edge;
+                nextEdge++;
+            }
+
+            float bandTop = top;
+            while (bandTop < end) {
+                float bandBottom = end;
+                // shrink the band until there is no intersection inside
+                for (;;) {
+                    for (int i = 0; i < mActiveCount; i++) {
+                        mBottomX[i] = edgeX(mActive[i], bandBottom);
+                    }
+                    sortActive();
+                    float y = findIntersection(bandTop, bandBottom);
+                    if (y == bandBottom) {
+                        break;
+                    }
+                    bandBottom = y;
+                }
+                band(bandTop, bandBottom);
+                System.arraycopy(mBottomX, 0, mTopX, 0, mActiveCount);
+                bandTop = bandBottom;
+            }
+        }
+        // close the last band
+        mBoundaryTopCount = 0;
+        horizontals(events[eventCount - 1]);
+    }
+
+    // insertion sort by the middle x, the order is mostly unchanged from the previous band
+    private void sortActive() {
+        final int[] active = mActive;
+        final float[] topX = mTopX;
+        final float[] bottomX = mBottomX;
+        for (int i = 1, n = mActiveCount; i < n; i++) {
+            int edge = active[i];
+            float t = topX[i], b = bottomX[i];
+            float mid = t + b;
+            int j = i - 1;
+            while (j >= 0 && (topX[j] + bottomX[j] > mid ||
+                    (topX[j] + bottomX[j] == mid && topX[j] > t))) {
+                active[j + 1] = active[j];
+                topX[j + 1] = topX[j];
+                bottomX[j + 1] = bottomX[j];
+                j--;
+            }
+            active[j + 1] = edge;
+            topX[j + 1] = t;
+            bottomX[j + 1] = b;
+        }
+    }
+
+    // returns the smallest y of intersections strictly inside the band, or the bottom
+    private float findIntersection(float top, float bottom) {
+        float result = bottom;
+        for (int i = 1, n = mActiveCount; i < n; i++) {
+            double dt = (double) mTopX[i] - mTopX[i - 1];
+            double db = (double) mBottomX[i] - mBottomX[i - 1];
+            // adjacent in the middle, inverted at the top or the bottom
+            if ((dt < 0 && db > 0) || (dt > 0 && db < 0)) {
+                float y = (float) (top + dt / (dt - db) * ((double) bottom - top));
+                if (y > top && y < result) {
+                    result = y;
+                }
+            }
+        }
+        return result;
+    }
+
+    private boolean inside(int windingA, int windingB) {
+        boolean a = mEvenOddA ? (windingA & 1) != 0 : windingA != 0;
+        boolean b = mEvenOddB ? (windingB & 1) != 0 : windingB != 0;
+        return switch (mOp) {
+            case OP_DIFFERENCE -> a && !b;
+            case OP_INTERSECT -> a && b;
+            case OP_UNION -> a || b;
+            case OP_XOR -> a != b;
+            default -> b && !a;
+        };
+    }
+
+    private void band(float top, float bottom) {
+        final int[] active = mActive;
+        final int[] flags = mEdgeFlags;
+        final float[] topX = mTopX;
+        final float[] bottomX = mBottomX;
+        final int n = mActiveCount;
+        // numerical error may leave edges nearly crossing at the top or the bottom,
+        // the boundaries must be in the same order at both sides for consistent regions
+        for (int i = 1; i < n; i++) {
+            topX[i] = Math.max(topX[i], topX[i - 1]);
+            bottomX[i] = Math.max(bottomX[i], bottomX[i - 1]);
+        }
+        mBoundaryTopCount = 0;
+        mBoundaryNextCount = 0;
+        int windingA = 0, windingB = 0;
+        boolean inside = false;
+        for (int i = 0; i < n; ) {
+            float t = topX[i], b = bottomX[i];
+            int j = i;
+            // coincident edges are a single boundary
+            do {
+                int f = flags[active[j]];
+                int dir = (f & 2) != 0 ? -1 : 1;
+                if ((f & 1) == 0) {
+                    windingA += dir;
+                } else {
+                    windingB += dir;
+                }
+                j++;
+            } while (j < n && topX[j] == t && bottomX[j] == b);
+            boolean in = inside(windingA, windingB);
+            if (in != inside) {
+                // the inside is on the right going down, on the left going up
+                if (in) {
+                    addBoundary(active[i], t, top, b, bottom);
+                } else {
+                    addBoundary(active[i], b, bottom, t, top);
+                }
+                mBoundaryTop = add(mBoundaryTop, mBoundaryTopCount++, t);
+                mBoundaryNext = add(mBoundaryNext, mBoundaryNextCount++, b);
+                inside = in;
+            }
+            i = j;
+        }
+        horizontals(top);
+        // the bottom of this band becomes the previous bottom
+        float[] tmp = mBoundaryBottom;
+        mBoundaryBottom = mBoundaryNext;
+        mBoundaryBottomCount = mBoundaryNextCount;
+        mBoundaryNext = tmp;
+    }
+
+    // horizontal boundaries are where the inside above and the inside below differ
+    private void horizontals(float y) {
+        final float[] above = mBoundaryBottom;
+        final float[] below = mBoundaryTop;
+        final int na = mBoundaryBottomCount;
+        final int nb = mBoundaryTopCount;
+        if (na == 0 && nb == 0) {
+            return;
+        }
+        boolean insideAbove = false, insideBelow = false;
+        int i = 0, j = 0;
+        while (i < na || j < nb) {
+            float x = i == na ? below[j] : j == nb ? above[i] : Math.min(above[i], below[j]);
+            while (i < na && above[i] == x) {
+                insideAbove = !insideAbove;
+                i++;
+            }
+            while (j < nb && below[j] == x) {
+                insideBelow = !insideBelow;
+                j++;
+            }
+            if (insideAbove != insideBelow) {
+                if (i == na && j == nb) {
+                    // unclosed region, should not happen
+                    break;
+                }
+                float next = i == na ? below[j] : j == nb ? above[i] : Math.min(above[i], below[j]);
+                if (insideAbove) {
+                    addPiece(x, y, next, y, -1);
+                } else {
+                    addPiece(next, y, x, y, -1);
+                }
+            }
+        }
+    }
+
+    private void addBoundary(int edge, float x0, float y0, float x1, float y1) {
+        int last = mEdgePieces[edge];
+        if (last != -1) {
+            final float[] p = mPieces;
+            final int j = last << 2;
+            // continue the piece of the previous band, going down or going up
+            if (p[j | 2] == x0 && p[j | 3] == y0) {
+                p[j | 2] = x1;
+                p[j | 3] = y1;
+                return;
+            }
+            if (p[j] == x1 && p[j | 1] == y1) {
+                p[j] = x0;
+                p[j | 1] = y0;
+                return;
+            }
+        }
+        mEdgePieces[edge] = mPieceCount;
+        addPiece(x0, y0, x1, y1, edge);
+    }
+
+    private void addPiece(float x0, float y0, float x1, float y1, int source) {
+        int i = mPieceCount;
+        if (i == mPieceSources.length) {
+            mPieceSources = Arrays.copyOf(mPieceSources, i << 1);
+            mPieces = Arrays.copyOf(mPieces, i << 3);
+        }
+        float[] p = mPieces;
+        p[i << 2] = x0;
+        p[(i << 2) | 1] = y0;
+        p[(i << 2) | 2] = x1;
+        p[(i << 2) | 3] = y1;
+        mPieceSources[i] = source;
+        mPieceCount = i + 1;
+    }
+
+    private static float[] add(float[] a, int index, float v) {
+        if (index == a.length) {
+            a = Arrays.copyOf(a, index << 1);
+        }
+        a[index] = v;
+        return a;
+    }
+
+    private static long pointKey(float x, float y) {
+        return ((long) Float.floatToIntBits(x + 0.0f) << 32) |
+                (Float.floatToIntBits(y + 0.0f) & 0xFFFFFFFFL);
+    }
+
+    // links the pieces into contours, each vertex has as many incoming pieces as outgoing ones
+    private void link(Path result) {
+        final int n = mPieceCount;
+        if (n == 0) {
+            return;
+        }
+        final float[] p = mPieces;
+        final int[] sources = mPieceSources;
+
+        // vertex index of each start point, and the outgoing pieces of each vertex
+        long[] vertices = new long[n];
+        for (int i = 0; i < n; i++) {
+            vertices[i] = pointKey(p[i << 2], p[(i << 2) | 1]);
+        }
+        Arrays.sort(vertices);
+        int vertexCount = 1;
+        for (int i = 1; i < n; i++) {
+            if (vertices[i] != vertices[vertexCount - 1]) {
+                vertices[vertexCount++] = vertices[i];
+            }
+        }
+        int[] heads = new int[vertexCount];
+        Arrays.fill(heads, -1);
+        int[] links = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            int v = Arrays.binarySearch(vertices, 0, vertexCount,
+                    pointKey(p[i << 2], p[(i << 2) | 1]));
+            links[i] = heads[v];
+            heads[v] = i;
+        }
+
+        for (int start = 0; start < n; start++) {
+            if (sources[start] == -2) {
+                continue;
+            }
+            final float startX = p[start << 2];
+            final float startY = p[(start << 2) | 1];
+            result.moveTo(startX, startY);
+            int piece = start;
+            int prevSource = -2;
+            float prevX = startX, prevY = startY;
+            for (;;) {
+                int source = sources[piece];
+                // mark as used
+                sources[piece] = -2;
+                float x = p[(piece << 2) | 2];
+                float y = p[(piece << 2) | 3];
+                // continue a straight line from the same edge, or horizontal pieces
+                boolean merge = piece != start && source == prevSource;
+                if (!merge && piece != start) {
+                    result.lineTo(prevX, prevY);
+                }
+                prevX = x;
+                prevY = y;
+                prevSource = source;
+                if (x == startX && y == startY) {
+                    break;
+                }
+                int v = Arrays.binarySearch(vertices, 0, vertexCount, pointKey(x, y));
+                int next = -1;
+                if (v >= 0) {
+                    // drop used pieces from the list
+                    int h = heads[v];
+                    while (h != -1 && sources[h] == -2) {
+                        h = links[h];
+                    }
+                    heads[v] = h;
+                    next = h;
+                }
+                if (next == -1) {
+                    // should not happen, the contour is closed anyway
+                    result.lineTo(x, y);
+                    break;
+                }
+                piece = next;
+            }
+            result.close();
+        }
+    }
+
+    private static final class Flattener implements PathConsumer {
+
+        private final PathOps mOps;
+
+        private int mOperand;
+        private float mPrecision;
+
+        private boolean mContourOpen;
+        private float mStartX;
+        private float mStartY;
+        private float mLastX;
+        private float mLastY;
+
+        Flattener(PathOps ops) {
+            mOps = ops;
+        }
+
+        void reset(int operand, float precision) {
+            mOperand = operand;
+            mPrecision = precision;
+            mContourOpen = false;
+            mStartX = mStartY = mLastX = mLastY = 0;
+        }
+
+        @Override
+        public void moveTo(float x, float y) {
+            close();
+            mContourOpen = true;
+            mStartX = mLastX = x;
+            mStartY = mLastY = y;
+        }
+
+        @Override
+        public void lineTo(float x, float y) {
+            mContourOpen = true;
+            mOps.addEdge(mLastX, mLastY, x, y, mOperand);
+            mLastX = x;
+            mLastY = y;
+        }
+
+        @Override
+        public void quadTo(float x1, float y1, float x2, float y2) {
+            final float x0 = mLastX;
+            final float y0 = mLastY;
+            int n = segments(WangsFormula.quadratic(mPrecision,
+                    x0, y0, x1, y1, x2, y2));
+            final float dt = 1.0f / n;
+            for (int i = 1; i < n; i++) {
+                float t = i * dt;
+                float u = 1 - t;
+                float a = u * u, b = 2 * u * t, c = t * t;
+                lineTo(a * x0 + b * x1 + c * x2,
+                        a * y0 + b * y1 + c * y2);
+            }
+            lineTo(x2, y2);
+        }
+
+        @Override
+        public void cubicTo(float x1, float y1, float x2, float y2, float x3, float y3) {
+            final float x0 = mLastX;
+            final float y0 = mLastY;
+            int n = segments(WangsFormula.cubic(mPrecision,
+                    x0, y0, x1, y1, x2, y2, x3, y3));
+            final float dt = 1.0f / n;
+            for (int i = 1; i < n; i++) {
+                float t = i * dt;
+                float u = 1 - t;
+                float a = u * u * u, b = 3 * u * u * t, c = 3 * u * t * t, d = t * t * t;
+                lineTo(a * x0 + b * x1 + c * x2 + d * x3,
+                        a * y0 + b * y1 + c * y2 + d * y3);
+            }
+            lineTo(x3, y3);
+        }
+
+        // fills are implicitly closed
+        @Override
+        public void close() {
+            if (mContourOpen) {
+                mOps.addEdge(mLastX, mLastY, mStartX, mStartY, mOperand);
+                mContourOpen = false;
+            }
+            mLastX = mStartX;
+            mLastY = mStartY;
+        }
+
+        @Override
+        public void done() {
+            close();
+        }
+
+        private static int segments(float n) {
+            // NaN becomes 1
+            return (int) Math.min(Math.max(Math.ceil(n), 1), PathUtils.MAX_POINTS_PER_CURVE);
+        }
+    }
+}
@@ -29,6 +29,9 @@ import javax.annotation.Nonnull;
  * This is invoked when a {@link Path} is drawn in a canvas with the
  * {@link Paint#STROKE} bit set in the paint. The new path consists of
  * closed contours, and the style change from thick stroke to fill.
+ * <p>
+ * A stroker may be reused for multiple paths by calling {@link #init} again,
+ * stroking doesn't allocate other than growing the output.
  *
  * @author BloCamLimb
  */
@@ -86,6 +89,7 @@ public class PathStroker implements PathConsumer {
                      float resScale) {
         assert out != this;
         mOuter = out;
+        mInner.clear();
         mRadius = radius;
 
         if (join == Paint.JOIN_MITER) {
@@ -49,6 +49,21 @@ public class PathUtils {
             @Nonnull Path src, @Nonnull Paint paint,
             @Nonnull Path dst, @Nullable Rect2fc cullRect,
             @Nonnull Matrixc ctm) {
+        return fillPathWithPaint(src, paint, dst, cullRect, ctm, null);
+    }
+
+    /**
+     * Same as {@link #fillPathWithPaint(Path, Paint, Path, Rect2fc, Matrixc)}, but looks up
+     * the stroke in the given cache. This is for source paths that are drawn again without
+     * being modified, paths that are rebuilt for every draw should be stroked directly into
+     * a reused dst path, by passing a null cache.
+     *
+     * @param cache optional cache of stroked paths
+     */
+    public static boolean fillPathWithPaint(
+            @Nonnull Path src, @Nonnull Paint paint,
+            @Nonnull Path dst, @Nullable Rect2fc cullRect,
+            @Nonnull Matrixc ctm, @Nullable StrokeCache cache) {
         if (!src.isFinite()) {
             dst.reset();
             return false;
@@ -73,7 +88,13 @@ public class PathUtils {
 
         //TODO path effect
 
-        if (!strokeRec.applyToPath(src, dst)) {
+        boolean stroked;
+        if (cache != null) {
+            stroked = cache.findOrStroke(src, strokeRec, dst);
+        } else {
+            stroked = strokeRec.applyToPath(src, dst);
+        }
+        if (!stroked) {
             dst.set(src);
         }
 
@@ -0,0 +1,332 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.core;
+
+import javax.annotation.Nullable;
+
+import static icyllis.arc3d.core.PixelUtils.NATIVE_BIG_ENDIAN;
+import static icyllis.arc3d.core.PixelUtils.UNSAFE;
+
+/**
+ * Specialized row kernels for {@link PixelUtils#convertPixels}, these work on whole rows
+ * in integer math and avoid the per-pixel float round-trip of the generic path.
+ * <p>
+ * Kernels are chosen by (src color type, dst color type, alpha op, transfer function).
+ * Currently, the 8-bit RGBA family (RGBA_8888, BGRA_8888 and RGB_888x) is covered, with
+ * RB swizzle, premul/unpremul and sRGB/linear conversion through lookup tables. Swizzle and
+ * alpha ops give identical results to the generic path. Transfer functions (combined with
+ * alpha ops) are tabulated per (alpha, channel) with the same float math as the generic path,
+ * they ignore the rounding error of the near-identity gamut matrix, which may differ by 1.
+ * <p>
+ * Pixels are processed as packed 32-bit words in little-endian order, i.e. 0xAABBGGRR
+ * for RGBA_8888, big-endian machines swap bytes on load and store.
+ */
+final class PixelConverter {
+
+    // transfer functions
+    static final int TF_NONE = 0;
+    static final int TF_SRGB_TO_LINEAR = 1;
+    static final int TF_LINEAR_TO_SRGB = 2;
+
+    // alpha ops
+    static final int AO_NONE = 0;
+    static final int AO_PREMUL = 1;
+    static final int AO_UNPREMUL = 2;
+    static final int AO_UNPREMUL_PREMUL = 3;
+
+    /**
+     * A row kernel, addresses are the start of the row and count is the number of pixels.
+     */
+    @FunctionalInterface
+    interface RowKernel {
+
+        void convert(Object srcBase, long srcAddr,
+                     Object dstBase, long dstAddr,
+                     int count);
+    }
+
+    // indexed by (tf - 1) * 4 + ao, each table is indexed by (alpha << 8 | channel)
+    private static final byte[][] sTransferTables = new byte[8][];
+    private static volatile byte[] sUnpremulTable;
+
+    private PixelConverter() {
+    }
+
+    /**
+     * Returns a specialized kernel or null if the generic path must be used.
+     *
+     * @param flags color space xform flags, see {@link PixelUtils}
+     */
+    @Nullable
+    static RowKernel find(@ColorInfo.ColorType int srcCT,
+                          @ColorInfo.ColorType int dstCT,
+                          int flags,
+                          ColorSpace srcCS, ColorSpace dstCS,
+                          boolean csXform) {
+        if (!is8888(srcCT) || !is8888(dstCT)) {
+            return null;
+        }
+        final int tf;
+        if (csXform) {
+            var srgb = ColorSpace.get(ColorSpace.Named.SRGB);
+            var linear = ColorSpace.get(ColorSpace.Named.LINEAR_SRGB);
+            if (srcCS.equals(srgb) && dstCS.equals(linear)) {
+                tf = TF_SRGB_TO_LINEAR;
+            } else if (srcCS.equals(linear) && dstCS.equals(srgb)) {
+                tf = TF_LINEAR_TO_SRGB;
+            } else {
+                // gamut transform is not covered
+                return null;
+            }
+        } else {
+            tf = TF_NONE;
+        }
+        final int ao;
+        boolean unpremul = (flags & PixelUtils.kColorSpaceXformFlagUnpremul) != 0;
+        boolean premul = (flags & PixelUtils.kColorSpaceXformFlagPremul) != 0;
+        if (unpremul && premul) {
+            ao = AO_UNPREMUL_PREMUL;
+        } else if (unpremul) {
+            ao = AO_UNPREMUL;
+        } else if (premul) {
+            ao = AO_PREMUL;
+        } else {
+            ao = AO_NONE;
+        }
+        final boolean swapRB = (srcCT == ColorInfo.CT_BGRA_8888) != (dstCT == ColorInfo.CT_BGRA_8888);
+        // RGB_888x has no alpha channel to read and must have its alpha channel written as opaque
+        final boolean srcOpaque = srcCT == ColorInfo.CT_RGB_888x;
+        final boolean dstOpaque = dstCT == ColorInfo.CT_RGB_888x;
+
+        if (tf == TF_NONE) {
+            if (ao == AO_NONE || srcOpaque) {
+                // alpha ops have no effect on opaque pixels
+                return srcOpaque || dstOpaque
+                        ? (sb, sa, db, da, n) -> swizzleRow(sb, sa, db, da, n, swapRB, 0xFF000000)
+                        : (sb, sa, db, da, n) -> swizzleRow(sb, sa, db, da, n, swapRB, 0);
+            }
+            if (dstOpaque) {
+                return null;
+            }
+            switch (ao) {
+                case AO_PREMUL:
+                    return (sb, sa, db, da, n) -> premulRow(sb, sa, db, da, n, swapRB);
+                case AO_UNPREMUL:
+                    final byte[] unpremulTable = getUnpremulTable();
+                    return (sb, sa, db, da, n) -> unpremulRow(sb, sa, db, da, n, swapRB, unpremulTable);
+                default:
+                    // premul(unpremul(x)) is lossy but the generic path does the same
+                    return null;
+            }
+        }
+
+        final byte[] table = getTransferTable(tf, srcOpaque ? AO_NONE : ao);
+        final int srcAlphaOr = srcOpaque ? 0xFF000000 : 0;
+        final int dstAlphaOr = dstOpaque ? 0xFF000000 : 0;
+        return (sb, sa, db, da, n) -> transferRow(sb, sa, db, da, n, swapRB, srcAlphaOr, dstAlphaOr,
+                table);
+    }
+
+    static boolean is8888(@ColorInfo.ColorType int ct) {
+        return ct == ColorInfo.CT_RGBA_8888 ||
+                ct == ColorInfo.CT_BGRA_8888 ||
+                ct == ColorInfo.CT_RGB_888x;
+    }
+
+    private static int load32(Object base, long addr) {
+        int p = UNSAFE.getInt(base, addr);
+        return NATIVE_BIG_ENDIAN ? Integer.reverseBytes(p) : p;
+    }
+
+    private static void store32(Object base, long addr, int p) {
+        UNSAFE.putInt(base, addr, NATIVE_BIG_ENDIAN ? Integer.reverseBytes(p) : p);
+    }
+
+    private static int swapRB(int p) {
+        return (p & 0xFF00FF00) | ((p >>> 16) & 0xFF) | ((p & 0xFF) << 16);
+    }
+
+    /**
+     * Multiplies two 8-bit values and divides by 255 with correct rounding.
+     */
+    static int mul255(int a, int b) {
+        int x = a * b + 128;
+        return (x + (x >>> 8)) >>> 8;
+    }
+
+    static void swizzleRow(Object srcBase, long srcAddr,
+                           Object dstBase, long dstAddr,
+                           int count, boolean swapRB, int alphaOr) {
+        // two pixels per iteration, on little-endian machines each 32-bit lane is a pixel
+        if (!NATIVE_BIG_ENDIAN) {
+            final long wideAlphaOr = ((long) alphaOr << 32) | (alphaOr & 0xFFFFFFFFL);
+            for (; count >= 2; count -= 2) {
+                long p = UNSAFE.getLong(srcBase, srcAddr);
+                if (swapRB) {
+                    p = (p & 0xFF00FF00_FF00FF00L) |
+                            ((p >>> 16) & 0x000000FF_000000FFL) |
+                            ((p & 0x000000FF_000000FFL) << 16);
+                }
+                UNSAFE.putLong(dstBase, dstAddr, p | wideAlphaOr);
+                srcAddr += 8;
+                dstAddr += 8;
+            }
+        }
+        for (; count > 0; count--) {
+            int p = load32(srcBase, srcAddr);
+            if (swapRB) {
+                p = swapRB(p);
+            }
+            store32(dstBase, dstAddr, p | alphaOr);
+            srcAddr += 4;
+            dstAddr += 4;
+        }
+    }
+
+    static void premulRow(Object srcBase, long srcAddr,
+                          Object dstBase, long dstAddr,
+                          int count, boolean swapRB) {
+        for (; count > 0; count--) {
+            int p = load32(srcBase, srcAddr);
+            int a = p >>> 24;
+            if (a != 0xFF) {
+                int r = mul255(p & 0xFF, a);
+                int g = mul255((p >>> 8) & 0xFF, a);
+                int b = mul255((p >>> 16) & 0xFF, a);
+                p = (a << 24) | (b << 16) | (g << 8) | r;
+            }
+            if (swapRB) {
+                p = swapRB(p);
+            }
+            store32(dstBase, dstAddr, p);
+            srcAddr += 4;
+            dstAddr += 4;
+        }
+    }
+
+    static void unpremulRow(Object srcBase, long srcAddr,
+                            Object dstBase, long dstAddr,
+                            int count, boolean swapRB, byte[] table) {
+        for (; count > 0; count--) {
+            int p = load32(srcBase, srcAddr);
+            int a = p >>> 24;
+            if (a != 0xFF) {
+                int row = a << 8;
+                int r = table[row | (p & 0xFF)] & 0xFF;
+                int g = table[row | ((p >>> 8) & 0xFF)] & 0xFF;
+                int b = table[row | ((p >>> 16) & 0xFF)] & 0xFF;
+                p = (a << 24) | (b << 16) | (g << 8) | r;
+            }
+            if (swapRB) {
+                p = swapRB(p);
+            }
+            store32(dstBase, dstAddr, p);
+            srcAddr += 4;
+            dstAddr += 4;
+        }
+    }
+
+    static void transferRow(Object srcBase, long srcAddr,
+                            Object dstBase, long dstAddr,
+                            int count, boolean swapRB, int srcAlphaOr, int dstAlphaOr,
+                            byte[] table) {
+        for (; count > 0; count--) {
+            int p = load32(srcBase, srcAddr) | srcAlphaOr;
+            int a = p >>> 24;
+            int row = a << 8;
+            int r = table[row | (p & 0xFF)] & 0xFF;
+            int g = table[row | ((p >>> 8) & 0xFF)] & 0xFF;
+            int b = table[row | ((p >>> 16) & 0xFF)] & 0xFF;
+            p = (a << 24) | (b << 16) | (g << 8) | r;
+            if (swapRB) {
+                p = swapRB(p);
+            }
+            store32(dstBase, dstAddr, p | dstAlphaOr);
+            srcAddr += 4;
+            dstAddr += 4;
+        }
+    }
+
+    /**
+     * 64KB table indexed by (alpha << 8 | channel), the alpha op and transfer function
+     * are computed with the same float math as the generic path.
+     */
+    static byte[] getTransferTable(int tf, int ao) {
+        assert tf != TF_NONE;
+        int index = (tf - 1) * 4 + ao;
+        byte[] table;
+        synchronized (sTransferTables) {
+            table = sTransferTables[index];
+        }
+        if (table == null) {
+            var srgb = ColorSpace.get(ColorSpace.Named.SRGB);
+            var linear = ColorSpace.get(ColorSpace.Named.LINEAR_SRGB);
+            var connector = tf == TF_SRGB_TO_LINEAR
+                    ? ColorSpace.connect(srgb, linear)
+                    : ColorSpace.connect(linear, srgb);
+            table = new byte[256 * 256];
+            float[] col = new float[4];
+            for (int a = 0; a < 256; a++) {
+                for (int c = 0; c < 256; c++) {
+                    col[0] = col[1] = col[2] = c * (1.0f / 255);
+                    col[3] = a * (1.0f / 255);
+                    if ((ao & AO_UNPREMUL) != 0) {
+                        float scale = 1.0f / col[3];
+                        if (!Float.isFinite(scale)) { // NaN or Inf
+                            scale = 0;
+                        }
+                        col[0] *= scale;
+                        col[1] *= scale;
+                        col[2] *= scale;
+                    }
+                    connector.transform(col);
+                    if ((ao & AO_PREMUL) != 0) {
+                        col[0] *= col[3];
+                    }
+                    table[(a << 8) | c] = (byte) (MathUtil.clamp(col[0], 0.0f, 1.0f) * 255 + .5f);
+                }
+            }
+            synchronized (sTransferTables) {
+                sTransferTables[index] = table;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * 64KB table indexed by (alpha << 8 | color).
+     */
+    static byte[] getUnpremulTable() {
+        byte[] table = sUnpremulTable;
+        if (table == null) {
+            table = new byte[256 * 256];
+            for (int a = 1; a < 256; a++) {
+                float scale = 1.0f / (a * (1.0f / 255));
+                for (int c = 0; c < 256; c++) {
+                    float v = c * (1.0f / 255) * scale;
+                    table[(a << 8) | c] = (byte) (MathUtil.clamp(v, 0.0f, 1.0f) * 255 + .5f);
+                }
+            }
+            // a == 0 row is zero, the same as the generic path
+            sUnpremulTable = table;
+        }
+        return table;
+    }
+}
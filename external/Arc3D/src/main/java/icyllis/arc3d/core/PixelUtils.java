@@ -268,6 +268,12 @@ public class PixelUtils {
                 dst[2] = Byte.toUnsignedInt(UNSAFE.getByte(base, addr+2)) * (1.0f / 255);
                 dst[3] = Byte.toUnsignedInt(UNSAFE.getByte(base, addr+3)) * (1.0f / 255);
             }
+            case ColorInfo.CT_BGRA_8888 -> {
+                dst[2] = Byte.toUnsignedInt(UNSAFE.getByte(base, addr+0)) * (1.0f / 255);
+                dst[1] = Byte.toUnsignedInt(UNSAFE.getByte(base, addr+1)) * (1.0f / 255);
+                dst[0] = Byte.toUnsignedInt(UNSAFE.getByte(base, addr+2)) * (1.0f / 255);
+                dst[3] = Byte.toUnsignedInt(UNSAFE.getByte(base, addr+3)) * (1.0f / 255);
+            }
             case ColorInfo.CT_GRAY_8 -> {
                 float y = Byte.toUnsignedInt(UNSAFE.getByte(base, addr)) * (1.0f / 255);
                 dst[0] = dst[1] = dst[2] = y;
@@ -318,6 +324,12 @@ public class PixelUtils {
                     UNSAFE.putByte(base, addr+i, (byte) (MathUtil.clamp(src[i], 0.0f, 1.0f) * 255 + .5f));
                 }
             }
+            case ColorInfo.CT_BGRA_8888 -> {
+                UNSAFE.putByte(base, addr+0, (byte) (MathUtil.clamp(src[2], 0.0f, 1.0f) * 255 + .5f));
+                UNSAFE.putByte(base, addr+1, (byte) (MathUtil.clamp(src[1], 0.0f, 1.0f) * 255 + .5f));
+                UNSAFE.putByte(base, addr+2, (byte) (MathUtil.clamp(src[0], 0.0f, 1.0f) * 255 + .5f));
+                UNSAFE.putByte(base, addr+3, (byte) (MathUtil.clamp(src[3], 0.0f, 1.0f) * 255 + .5f));
+            }
             case ColorInfo.CT_GRAY_8 -> {
                 float y = MathUtil.clamp(src[0], 0.0f, 1.0f) * 0.2126f +
                           MathUtil.clamp(src[1], 0.0f, 1.0f) * 0.7152f +
@@ -445,14 +457,26 @@ public class PixelUtils {
             return true;
         }
 
-        float[] col = new float[4];
-
-        var connector = csXform ? ColorSpace.connect(srcCS, dstCS) : null;
-
         if (flipY) {
             dstAddr += dstRowBytes * (height - 1);
             dstRowBytes = -dstRowBytes;
         }
+
+        // Try a specialized row kernel first, this avoids the float round-trip.
+        var kernel = PixelConverter.find(srcCT, dstCT, flags, srcCS, dstCS, csXform);
+        if (kernel != null) {
+            for (int i = 0; i < height; i++) {
+                kernel.convert(srcBase, srcAddr, dstBase, dstAddr, width);
+                srcAddr += srcRowBytes;
+                dstAddr += dstRowBytes;
+            }
+            return true;
+        }
+
+        float[] col = new float[4];
+
+        var connector = csXform ? ColorSpace.connect(srcCS, dstCS) : null;
+
         for (int i = 0; i < height; i++) {
             long nextSrcAddr = srcAddr + srcRowBytes;
             long nextDstAddr = dstAddr + dstRowBytes;
@@ -0,0 +1,429 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.core;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * The blitter that writes pixels of a {@link Pixmap}.
+ * <p>
+ * RGBA_8888 and BGRA_8888 destinations (premultiplied or opaque) with SRC_OVER, SRC,
+ * CLEAR and DST blend modes run on integer row loops that process two channels per
+ * multiply. Other color types and blend modes fall back to per-pixel float blending
+ * via {@link PixelUtils#load} and {@link BlendMode#apply}.
+ * <p>
+ * The source is either a solid premultiplied color, or a {@link Source} that computes
+ * colors of a horizontal span, e.g. for image sampling. Packed colors are always in
+ * 0xAABBGGRR order (i.e. RGBA_8888 on little-endian machines).
+ */
+public final class PixmapBlitter extends Blitter {
+
+    /**
+     * Computes premultiplied source colors for a horizontal span of pixels.
+     */
+    @FunctionalInterface
+    public interface Source {
+
+        /**
+         * @param x     the x-coordinate of the first pixel
+         * @param y     the y-coordinate of the row
+         * @param dst   the packed colors in 0xAABBGGRR order
+         * @param count the number of pixels
+         */
+        void shadeSpan(int x, int y, int[] dst, int count);
+    }
+
+    private static final int
+            MODE_SRC_OVER = 0,
+            MODE_SRC = 1,
+            MODE_CLEAR = 2,
+            MODE_DST = 3,
+            MODE_GENERIC = 4;
+
+    private final Object mBase;
+    private final long mAddress;
+    private final int mRowStride;
+    private final int mBpp;
+    private final int mColorType;
+    // RGBA_8888 or BGRA_8888 and not unpremul
+    private final boolean mFast;
+    private final boolean mSwapRB;
+    private final boolean mUnpremul;
+
+    // premultiplied, in destination order if fast
+    private int mColor;
+    private final float[] mColor4 = new float[4];
+    private BlendMode mBlendMode = BlendMode.SRC_OVER;
+    private int mMode = MODE_SRC_OVER;
+
+    @Nullable
+    private Source mSource;
+    private int[] mSpan = new int[64];
+
+    private final float[] mSrc4 = new float[4];
+    private final float[] mDst4 = new float[4];
+    private final float[] mOut4 = new float[4];
+
+    /**
+     * @param pixmap the destination, the caller must keep its pixels alive
+     * @throws IllegalArgumentException the color type is not supported
+     */
+    public PixmapBlitter(@Nonnull Pixmap pixmap) {
+        final int ct = pixmap.getColorType();
+        if (!isSupported(ct)) {
+            throw new IllegalArgumentException("Unsupported color type " + ct);
+        }
+        mBase = pixmap.getBase();
+        mAddress = pixmap.getAddress();
+        mRowStride = pixmap.getRowStride();
+        mBpp = ColorInfo.bytesPerPixel(ct);
+        mColorType = ct;
+        mUnpremul = pixmap.getAlphaType() == ColorInfo.AT_UNPREMUL;
+        mFast = (ct == ColorInfo.CT_RGBA_8888 || ct == ColorInfo.CT_BGRA_8888) && !mUnpremul;
+        mSwapRB = ct == ColorInfo.CT_BGRA_8888;
+    }
+
+    /**
+     * Returns true if the color type can be used as the destination.
+     */
+    public static boolean isSupported(int colorType) {
+        return switch (colorType) {
+            case ColorInfo.CT_RGB_565,
+                    ColorInfo.CT_RGB_888,
+                    ColorInfo.CT_RGB_888x,
+                    ColorInfo.CT_RGBA_8888,
+                    ColorInfo.CT_BGRA_8888,
+                    ColorInfo.CT_GRAY_8,
+                    ColorInfo.CT_GRAY_ALPHA_88,
+                    ColorInfo.CT_ALPHA_8,
+                    ColorInfo.CT_RGBA_F32 -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Sets the solid source color, premultiplied, and clears the span source.
+     */
+    public void setColor4f(float r, float g, float b, float a) {
+        final float[] c = mColor4;
+        c[0] = r;
+        c[1] = g;
+        c[2] = b;
+        c[3] = a;
+        int col = pack(r, g, b, a);
+        mColor = mSwapRB ? swapRB(col) : col;
+        mSource = null;
+    }
+
+    /**
+     * Sets the span source, or null to use the solid color.
+     */
+    public void setSource(@Nullable Source source) {
+        mSource = source;
+    }
+
+    public void setBlendMode(@Nonnull BlendMode mode) {
+        mBlendMode = mode;
+        if (!mFast) {
+            mMode = MODE_GENERIC;
+            return;
+        }
+        mMode = switch (mode) {
+            case SRC_OVER -> MODE_SRC_OVER;
+            case SRC -> MODE_SRC;
+            case CLEAR -> MODE_CLEAR;
+            case DST -> MODE_DST;
+            default -> MODE_GENERIC;
+        };
+    }
+
+    /**
+     * Returns true if blitting with the current state never changes the destination.
+     */
+    public boolean isNoOp() {
+        if (mBlendMode == BlendMode.DST) {
+            return true;
+        }
+        return mSource == null && mColor4[3] <= 0 &&
+                (mBlendMode == BlendMode.SRC_OVER ||
+                        mBlendMode == BlendMode.DST_OVER ||
+                        mBlendMode == BlendMode.SRC_ATOP ||
+                        mBlendMode == BlendMode.DST_OUT ||
+                        mBlendMode == BlendMode.PLUS);
+    }
+
+    @Override
+    public void blitH(int x, int y, int width) {
+        if (mSource != null || mMode == MODE_GENERIC) {
+            super.blitH(x, y, width);
+            return;
+        }
+        long addr = mAddress + (long) y * mRowStride + ((long) x << 2);
+        switch (mMode) {
+            case MODE_SRC_OVER -> {
+                int src = mColor;
+                int sa = src >>> 24;
+                if (sa == 0xFF) {
+                    fill(addr, width, src);
+                } else if (sa != 0) {
+                    srcOverRow(addr, width, src, 256 - sa);
+                }
+            }
+            case MODE_SRC -> fill(addr, width, mColor);
+            case MODE_CLEAR -> fill(addr, width, 0);
+        }
+    }
+
+    @Override
+    public void blitAntiH(int x, int y, byte[] coverage, int offset, int width) {
+        final long addr = mAddress + (long) y * mRowStride + (long) x * mBpp;
+        if (mSource != null) {
+            int[] span = getSpan(width);
+            mSource.shadeSpan(x, y, span, width);
+            blendSpan(addr, span, coverage, offset, width);
+            return;
+        }
+        if (mMode == MODE_GENERIC) {
+            for (int i = 0; i < width; i++) {
+                int c = coverage[offset + i] & 0xFF;
+                if (c != 0) {
+                    blendGeneric(addr + (long) i * mBpp, mColor4, c);
+                }
+            }
+            return;
+        }
+        final var unsafe = PixelUtils.UNSAFE;
+        final Object base = mBase;
+        final int src = mColor;
+        switch (mMode) {
+            case MODE_SRC_OVER -> {
+                if (src == 0) {
+                    return;
+                }
+                for (int i = 0; i < width; i++) {
+                    int c = coverage[offset + i] & 0xFF;
+                    if (c == 0) {
+                        continue;
+                    }
+                    long a = addr + ((long) i << 2);
+                    int s = c == 0xFF ? src : mulQ(src, c + (c >> 7));
+                    int sa = s >>> 24;
+                    if (sa == 0xFF) {
+                        putInt(unsafe, base, a, s);
+                    } else {
+                        putInt(unsafe, base, a, s + mulQ(getInt(unsafe, base, a), 256 - sa));
+                    }
+                }
+            }
+            case MODE_SRC, MODE_CLEAR -> {
+                int s = mMode == MODE_SRC ? src : 0;
+                for (int i = 0; i < width; i++) {
+                    int c = coverage[offset + i] & 0xFF;
+                    if (c == 0) {
+                        continue;
+                    }
+                    long a = addr + ((long) i << 2);
+                    if (c == 0xFF) {
+                        putInt(unsafe, base, a, s);
+                    } else {
+                        int scale = c + (c >> 7);
+                        putInt(unsafe, base, a, mulQ(s, scale) + mulQ(getInt(unsafe, base, a), 256 - scale));
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void blitMask(byte format, Object base, long address, int rowBytes,
+                         int left, int top, Rect2ic clip) {
+        if (format != Mask.kARGB32_Format) {
+            super.blitMask(format, base, address, rowBytes, left, top, clip);
+            return;
+        }
+        // color glyphs ignore the paint color except for its alpha
+        final int width = clip.width();
+        if (width <= 0) {
+            return;
+        }
+        final var unsafe = PixelUtils.UNSAFE;
+        final float alpha = mColor4[3];
+        final int scale = (int) (alpha * 256 + 0.5f);
+        final int[] span = getSpan(width);
+        final byte[] full = getRow(width);
+        Arrays.fill(full, 0, width, (byte) 0xFF);
+        for (int y = clip.top(); y < clip.bottom(); y++) {
+            long rowAddr = address + (long) (y - top) * rowBytes + ((long) (clip.left() - left) << 2);
+            for (int i = 0; i < width; i++) {
+                // 0xAARRGGBB premultiplied
+                int argb = unsafe.getInt(base, rowAddr + ((long) i << 2));
+                int col = (argb & 0xFF00FF00) | swapRB(argb) & 0x00FF00FF;
+                span[i] = scale >= 256 ? col : mulQ(col, scale);
+            }
+            long addr = mAddress + (long) y * mRowStride + (long) clip.left() * mBpp;
+            blendSpan(addr, span, full, 0, width);
+        }
+    }
+
+    private void blendSpan(long addr, int[] span, byte[] coverage, int offset, int width) {
+        if (mMode == MODE_GENERIC) {
+            final float[] src = mSrc4;
+            for (int i = 0; i < width; i++) {
+                int c = coverage[offset + i] & 0xFF;
+                if (c != 0) {
+                    unpack(span[i], src);
+                    blendGeneric(addr + (long) i * mBpp, src, c);
+                }
+            }
+            return;
+        }
+        final var unsafe = PixelUtils.UNSAFE;
+        final Object base = mBase;
+        final boolean swap = mSwapRB;
+        for (int i = 0; i < width; i++) {
+            int c = coverage[offset + i] & 0xFF;
+            if (c == 0) {
+                continue;
+            }
+            long a = addr + ((long) i << 2);
+            int s = swap ? swapRB(span[i]) : span[i];
+            switch (mMode) {
+                case MODE_SRC_OVER -> {
+                    if (c != 0xFF) {
+                        s = mulQ(s, c + (c >> 7));
+                    }
+                    int sa = s >>> 24;
+                    if (sa == 0xFF) {
+                        putInt(unsafe, base, a, s);
+                    } else if (s != 0) {
+                        putInt(unsafe, base, a, s + mulQ(getInt(unsafe, base, a), 256 - sa));
+                    }
+                }
+                case MODE_SRC, MODE_CLEAR -> {
+                    if (mMode == MODE_CLEAR) {
+                        s = 0;
+                    }
+                    if (c == 0xFF) {
+                        putInt(unsafe, base, a, s);
+                    } else {
+                        int scale = c + (c >> 7);
+                        putInt(unsafe, base, a, mulQ(s, scale) + mulQ(getInt(unsafe, base, a), 256 - scale));
+                    }
+                }
+                default -> {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void blendGeneric(long addr, float[] src, int coverage) {
+        final float[] dst = mDst4;
+        final float[] out = mOut4;
+        PixelUtils.load(mColorType, mBase, addr, dst);
+        if (mUnpremul) {
+            float a = dst[3];
+            dst[0] *= a;
+            dst[1] *= a;
+            dst[2] *= a;
+        }
+        mBlendMode.apply(src, dst, out);
+        if (coverage != 0xFF) {
+            float f = coverage * (1 / 255.0f);
+            for (int i = 0; i < 4; i++) {
+                out[i] = dst[i] + (out[i] - dst[i]) * f;
+            }
+        }
+        if (mUnpremul) {
+            float a = out[3];
+            if (a > 0) {
+                float inv = 1 / a;
+                out[0] *= inv;
+                out[1] *= inv;
+                out[2] *= inv;
+            }
+        }
+        PixelUtils.store(mColorType, mBase, addr, out);
+    }
+
+    private void fill(long addr, int width, int value) {
+        final var unsafe = PixelUtils.UNSAFE;
+        final Object base = mBase;
+        for (long end = addr + ((long) width << 2); addr < end; addr += 4) {
+            putInt(unsafe, base, addr, value);
+        }
+    }
+
+    private void srcOverRow(long addr, int width, int src, int dstScale) {
+        final var unsafe = PixelUtils.UNSAFE;
+        final Object base = mBase;
+        for (long end = addr + ((long) width << 2); addr < end; addr += 4) {
+            putInt(unsafe, base, addr, src + mulQ(getInt(unsafe, base, addr), dstScale));
+        }
+    }
+
+    private int[] getSpan(int width) {
+        int[] span = mSpan;
+        if (span.length < width) {
+            mSpan = span = new int[Math.max(width, span.length << 1)];
+        }
+        return span;
+    }
+
+    private static int getInt(sun.misc.Unsafe unsafe, Object base, long addr) {
+        int v = unsafe.getInt(base, addr);
+        return PixelUtils.NATIVE_BIG_ENDIAN ? Integer.reverseBytes(v) : v;
+    }
+
+    private static void putInt(sun.misc.Unsafe unsafe, Object base, long addr, int v) {
+        unsafe.putInt(base, addr, PixelUtils.NATIVE_BIG_ENDIAN ? Integer.reverseBytes(v) : v);
+    }
+
+    /**
+     * Multiplies all four 8-bit channels by scale in [0, 256], two channels per multiply.
+     */
+    static int mulQ(int c, int scale) {
+        return (((c & 0xFF00FF) * scale) >>> 8 & 0xFF00FF) |
+                (((c >>> 8) & 0xFF00FF) * scale & 0xFF00FF00);
+    }
+
+    static int swapRB(int c) {
+        return (c & 0xFF00FF00) | (c >>> 16) & 0xFF | (c & 0xFF) << 16;
+    }
+
+    /**
+     * Packs premultiplied float components into 0xAABBGGRR.
+     */
+    public static int pack(float r, float g, float b, float a) {
+        return (int) (MathUtil.clamp(a, 0, 1) * 255 + .5f) << 24 |
+                (int) (MathUtil.clamp(b, 0, 1) * 255 + .5f) << 16 |
+                (int) (MathUtil.clamp(g, 0, 1) * 255 + .5f) << 8 |
+                (int) (MathUtil.clamp(r, 0, 1) * 255 + .5f);
+    }
+
+    static void unpack(int c, float[] dst) {
+        dst[0] = (c & 0xFF) * (1 / 255.0f);
+        dst[1] = (c >>> 8 & 0xFF) * (1 / 255.0f);
+        dst[2] = (c >>> 16 & 0xFF) * (1 / 255.0f);
+        dst[3] = (c >>> 24) * (1 / 255.0f);
+    }
+}
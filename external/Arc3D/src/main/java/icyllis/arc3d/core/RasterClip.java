@@ -0,0 +1,303 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.core;
+
+import org.jetbrains.annotations.ApiStatus;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+/**
+ * The clip of software rasterization, in device space. The clip is either a pixel-aligned
+ * rectangle, or a coverage mask of its bounds when any operation could not be represented
+ * as a rectangle, e.g. anti-aliased, rotated or difference clips.
+ * <p>
+ * Masks are never modified after creation, so a mask can be shared by the clips in the
+ * save stack, and {@link #set(RasterClip)} is cheap.
+ */
+public final class RasterClip {
+
+    private final Rect2i mBounds = new Rect2i();
+    // coverage of mBounds, row stride is the width of bounds, or null if rect
+    private byte[] mMask;
+    private boolean mIsAA;
+
+    // the number of deferred saves, used by the device's clip stack
+    @ApiStatus.Internal
+    public int mDeferredSaveCount;
+
+    public RasterClip() {
+    }
+
+    public void set(@Nonnull RasterClip clip) {
+        mBounds.set(clip.mBounds);
+        mMask = clip.mMask;
+        mIsAA = clip.mIsAA;
+    }
+
+    public void setEmpty() {
+        mBounds.setEmpty();
+        mMask = null;
+        mIsAA = false;
+    }
+
+    public void setRect(@Nonnull Rect2ic rect) {
+        mBounds.set(rect);
+        mMask = null;
+        mIsAA = false;
+    }
+
+    /**
+     * @return the bounds of the clip, read-only
+     */
+    @Nonnull
+    public Rect2ic getBounds() {
+        return mBounds;
+    }
+
+    public boolean isEmpty() {
+        return mBounds.isEmpty();
+    }
+
+    public boolean isRect() {
+        return mMask == null;
+    }
+
+    public boolean isAA() {
+        return mIsAA;
+    }
+
+    /**
+     * Applies a rect clip op.
+     *
+     * @param rect          the rect in local space
+     * @param localToDevice the transform from local space to device space
+     * @param clipOp        the clip op, see {@link ClipOp}
+     * @param doAA          whether the clip edges are anti-aliased
+     * @param scan          the scan converter used to rasterize non-rect clips
+     */
+    public void opRect(@Nonnull Rect2fc rect, @Nonnull Matrixc localToDevice,
+                       int clipOp, boolean doAA, @Nonnull ScanConverter scan) {
+        if (isEmpty() && clipOp == ClipOp.CLIP_OP_INTERSECT) {
+            return;
+        }
+        if (localToDevice.isAxisAligned()) {
+            final Rect2f devRect = new Rect2f();
+            localToDevice.mapRect(rect, devRect);
+            devRect.sort();
+            final Rect2i pixelRect = new Rect2i();
+            devRect.round(pixelRect);
+            // an anti-aliased rect with integral edges needs no mask
+            boolean aligned = !doAA || (devRect.left() == pixelRect.left() &&
+                    devRect.top() == pixelRect.top() &&
+                    devRect.right() == pixelRect.right() &&
+                    devRect.bottom() == pixelRect.bottom());
+            if (aligned && mMask == null) {
+                if (clipOp == ClipOp.CLIP_OP_INTERSECT) {
+                    if (!mBounds.intersect(pixelRect)) {
+                        mBounds.setEmpty();
+                    }
+                    return;
+                }
+                final Rect2i difference = new Rect2i();
+                if (!Rect2i.intersects(mBounds, pixelRect)) {
+                    return;
+                }
+                if (Rect2i.subtract(mBounds, pixelRect, difference)) {
+                    mBounds.set(difference);
+                    return;
+                }
+            }
+            final Path path = new Path();
+            path.moveTo(devRect.left(), devRect.top());
+            path.lineTo(devRect.right(), devRect.top());
+            path.lineTo(devRect.right(), devRect.bottom());
+            path.lineTo(devRect.left(), devRect.bottom());
+            path.close();
+            opPath(path, clipOp, doAA, scan);
+        } else {
+            final Path path = new Path();
+            final float[] pts = {
+                    rect.left(), rect.top(),
+                    rect.right(), rect.top(),
+                    rect.right(), rect.bottom(),
+                    rect.left(), rect.bottom()
+            };
+            localToDevice.mapPoints(pts);
+            path.moveTo(pts[0], pts[1]);
+            path.lineTo(pts[2], pts[3]);
+            path.lineTo(pts[4], pts[5]);
+            path.lineTo(pts[6], pts[7]);
+            path.close();
+            opPath(path, clipOp, doAA, scan);
+        }
+    }
+
+    /**
+     * Applies a path clip op, the path is in device space.
+     */
+    public void opPath(@Nonnull Path devPath, int clipOp, boolean doAA,
+                       @Nonnull ScanConverter scan) {
+        mIsAA |= doAA;
+        final Rect2i newBounds = new Rect2i(mBounds);
+        if (clipOp == ClipOp.CLIP_OP_INTERSECT) {
+            final Rect2i pathBounds = new Rect2i();
+            devPath.getBounds().roundOut(pathBounds);
+            if (!newBounds.intersect(pathBounds)) {
+                setEmpty();
+                return;
+            }
+        }
+        final int width = newBounds.width();
+        final int height = newBounds.height();
+        // rasterize the path into a new mask
+        final byte[] shape = new byte[width * height];
+        scan.fillPath(devPath, newBounds, doAA, new MaskBuilder(shape, newBounds));
+        // combine with the current clip
+        final byte[] oldMask = mMask;
+        final Rect2i oldBounds = mBounds;
+        final int oldWidth = oldBounds.width();
+        boolean empty = true;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0, i = y * width; x < width; x++, i++) {
+                int cov = shape[i] & 0xFF;
+                if (clipOp != ClipOp.CLIP_OP_INTERSECT) {
+                    cov = 0xFF - cov;
+                }
+                if (oldMask != null) {
+                    int ox = newBounds.left() + x - oldBounds.left();
+                    int oy = newBounds.top() + y - oldBounds.top();
+                    cov = cov * (oldMask[oy * oldWidth + ox] & 0xFF) / 0xFF;
+                }
+                shape[i] = (byte) cov;
+                empty &= cov == 0;
+            }
+        }
+        if (empty) {
+            setEmpty();
+            return;
+        }
+        mBounds.set(newBounds);
+        mMask = shape;
+    }
+
+    /**
+     * Returns a blitter that applies this clip to the given blitter. The returned blitter
+     * may be the given blitter if this clip is a rect, geometry must be clipped to
+     * {@link #getBounds()} in either case.
+     */
+    @Nonnull
+    public Blitter apply(@Nonnull Blitter blitter) {
+        if (mMask == null) {
+            return blitter;
+        }
+        return new MaskBlitter(blitter, mMask, mBounds);
+    }
+
+    /**
+     * Writes coverage into a mask of the given bounds.
+     */
+    private static final class MaskBuilder extends Blitter {
+
+        private final byte[] mMask;
+        private final int mLeft;
+        private final int mTop;
+        private final int mWidth;
+
+        MaskBuilder(byte[] mask, Rect2ic bounds) {
+            mMask = mask;
+            mLeft = bounds.left();
+            mTop = bounds.top();
+            mWidth = bounds.width();
+        }
+
+        @Override
+        public void blitH(int x, int y, int width) {
+            int i = (y - mTop) * mWidth + (x - mLeft);
+            Arrays.fill(mMask, i, i + width, (byte) 0xFF);
+        }
+
+        @Override
+        public void blitAntiH(int x, int y, byte[] coverage, int offset, int width) {
+            int i = (y - mTop) * mWidth + (x - mLeft);
+            System.arraycopy(coverage, offset, mMask, i, width);
+        }
+    }
+
+    /**
+     * Modulates coverage by the clip mask and forwards it.
+     */
+    private static final class MaskBlitter extends Blitter {
+
+        private final Blitter mBlitter;
+        private final byte[] mMask;
+        private final int mLeft;
+        private final int mTop;
+        private final int mWidth;
+        private byte[] mTemp = new byte[64];
+
+        MaskBlitter(Blitter blitter, byte[] mask, Rect2ic bounds) {
+            mBlitter = blitter;
+            mMask = mask;
+            mLeft = bounds.left();
+            mTop = bounds.top();
+            mWidth = bounds.width();
+        }
+
+        @Override
+        public void blitH(int x, int y, int width) {
+            blitAntiH(x, y, null, 0, width);
+        }
+
+        @Override
+        public void blitAntiH(int x, int y, byte[] coverage, int offset, int width) {
+            byte[] temp = mTemp;
+            if (temp.length < width) {
+                mTemp = temp = new byte[Math.max(width, temp.length << 1)];
+            }
+            final byte[] mask = mMask;
+            final int m = (y - mTop) * mWidth + (x - mLeft);
+            for (int i = 0; i < width; i++) {
+                int c = mask[m + i] & 0xFF;
+                if (coverage != null && c != 0) {
+                    int a = coverage[offset + i] & 0xFF;
+                    // (a * c) / 255 rounded
+                    int v = a * c + 0x80;
+                    c = (v + (v >> 8)) >> 8;
+                }
+                temp[i] = (byte) c;
+            }
+            // skip fully clipped pixels
+            int i = 0;
+            while (i < width) {
+                while (i < width && temp[i] == 0) {
+                    i++;
+                }
+                int start = i;
+                while (i < width && temp[i] != 0) {
+                    i++;
+                }
+                if (i > start) {
+                    mBlitter.blitAntiH(x + start, y, temp, start, i - start);
+                }
+            }
+        }
+    }
+}
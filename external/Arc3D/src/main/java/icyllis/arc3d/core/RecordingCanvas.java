@@ -0,0 +1,279 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.core;
+
+import javax.annotation.Nullable;
+
+/**
+ * The canvas returned by {@link DisplayListRecorder#beginRecording(int, int)}, it encodes
+ * the commands into the recorder's buffers. Drawing commands are never quick rejected,
+ * since the display list may be replayed with a different matrix and clip.
+ *
+ * @see DisplayList
+ */
+public final class RecordingCanvas extends NoDrawCanvas {
+
+    private final DisplayListRecorder mRecorder;
+
+    // lazily created, for converting glyph runs to text blobs
+    private TextBlob.Builder mBlobBuilder;
+
+    RecordingCanvas(int width, int height, DisplayListRecorder recorder) {
+        super(width, height);
+        mRecorder = recorder;
+    }
+
+    @Override
+    protected void willSave() {
+        mRecorder.addOp(DisplayList.OP_SAVE);
+    }
+
+    @Override
+    protected int getSaveLayerStrategy(@Nullable Rect2f bounds, @Nullable Paint paint,
+                                       @Nullable ImageFilter backdrop, int saveLayerFlags) {
+        final var r = mRecorder;
+        r.addOp(DisplayList.OP_SAVE_LAYER);
+        if (bounds != null) {
+            r.addInt(1);
+            r.addRect(bounds);
+        } else {
+            r.addInt(0);
+        }
+        r.addPaint(paint);
+        // the layer will be created on playback
+        return NO_LAYER_SAVE_LAYER_STRATEGY;
+    }
+
+    @Override
+    protected void willRestore() {
+        mRecorder.addOp(DisplayList.OP_RESTORE);
+    }
+
+    @Override
+    protected void didTranslate(float dx, float dy, float dz) {
+        final var r = mRecorder;
+        r.addOp(DisplayList.OP_TRANSLATE);
+        r.addFloat(dx);
+        r.addFloat(dy);
+        r.addFloat(dz);
+    }
+
+    @Override
+    protected void didScale(float sx, float sy, float sz) {
+        final var r = mRecorder;
+        r.addOp(DisplayList.OP_SCALE);
+        r.addFloat(sx);
+        r.addFloat(sy);
+        r.addFloat(sz);
+    }
+
+    @Override
+    protected void didConcat(Matrix4c matrix) {
+        mRecorder.addOp(DisplayList.OP_CONCAT);
+        mRecorder.addMatrix(matrix);
+    }
+
+    @Override
+    protected void didSetMatrix(Matrix4c matrix) {
+        mRecorder.addOp(DisplayList.OP_SET_MATRIX);
+        mRecorder.addMatrix(matrix);
+        mRecorder.mHasSetMatrix = true;
+    }
+
+    @Override
+    protected void onClipRect(Rect2fc rect, int clipOp, boolean doAA) {
+        final var r = mRecorder;
+        r.addOp(DisplayList.OP_CLIP_RECT);
+        r.addInt(clipOp);
+        r.addInt(doAA ? 1 : 0);
+        r.addRect(rect);
+        super.onClipRect(rect, clipOp, doAA);
+    }
+
+    @Override
+    protected void onDrawPaint(Paint paint) {
+        mRecorder.addOp(DisplayList.OP_DRAW_PAINT);
+        mRecorder.addPaint(paint);
+    }
+
+    @Override
+    protected void onDrawPoints(int mode, float[] pts, int offset, int count, Paint paint) {
+        if (count <= 0) {
+            return;
+        }
+        final var r = mRecorder;
+        r.addOp(DisplayList.OP_DRAW_POINTS);
+        r.addInt(mode);
+        r.addInt(count);
+        r.addFloats(pts, offset, count * 2);
+        r.addPaint(paint);
+    }
+
+    @Override
+    protected void onDrawLine(float x0, float y0, float x1, float y1, int cap, float width, Paint paint) {
+        final var r = mRecorder;
+        r.addOp(DisplayList.OP_DRAW_LINE);
+        r.addInt(cap);
+        r.addFloat(x0);
+        r.addFloat(y0);
+        r.addFloat(x1);
+        r.addFloat(y1);
+        r.addFloat(width);
+        r.addPaint(paint);
+    }
+
+    @Override
+    protected void onDrawRect(Rect2fc rect, Paint paint) {
+        mRecorder.addOp(DisplayList.OP_DRAW_RECT);
+        mRecorder.addRect(rect);
+        mRecorder.addPaint(paint);
+    }
+
+    @Override
+    protected void onDrawRoundRect(RoundRect rr, Paint paint) {
+        mRecorder.addOp(DisplayList.OP_DRAW_ROUND_RECT);
+        // the canvas reuses its round rect
+        mRecorder.addObject(new RoundRect(rr));
+        mRecorder.addPaint(paint);
+    }
+
+    @Override
+    protected void onDrawCircle(float cx, float cy, float radius, Paint paint) {
+        final var r = mRecorder;
+        r.addOp(DisplayList.OP_DRAW_CIRCLE);
+        r.addFloat(cx);
+        r.addFloat(cy);
+        r.addFloat(radius);
+        r.addPaint(paint);
+    }
+
+    @Override
+    protected void onDrawArc(float cx, float cy, float radius, float startAngle, float sweepAngle,
+                             int cap, float width, Paint paint) {
+        final var r = mRecorder;
+        r.addOp(DisplayList.OP_DRAW_ARC);
+        r.addInt(cap);
+        r.addFloat(cx);
+        r.addFloat(cy);
+        r.addFloat(radius);
+        r.addFloat(startAngle);
+        r.addFloat(sweepAngle);
+        r.addFloat(width);
+        r.addPaint(paint);
+    }
+
+    @Override
+    protected void onDrawPie(float cx, float cy, float radius, float startAngle, float sweepAngle, Paint paint) {
+        recordWedge(DisplayList.OP_DRAW_PIE, cx, cy, radius, startAngle, sweepAngle, paint);
+    }
+
+    @Override
+    protected void onDrawChord(float cx, float cy, float radius, float startAngle, float sweepAngle, Paint paint) {
+        recordWedge(DisplayList.OP_DRAW_CHORD, cx, cy, radius, startAngle, sweepAngle, paint);
+    }
+
+    private void recordWedge(int op, float cx, float cy, float radius,
+                             float startAngle, float sweepAngle, Paint paint) {
+        final var r = mRecorder;
+        r.addOp(op);
+        r.addFloat(cx);
+        r.addFloat(cy);
+        r.addFloat(radius);
+        r.addFloat(startAngle);
+        r.addFloat(sweepAngle);
+        r.addPaint(paint);
+    }
+
+    @Override
+    protected void onDrawImageRect(@RawPtr Image image, Rect2fc src, Rect2fc dst,
+                                   SamplingOptions sampling, Paint paint, int constraint) {
+        final var r = mRecorder;
+        r.addOp(DisplayList.OP_DRAW_IMAGE_RECT);
+        r.addInt(constraint);
+        r.addRect(src);
+        r.addRect(dst);
+        r.addObject(RefCnt.create(image));
+        r.addObject(sampling);
+        r.addPaint(paint);
+    }
+
+    @Override
+    protected void onDrawTextBlob(TextBlob blob, float originX, float originY, Paint paint) {
+        // text blob is immutable
+        final var r = mRecorder;
+        r.addOp(DisplayList.OP_DRAW_TEXT_BLOB);
+        r.addFloat(originX);
+        r.addFloat(originY);
+        r.addObject(blob);
+        r.addPaint(paint);
+    }
+
+    @Override
+    protected void onDrawGlyphRunList(GlyphRunList glyphRunList, Paint paint) {
+        TextBlob blob = glyphRunList.mOriginalTextBlob;
+        if (blob == null) {
+            // glyph runs are views of the caller's arrays, make a copy
+            blob = makeTextBlob(glyphRunList);
+            if (blob == null) {
+                return;
+            }
+        }
+        onDrawTextBlob(blob, glyphRunList.mOriginX, glyphRunList.mOriginY, paint);
+    }
+
+    @Nullable
+    private TextBlob makeTextBlob(GlyphRunList glyphRunList) {
+        final int runCount = glyphRunList.mGlyphRunCount;
+        if (runCount == 1) {
+            GlyphRun run = glyphRunList.mGlyphRuns[0];
+            return TextBlob.make(run.mGlyphs, run.mGlyphOffset,
+                    run.mPositions, run.mPositionOffset,
+                    run.mGlyphCount, run.font(),
+                    glyphRunList.getSourceBounds());
+        }
+        var builder = mBlobBuilder;
+        if (builder == null) {
+            mBlobBuilder = builder = new TextBlob.Builder();
+        }
+        for (int i = 0; i < runCount; i++) {
+            GlyphRun run = glyphRunList.mGlyphRuns[i];
+            builder.allocRunPos(run.font(), run.mGlyphCount, null)
+                    .addGlyphs(run.mGlyphs, run.mGlyphOffset, run.mGlyphCount)
+                    .addPositions(run.mPositions, run.mPositionOffset, run.mGlyphCount);
+        }
+        return builder.build();
+    }
+
+    @Override
+    protected void onDrawVertices(Vertices vertices, @SharedPtr Blender blender, Paint paint) {
+        final var r = mRecorder;
+        r.addOp(DisplayList.OP_DRAW_VERTICES);
+        // vertices is immutable
+        r.addObject(vertices);
+        r.addObject(blender);
+        r.addPaint(paint);
+    }
+
+    @Override
+    protected void onDrawDrawable(Drawable drawable) {
+        mRecorder.addOp(DisplayList.OP_DRAW_DRAWABLE);
+        mRecorder.addObject(drawable);
+    }
+}
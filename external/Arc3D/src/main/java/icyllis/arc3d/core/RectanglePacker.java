@@ -103,6 +103,13 @@ public abstract class RectanglePacker {
      */
     public abstract boolean addRect(Rect2i rect);
 
+    /**
+     * Returns the sum of the areas of the rectangles added since the last clear.
+     */
+    public final int getArea() {
+        return mArea;
+    }
+
     /**
      * Returns the ratio of the used area to the maximum area, higher is better.
      *
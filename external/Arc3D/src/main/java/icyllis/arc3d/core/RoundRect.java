@@ -594,6 +594,70 @@ public class RoundRect {
         //assert isValid() : this;
     }
 
+    /**
+     * Sets bounds to rect. Sets radii array for individual control of all four corners,
+     * upper-left, upper-right, lower-right, lower-left, in that order.
+     * <p>
+     * If rect is empty, sets to kEmpty_Type.
+     * Otherwise, if one of each corner radii is zero, sets to kRect_Type.
+     * If the sum of the radii of any side is greater than the side length, all radii are
+     * scaled down proportionally. Then the type is computed from the radii.
+     *
+     * @param radii corner x-axis and y-axis radii
+     */
+    public void setRectRadii(float left, float top, float right, float bottom,
+                             @Size(8) float[] radii) {
+        if (!initRect(left, top, right, bottom)) {
+            return;
+        }
+
+        if (!MathUtil.isFinite(radii, 0, 8)) {
+            // degenerate into a simple rect
+            Arrays.fill(mRadii, 0);
+            mType = kRect_Type;
+            return;
+        }
+
+        System.arraycopy(radii, 0, mRadii, 0, 8);
+        if (clamp_corner_radii(mRadii)) {
+            mType = kRect_Type;
+            assert isValid();
+            return;
+        }
+
+        final float[] rad = mRadii;
+        final double width = width(), height = height();
+        double scale = 1;
+        scale = Math.min(scale, width / ((double) rad[0] + rad[2]));
+        scale = Math.min(scale, height / ((double) rad[3] + rad[5]));
+        scale = Math.min(scale, width / ((double) rad[4] + rad[6]));
+        scale = Math.min(scale, height / ((double) rad[1] + rad[7]));
+        if (scale < 1) {
+            for (int i = 0; i < 8; i++) {
+                rad[i] = (float) (rad[i] * scale);
+            }
+        }
+
+        boolean allRadiiSame = true;
+        for (int i = 2; i < 8; i += 2) {
+            if (rad[i] != rad[0] || rad[i | 1] != rad[1]) {
+                allRadiiSame = false;
+                break;
+            }
+        }
+        if (allRadiiSame) {
+            if (rad[0] >= width() * 0.5f && rad[1] >= height() * 0.5f) {
+                mType = kEllipse_Type;
+            } else {
+                mType = kSimple_Type;
+            }
+        } else if (radii_are_nine_slice(rad)) {
+            mType = kNineSlice_Type;
+        } else {
+            mType = kComplex_Type;
+        }
+    }
+
     /**
      * Initializes Rect. If the passed in rect is not finite or empty the round rect will be fully
      * initialized and false is returned. Otherwise, just Rect is initialized and true is returned.
@@ -0,0 +1,670 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.core;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Converts device space geometry into coverage runs for a {@link Blitter}.
+ * <p>
+ * Paths are flattened into line edges and filled scanline by scanline with an active
+ * edge list. With anti-aliasing, each pixel row is sampled by four sub-scanlines, and
+ * the horizontal coverage of each sub-span is exact, partial pixels at span ends are
+ * accumulated directly and full pixels are accumulated as deltas, so the cost of a row
+ * is proportional to its width plus the number of crossings. Rects and axis-aligned
+ * round rects (including circles and ellipses) have analytic coverage instead.
+ * <p>
+ * This class is not thread-safe, it retains its buffers between calls.
+ */
+public final class ScanConverter {
+
+    // sub-scanlines per pixel row
+    static final int SHIFT = 2;
+    static final int SCALE = 1 << SHIFT;
+    // coverage of a full pixel on a sub-scanline, SCALE * FULL = 256
+    static final int FULL = 256 >> SHIFT;
+
+    // flattening tolerance in device pixels
+    static final float TOLERANCE = 0.25f;
+    static final int MAX_SUBDIVISIONS = 100;
+
+    // x0, y0, x1, y1, dx/dy, winding; y0 < y1
+    private static final int EDGE_STRIDE = 6;
+
+    private float[] mEdges = new float[EDGE_STRIDE * 32];
+    private int mEdgeCount;
+    private long[] mOrder = new long[32];
+    private int[] mActive = new int[32];
+
+    private float[] mCrossX = new float[16];
+    private int[] mCrossW = new int[16];
+
+    private int[] mCover = new int[64];
+    private int[] mDelta = new int[64];
+    private byte[] mRow = new byte[64];
+    private float[] mColumn = new float[64];
+
+    private final EdgeBuilder mEdgeBuilder = new EdgeBuilder();
+
+    public ScanConverter() {
+    }
+
+    /**
+     * Fills a path in device space.
+     *
+     * @param path      the path in device space
+     * @param clip      the clip bounds in device space
+     * @param antiAlias whether to compute partial coverage
+     * @param blitter   the receiver of the coverage
+     */
+    public void fillPath(@Nonnull Path path, @Nonnull Rect2ic clip,
+                         boolean antiAlias, @Nonnull Blitter blitter) {
+        if (path.isEmpty() || !path.isFinite()) {
+            return;
+        }
+        Rect2fc bounds = path.getBounds();
+        int top = Math.max(clip.top(), (int) Math.floor(bounds.top()));
+        int bottom = Math.min(clip.bottom(), (int) Math.ceil(bounds.bottom()));
+        int left = Math.max(clip.left(), (int) Math.floor(bounds.left()));
+        int right = Math.min(clip.right(), (int) Math.ceil(bounds.right()));
+        if (left >= right || top >= bottom) {
+            return;
+        }
+
+        mEdgeCount = 0;
+        path.forEach(mEdgeBuilder);
+        final int edgeCount = mEdgeCount;
+        if (edgeCount == 0) {
+            return;
+        }
+        final float[] edges = mEdges;
+
+        // sort edges by their top, float bits of positive and negative values are
+        // both made sortable as signed integers
+        long[] order = mOrder;
+        if (order.length < edgeCount) {
+            mOrder = order = new long[edgeCount];
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            int bits = Float.floatToRawIntBits(edges[i * EDGE_STRIDE + 1]);
+            bits ^= (bits >> 31) & 0x7FFFFFFF;
+            order[i] = ((long) bits << 32) | i;
+        }
+        Arrays.sort(order, 0, edgeCount);
+
+        int[] active = mActive;
+        if (active.length < edgeCount) {
+            mActive = active = new int[edgeCount];
+        }
+        if (mCrossX.length < edgeCount) {
+            mCrossX = new float[edgeCount];
+            mCrossW = new int[edgeCount];
+        }
+
+        final int width = right - left;
+        if (antiAlias) {
+            ensureRow(width + 1);
+        }
+        final boolean evenOdd = path.getFillRule() == Path.FILL_EVEN_ODD;
+
+        int activeCount = 0;
+        int next = 0;
+        for (int y = top; y < bottom; y++) {
+            // remove edges that ended above this row
+            int n = 0;
+            for (int i = 0; i < activeCount; i++) {
+                int e = active[i];
+                if (edges[e * EDGE_STRIDE + 3] > y) {
+                    active[n++] = e;
+                }
+            }
+            activeCount = n;
+            // add edges that start in this row
+            while (next < edgeCount) {
+                int e = (int) order[next];
+                if (edges[e * EDGE_STRIDE + 1] >= y + 1) {
+                    break;
+                }
+                next++;
+                if (edges[e * EDGE_STRIDE + 3] > y) {
+                    active[activeCount++] = e;
+                }
+            }
+            if (activeCount == 0) {
+                if (next == edgeCount) {
+                    break;
+                }
+                continue;
+            }
+            if (antiAlias) {
+                int minX = width, maxX = 0;
+                for (int s = 0; s < SCALE; s++) {
+                    float sy = y + (s + 0.5f) / SCALE;
+                    int count = collectCrossings(sy, activeCount);
+                    int wind = 0;
+                    for (int i = 0; i < count - 1; i++) {
+                        wind += mCrossW[i];
+                        if (evenOdd ? (wind & 1) != 0 : wind != 0) {
+                            float xa = Math.max(mCrossX[i], left) - left;
+                            float xb = Math.min(mCrossX[i + 1], right) - left;
+                            if (xa < xb) {
+                                int ia = (int) xa;
+                                minX = Math.min(minX, ia);
+                                maxX = Math.max(maxX, accumulate(xa, xb, width));
+                            }
+                        }
+                    }
+                }
+                if (minX < maxX) {
+                    resolveRow(left, y, minX, maxX, blitter);
+                }
+            } else {
+                float sy = y + 0.5f;
+                int count = collectCrossings(sy, activeCount);
+                int wind = 0;
+                for (int i = 0; i < count - 1; i++) {
+                    wind += mCrossW[i];
+                    if (evenOdd ? (wind & 1) != 0 : wind != 0) {
+                        // pixel centers in [xa, xb)
+                        int ia = Math.max(left, (int) Math.ceil(mCrossX[i] - 0.5f));
+                        int ib = Math.min(right, (int) Math.ceil(mCrossX[i + 1] - 0.5f));
+                        if (ia < ib) {
+                            blitter.blitH(ia, y, ib - ia);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills a rectangle in device space.
+     */
+    public void fillRect(@Nonnull Rect2fc rect, @Nonnull Rect2ic clip,
+                         boolean antiAlias, @Nonnull Blitter blitter) {
+        fillRect(rect.left(), rect.top(), rect.right(), rect.bottom(), clip, antiAlias, blitter);
+    }
+
+    /**
+     * Fills a rectangle in device space.
+     */
+    public void fillRect(float l, float t, float r, float b, @Nonnull Rect2ic clip,
+                         boolean antiAlias, @Nonnull Blitter blitter) {
+        if (!(l < r && t < b)) {
+            // empty or NaN
+            return;
+        }
+        if (!antiAlias) {
+            int L = Math.max(clip.left(), (int) Math.floor(l + 0.5f));
+            int T = Math.max(clip.top(), (int) Math.floor(t + 0.5f));
+            int R = Math.min(clip.right(), (int) Math.floor(r + 0.5f));
+            int B = Math.min(clip.bottom(), (int) Math.floor(b + 0.5f));
+            if (L < R && T < B) {
+                blitter.blitRect(L, T, R - L, B - T);
+            }
+            return;
+        }
+        l = Math.max(l, clip.left());
+        t = Math.max(t, clip.top());
+        r = Math.min(r, clip.right());
+        b = Math.min(b, clip.bottom());
+        if (!(l < r && t < b)) {
+            return;
+        }
+        final int L = (int) Math.floor(l);
+        final int T = (int) Math.floor(t);
+        final int R = (int) Math.ceil(r);
+        final int B = (int) Math.ceil(b);
+        final int width = R - L;
+        ensureRow(width);
+        final float[] column = mColumn;
+        computeColumnCoverage(l, r, L, width, true, column);
+        final byte[] row = mRow;
+        for (int y = T; y < B; y++) {
+            float rowCov = Math.min(b, y + 1) - Math.max(t, y);
+            blitRectRow(L, y, width, column, rowCov, row, blitter);
+        }
+    }
+
+    /**
+     * Fills an axis-aligned round rect in device space, optionally minus an inner round
+     * rect, which is used for strokes. Rects, circles and ellipses are special round rects.
+     *
+     * @param outer the outer round rect in device space
+     * @param inner the inner round rect in device space, or null
+     */
+    public void fillRoundRect(@Nonnull RoundRect outer, @Nullable RoundRect inner,
+                              @Nonnull Rect2ic clip, boolean antiAlias, @Nonnull Blitter blitter) {
+        if (outer.isEmpty()) {
+            return;
+        }
+        if (inner != null && inner.isEmpty()) {
+            inner = null;
+        }
+        if (inner == null && outer.isRect()) {
+            fillRect(outer.left(), outer.top(), outer.right(), outer.bottom(), clip, antiAlias, blitter);
+            return;
+        }
+        final float l = outer.left(), t = outer.top(), r = outer.right(), b = outer.bottom();
+        final int L = Math.max(clip.left(), (int) Math.floor(l));
+        final int T = Math.max(clip.top(), (int) Math.floor(t));
+        final int R = Math.min(clip.right(), (int) Math.ceil(r));
+        final int B = Math.min(clip.bottom(), (int) Math.ceil(b));
+        if (L >= R || T >= B) {
+            return;
+        }
+        final int width = R - L;
+        ensureRow(width);
+        final float[] column = mColumn;
+        computeColumnCoverage(l, r, L, width, antiAlias, column);
+        final byte[] row = mRow;
+
+        final float[] radii = outer.getRadii();
+        // rows between the corners have rect coverage
+        final float bandTop = t + Math.max(radii[1], radii[3]);
+        final float bandBottom = b - Math.max(radii[5], radii[7]);
+
+        for (int y = T; y < B; y++) {
+            final float py = y + 0.5f;
+            if (inner == null && py > bandTop + 0.5f && py < bandBottom - 0.5f) {
+                float rowCov = antiAlias
+                        ? Math.min(b, y + 1) - Math.max(t, y)
+                        : 1;
+                blitRectRow(L, y, width, column, rowCov, row, blitter);
+                continue;
+            }
+            // only the pixels near the corner arcs need the coverage function, pixels
+            // in [solidStart, solidEnd) are fully covered and pixels outside
+            // [start, end) are not covered
+            int start = 0, end = width;
+            int solidStart = 0, solidEnd = 0;
+            if (inner == null && py - t >= 0.5f && b - py >= 0.5f) {
+                float innerL = 0, innerR = 0, outerL = 0, outerR = 0;
+                if (py < t + radii[1]) {
+                    float dy = py - (t + radii[1]);
+                    innerL = cornerInset(dy, radii[0], radii[1], -1);
+                    outerL = cornerInset(dy, radii[0], radii[1], 1);
+                } else if (py > b - radii[7]) {
+                    float dy = py - (b - radii[7]);
+                    innerL = cornerInset(dy, radii[6], radii[7], -1);
+                    outerL = cornerInset(dy, radii[6], radii[7], 1);
+                }
+                if (py < t + radii[3]) {
+                    float dy = py - (t + radii[3]);
+                    innerR = cornerInset(dy, radii[2], radii[3], -1);
+                    outerR = cornerInset(dy, radii[2], radii[3], 1);
+                } else if (py > b - radii[5]) {
+                    float dy = py - (b - radii[5]);
+                    innerR = cornerInset(dy, radii[4], radii[5], -1);
+                    outerR = cornerInset(dy, radii[4], radii[5], 1);
+                }
+                // keep one pixel of margin on each side against rounding errors
+                start = Math.max(0, (int) Math.floor(l + outerL - L - 0.5f) - 1);
+                end = Math.min(width, (int) Math.ceil(r - outerR - L - 0.5f) + 2);
+                solidStart = Math.max(start,
+                        (int) Math.ceil(l + Math.max(innerL, 0.5f) - L - 0.5f) + 1);
+                solidEnd = Math.min(end,
+                        (int) Math.floor(r - Math.max(innerR, 0.5f) - L - 0.5f));
+                if (solidStart >= solidEnd) {
+                    solidStart = solidEnd = 0;
+                }
+            }
+            int minX = width, maxX = 0;
+            for (int i = start; i < end; i++) {
+                if (i == solidStart && solidStart < solidEnd) {
+                    Arrays.fill(row, solidStart, solidEnd, (byte) 0xFF);
+                    minX = Math.min(minX, solidStart);
+                    maxX = solidEnd;
+                    i = solidEnd - 1;
+                    continue;
+                }
+                final float px = L + i + 0.5f;
+                float cov = coverage(outer, px, py, antiAlias);
+                if (cov > 0 && inner != null) {
+                    cov *= 1 - coverage(inner, px, py, antiAlias);
+                }
+                int c = (int) (cov * 255 + 0.5f);
+                row[i] = (byte) c;
+                if (c != 0) {
+                    minX = Math.min(minX, i);
+                    maxX = i + 1;
+                }
+            }
+            emitRuns(L, y, row, minX, maxX, blitter);
+        }
+    }
+
+    /**
+     * Computes the coverage of a round rect at the pixel center.
+     */
+    static float coverage(RoundRect rr, float px, float py, boolean antiAlias) {
+        final float l = rr.left(), t = rr.top(), r = rr.right(), b = rr.bottom();
+        final float[] rad = rr.getRadii();
+        float cov;
+        if (px < l + rad[0] && py < t + rad[1]) {
+            cov = ellipseCoverage(px - (l + rad[0]), py - (t + rad[1]), rad[0], rad[1]);
+        } else if (px > r - rad[2] && py < t + rad[3]) {
+            cov = ellipseCoverage(px - (r - rad[2]), py - (t + rad[3]), rad[2], rad[3]);
+        } else if (px > r - rad[4] && py > b - rad[5]) {
+            cov = ellipseCoverage(px - (r - rad[4]), py - (b - rad[5]), rad[4], rad[5]);
+        } else if (px < l + rad[6] && py > b - rad[7]) {
+            cov = ellipseCoverage(px - (l + rad[6]), py - (b - rad[7]), rad[6], rad[7]);
+        } else {
+            float cx = MathUtil.clamp(Math.min(px - l, r - px) + 0.5f, 0, 1);
+            float cy = MathUtil.clamp(Math.min(py - t, b - py) + 0.5f, 0, 1);
+            cov = cx * cy;
+        }
+        if (!antiAlias) {
+            return cov >= 0.5f ? 1 : 0;
+        }
+        return cov;
+    }
+
+    /**
+     * Computes the horizontal distance from the outer edge of a corner's bounding box to
+     * the point where {@link #ellipseCoverage} becomes exactly 1 (side = -1) or 0
+     * (side = 1), on the row with the given vertical distance to the ellipse center.
+     * Returns a conservative value if the ellipse is too small for early outs.
+     */
+    static float cornerInset(float dy, float rx, float ry, int side) {
+        if (Math.min(rx, ry) < 1.5f) {
+            return side < 0 ? rx : 0;
+        }
+        // same bounds as the early outs in ellipseCoverage
+        float lim = 1.5f / Math.min(rx, ry);
+        float q = 1 + side * lim - dy * dy / (ry * ry);
+        if (q <= 0) {
+            return rx;
+        }
+        return Math.max(rx - rx * (float) Math.sqrt(q), 0);
+    }
+
+    /**
+     * Approximates the signed distance to the ellipse by its first order Taylor
+     * expansion, and converts it to coverage of a one pixel wide box filter.
+     */
+    static float ellipseCoverage(float dx, float dy, float rx, float ry) {
+        final float irx2 = 1 / (rx * rx), iry2 = 1 / (ry * ry);
+        final float f = dx * dx * irx2 + dy * dy * iry2 - 1;
+        final float minR = Math.min(rx, ry);
+        if (minR >= 1.5f) {
+            // half the gradient length is bounded by sqrt(f+1)/minR, skip the sqrt
+            // if the pixel is far from the edge
+            float lim = 1.5f / minR;
+            if (f < -lim) {
+                return 1;
+            }
+            if (f > lim) {
+                return 0;
+            }
+        }
+        float gx = 2 * dx * irx2, gy = 2 * dy * iry2;
+        float g = (float) Math.sqrt(gx * gx + gy * gy);
+        if (g <= 0) {
+            return f <= 0 ? 1 : 0;
+        }
+        return MathUtil.clamp(0.5f - f / g, 0, 1);
+    }
+
+    private static void computeColumnCoverage(float l, float r, int L, int width,
+                                              boolean antiAlias, float[] column) {
+        for (int i = 0; i < width; i++) {
+            if (antiAlias) {
+                float x0 = Math.max(l, L + i);
+                float x1 = Math.min(r, L + i + 1);
+                column[i] = Math.max(x1 - x0, 0);
+            } else {
+                // pixel center in [l, r)
+                float px = L + i + 0.5f;
+                column[i] = px >= l && px < r ? 1 : 0;
+            }
+        }
+    }
+
+    // blits a row of a rect with the given row coverage
+    private static void blitRectRow(int L, int y, int width, float[] column, float rowCov,
+                                    byte[] row, Blitter blitter) {
+        if (rowCov <= 0) {
+            return;
+        }
+        if (rowCov >= 1 && width >= 3 && column[1] >= 1 && column[width - 2] >= 1) {
+            // interior row, only the first and last pixels may be partial
+            row[0] = (byte) (int) (column[0] * 255 + 0.5f);
+            row[1] = (byte) (int) (column[width - 1] * 255 + 0.5f);
+            if (row[0] == (byte) 0xFF && row[1] == (byte) 0xFF) {
+                blitter.blitH(L, y, width);
+            } else {
+                if (row[0] != 0) {
+                    blitter.blitAntiH(L, y, row, 0, 1);
+                }
+                blitter.blitH(L + 1, y, width - 2);
+                if (row[1] != 0) {
+                    blitter.blitAntiH(L + width - 1, y, row, 1, 1);
+                }
+            }
+            return;
+        }
+        rowCov = Math.min(rowCov, 1);
+        for (int i = 0; i < width; i++) {
+            row[i] = (byte) (int) (column[i] * rowCov * 255 + 0.5f);
+        }
+        emitRuns(L, y, row, 0, width, blitter);
+    }
+
+    // emits non-zero runs of row[from, to)
+    private static void emitRuns(int left, int y, byte[] row, int from, int to, Blitter blitter) {
+        int i = from;
+        while (i < to) {
+            while (i < to && row[i] == 0) {
+                i++;
+            }
+            int start = i;
+            while (i < to && row[i] != 0) {
+                i++;
+            }
+            if (i > start) {
+                blitter.blitAntiH(left + start, y, row, start, i - start);
+            }
+        }
+    }
+
+    // find crossings at the sub-scanline, sorted by x
+    private int collectCrossings(float sy, int activeCount) {
+        final float[] edges = mEdges;
+        final int[] active = mActive;
+        final float[] xs = mCrossX;
+        final int[] ws = mCrossW;
+        int count = 0;
+        for (int i = 0; i < activeCount; i++) {
+            int base = active[i] * EDGE_STRIDE;
+            float y0 = edges[base + 1];
+            if (y0 <= sy && sy < edges[base + 3]) {
+                float x = edges[base] + (sy - y0) * edges[base + 4];
+                int w = (int) edges[base + 5];
+                // insertion sort, the number of crossings is usually small
+                int j = count++;
+                while (j > 0 && xs[j - 1] > x) {
+                    xs[j] = xs[j - 1];
+                    ws[j] = ws[j - 1];
+                    j--;
+                }
+                xs[j] = x;
+                ws[j] = w;
+            }
+        }
+        return count;
+    }
+
+    // accumulate the coverage of [xa, xb) on a sub-scanline, returns the end index
+    private int accumulate(float xa, float xb, int width) {
+        final int[] cover = mCover;
+        int ia = (int) xa;
+        int ib = (int) xb;
+        if (ia == ib) {
+            cover[ia] += (int) ((xb - xa) * FULL + 0.5f);
+            return ia + 1;
+        }
+        cover[ia] += (int) ((ia + 1 - xa) * FULL + 0.5f);
+        if (ia + 1 < ib) {
+            mDelta[ia + 1] += FULL;
+            mDelta[ib] -= FULL;
+        }
+        if (ib < width) {
+            cover[ib] += (int) ((xb - ib) * FULL + 0.5f);
+            return ib + 1;
+        }
+        return width;
+    }
+
+    private void resolveRow(int left, int y, int minX, int maxX, Blitter blitter) {
+        final int[] cover = mCover;
+        final int[] delta = mDelta;
+        final byte[] row = mRow;
+        int running = 0;
+        for (int i = minX; i < maxX; i++) {
+            running += delta[i];
+            int v = running + cover[i];
+            row[i] = (byte) Math.min(v, 0xFF);
+            cover[i] = 0;
+            delta[i] = 0;
+        }
+        // the delta at maxX may be the end of the last run
+        delta[maxX] = 0;
+        emitRuns(left, y, row, minX, maxX, blitter);
+    }
+
+    private void ensureRow(int size) {
+        if (mCover.length < size + 1) {
+            int newSize = Math.max(size + 1, mCover.length << 1);
+            mCover = new int[newSize];
+            mDelta = new int[newSize];
+            mRow = new byte[newSize];
+            mColumn = new float[newSize];
+        }
+    }
+
+    static int subdivisions(float dev) {
+        if (!(dev > TOLERANCE)) {
+            return 1;
+        }
+        // the deviation decreases quadratically with the number of segments
+        return Math.min(MAX_SUBDIVISIONS, (int) Math.ceil(Math.sqrt(dev / TOLERANCE)));
+    }
+
+    void addEdge(float x0, float y0, float x1, float y1) {
+        if (y0 == y1) {
+            return;
+        }
+        int winding = 1;
+        if (y0 > y1) {
+            float t = x0;
+            x0 = x1;
+            x1 = t;
+            t = y0;
+            y0 = y1;
+            y1 = t;
+            winding = -1;
+        }
+        int base = mEdgeCount * EDGE_STRIDE;
+        float[] edges = mEdges;
+        if (base + EDGE_STRIDE > edges.length) {
+            mEdges = edges = Arrays.copyOf(edges, edges.length << 1);
+        }
+        edges[base] = x0;
+        edges[base + 1] = y0;
+        edges[base + 2] = x1;
+        edges[base + 3] = y1;
+        edges[base + 4] = (x1 - x0) / (y1 - y0);
+        edges[base + 5] = winding;
+        mEdgeCount++;
+    }
+
+    /**
+     * Flattens curves into line edges, all contours are implicitly closed.
+     */
+    private final class EdgeBuilder implements PathConsumer {
+
+        private float mStartX, mStartY;
+        private float mLastX, mLastY;
+        private boolean mInContour;
+
+        @Override
+        public void moveTo(float x, float y) {
+            close();
+            mInContour = true;
+            mStartX = mLastX = x;
+            mStartY = mLastY = y;
+        }
+
+        @Override
+        public void lineTo(float x, float y) {
+            addEdge(mLastX, mLastY, x, y);
+            mLastX = x;
+            mLastY = y;
+        }
+
+        @Override
+        public void quadTo(float x1, float y1, float x2, float y2) {
+            final float x0 = mLastX, y0 = mLastY;
+            // the max distance from the chord is |p0 - 2p1 + p2| / 4
+            float ddx = x0 - 2 * x1 + x2, ddy = y0 - 2 * y1 + y2;
+            float dev = (float) Math.sqrt(ddx * ddx + ddy * ddy) * 0.25f;
+            int n = subdivisions(dev);
+            for (int i = 1; i < n; i++) {
+                float t = (float) i / n, u = 1 - t;
+                float a = u * u, b = 2 * u * t, c = t * t;
+                lineTo(a * x0 + b * x1 + c * x2, a * y0 + b * y1 + c * y2);
+            }
+            lineTo(x2, y2);
+        }
+
+        @Override
+        public void cubicTo(float x1, float y1, float x2, float y2, float x3, float y3) {
+            final float x0 = mLastX, y0 = mLastY;
+            float ddx0 = x0 - 2 * x1 + x2, ddy0 = y0 - 2 * y1 + y2;
+            float ddx1 = x1 - 2 * x2 + x3, ddy1 = y1 - 2 * y2 + y3;
+            float dd = (float) Math.sqrt(Math.max(ddx0 * ddx0 + ddy0 * ddy0, ddx1 * ddx1 + ddy1 * ddy1));
+            // the max distance from the chord is bounded by 3/4 of the second difference
+            int n = subdivisions(dd * 0.75f);
+            for (int i = 1; i < n; i++) {
+                float t = (float) i / n, u = 1 - t;
+                float a = u * u * u, b = 3 * u * u * t, c = 3 * u * t * t, d = t * t * t;
+                lineTo(a * x0 + b * x1 + c * x2 + d * x3,
+                        a * y0 + b * y1 + c * y2 + d * y3);
+            }
+            lineTo(x3, y3);
+        }
+
+        @Override
+        public void close() {
+            if (mInContour && (mLastX != mStartX || mLastY != mStartY)) {
+                lineTo(mStartX, mStartY);
+            }
+        }
+
+        @Override
+        public void done() {
+            close();
+            mInContour = false;
+        }
+    }
+}
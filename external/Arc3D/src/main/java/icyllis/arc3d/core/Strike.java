@@ -20,14 +20,23 @@
 package icyllis.arc3d.core;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import org.jetbrains.annotations.ApiStatus;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The font strike holds the results from {@link ScalerContext}.
+ * <p>
+ * Glyphs whose digest has been computed for an action type can be found without locking,
+ * see {@link #digest(int, int)}. Other operations require the lock.
  */
 @ApiStatus.Experimental
 //TODO this class may be ref-cnted in the future
@@ -47,12 +56,21 @@ public final class Strike {
     @GuardedBy("mLock")
     private long mMemoryIncrease;
 
-    // The following are guarded by mStrikeCache.mLock
-    Strike mNext;
-    Strike mPrev;
+    // Digested glyphs of each action type, indexed by actionType >> 1.
+    // Published for lock-free lookup, only modified under mLock.
+    private final DigestTable[] mDigests = new DigestTable[kActionTypeCount];
+
+    private static final int kActionTypeCount = (Glyph.kMSDF >> 1) + 1;
+    private static final VarHandle DIGESTS = MethodHandles.arrayElementVarHandle(DigestTable[].class);
+
+    @GuardedBy("mLock")
     long mMemoryUsed;
+    @GuardedBy("mLock")
     boolean mRemoved;
 
+    // Approximate last access time, see StrikeCache
+    volatile long mLastAccess;
+
     // Use StrikeCache to obtain an instance
     @ApiStatus.Internal
     public Strike(@Nonnull StrikeCache strikeCache,
@@ -72,20 +90,63 @@ public final class Strike {
 
     public void unlock() {
         final long increase = mMemoryIncrease;
-        mLock.unlock();
         if (increase > 0) {
-            // mRemoved and the cache's total memory are managed under the cache's lock. This allows
-            // them to be accessed under LRU operation.
-            mStrikeCache.mLock.lock();
-            try {
-                mMemoryUsed += increase;
-                if (!mRemoved) {
-                    mStrikeCache.mTotalMemoryUsed += increase;
-                }
-            } finally {
-                mStrikeCache.mLock.unlock();
+            // mRemoved is managed under this strike's lock, so the memory is either
+            // accounted to the cache here, or subtracted by the cache when removed.
+            mMemoryUsed += increase;
+            if (!mRemoved) {
+                mStrikeCache.addMemoryUsed(increase);
             }
         }
+        mLock.unlock();
+    }
+
+    // Called by StrikeCache after this strike was removed, returns the memory used.
+    long markRemoved() {
+        mLock.lock();
+        try {
+            mRemoved = true;
+            return mMemoryUsed;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Find or create a glyph for the given glyph ID, and get or compute the digest
+     * for the given action type. If the digest was already computed, this method
+     * does not lock.
+     * <p>
+     * Excludes lock.
+     *
+     * @param actionType e.g. {@link Glyph#kDirectMask}
+     * @param glyphID    typeface-specified glyph ID
+     * @see #digestFor(int, int)
+     */
+    @Nonnull
+    public Glyph digest(int actionType, int glyphID) {
+        Glyph glyph = findDigest(actionType, glyphID);
+        if (glyph != null) {
+            return glyph;
+        }
+        lock();
+        try {
+            return digestFor(actionType, glyphID);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Returns the glyph for the given glyph ID if its digest for the given action type
+     * has been computed, or null.
+     * <p>
+     * Lock-free.
+     */
+    @Nullable
+    public Glyph findDigest(int actionType, int glyphID) {
+        final var table = (DigestTable) DIGESTS.getAcquire(mDigests, actionType >> 1);
+        return table != null ? table.find(glyphID) : null;
     }
 
     /**
@@ -114,10 +175,6 @@ public final class Strike {
     public Glyph digestFor(int actionType, int glyphID) {
         assert mLock.isLocked();
         Glyph glyph = mGlyphs.get(glyphID);
-        if (glyph != null && glyph.actionFor(actionType) != Glyph.kUnset_Action) {
-            return glyph;
-        }
-
         if (glyph == null) {
             glyph = mScalerContext.makeGlyph(glyphID);
             glyph.initActions();
@@ -132,6 +189,13 @@ public final class Strike {
         }
 
         glyph.setActionFor(actionType, this);
+        // publish after the action is set
+        DigestTable table = mDigests[actionType >> 1];
+        if (table == null) {
+            table = new DigestTable();
+            DIGESTS.setRelease(mDigests, actionType >> 1, table);
+        }
+        table.add(glyph);
 
         return glyph;
     }
@@ -173,20 +237,222 @@ public final class Strike {
     public Glyph[] getMetrics(@Nonnull int[] glyphs, int glyphOffset, int glyphCount,
                               @Nonnull Glyph[] results) {
         assert results.length >= glyphCount;
+        // try without lock
+        int j = 0;
+        for (; j < glyphCount; j++) {
+            Glyph glyph = findDigest(Glyph.kDirectMask, glyphs[glyphOffset + j]);
+            if (glyph == null) {
+                break;
+            }
+            results[j] = glyph;
+        }
+        if (j < glyphCount) {
+            lock();
+            try {
+                for (; j < glyphCount; j++) {
+                    results[j] = getGlyph(glyphs[glyphOffset + j]);
+                }
+            } finally {
+                unlock();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Digest a run of glyphs for the given action type in bulk, under at most one lock
+     * acquisition. The glyph pointers will be stored in the results array, and if
+     * non-null, their actions (e.g. {@link Glyph#kAccept_Action}) will be stored in
+     * the actions array, both starting from index zero.
+     * <p>
+     * Excludes lock.
+     *
+     * @param actionType e.g. {@link Glyph#kDirectMask}
+     * @see #digest(int, int)
+     */
+    public void digest(int actionType,
+                       @Nonnull int[] glyphs, int glyphOffset, int glyphCount,
+                       @Nonnull Glyph[] results, @Nullable byte[] actions) {
+        assert results.length >= glyphCount;
+        assert actions == null || actions.length >= glyphCount;
+        // try without lock
+        int j = 0;
+        for (; j < glyphCount; j++) {
+            Glyph glyph = findDigest(actionType, glyphs[glyphOffset + j]);
+            if (glyph == null) {
+                break;
+            }
+            results[j] = glyph;
+        }
+        if (j < glyphCount) {
+            lock();
+            try {
+                for (; j < glyphCount; j++) {
+                    results[j] = digestFor(actionType, glyphs[glyphOffset + j]);
+                }
+            } finally {
+                unlock();
+            }
+        }
+        if (actions != null) {
+            for (int i = 0; i < glyphCount; i++) {
+                actions[i] = (byte) results[i].actionFor(actionType);
+            }
+        }
+    }
+
+    /**
+     * Prepare a run of glyphs to draw images in bulk, under one lock acquisition,
+     * and store whether each image exists in the results array if non-null. Images that
+     * have not been set are rasterized in a batch, in parallel if a pool is given and
+     * there are enough of them. The glyphs must be digested by this strike.
+     * <p>
+     * Excludes lock.
+     *
+     * @param pool the pool to rasterize images in parallel, or null
+     * @see #prepareForImage(Glyph)
+     */
+    public void prepareForImages(@Nonnull Glyph[] glyphs, int glyphOffset, int glyphCount,
+                                 @Nullable boolean[] results, @Nullable ForkJoinPool pool) {
+        assert results == null || results.length >= glyphCount;
         lock();
         try {
-            for (int i = glyphOffset, e = glyphOffset + glyphCount, j = 0; i < e; i++, j++) {
-                Glyph glyph = getGlyph(glyphs[i]);
-                results[j] = glyph;
+            // collect glyphs that have no image yet, each glyph is rasterized once
+            Glyph[] pending = null;
+            IntOpenHashSet pendingIDs = null;
+            int pendingCount = 0;
+            for (int i = glyphOffset, e = glyphOffset + glyphCount; i < e; i++) {
+                Glyph glyph = glyphs[i];
+                if (!glyph.setImageHasBeenCalled()) {
+                    if (pending == null) {
+                        pending = new Glyph[e - i];
+                        pendingIDs = new IntOpenHashSet();
+                    }
+                    if (pendingIDs.add(glyph.getGlyphID())) {
+                        pending[pendingCount++] = glyph;
+                        mMemoryIncrease += glyph.getImageSize() + 16;
+                    }
+                }
+            }
+            if (pendingCount > 0) {
+                if (pool != null && pendingCount >= kMinParallelImageCount) {
+                    // the scaler context generates each image independently, and we hold
+                    // the lock, so no other thread can access these glyphs
+                    pool.invoke(new ImageTask(pending, 0, pendingCount));
+                } else {
+                    for (int i = 0; i < pendingCount; i++) {
+                        pending[i].setImage(mScalerContext);
+                    }
+                }
+            }
+            if (results != null) {
+                for (int i = 0; i < glyphCount; i++) {
+                    results[i] = glyphs[glyphOffset + i].getImageBase() != null;
+                }
             }
-            return results;
         } finally {
             unlock();
         }
     }
 
+    // below this, a batch is not worth forking
+    private static final int kMinParallelImageCount = 16;
+
+    private final class ImageTask extends RecursiveAction {
+
+        private final Glyph[] mGlyphs;
+        private final int mStart;
+        private final int mEnd;
+
+        ImageTask(Glyph[] glyphs, int start, int end) {
+            mGlyphs = glyphs;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (mEnd - mStart <= kMinParallelImageCount / 2) {
+                for (int i = mStart; i < mEnd; i++) {
+                    mGlyphs[i].setImage(mScalerContext);
+                }
+            } else {
+                int mid = (mStart + mEnd) >>> 1;
+                invokeAll(new ImageTask(mGlyphs, mStart, mid),
+                        new ImageTask(mGlyphs, mid, mEnd));
+            }
+        }
+    }
+
     // read only!!
     public StrikeDesc getStrikeDesc() {
         return mStrikeDesc;
     }
+
+    /**
+     * Open addressing hash set of glyphs keyed by glyph ID, with a single writer under
+     * the strike lock and lock-free readers. Glyphs are never removed.
+     */
+    private static final class DigestTable {
+
+        private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Glyph[].class);
+
+        // length is a power of two, at most half full
+        private volatile Glyph[] mSlots = new Glyph[16];
+        private int mSize;
+
+        private static int hash(int glyphID) {
+            return glyphID * 0x9E3779B9;
+        }
+
+        @Nullable
+        Glyph find(int glyphID) {
+            final Glyph[] slots = mSlots;
+            final int mask = slots.length - 1;
+            for (int i = hash(glyphID) & mask; ; i = (i + 1) & mask) {
+                Glyph glyph = (Glyph) SLOTS.getAcquire(slots, i);
+                if (glyph == null) {
+                    return null;
+                }
+                if (glyph.getGlyphID() == glyphID) {
+                    return glyph;
+                }
+            }
+        }
+
+        void add(@Nonnull Glyph glyph) {
+            Glyph[] slots = mSlots;
+            final int glyphID = glyph.getGlyphID();
+            int mask = slots.length - 1;
+            int i = hash(glyphID) & mask;
+            for (Glyph e; (e = slots[i]) != null; i = (i + 1) & mask) {
+                if (e.getGlyphID() == glyphID) {
+                    return;
+                }
+            }
+            if ((mSize + 1) << 1 > slots.length) {
+                // rehash into a new table, then publish it
+                Glyph[] newSlots = new Glyph[slots.length << 1];
+                mask = newSlots.length - 1;
+                for (Glyph e : slots) {
+                    if (e != null) {
+                        int j = hash(e.getGlyphID()) & mask;
+                        while (newSlots[j] != null) {
+                            j = (j + 1) & mask;
+                        }
+                        newSlots[j] = e;
+                    }
+                }
+                i = hash(glyphID) & mask;
+                while (newSlots[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                newSlots[i] = glyph;
+                mSlots = newSlots;
+            } else {
+                SLOTS.setRelease(slots, i, glyph);
+            }
+            mSize++;
+        }
+    }
 }
@@ -24,31 +24,44 @@ import org.jetbrains.annotations.ApiStatus;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * The strike cache is thread-safe. Looking up a strike doesn't lock, and strikes are
+ * evicted in approximately least recently used order.
+ * <p>
+ * Instead of moving a strike in an LRU list on every lookup, each lookup stamps the strike
+ * with the current access clock, which only advances when a strike is created. Memory
+ * usage is accumulated without locking. When the cache is over budget, the first thread
+ * that finds it over budget purges it in a batch. Other threads don't wait for it.
+ */
 public final class StrikeCache {
 
     private static final StrikeCache gCache = new StrikeCache();
 
+    private static final Comparator<Strike> LEAST_RECENTLY_USED =
+            Comparator.comparingLong(strike -> strike.mLastAccess);
+
+    // Held when purging
     final ReentrantLock mLock = new ReentrantLock();
 
-    @GuardedBy("mLock")
-    Strike mHead;
-    @GuardedBy("mLock")
-    Strike mTail;
-    @GuardedBy("mLock")
-    private final HashMap<StrikeDesc, Strike> mStrikes =
-            new HashMap<>();
+    private final ConcurrentHashMap<StrikeDesc, Strike> mStrikes =
+            new ConcurrentHashMap<>();
 
-    @GuardedBy("mLock")
-    long mCacheSizeLimit = 2 << 20;
-    @GuardedBy("mLock")
-    long mTotalMemoryUsed;
-    @GuardedBy("mLock")
-    int mCacheCountLimit = 2 << 10;
-    @GuardedBy("mLock")
-    int mCacheCount;
+    // Advanced on each strike creation, so strikes accessed between two creations
+    // share the same stamp.
+    private volatile long mAccessClock;
+
+    volatile long mCacheSizeLimit = 2 << 20;
+    final LongAdder mTotalMemoryUsed = new LongAdder();
+    volatile int mCacheCountLimit = 2 << 10;
+
+    // Set when memory usage may be over budget.
+    private volatile boolean mPurgeRequested;
 
     // Use global instance
     @ApiStatus.Internal
@@ -64,39 +77,77 @@ public final class StrikeCache {
     // this method will not modify 'desc'
     @Nonnull
     public Strike findOrCreateStrike(@Nonnull StrikeDesc desc) {
-        mLock.lock();
-        try {
-            Strike strike = internalFindStrike(desc);
-            if (strike == null) {
-                strike = internalCreateStrike(desc.copy());
+        Strike strike = mStrikes.get(desc);
+        if (strike == null) {
+            strike = mStrikes.computeIfAbsent(desc.copy(), this::createStrike);
+            if (mStrikes.size() > mCacheCountLimit) {
+                mPurgeRequested = true;
             }
-            internalPurge(0);
-            return strike;
-        } finally {
-            mLock.unlock();
+        }
+        final long clock = mAccessClock;
+        if (strike.mLastAccess != clock) {
+            // avoid writing to the shared cache line on hits
+            strike.mLastAccess = clock;
+        }
+        if (mPurgeRequested) {
+            tryPurge(strike);
+        }
+        return strike;
+    }
+
+    @Nonnull
+    private Strike createStrike(@Nonnull StrikeDesc desc) {
+        var scalerContext = desc.createScalerContext();
+        var strike = new Strike(this, desc, scalerContext);
+        //noinspection NonAtomicOperationOnVolatileField
+        strike.mLastAccess = ++mAccessClock;
+        addMemoryUsed(strike.mMemoryUsed);
+        return strike;
+    }
+
+    // called by Strike
+    void addMemoryUsed(long bytes) {
+        mTotalMemoryUsed.add(bytes);
+        if (bytes > 0 && mTotalMemoryUsed.sum() > mCacheSizeLimit) {
+            mPurgeRequested = true;
         }
     }
 
-    private long internalPurge(long minBytesNeeded) {
-        if (mCacheCount == 0) {
+    // purge if no other thread is purging
+    private void tryPurge(@Nonnull Strike inUse) {
+        if (mLock.tryLock()) {
+            try {
+                mPurgeRequested = false;
+                internalPurge(0, inUse);
+            } finally {
+                mLock.unlock();
+            }
+        }
+    }
+
+    @GuardedBy("mLock")
+    private long internalPurge(long minBytesNeeded, @Nullable Strike inUse) {
+        final int cacheCount = mStrikes.size();
+        if (cacheCount == 0) {
             return 0;
         }
+        final long totalMemoryUsed = mTotalMemoryUsed.sum();
 
         long bytesNeeded = 0;
-        if (mTotalMemoryUsed > mCacheSizeLimit) {
-            bytesNeeded = mTotalMemoryUsed - mCacheSizeLimit;
+        if (totalMemoryUsed > mCacheSizeLimit) {
+            bytesNeeded = totalMemoryUsed - mCacheSizeLimit;
         }
         bytesNeeded = Math.max(bytesNeeded, minBytesNeeded);
         if (bytesNeeded != 0) {
             // no small purges!
-            bytesNeeded = Math.max(bytesNeeded, mTotalMemoryUsed >> 2);
+            bytesNeeded = Math.max(bytesNeeded, totalMemoryUsed >> 2);
         }
 
         int countNeeded = 0;
-        if (mCacheCount > mCacheCountLimit) {
-            countNeeded = mCacheCount - mCacheCountLimit;
+        if (cacheCount > mCacheCountLimit) {
+            countNeeded = cacheCount - mCacheCountLimit;
             // no small purges!
-            countNeeded = Math.max(countNeeded, mCacheCount >> 2);
+            countNeeded = Math.max(countNeeded, cacheCount >> 2);
         }
 
         // early exit
@@ -104,104 +155,81 @@ public final class StrikeCache {
             return 0;
         }
 
+        // Start at the least recently used and proceed deleting.
+        final Strike[] strikes = mStrikes.values().toArray(new Strike[0]);
+        Arrays.sort(strikes, LEAST_RECENTLY_USED);
+
         long bytesFreed = 0;
         int countFreed = 0;
 
-        // Start at the tail and proceed backwards deleting; the list is in LRU
-        // order, with unimportant entries at the tail.
-        Strike strike = mTail;
-        while (strike != null && (bytesFreed < bytesNeeded || countFreed < countNeeded)) {
-            Strike prev = strike.mPrev;
-
-            // Only delete if the strike is not pinned.
-            bytesFreed += strike.mMemoryUsed;
-            countFreed += 1;
-
-            mCacheCount -= 1;
-            mTotalMemoryUsed -= strike.mMemoryUsed;
-
-            if (strike.mPrev != null) {
-                strike.mPrev.mNext = strike.mNext;
-            } else {
-                mHead = strike.mNext;
+        for (int i = 0; i < strikes.length &&
+                (bytesFreed < bytesNeeded || countFreed < countNeeded); i++) {
+            final Strike strike = strikes[i];
+            if (strike == inUse) {
+                // just returned to the caller
+                continue;
             }
-            if (strike.mNext != null) {
-                strike.mNext.mPrev = strike.mPrev;
-            } else {
-                mTail = strike.mPrev;
+            if (!mStrikes.remove(strike.getStrikeDesc(), strike)) {
+                continue;
             }
-
-            strike.mPrev = strike.mNext = null;
-            strike.mRemoved = true;
-            var old = mStrikes.remove(strike.getStrikeDesc());
-            assert old == strike;
-
-            strike = prev;
+            // The strike stops accounting to the cache after it's removed,
+            // but it can still be used by threads that obtained it before.
+            final long memoryUsed = strike.markRemoved();
+            bytesFreed += memoryUsed;
+            countFreed += 1;
+            mTotalMemoryUsed.add(-memoryUsed);
         }
 
         return bytesFreed;
     }
 
-    @Nullable
-    private Strike internalFindStrike(@Nonnull StrikeDesc desc) {
-        // Check head because it is likely the strike we are looking for.
-        if (mHead != null && mHead.getStrikeDesc().equals(desc)) {
-            return mHead;
-        }
-
-        // Do the heavy search looking for the strike.
-        Strike strike = mStrikes.get(desc);
-        if (strike == null) {
-            return null;
-        }
-        if (mHead != strike) {
-            // Make most recently used
-            strike.mPrev.mNext = strike.mNext;
-            if (strike.mNext != null) {
-                strike.mNext.mPrev = strike.mPrev;
-            } else {
-                mTail = strike.mPrev;
-            }
-            mHead.mPrev = strike;
-            strike.mNext = mHead;
-            strike.mPrev = null;
-            mHead = strike;
+    /**
+     * Sets the memory budget in bytes, purges the cache if it's over budget.
+     */
+    public void setCacheSizeLimit(long bytes) {
+        mCacheSizeLimit = Math.max(bytes, 0);
+        mLock.lock();
+        try {
+            internalPurge(0, null);
+        } finally {
+            mLock.unlock();
         }
-        return strike;
     }
 
-    @Nonnull
-    private Strike internalCreateStrike(@Nonnull StrikeDesc desc) {
-        var scalerContext = desc.createScalerContext();
-        var strike = new Strike(this, desc, scalerContext);
-
-        var old = mStrikes.put(desc, strike);
-        assert old == null;
-        assert strike.mPrev == null && strike.mNext == null;
-
-        mCacheCount += 1;
-        mTotalMemoryUsed += strike.mMemoryUsed;
-
-        if (mHead != null) {
-            mHead.mPrev = strike;
-            strike.mNext = mHead;
-        }
-
-        if (mTail == null) {
-            mTail = strike;
+    /**
+     * Sets the maximum number of strikes, purges the cache if it's over budget.
+     */
+    public void setCacheCountLimit(int count) {
+        mCacheCountLimit = Math.max(count, 0);
+        mLock.lock();
+        try {
+            internalPurge(0, null);
+        } finally {
+            mLock.unlock();
         }
-
-        mHead = strike;
-        return strike;
     }
 
-    // this method excludes lock
-    public long getTotalMemoryUsed() {
+    /**
+     * Removes all strikes, strikes in use remain valid for their users.
+     */
+    public void purgeAll() {
         mLock.lock();
         try {
-            return mTotalMemoryUsed;
+            internalPurge(Long.MAX_VALUE, null);
         } finally {
             mLock.unlock();
         }
     }
+
+    // this method excludes lock
+    public long getTotalMemoryUsed() {
+        return mTotalMemoryUsed.sum();
+    }
+
+    /**
+     * Returns the number of strikes in this cache.
+     */
+    public int getCacheCount() {
+        return mStrikes.size();
+    }
 }
@@ -0,0 +1,250 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.core;
+
+import javax.annotation.Nonnull;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * Caches stroked paths, so that a static path (chart polylines, icon outlines) drawn
+ * with the same stroke every frame is stroked once.
+ * <p>
+ * Results are keyed by {@link Path#getGenerationID()}, the stroke parameters that affect
+ * the result, and the resolution scale quantized to half powers of two. Stroking at the
+ * upper bound of the scale bucket keeps the precision. Modifying a path changes its
+ * generation ID, so stale results are never returned, and they are evicted in least
+ * recently used order when the cache is over its byte budget.
+ * <p>
+ * A result is only cached when the same path is stroked the second time with the same
+ * parameters, the first time it is stroked directly into the destination path. So paths
+ * that are rebuilt for every draw don't allocate results and don't evict useful ones.
+ * <p>
+ * Results share their storage with the destination path, which is copied only when
+ * the destination is modified. This class is thread-safe.
+ */
+public final class StrokeCache {
+
+    private static final StrokeCache gCache = new StrokeCache(4 << 20);
+
+    // the key and the entry
+    private static final int ENTRY_OVERHEAD = 40 + 32;
+
+    private static final double INV_LOG_SQRT2 = 2 / Math.log(2);
+
+    // the number of keys stroked once that are remembered
+    private static final int MAX_SEEN_COUNT = 256;
+
+    private static final class Key {
+
+        final GenerationID mGenerationID;
+        final float mWidth;
+        final float mMiterLimit;
+        final int mParams;
+        final int mScaleBucket;
+
+        Key(GenerationID generationID, StrokeRec rec, int scaleBucket) {
+            mGenerationID = generationID;
+            mWidth = rec.getWidth();
+            // the miter limit only affects miter joins
+            mMiterLimit = rec.getJoin() == Paint.JOIN_MITER ? rec.getMiterLimit() : 0;
+            mParams = rec.getCap() | (rec.getJoin() << 4) | (rec.getAlign() << 8) |
+                    (rec.getStyle() << 12);
+            mScaleBucket = scaleBucket;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = mGenerationID.hashCode();
+            h = 31 * h + Float.floatToIntBits(mWidth);
+            h = 31 * h + Float.floatToIntBits(mMiterLimit);
+            h = 31 * h + mParams;
+            h = 31 * h + mScaleBucket;
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o instanceof Key key) {
+                return mGenerationID == key.mGenerationID &&
+                        mWidth == key.mWidth &&
+                        mMiterLimit == key.mMiterLimit &&
+                        mParams == key.mParams &&
+                        mScaleBucket == key.mScaleBucket;
+            }
+            return false;
+        }
+    }
+
+    private final Object mLock = new Object();
+
+    // access order
+    private final LinkedHashMap<Key, Path> mMap = new LinkedHashMap<>(16, 0.75f, true);
+    // keys stroked once but not cached, insertion order
+    private final LinkedHashSet<Key> mSeen = new LinkedHashSet<>();
+
+    private long mSizeBudget;
+    private long mCurrentSize;
+
+    private int mHitCount;
+    private int mMissCount;
+
+    public StrokeCache(long sizeBudget) {
+        mSizeBudget = sizeBudget;
+    }
+
+    @Nonnull
+    public static StrokeCache getGlobalStrokeCache() {
+        return gCache;
+    }
+
+    /**
+     * Finds or computes the stroke of the given path, this is the same as
+     * {@link StrokeRec#applyToPath(PathIterable, PathConsumer)}, except that
+     * src and dst may be the same object. The result is cached from the second
+     * request on.
+     *
+     * @param src the path to stroke
+     * @param rec the stroke parameters
+     * @param dst receives the stroked path
+     * @return false if the stroke rec is hairline or fill, dst is unchanged in that case
+     */
+    public boolean findOrStroke(@Nonnull Path src, @Nonnull StrokeRec rec, @Nonnull Path dst) {
+        if (!rec.isStrokeStyle()) {
+            return false;
+        }
+        float scale = rec.getResScale();
+        if (!(scale > 0)) {
+            scale = 1;
+        }
+        // quantize to half powers of two, round up
+        int bucket = MathUtil.clamp((int) Math.ceil(Math.log(scale) * INV_LOG_SQRT2), -64, 64);
+        var key = new Key(src.getGenerationID(), rec, bucket);
+        final boolean admit;
+        synchronized (mLock) {
+            Path result = mMap.get(key);
+            if (result != null) {
+                mHitCount++;
+                dst.set(result);
+                return true;
+            }
+            mMissCount++;
+            // admit on the second request
+            admit = mSeen.remove(key);
+            if (!admit) {
+                mSeen.add(key);
+                if (mSeen.size() > MAX_SEEN_COUNT) {
+                    var it = mSeen.iterator();
+                    it.next();
+                    it.remove();
+                }
+            }
+        }
+        // stroke at the upper bound of the bucket in both cases, so that the first
+        // request has the same geometry as the cached result
+        var stroke = new StrokeRec(rec);
+        stroke.setResScale((float) Math.pow(2, bucket * 0.5));
+        if (!admit) {
+            // first request, stroke directly and reuse the storage of dst
+            if (src == dst) {
+                var tmp = new Path();
+                stroke.applyToPath(src, tmp);
+                dst.set(tmp);
+                tmp.recycle();
+            } else {
+                stroke.applyToPath(src, dst);
+            }
+            return true;
+        }
+        // stroke without holding the lock, long paths take a while
+        var result = new Path();
+        stroke.applyToPath(src, result);
+        result.trimToSize();
+        synchronized (mLock) {
+            Path prev = mMap.putIfAbsent(key, result);
+            if (prev != null) {
+                // another thread stroked the same path
+                result.recycle();
+                result = prev;
+            } else {
+                mCurrentSize += sizeOf(result);
+                purgeAsNeeded();
+            }
+            dst.set(result);
+        }
+        return true;
+    }
+
+    public void setSizeBudget(long sizeBudget) {
+        synchronized (mLock) {
+            mSizeBudget = sizeBudget;
+            purgeAsNeeded();
+        }
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void purgeAll() {
+        synchronized (mLock) {
+            for (Path path : mMap.values()) {
+                path.recycle();
+            }
+            mMap.clear();
+            mSeen.clear();
+            mCurrentSize = 0;
+        }
+    }
+
+    public long getCurrentSize() {
+        synchronized (mLock) {
+            return mCurrentSize;
+        }
+    }
+
+    public int getHitCount() {
+        synchronized (mLock) {
+            return mHitCount;
+        }
+    }
+
+    public int getMissCount() {
+        synchronized (mLock) {
+            return mMissCount;
+        }
+    }
+
+    private static long sizeOf(Path path) {
+        return ENTRY_OVERHEAD + path.estimatedByteSize();
+    }
+
+    private void purgeAsNeeded() {
+        var it = mMap.values().iterator();
+        // keep the most recently used one
+        while (mCurrentSize > mSizeBudget && mMap.size() > 1) {
+            Path path = it.next();
+            mCurrentSize -= sizeOf(path);
+            // paths that share the storage are not affected
+            path.recycle();
+            it.remove();
+        }
+    }
+}
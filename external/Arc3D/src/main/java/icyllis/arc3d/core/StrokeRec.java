@@ -78,6 +78,23 @@ public class StrokeRec {
         init(paint, style, width, resScale);
     }
 
+    /**
+     * Copy constructor.
+     */
+    public StrokeRec(StrokeRec other) {
+        set(other);
+    }
+
+    public void set(StrokeRec other) {
+        mWidth = other.mWidth;
+        mMiterLimit = other.mMiterLimit;
+        mResScale = other.mResScale;
+        mCap = other.mCap;
+        mJoin = other.mJoin;
+        mAlign = other.mAlign;
+        mStrokeAndFill = other.mStrokeAndFill;
+    }
+
     public void init(Paint paint, @Paint.Style int style, float width, float resScale) {
         assert width >= 0;
         mResScale = resScale;
@@ -242,8 +259,19 @@ public class StrokeRec {
         if (mWidth <= 0) { // hairline or fill
             return false;
         }
+        return applyToPath(src, dst, new PathStroker());
+    }
+
+    /**
+     * Same as {@link #applyToPath(PathIterable, PathConsumer)}, but uses the given stroker,
+     * so that repeated strokes don't allocate. If dst is a {@link Path} that is reused
+     * across calls, its storage is reused as well.
+     */
+    public boolean applyToPath(PathIterable src, PathConsumer dst, PathStroker stroker) {
+        if (mWidth <= 0) { // hairline or fill
+            return false;
+        }
 
-        var stroker = new PathStroker();
         stroker.init(dst, mWidth * 0.5f, mCap, mJoin, mMiterLimit, mResScale);
         src.forEach(stroker);
 
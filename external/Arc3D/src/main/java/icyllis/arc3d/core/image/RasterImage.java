@@ -111,4 +111,12 @@ public class RasterImage extends Image {
     public boolean isRasterBacked() {
         return true;
     }
+
+    /**
+     * Peek the pixmap, valid as long as this image is alive.
+     */
+    @Nonnull
+    public Pixmap getPixmap() {
+        return mPixmap;
+    }
 }
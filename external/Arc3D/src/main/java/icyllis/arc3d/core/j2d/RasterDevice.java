@@ -19,135 +19,1020 @@
 
 package icyllis.arc3d.core.j2d;
 
-import icyllis.arc3d.core.Canvas;
-import icyllis.arc3d.core.Image;
-import icyllis.arc3d.core.Paint;
 import icyllis.arc3d.core.*;
+import icyllis.arc3d.core.effects.ColorFilter;
+import icyllis.arc3d.core.image.RasterImage;
+import icyllis.arc3d.core.shaders.Color4fShader;
+import icyllis.arc3d.core.shaders.ColorShader;
+import icyllis.arc3d.core.shaders.Shader;
 
 import javax.annotation.Nonnull;
-import java.awt.*;
-import java.awt.geom.Rectangle2D;
-import java.awt.geom.RoundRectangle2D;
-import java.util.Objects;
+import javax.annotation.Nullable;
+import java.util.Arrays;
 
+/**
+ * The RasterDevice draws into a {@link Pixmap} on the CPU, it requires neither a GPU
+ * nor Java2D. Geometry is converted to coverage by a {@link ScanConverter}: rects,
+ * round rects and circles have analytic coverage if the transform is scale+translate,
+ * other shapes are flattened to paths. Coverage is combined with the paint color by a
+ * {@link PixmapBlitter}, one pixel row at a time.
+ * <p>
+ * To render with a Canvas:
+ * <pre>{@code
+ * var canvas = new Canvas(new RasterDevice(pixmap));
+ * }</pre>
+ * Limitations: shaders other than solid colors draw with the paint color, color
+ * filters are not applied to images, and layers are not supported.
+ */
 public class RasterDevice extends Device {
 
-    private Raster mRaster;
-    private Graphics2D mG2D;
+    // cache some objects and their references for performance
+    private static final int CLIP_POOL_SIZE = 16;
+
+    // 4/3 * (sqrt(2) - 1), control point distance of a quarter circle cubic
+    private static final float KAPPA = 0.5522847f;
+
+    @Nullable
+    private final Raster mRaster;
+    private final Pixmap mPixmap;
+
+    private final PixmapBlitter mBlitter;
+    private final ScanConverter mScan = new ScanConverter();
+
+    private RasterClip[] mClipStack = new RasterClip[CLIP_POOL_SIZE];
+    private int mClipIndex = 0;
+
+    // premultiplied paint color
+    private final float[] mColor = new float[4];
+    private final float[] mFilteredColor = new float[4];
+
+    private final Paint mTmpPaint = new Paint();
+    private final Path mTmpPath = new Path();
+    private final Path mShapePath = new Path();
+    private final Path mStrokePath = new Path();
+    private final Path mDevPath = new Path();
+    private final Rect2f mTmpRect = new Rect2f();
+    private final RoundRect mTmpRRect = new RoundRect();
+    private final RoundRect mOuter = new RoundRect();
+    private final RoundRect mInner = new RoundRect();
+    private final float[] mTmpRadii = new float[8];
+    private final Matrix mTmpMatrix = new Matrix();
+    private final StrikeDesc mStrikeDesc = new StrikeDesc();
+
+    /**
+     * Creates a device that draws into the pixels of the given raster.
+     *
+     * @throws IllegalArgumentException the color type is not supported
+     */
+    public RasterDevice(@Nonnull Raster raster) {
+        this(raster, raster.getPixmap());
+    }
+
+    /**
+     * Creates a device that draws into the given pixel map, the caller must keep
+     * the pixels alive while the device is in use.
+     *
+     * @throws IllegalArgumentException the color type is not supported
+     */
+    public RasterDevice(@Nonnull Pixmap pixmap) {
+        this(null, pixmap);
+    }
 
-    public RasterDevice(Raster raster) {
-        super(raster.getInfo());
+    private RasterDevice(@Nullable Raster raster, @Nonnull Pixmap pixmap) {
+        super(pixmap.getInfo());
         mRaster = raster;
-        mG2D = Objects.requireNonNull(raster.mBufImg).createGraphics();
+        mPixmap = pixmap;
+        mBlitter = new PixmapBlitter(pixmap);
+        var clip = new RasterClip();
+        clip.setRect(getBounds());
+        mClipStack[0] = clip;
     }
 
-    @Override
-    public boolean isClipAA() {
-        return false;
+    /**
+     * @return the raster this device draws into, or null
+     */
+    @Nullable
+    public Raster getRaster() {
+        return mRaster;
     }
 
-    @Override
-    public boolean isClipEmpty() {
-        return false;
+    /**
+     * @return the pixel map this device draws into
+     */
+    @Nonnull
+    public Pixmap getPixmap() {
+        return mPixmap;
     }
 
-    @Override
-    public boolean isClipRect() {
-        return false;
+    @Nonnull
+    private RasterClip push() {
+        final int i = ++mClipIndex;
+        RasterClip[] stack = mClipStack;
+        if (i == stack.length) {
+            mClipStack = stack = Arrays.copyOf(stack, i + (i >> 1));
+        }
+        var clip = stack[i];
+        if (clip == null) {
+            stack[i] = clip = new RasterClip();
+        }
+        return clip;
     }
 
-    @Override
-    public boolean isClipWideOpen() {
-        return false;
+    private void pop() {
+        final int i = mClipIndex--;
+        if (i >= CLIP_POOL_SIZE) {
+            mClipStack[i] = null;
+        }
+    }
+
+    @Nonnull
+    private RasterClip getClip() {
+        return mClipStack[mClipIndex];
+    }
+
+    @Nonnull
+    private RasterClip getWritableClip() {
+        var current = mClipStack[mClipIndex];
+        if (current.mDeferredSaveCount > 0) {
+            current.mDeferredSaveCount--;
+            var next = push();
+            next.set(current);
+            next.mDeferredSaveCount = 0;
+            return next;
+        } else {
+            return current;
+        }
     }
 
     @Override
     public void pushClipStack() {
-
+        mClipStack[mClipIndex].mDeferredSaveCount++;
     }
 
     @Override
     public void popClipStack() {
+        var clip = mClipStack[mClipIndex];
+        if (clip.mDeferredSaveCount > 0) {
+            clip.mDeferredSaveCount--;
+        } else {
+            pop();
+        }
+    }
 
+    @Override
+    public void clipRect(Rect2fc rect, int clipOp, boolean doAA) {
+        getWritableClip().opRect(rect, getLocalToDevice33(), clipOp, doAA, mScan);
     }
 
     @Override
-    public void getClipBounds(@Nonnull Rect2i bounds) {
+    public boolean isClipAA() {
+        return getClip().isAA();
+    }
 
+    @Override
+    public boolean isClipEmpty() {
+        return getClip().isEmpty();
     }
 
     @Override
-    protected Rect2ic getClipBounds() {
-        return null;
+    public boolean isClipRect() {
+        return getClip().isRect() && !isClipEmpty();
     }
 
     @Override
-    public void clipRect(Rect2fc rect, int clipOp, boolean doAA) {
+    public boolean isClipWideOpen() {
+        return getClip().isRect() && getClipBounds().equals(getBounds());
+    }
 
+    @Override
+    public void getClipBounds(@Nonnull Rect2i bounds) {
+        bounds.set(getClipBounds());
     }
 
     @Override
-    public void drawPaint(icyllis.arc3d.core.Paint paint) {
+    protected Rect2ic getClipBounds() {
+        return getClip().getBounds();
+    }
 
+    /**
+     * Computes the premultiplied source color and the blend mode of the paint.
+     *
+     * @return the blitter to use, or null if nothing to draw
+     */
+    @Nullable
+    private Blitter setupPaint(@Nonnull Paint paint) {
+        var clip = getClip();
+        if (clip.isEmpty()) {
+            return null;
+        }
+        final float[] col = mColor;
+        Shader shader = paint.getShader();
+        if (shader instanceof ColorShader colorShader) {
+            int c = colorShader.getColor();
+            col[0] = ((c >> 16) & 0xFF) / 255.0f;
+            col[1] = ((c >> 8) & 0xFF) / 255.0f;
+            col[2] = (c & 0xFF) / 255.0f;
+            col[3] = (c >>> 24) / 255.0f * paint.a();
+        } else if (shader instanceof Color4fShader colorShader) {
+            col[0] = colorShader.r();
+            col[1] = colorShader.g();
+            col[2] = colorShader.b();
+            col[3] = colorShader.a() * paint.a();
+        } else {
+            // other shaders are not supported, use the paint color
+            col[0] = paint.r();
+            col[1] = paint.g();
+            col[2] = paint.b();
+            col[3] = paint.a();
+        }
+        float a = MathUtil.clamp(col[3], 0, 1);
+        col[0] *= a;
+        col[1] *= a;
+        col[2] *= a;
+        col[3] = a;
+        ColorFilter colorFilter = paint.getColorFilter();
+        if (colorFilter != null) {
+            colorFilter.filterColor4f(col, mFilteredColor, null);
+            System.arraycopy(mFilteredColor, 0, col, 0, 4);
+        }
+        BlendMode mode = paint.getBlendMode();
+        final PixmapBlitter blitter = mBlitter;
+        blitter.setColor4f(col[0], col[1], col[2], col[3]);
+        // custom blenders are not supported
+        blitter.setBlendMode(mode != null ? mode : BlendMode.SRC_OVER);
+        if (blitter.isNoOp()) {
+            return null;
+        }
+        return clip.apply(blitter);
     }
 
     @Override
-    public void drawPoints(int mode, float[] pts, int offset, int count, Paint paint) {
-
+    public void drawPaint(Paint paint) {
+        var blitter = setupPaint(paint);
+        if (blitter != null) {
+            var bounds = getClipBounds();
+            blitter.blitRect(bounds.left(), bounds.top(), bounds.width(), bounds.height());
+        }
     }
 
     @Override
-    public void drawLine(float x0, float y0, float x1, float y1, int cap, float width, icyllis.arc3d.core.Paint paint) {
+    public void drawPoints(int mode, float[] pts, int offset, int count, Paint paint) {
+        var blitter = setupPaint(paint);
+        if (blitter == null) {
+            return;
+        }
+        final Path path = mTmpPath;
+        path.reset();
+        switch (mode) {
+            case Canvas.POINT_MODE_POINTS -> {
+                float radius = paint.getStrokeWidth() * 0.5f;
+                if (radius <= 0) {
+                    // hairline, one pixel in device space
+                    radius = 0.5f / getHairlineScale();
+                }
+                boolean round = paint.getStrokeCap() == Paint.CAP_ROUND;
+                final RoundRect rr = mTmpRRect;
+                for (int i = offset, e = offset + count * 2; i < e; i += 2) {
+                    float x = pts[i], y = pts[i + 1];
+                    if (round) {
+                        rr.setEllipseXY(x, y, radius, radius);
+                    } else {
+                        rr.setRect(x - radius, y - radius, x + radius, y + radius);
+                    }
+                    addRoundRect(path, rr);
+                }
+                fillLocalPath(path, paint.isAntiAlias(), blitter);
+                return;
+            }
+            case Canvas.POINT_MODE_LINES -> {
+                for (int i = offset, e = offset + (count & ~1) * 2; i < e; i += 4) {
+                    path.moveTo(pts[i], pts[i + 1]);
+                    path.lineTo(pts[i + 2], pts[i + 3]);
+                }
+            }
+            case Canvas.POINT_MODE_POLYGON -> {
+                path.moveTo(pts[offset], pts[offset + 1]);
+                for (int i = offset + 2, e = offset + count * 2; i < e; i += 2) {
+                    path.lineTo(pts[i], pts[i + 1]);
+                }
+            }
+            default -> {
+                return;
+            }
+        }
+        drawPath(path, paint, blitter, null);
+    }
 
+    @Override
+    public void drawLine(float x0, float y0, float x1, float y1,
+                         @Paint.Cap int cap, float width, Paint paint) {
+        final Path path = mTmpPath;
+        path.reset();
+        path.moveTo(x0, y0);
+        path.lineTo(x1, y1);
+        drawStrokedShape(path, cap, width, paint);
     }
 
     @Override
-    public void drawRect(Rect2fc r, icyllis.arc3d.core.Paint paint) {
-        mG2D.fill(new Rectangle2D.Float(
-                r.x(), r.y(), r.width(), r.height()
-        ));
+    public void drawRect(Rect2fc r, Paint paint) {
+        final RoundRect rr = mTmpRRect;
+        rr.setRect(r);
+        drawRoundRect(rr, paint);
     }
 
     @Override
     public void drawRoundRect(RoundRect rr, Paint paint) {
-        mG2D.fill(new RoundRectangle2D.Float(
+        var blitter = setupPaint(paint);
+        if (blitter == null) {
+            return;
+        }
+        final Matrixc ctm = getLocalToDevice33();
+        final boolean aa = paint.isAntiAlias();
+        if (ctm.isScaleTranslate()) {
+            final int style = paint.getStyle();
+            if (style == Paint.FILL) {
+                mapRoundRect(rr, ctm, mOuter);
+                mScan.fillRoundRect(mOuter, null, getClipBounds(), aa, blitter);
+                return;
+            }
+            final float width = paint.getStrokeWidth();
+            final int join = paint.getStrokeJoin();
+            // miter joins of right angles are not beveled if miter limit >= sqrt(2)
+            if (width > 0 && (join == Paint.JOIN_ROUND ||
+                    (join == Paint.JOIN_MITER && paint.getStrokeMiter() >= MathUtil.SQRT2))) {
+                final float outset, inset;
+                switch (paint.getStrokeAlign()) {
+                    case Paint.ALIGN_INSIDE -> {
+                        outset = 0;
+                        inset = width;
+                    }
+                    case Paint.ALIGN_OUTSIDE -> {
+                        outset = width;
+                        inset = 0;
+                    }
+                    default -> {
+                        outset = width * 0.5f;
+                        inset = width * 0.5f;
+                    }
+                }
+                offsetRoundRect(rr, outset, join == Paint.JOIN_ROUND, mTmpRRect);
+                mapRoundRect(mTmpRRect, ctm, mOuter);
+                RoundRect inner = null;
+                if (style == Paint.STROKE &&
+                        inset < Math.min(rr.width(), rr.height()) * 0.5f) {
+                    offsetRoundRect(rr, -inset, false, mTmpRRect);
+                    mapRoundRect(mTmpRRect, ctm, mInner);
+                    inner = mInner;
+                }
+                mScan.fillRoundRect(mOuter, inner, getClipBounds(), aa, blitter);
+                return;
+            }
+        }
+        final Path path = mShapePath;
+        path.reset();
+        addRoundRect(path, rr);
+        drawPath(path, paint, blitter, null);
+    }
 
-        ));
+    @Override
+    public void drawCircle(float cx, float cy, float radius, Paint paint) {
+        final RoundRect rr = mTmpRRect;
+        rr.setEllipseXY(cx, cy, radius, radius);
+        drawRoundRect(rr, paint);
     }
 
     @Override
-    public void drawCircle(float cx, float cy, float radius, icyllis.arc3d.core.Paint paint) {
+    public void drawArc(float cx, float cy, float radius, float startAngle,
+                        float sweepAngle, int cap, float width, Paint paint) {
+        if (!(radius > 0) || sweepAngle == 0) {
+            return;
+        }
+        final Path path = mTmpPath;
+        path.reset();
+        addArc(path, cx, cy, radius, startAngle, sweepAngle);
+        drawStrokedShape(path, cap, width, paint);
+    }
 
+    @Override
+    public void drawPie(float cx, float cy, float radius, float startAngle,
+                        float sweepAngle, Paint paint) {
+        final Path path = mShapePath;
+        path.reset();
+        if (!addArc(path, cx, cy, radius, startAngle, sweepAngle)) {
+            path.lineTo(cx, cy);
+        }
+        path.close();
+        drawShapePath(path, paint);
     }
 
     @Override
-    public void drawArc(float cx, float cy, float radius, float startAngle, float sweepAngle, int cap, float width, Paint paint) {
+    public void drawChord(float cx, float cy, float radius, float startAngle,
+                          float sweepAngle, Paint paint) {
+        final Path path = mShapePath;
+        path.reset();
+        addArc(path, cx, cy, radius, startAngle, sweepAngle);
+        path.close();
+        drawShapePath(path, paint);
+    }
 
+    /**
+     * Draws a path with the current matrix and clip.
+     *
+     * @param path  the path in local space
+     * @param paint the paint, style determines if the path is stroked or filled
+     */
+    public void drawPath(@Nonnull Path path, @Nonnull Paint paint) {
+        var blitter = setupPaint(paint);
+        if (blitter != null) {
+            drawPath(path, paint, blitter, StrokeCache.getGlobalStrokeCache());
+        }
     }
 
-    @Override
-    public void drawPie(float cx, float cy, float radius, float startAngle, float sweepAngle, Paint paint) {
+    // Draws a path built by this device, it changes on every draw, so the stroke is not cached.
+    private void drawShapePath(@Nonnull Path path, @Nonnull Paint paint) {
+        var blitter = setupPaint(paint);
+        if (blitter != null) {
+            drawPath(path, paint, blitter, null);
+        }
+    }
 
+    private void drawPath(@Nonnull Path path, @Nonnull Paint paint, @Nonnull Blitter blitter,
+                          @Nullable StrokeCache cache) {
+        if (paint.getStyle() == Paint.FILL) {
+            fillLocalPath(path, paint.isAntiAlias(), blitter);
+            return;
+        }
+        final Matrixc ctm = getLocalToDevice33();
+        final Path stroke = mStrokePath;
+        stroke.reset();
+        if (!PathUtils.fillPathWithPaint(path, paint, stroke, null, ctm, cache)) {
+            if (!path.isFinite()) {
+                return;
+            }
+            // hairline, stroke with one pixel in device space
+            final Paint tmp = mTmpPaint;
+            tmp.setStyle(Paint.STROKE);
+            tmp.setStrokeCap(paint.getStrokeCap());
+            tmp.setStrokeJoin(paint.getStrokeJoin());
+            tmp.setStrokeAlign(Paint.ALIGN_CENTER);
+            tmp.setStrokeMiter(paint.getStrokeMiter());
+            tmp.setStrokeWidth(1 / getHairlineScale());
+            stroke.reset();
+            // the width depends on the matrix, stroke into the reused path
+            PathUtils.fillPathWithPaint(path, tmp, stroke, null, ctm);
+        }
+        fillLocalPath(stroke, paint.isAntiAlias(), blitter);
     }
 
-    @Override
-    public void drawChord(float cx, float cy, float radius, float startAngle, float sweepAngle, Paint paint) {
+    /**
+     * Strokes the center line with the given cap and width, and draws the resulting
+     * shape with the paint, that is, the shape can be filled or stroked again.
+     */
+    private void drawStrokedShape(@Nonnull Path centerline, int cap, float width,
+                                  @Nonnull Paint paint) {
+        final Paint tmp = mTmpPaint;
+        tmp.setStyle(Paint.STROKE);
+        tmp.setStrokeCap(cap);
+        tmp.setStrokeJoin(Paint.JOIN_ROUND);
+        tmp.setStrokeAlign(Paint.ALIGN_CENTER);
+        tmp.setStrokeWidth(width > 0 ? width : 1 / getHairlineScale());
+        final Path shape = mShapePath;
+        shape.reset();
+        PathUtils.fillPathWithPaint(centerline, tmp, shape, null, getLocalToDevice33());
+        if (!shape.isEmpty()) {
+            drawShapePath(shape, paint);
+        }
+    }
+
+    private void fillLocalPath(@Nonnull Path path, boolean aa, @Nonnull Blitter blitter) {
+        final Path devPath = mDevPath;
+        path.transform(getLocalToDevice33(), devPath);
+        mScan.fillPath(devPath, getClipBounds(), aa, blitter);
+        devPath.reset();
+    }
 
+    private float getHairlineScale() {
+        float scale = getLocalToDevice33().getMaxScale();
+        if (scale <= MathUtil.EPS || !Float.isFinite(scale)) {
+            return 1;
+        }
+        return scale;
     }
 
     @Override
     public void drawImageRect(@RawPtr Image image, Rect2fc src, Rect2fc dst,
                               SamplingOptions sampling, Paint paint, int constraint) {
+        // only raster images can be read on the CPU
+        if (!(image instanceof RasterImage rasterImage) || src.isEmpty() || dst.isEmpty()) {
+            return;
+        }
+        final Pixmap pixmap = rasterImage.getPixmap();
+        if (!PixmapBlitter.isSupported(pixmap.getColorType()) ||
+                (pixmap.getBase() == null && pixmap.getAddress() == 0)) {
+            return;
+        }
+        var blitter = setupPaint(paint);
+        if (blitter == null) {
+            return;
+        }
+        final Matrixc ctm = getLocalToDevice33();
+        // device to image space
+        final Matrix inverse = mTmpMatrix;
+        if (!ctm.invert(inverse)) {
+            return;
+        }
+        final Matrix dstToSrc = new Matrix();
+        float sx = src.width() / dst.width();
+        float sy = src.height() / dst.height();
+        dstToSrc.setScaleTranslate(sx, sy,
+                src.left() - dst.left() * sx,
+                src.top() - dst.top() * sy);
+        inverse.postConcat(dstToSrc);
 
+        final Rect2f subset = new Rect2f();
+        if (constraint == Canvas.SRC_RECT_CONSTRAINT_STRICT) {
+            subset.set(src);
+        } else {
+            subset.set(0, 0, pixmap.getWidth(), pixmap.getHeight());
+        }
+        // magnified if one image pixel covers more than one device pixel
+        int filter = inverse.getMaxScale() < 1 ? sampling.mMagFilter : sampling.mMinFilter;
+        boolean linear = filter == SamplingOptions.FILTER_MODE_LINEAR;
+        mBlitter.setSource(new ImageSource(pixmap, inverse, subset, linear, mColor));
+
+        if (ctm.isScaleTranslate()) {
+            final Rect2f devRect = mTmpRect;
+            ctm.mapRect(dst, devRect);
+            devRect.sort();
+            mScan.fillRect(devRect, getClipBounds(), paint.isAntiAlias(), blitter);
+        } else {
+            final Path path = mShapePath;
+            path.reset();
+            mTmpRRect.setRect(dst);
+            addRoundRect(path, mTmpRRect);
+            fillLocalPath(path, paint.isAntiAlias(), blitter);
+        }
+        mBlitter.setSource(null);
     }
 
     @Override
     protected void onDrawGlyphRunList(Canvas canvas, GlyphRunList glyphRunList, Paint paint) {
-
+        var blitter = setupPaint(paint);
+        if (blitter == null) {
+            return;
+        }
+        final Matrixc ctm = getLocalToDevice33();
+        // glyph images are rasterized without translation, then positioned in device space
+        final Matrix creationMatrix = mTmpMatrix;
+        creationMatrix.set(ctm);
+        creationMatrix.setTranslateX(0);
+        creationMatrix.setTranslateY(0);
+        final Rect2ic clipBounds = getClipBounds();
+        final Rect2i glyphRect = new Rect2i();
+        final Matrix glyphMatrix = new Matrix();
+        final Path devPath = mDevPath;
+        final float[] pos = new float[2];
+        final int maxGlyphRunSize = glyphRunList.maxGlyphRunSize();
+        final Glyph[] digests = new Glyph[maxGlyphRunSize];
+        final byte[] actions = new byte[maxGlyphRunSize];
+        final Glyph[] accepted = new Glyph[maxGlyphRunSize];
+        for (int i = 0; i < glyphRunList.mGlyphRunCount; i++) {
+            final GlyphRun run = glyphRunList.mGlyphRuns[i];
+            final Strike strike = mStrikeDesc.updateForMask(run.font(), paint, creationMatrix)
+                    .findOrCreateStrike();
+            final int[] glyphs = run.mGlyphs;
+            final float[] positions = run.mPositions;
+            // digest and rasterize the whole run at once
+            strike.digest(Glyph.kDirectMask, glyphs, run.mGlyphOffset, run.mGlyphCount,
+                    digests, actions);
+            int acceptedCount = 0;
+            for (int j = 0; j < run.mGlyphCount; j++) {
+                if (actions[j] == Glyph.kAccept_Action) {
+                    accepted[acceptedCount++] = digests[j];
+                }
+            }
+            if (acceptedCount > 0) {
+                strike.prepareForImages(accepted, 0, acceptedCount, null, null);
+            }
+            for (int j = 0; j < run.mGlyphCount; j++) {
+                pos[0] = positions[run.mPositionOffset + j * 2] + glyphRunList.mOriginX;
+                pos[1] = positions[run.mPositionOffset + j * 2 + 1] + glyphRunList.mOriginY;
+                ctm.mapPoint(pos);
+                Glyph glyph = digests[j];
+                switch (actions[j]) {
+                    case Glyph.kAccept_Action -> {
+                        if (glyph.getImageBase() == null) {
+                            continue;
+                        }
+                        int left = (int) Math.floor(pos[0] + 0.5f) + glyph.getLeft();
+                        int top = (int) Math.floor(pos[1] + 0.5f) + glyph.getTop();
+                        glyphRect.set(left, top,
+                                left + glyph.getWidth(), top + glyph.getHeight());
+                        if (glyphRect.intersect(clipBounds)) {
+                            blitter.blitMask(glyph.getMaskFormat(),
+                                    glyph.getImageBase(), glyph.getImageAddress(),
+                                    glyph.getRowBytes(), left, top, glyphRect);
+                        }
+                    }
+                    case Glyph.kReject_Action -> {
+                        // too large for a mask, the path is in device scale
+                        boolean hasPath;
+                        strike.lock();
+                        try {
+                            hasPath = strike.prepareForPath(glyph);
+                        } finally {
+                            strike.unlock();
+                        }
+                        if (hasPath) {
+                            glyphMatrix.setTranslate(pos[0], pos[1]);
+                            glyph.getPath().transform(glyphMatrix, devPath);
+                            mScan.fillPath(devPath, clipBounds, true, blitter);
+                            devPath.reset();
+                        }
+                    }
+                }
+            }
+        }
     }
 
     @Override
     public void drawVertices(Vertices vertices, @SharedPtr Blender blender, Paint paint) {
-        RefCnt.move(blender);
+        try {
+            final int mode = vertices.getVertexMode();
+            if (mode != Vertices.kTriangles_VertexMode &&
+                    mode != Vertices.kTriangleStrip_VertexMode) {
+                return;
+            }
+            var blitter = setupPaint(paint);
+            if (blitter == null) {
+                return;
+            }
+            final float[] positions = vertices.getPositions();
+            final byte[] colors = vertices.getColors();
+            final short[] indices = vertices.getIndices();
+            final int count = indices != null ? vertices.getIndexCount() : vertices.getVertexCount();
+            final Matrixc ctm = getLocalToDevice33();
+
+            TriangleSource source = null;
+            if (colors != null) {
+                BlendMode blendMode = blender != null ? blender.asBlendMode() : null;
+                source = new TriangleSource(mColor,
+                        blendMode != null ? blendMode : BlendMode.MODULATE);
+            }
+            final float[] tri = new float[6];
+            final Path path = mShapePath;
+            final int step = mode == Vertices.kTriangles_VertexMode ? 3 : 1;
+            for (int i = 0; i + 2 < count; i += step) {
+                int i0 = i, i1 = i + 1, i2 = i + 2;
+                if (indices != null) {
+                    i0 = indices[i0] & 0xFFFF;
+                    i1 = indices[i1] & 0xFFFF;
+                    i2 = indices[i2] & 0xFFFF;
+                }
+                path.reset();
+                path.moveTo(positions[i0 * 2], positions[i0 * 2 + 1]);
+                path.lineTo(positions[i1 * 2], positions[i1 * 2 + 1]);
+                path.lineTo(positions[i2 * 2], positions[i2 * 2 + 1]);
+                path.close();
+                if (source != null) {
+                    tri[0] = positions[i0 * 2];
+                    tri[1] = positions[i0 * 2 + 1];
+                    tri[2] = positions[i1 * 2];
+                    tri[3] = positions[i1 * 2 + 1];
+                    tri[4] = positions[i2 * 2];
+                    tri[5] = positions[i2 * 2 + 1];
+                    ctm.mapPoints(tri, 3);
+                    if (!source.set(tri, colors, i0, i1, i2)) {
+                        continue;
+                    }
+                    mBlitter.setSource(source);
+                }
+                // anti-aliasing is ignored for vertices
+                fillLocalPath(path, false, blitter);
+            }
+            mBlitter.setSource(null);
+        } finally {
+            RefCnt.move(blender);
+        }
+    }
+
+    /**
+     * Maps a round rect by a scale+translate matrix, the corners are swapped if flipped.
+     */
+    private void mapRoundRect(@Nonnull RoundRect src, @Nonnull Matrixc m,
+                              @Nonnull RoundRect dst) {
+        final Rect2f r = mTmpRect;
+        src.getRect(r);
+        m.mapRect(r);
+        final float sx = Math.abs(m.getScaleX()), sy = Math.abs(m.getScaleY());
+        final boolean flipX = m.getScaleX() < 0, flipY = m.getScaleY() < 0;
+        final float[] in = src.getRadii();
+        final float[] out = mTmpRadii;
+        for (int corner = 0; corner < 4; corner++) {
+            // UL, UR, LR, LL
+            int to = corner;
+            if (flipX) {
+                // UL <-> UR, LR <-> LL
+                to ^= 1;
+            }
+            if (flipY) {
+                // UL <-> LL, UR <-> LR
+                to = 3 - to;
+            }
+            out[to * 2] = in[corner * 2] * sx;
+            out[to * 2 + 1] = in[corner * 2 + 1] * sy;
+        }
+        dst.setRectRadii(r.left(), r.top(), r.right(), r.bottom(), out);
+    }
+
+    /**
+     * Outsets (or insets if negative) a round rect, for the outer (or inner) edge of strokes.
+     *
+     * @param roundJoin whether square corners become round when outset
+     */
+    private void offsetRoundRect(@Nonnull RoundRect src, float outset, boolean roundJoin,
+                                 @Nonnull RoundRect dst) {
+        final float[] in = src.getRadii();
+        final float[] out = mTmpRadii;
+        for (int i = 0; i < 8; i += 2) {
+            if (in[i] > 0 && in[i + 1] > 0) {
+                out[i] = Math.max(in[i] + outset, 0);
+                out[i + 1] = Math.max(in[i + 1] + outset, 0);
+            } else if (roundJoin && outset > 0) {
+                out[i] = outset;
+                out[i + 1] = outset;
+            } else {
+                out[i] = 0;
+                out[i + 1] = 0;
+            }
+        }
+        dst.setRectRadii(src.left() - outset, src.top() - outset,
+                src.right() + outset, src.bottom() + outset, out);
+    }
+
+    /**
+     * Adds a closed contour of the round rect, corners are approximated by cubics.
+     */
+    private static void addRoundRect(@Nonnull Path path, @Nonnull RoundRect rr) {
+        final float l = rr.left(), t = rr.top(), r = rr.right(), b = rr.bottom();
+        final float[] rad = rr.getRadii();
+        final float k = 1 - KAPPA;
+        path.moveTo(l + rad[0], t);
+        path.lineTo(r - rad[2], t);
+        if (rad[2] > 0) {
+            path.cubicTo(r - rad[2] * k, t, r, t + rad[3] * k, r, t + rad[3]);
+        }
+        path.lineTo(r, b - rad[5]);
+        if (rad[4] > 0) {
+            path.cubicTo(r, b - rad[5] * k, r - rad[4] * k, b, r - rad[4], b);
+        }
+        path.lineTo(l + rad[6], b);
+        if (rad[6] > 0) {
+            path.cubicTo(l + rad[6] * k, b, l, b - rad[7] * k, l, b - rad[7]);
+        }
+        path.lineTo(l, t + rad[1]);
+        if (rad[0] > 0) {
+            path.cubicTo(l, t + rad[1] * k, l + rad[0] * k, t, l + rad[0], t);
+        }
+        path.close();
+    }
+
+    /**
+     * Adds a circular arc as a new contour, clockwise, approximated by cubics of
+     * at most 90 degrees.
+     *
+     * @return true if a full circle was added
+     */
+    private static boolean addArc(@Nonnull Path path, float cx, float cy, float radius,
+                                  float startAngle, float sweepAngle) {
+        boolean full = false;
+        if (sweepAngle >= 360) {
+            sweepAngle = 360;
+            full = true;
+        } else if (sweepAngle < 0) {
+            sweepAngle = sweepAngle % 360 + 360;
+            if (sweepAngle >= 360) {
+                sweepAngle = 360;
+                full = true;
+            }
+        }
+        startAngle = startAngle % 360;
+        double start = Math.toRadians(startAngle);
+        double sweep = Math.toRadians(sweepAngle);
+        int segments = Math.max(1, (int) Math.ceil(sweepAngle / 90 - 1e-4));
+        double step = sweep / segments;
+        double k = 4.0 / 3.0 * Math.tan(step / 4) * radius;
+        double cos0 = Math.cos(start), sin0 = Math.sin(start);
+        float x0 = (float) (cx + cos0 * radius), y0 = (float) (cy + sin0 * radius);
+        path.moveTo(x0, y0);
+        for (int i = 1; i <= segments; i++) {
+            double angle = start + step * i;
+            double cos1 = Math.cos(angle), sin1 = Math.sin(angle);
+            double x1 = cx + cos1 * radius, y1 = cy + sin1 * radius;
+            path.cubicTo(
+                    (float) (cx + cos0 * radius - sin0 * k),
+                    (float) (cy + sin0 * radius + cos0 * k),
+                    (float) (x1 + sin1 * k),
+                    (float) (y1 - cos1 * k),
+                    (float) x1, (float) y1);
+            cos0 = cos1;
+            sin0 = sin1;
+        }
+        if (full) {
+            path.close();
+        }
+        return full;
+    }
+
+    /**
+     * Samples a raster image for the pixels in device space, nearest or bilinear,
+     * clamped to the subset. The result is modulated by the paint alpha, or by
+     * the paint color if the image is alpha-only.
+     */
+    private static final class ImageSource implements PixmapBlitter.Source {
+
+        private final Object mBase;
+        private final long mAddress;
+        private final int mRowStride;
+        private final int mBpp;
+        private final int mColorType;
+        private final boolean mUnpremul;
+        private final boolean mAlphaOnly;
+
+        private final Matrix mInverse;
+        private final boolean mPerspective;
+        private final boolean mLinear;
+        // inclusive pixel bounds of the subset
+        private final int mMinX, mMinY, mMaxX, mMaxY;
+        // premultiplied paint color
+        private final float mR, mG, mB, mA;
+
+        private final float[] mPoint = new float[2];
+        private final float[] mTexel = new float[4];
+        private final float[] mSum = new float[4];
+
+        ImageSource(Pixmap pixmap, Matrix inverse, Rect2fc subset, boolean linear,
+                    float[] color) {
+            mBase = pixmap.getBase();
+            mAddress = pixmap.getAddress();
+            mRowStride = pixmap.getRowStride();
+            mColorType = pixmap.getColorType();
+            mBpp = ColorInfo.bytesPerPixel(mColorType);
+            mUnpremul = pixmap.getAlphaType() == ColorInfo.AT_UNPREMUL;
+            mAlphaOnly = mColorType == ColorInfo.CT_ALPHA_8;
+            mInverse = new Matrix(inverse);
+            mPerspective = inverse.hasPerspective();
+            mLinear = linear;
+            mMinX = Math.max(0, (int) Math.floor(subset.left()));
+            mMinY = Math.max(0, (int) Math.floor(subset.top()));
+            mMaxX = Math.min(pixmap.getWidth(), (int) Math.ceil(subset.right())) - 1;
+            mMaxY = Math.min(pixmap.getHeight(), (int) Math.ceil(subset.bottom())) - 1;
+            mR = color[0];
+            mG = color[1];
+            mB = color[2];
+            mA = color[3];
+        }
+
+        @Override
+        public void shadeSpan(int x, int y, int[] dst, int count) {
+            if (mMinX > mMaxX || mMinY > mMaxY) {
+                Arrays.fill(dst, 0, count, 0);
+                return;
+            }
+            final Matrix m = mInverse;
+            final float[] p = mPoint;
+            final float[] sum = mSum;
+            for (int i = 0; i < count; i++) {
+                float u, v;
+                float px = x + i + 0.5f, py = y + 0.5f;
+                if (mPerspective) {
+                    p[0] = px;
+                    p[1] = py;
+                    m.mapPoint(p);
+                    u = p[0];
+                    v = p[1];
+                } else {
+                    u = m.getScaleX() * px + m.getShearX() * py + m.getTranslateX();
+                    v = m.getShearY() * px + m.getScaleY() * py + m.getTranslateY();
+                }
+                if (mLinear) {
+                    u -= 0.5f;
+                    v -= 0.5f;
+                    int x0 = (int) Math.floor(u), y0 = (int) Math.floor(v);
+                    float fx = u - x0, fy = v - y0;
+                    Arrays.fill(sum, 0);
+                    accumulate(x0, y0, (1 - fx) * (1 - fy));
+                    accumulate(x0 + 1, y0, fx * (1 - fy));
+                    accumulate(x0, y0 + 1, (1 - fx) * fy);
+                    accumulate(x0 + 1, y0 + 1, fx * fy);
+                } else {
+                    Arrays.fill(sum, 0);
+                    accumulate((int) Math.floor(u), (int) Math.floor(v), 1);
+                }
+                if (mAlphaOnly) {
+                    float a = sum[3];
+                    dst[i] = PixmapBlitter.pack(mR * a, mG * a, mB * a, mA * a);
+                } else {
+                    float a = mA;
+                    dst[i] = PixmapBlitter.pack(sum[0] * a, sum[1] * a, sum[2] * a, sum[3] * a);
+                }
+            }
+        }
+
+        // adds the premultiplied texel, clamped to the subset, with the given weight
+        private void accumulate(int x, int y, float weight) {
+            if (weight == 0) {
+                return;
+            }
+            x = MathUtil.clamp(x, mMinX, mMaxX);
+            y = MathUtil.clamp(y, mMinY, mMaxY);
+            final float[] texel = mTexel;
+            PixelUtils.load(mColorType, mBase,
+                    mAddress + (long) y * mRowStride + (long) x * mBpp, texel);
+            if (mUnpremul) {
+                texel[0] *= texel[3];
+                texel[1] *= texel[3];
+                texel[2] *= texel[3];
+            }
+            final float[] sum = mSum;
+            for (int i = 0; i < 4; i++) {
+                sum[i] += texel[i] * weight;
+            }
+        }
+    }
+
+    /**
+     * Interpolates vertex colors of a triangle in device space, and blends the paint
+     * color (src) with the interpolated colors (dst).
+     */
+    private static final class TriangleSource implements PixmapBlitter.Source {
+
+        private final float[] mPaintColor;
+        private final BlendMode mBlendMode;
+
+        private float mX0, mY0;
+        // inverse of the edge matrix
+        private float mA, mB, mC, mD;
+        // premultiplied vertex colors
+        private final float[] mColors = new float[12];
+
+        private final float[] mDst = new float[4];
+        private final float[] mOut = new float[4];
+
+        TriangleSource(float[] paintColor, BlendMode blendMode) {
+            mPaintColor = paintColor;
+            mBlendMode = blendMode;
+        }
+
+        /**
+         * @return false if the triangle is degenerate
+         */
+        boolean set(float[] tri, byte[] colors, int i0, int i1, int i2) {
+            float e1x = tri[2] - tri[0], e1y = tri[3] - tri[1];
+            float e2x = tri[4] - tri[0], e2y = tri[5] - tri[1];
+            float det = e1x * e2y - e2x * e1y;
+            if (det == 0 || !Float.isFinite(det)) {
+                return false;
+            }
+            float invDet = 1 / det;
+            mX0 = tri[0];
+            mY0 = tri[1];
+            mA = e2y * invDet;
+            mB = -e2x * invDet;
+            mC = -e1y * invDet;
+            mD = e1x * invDet;
+            loadColor(colors, i0, 0);
+            loadColor(colors, i1, 4);
+            loadColor(colors, i2, 8);
+            return true;
+        }
+
+        private void loadColor(byte[] colors, int index, int offset) {
+            float a = (colors[index * 4 + 3] & 0xFF) / 255.0f;
+            mColors[offset] = (colors[index * 4] & 0xFF) / 255.0f * a;
+            mColors[offset + 1] = (colors[index * 4 + 1] & 0xFF) / 255.0f * a;
+            mColors[offset + 2] = (colors[index * 4 + 2] & 0xFF) / 255.0f * a;
+            mColors[offset + 3] = a;
+        }
+
+        @Override
+        public void shadeSpan(int x, int y, int[] dst, int count) {
+            final float[] c = mColors;
+            final float[] d = mDst;
+            final float[] out = mOut;
+            float py = y + 0.5f - mY0;
+            for (int i = 0; i < count; i++) {
+                float px = x + i + 0.5f - mX0;
+                // barycentric coordinates
+                float w1 = MathUtil.clamp(mA * px + mB * py, 0, 1);
+                float w2 = MathUtil.clamp(mC * px + mD * py, 0, 1);
+                float w0 = Math.max(1 - w1 - w2, 0);
+                for (int j = 0; j < 4; j++) {
+                    d[j] = c[j] * w0 + c[4 + j] * w1 + c[8 + j] * w2;
+                }
+                mBlendMode.apply(mPaintColor, d, out);
+                dst[i] = PixmapBlitter.pack(out[0], out[1], out[2], out[3]);
+            }
+        }
     }
 }
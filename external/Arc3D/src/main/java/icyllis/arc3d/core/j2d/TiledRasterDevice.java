@@ -0,0 +1,550 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.core.j2d;
+
+import icyllis.arc3d.core.*;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The TiledRasterDevice rasterizes into a {@link Pixmap} like {@link RasterDevice}, but
+ * draws are recorded and rasterized later by {@link #flush(ForkJoinPool)}, in parallel.
+ * <p>
+ * The device is divided into square tiles, each tile owns a {@link RasterDevice} whose
+ * base clip is the tile, so its clip stack and scratch buffers are never shared between
+ * threads. Every recorded draw is binned into the tiles overlapped by its conservative
+ * device bounds, clipped to the current clip bounds, while matrix and clip changes are
+ * binned into all tiles. A tile replays its bin in recording order, and rasterization
+ * only depends on the pixel position, so the result is bit-identical to drawing with a
+ * single RasterDevice.
+ * <p>
+ * Draw arguments are copied when recorded. The pixels are not valid until flushed.
+ */
+public class TiledRasterDevice extends NoPixelsDevice {
+
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    // device space outset of draw bounds, for anti-aliasing, hairlines and rounding
+    private static final int BOUNDS_OUTSET = 2;
+    // glyph bounds are measured without the transform, and masks are pixel snapped
+    private static final int GLYPH_BOUNDS_OUTSET = 4;
+
+    /**
+     * A recorded draw or state change.
+     */
+    @FunctionalInterface
+    private interface Op {
+
+        void replay(RasterDevice device);
+    }
+
+    private final Pixmap mPixmap;
+    private final int mTileSize;
+    private final int mTileCountX;
+    private final int mTileCountY;
+
+    // lazily created devices of tiles, row-major
+    private final RasterDevice[] mTiles;
+    // indices of recorded ops to replay, per tile
+    private final IntArrayList[] mBins;
+    private final ArrayList<Op> mOps = new ArrayList<>();
+    private int mDrawCount;
+
+    // owned copies of draw arguments, released after flush
+    private final ArrayList<Paint> mPaints = new ArrayList<>();
+    private final ArrayList<RefCounted> mRefs = new ArrayList<>();
+
+    // the matrix last recorded, the tiles start with identity
+    private final Matrix4 mRecordedMatrix = new Matrix4();
+
+    private final Rect2f mTmpBounds = new Rect2f();
+    private final Rect2i mTmpDevBounds = new Rect2i();
+
+    /**
+     * Creates a device that draws into the given pixel map with {@link #DEFAULT_TILE_SIZE},
+     * the caller must keep the pixels alive while the device is in use.
+     *
+     * @throws IllegalArgumentException the color type is not supported
+     */
+    public TiledRasterDevice(@Nonnull Pixmap pixmap) {
+        this(pixmap, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Creates a device that draws into the given pixel map, the caller must keep
+     * the pixels alive while the device is in use.
+     *
+     * @param tileSize the width and height of tiles in pixels
+     * @throws IllegalArgumentException the color type is not supported
+     */
+    public TiledRasterDevice(@Nonnull Pixmap pixmap, int tileSize) {
+        super(0, 0, pixmap.getWidth(), pixmap.getHeight());
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Invalid tile size " + tileSize);
+        }
+        if (!PixmapBlitter.isSupported(pixmap.getColorType())) {
+            throw new IllegalArgumentException("Unsupported pixmap " + pixmap.getInfo());
+        }
+        mPixmap = pixmap;
+        mTileSize = tileSize;
+        mTileCountX = (pixmap.getWidth() + tileSize - 1) / tileSize;
+        mTileCountY = (pixmap.getHeight() + tileSize - 1) / tileSize;
+        mTiles = new RasterDevice[mTileCountX * mTileCountY];
+        mBins = new IntArrayList[mTiles.length];
+    }
+
+    /**
+     * @return the pixel map this device draws into
+     */
+    public Pixmap getPixmap() {
+        return mPixmap;
+    }
+
+    public int getTileSize() {
+        return mTileSize;
+    }
+
+    /**
+     * @return the number of draws recorded since the last flush
+     */
+    public int getRecordedDrawCount() {
+        return mDrawCount;
+    }
+
+    /**
+     * Rasterizes the recorded draws on the calling thread.
+     */
+    public void flush() {
+        flush(null);
+    }
+
+    /**
+     * Rasterizes the recorded draws, each tile is a task of the given pool.
+     *
+     * @param pool the pool to run tiles, or null to run on the calling thread
+     */
+    public void flush(@Nullable ForkJoinPool pool) {
+        if (mDrawCount > 0) {
+            final ArrayList<TileTask> tasks = new ArrayList<>();
+            for (int i = 0; i < mBins.length; i++) {
+                final IntArrayList bin = mBins[i];
+                if (bin != null && !bin.isEmpty()) {
+                    tasks.add(new TileTask(i));
+                }
+            }
+            if (pool == null || tasks.size() == 1) {
+                for (TileTask task : tasks) {
+                    task.compute();
+                }
+            } else {
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        invokeAll(tasks);
+                    }
+                });
+            }
+            for (IntArrayList bin : mBins) {
+                if (bin != null) {
+                    bin.clear();
+                }
+            }
+            mOps.clear();
+            mDrawCount = 0;
+        }
+        // keep pending state changes only, they are cheap to replay
+        releaseResources();
+    }
+
+    @Override
+    protected void deallocate() {
+        super.deallocate();
+        // discard pending draws
+        mOps.clear();
+        mDrawCount = 0;
+        releaseResources();
+        for (int i = 0; i < mTiles.length; i++) {
+            mTiles[i] = RefCnt.move(mTiles[i]);
+        }
+    }
+
+    private void releaseResources() {
+        if (mDrawCount > 0) {
+            // still referenced by pending ops
+            return;
+        }
+        for (Paint paint : mPaints) {
+            paint.close();
+        }
+        mPaints.clear();
+        for (RefCounted ref : mRefs) {
+            ref.unref();
+        }
+        mRefs.clear();
+    }
+
+    @Nonnull
+    private RasterDevice getTile(int index) {
+        RasterDevice tile = mTiles[index];
+        if (tile == null) {
+            tile = new RasterDevice(mPixmap);
+            int x = (index % mTileCountX) * mTileSize;
+            int y = (index / mTileCountX) * mTileSize;
+            tile.clipRect(new Rect2f(x, y, x + mTileSize, y + mTileSize),
+                    ClipOp.CLIP_OP_INTERSECT, false);
+            mTiles[index] = tile;
+        }
+        return tile;
+    }
+
+    private final class TileTask extends RecursiveAction {
+
+        private final int mIndex;
+
+        TileTask(int index) {
+            mIndex = index;
+        }
+
+        @Override
+        protected void compute() {
+            final RasterDevice tile = getTile(mIndex);
+            final IntArrayList bin = mBins[mIndex];
+            final ArrayList<Op> ops = mOps;
+            for (int i = 0, e = bin.size(); i < e; i++) {
+                ops.get(bin.getInt(i)).replay(tile);
+            }
+        }
+    }
+
+    private IntArrayList getBin(int index) {
+        IntArrayList bin = mBins[index];
+        if (bin == null) {
+            mBins[index] = bin = new IntArrayList();
+        }
+        return bin;
+    }
+
+    /**
+     * Records a matrix or clip change, which is replayed by all tiles.
+     */
+    private void recordState(@Nonnull Op op) {
+        final int index = mOps.size();
+        mOps.add(op);
+        for (int i = 0; i < mBins.length; i++) {
+            getBin(i).add(index);
+        }
+    }
+
+    /**
+     * Records the current matrix if changed.
+     */
+    private void syncMatrix() {
+        final Matrix4c localToDevice = getLocalToDevice();
+        if (!mRecordedMatrix.equals(localToDevice)) {
+            mRecordedMatrix.set(localToDevice);
+            final Matrix4 matrix = mRecordedMatrix.clone();
+            recordState(device -> device.setLocalToDevice(matrix));
+        }
+    }
+
+    /**
+     * Computes the device bounds of a draw and intersects with the clip bounds.
+     *
+     * @param localBounds the local bounds, or null to cover the clip
+     * @param outset      the outset of local bounds, for strokes
+     * @param devBounds   the result bounds
+     * @return false if the draw has no effect
+     */
+    private boolean computeDrawBounds(@Nullable Rect2fc localBounds, float outset,
+                                      @Nonnull Rect2i devBounds) {
+        final Rect2ic clipBounds = getClipBounds();
+        if (localBounds == null || getLocalToDevice().hasPerspective() ||
+                !localBounds.isFinite() || !Float.isFinite(outset)) {
+            devBounds.set(clipBounds);
+        } else {
+            final Rect2f bounds = mTmpBounds;
+            bounds.set(localBounds);
+            bounds.sort();
+            bounds.outset(outset, outset);
+            getLocalToDevice().mapRectOut(bounds, devBounds);
+            devBounds.inset(-BOUNDS_OUTSET, -BOUNDS_OUTSET);
+            if (!devBounds.intersect(clipBounds)) {
+                return false;
+            }
+        }
+        return !devBounds.isEmpty();
+    }
+
+    /**
+     * Records a draw into the tiles overlapped by the device bounds.
+     */
+    private void recordDraw(@Nonnull Rect2ic devBounds, @Nonnull Op op) {
+        syncMatrix();
+        final int index = mOps.size();
+        mOps.add(op);
+        mDrawCount++;
+        final int size = mTileSize;
+        final int left = Math.max(devBounds.left() / size, 0);
+        final int top = Math.max(devBounds.top() / size, 0);
+        final int right = Math.min((devBounds.right() - 1) / size, mTileCountX - 1);
+        final int bottom = Math.min((devBounds.bottom() - 1) / size, mTileCountY - 1);
+        for (int y = top; y <= bottom; y++) {
+            for (int x = left; x <= right; x++) {
+                getBin(y * mTileCountX + x).add(index);
+            }
+        }
+    }
+
+    @Nonnull
+    private Paint copyPaint(@Nonnull Paint paint) {
+        final Paint copy = new Paint(paint);
+        mPaints.add(copy);
+        return copy;
+    }
+
+    /**
+     * Returns the local outset of the geometry by the stroke, which is conservative
+     * for all joins, caps and stroke aligns. Hairlines are covered by the device outset.
+     */
+    private static float getStrokeOutset(@Nonnull Paint paint) {
+        if (paint.getStyle() == Paint.FILL) {
+            return 0;
+        }
+        return paint.getStrokeWidth() * Math.max(paint.getStrokeMiter(), MathUtil.SQRT2);
+    }
+
+    @Override
+    public void pushClipStack() {
+        super.pushClipStack();
+        recordState(RasterDevice::pushClipStack);
+    }
+
+    @Override
+    public void popClipStack() {
+        super.popClipStack();
+        recordState(RasterDevice::popClipStack);
+    }
+
+    @Override
+    public void clipRect(Rect2fc rect, int clipOp, boolean doAA) {
+        super.clipRect(rect, clipOp, doAA);
+        syncMatrix();
+        final Rect2f copy = new Rect2f(rect);
+        recordState(device -> device.clipRect(copy, clipOp, doAA));
+    }
+
+    @Override
+    public void drawPaint(Paint paint) {
+        final Rect2i devBounds = mTmpDevBounds;
+        if (!computeDrawBounds(null, 0, devBounds)) {
+            return;
+        }
+        final Paint p = copyPaint(paint);
+        recordDraw(devBounds, device -> device.drawPaint(p));
+    }
+
+    @Override
+    public void drawPoints(int mode, float[] pts, int offset, int count, Paint paint) {
+        if (count <= 0) {
+            return;
+        }
+        final Rect2f bounds = new Rect2f();
+        bounds.setBounds(pts, offset, count);
+        final Rect2i devBounds = mTmpDevBounds;
+        if (!computeDrawBounds(bounds, getStrokeOutset(paint), devBounds)) {
+            return;
+        }
+        final float[] copy = new float[count * 2];
+        System.arraycopy(pts, offset, copy, 0, count * 2);
+        final Paint p = copyPaint(paint);
+        recordDraw(devBounds, device -> device.drawPoints(mode, copy, 0, count, p));
+    }
+
+    @Override
+    public void drawLine(float x0, float y0, float x1, float y1,
+                         @Paint.Cap int cap, float width, Paint paint) {
+        final Rect2f bounds = new Rect2f(x0, y0, x1, y1);
+        final Rect2i devBounds = mTmpDevBounds;
+        if (!computeDrawBounds(bounds,
+                width * MathUtil.SQRT2 + getStrokeOutset(paint), devBounds)) {
+            return;
+        }
+        final Paint p = copyPaint(paint);
+        recordDraw(devBounds, device -> device.drawLine(x0, y0, x1, y1, cap, width, p));
+    }
+
+    @Override
+    public void drawRect(Rect2fc r, Paint paint) {
+        final Rect2i devBounds = mTmpDevBounds;
+        if (!computeDrawBounds(r, getStrokeOutset(paint), devBounds)) {
+            return;
+        }
+        final Rect2f rect = new Rect2f(r);
+        final Paint p = copyPaint(paint);
+        recordDraw(devBounds, device -> device.drawRect(rect, p));
+    }
+
+    @Override
+    public void drawRoundRect(RoundRect rr, Paint paint) {
+        final Rect2f bounds = new Rect2f();
+        rr.getRect(bounds);
+        final Rect2i devBounds = mTmpDevBounds;
+        if (!computeDrawBounds(bounds, getStrokeOutset(paint), devBounds)) {
+            return;
+        }
+        final RoundRect copy = new RoundRect(rr);
+        final Paint p = copyPaint(paint);
+        recordDraw(devBounds, device -> device.drawRoundRect(copy, p));
+    }
+
+    @Override
+    public void drawCircle(float cx, float cy, float radius, Paint paint) {
+        final Rect2f bounds = new Rect2f(cx - radius, cy - radius, cx + radius, cy + radius);
+        final Rect2i devBounds = mTmpDevBounds;
+        if (!computeDrawBounds(bounds, getStrokeOutset(paint), devBounds)) {
+            return;
+        }
+        final Paint p = copyPaint(paint);
+        recordDraw(devBounds, device -> device.drawCircle(cx, cy, radius, p));
+    }
+
+    @Override
+    public void drawArc(float cx, float cy, float radius, float startAngle,
+                        float sweepAngle, int cap, float width, Paint paint) {
+        final Rect2f bounds = new Rect2f(cx - radius, cy - radius, cx + radius, cy + radius);
+        final Rect2i devBounds = mTmpDevBounds;
+        if (!computeDrawBounds(bounds,
+                width * MathUtil.SQRT2 + getStrokeOutset(paint), devBounds)) {
+            return;
+        }
+        final Paint p = copyPaint(paint);
+        recordDraw(devBounds, device -> device.drawArc(cx, cy, radius, startAngle,
+                sweepAngle, cap, width, p));
+    }
+
+    @Override
+    public void drawPie(float cx, float cy, float radius, float startAngle,
+                        float sweepAngle, Paint paint) {
+        final Rect2f bounds = new Rect2f(cx - radius, cy - radius, cx + radius, cy + radius);
+        final Rect2i devBounds = mTmpDevBounds;
+        if (!computeDrawBounds(bounds, getStrokeOutset(paint), devBounds)) {
+            return;
+        }
+        final Paint p = copyPaint(paint);
+        recordDraw(devBounds, device -> device.drawPie(cx, cy, radius, startAngle,
+                sweepAngle, p));
+    }
+
+    @Override
+    public void drawChord(float cx, float cy, float radius, float startAngle,
+                          float sweepAngle, Paint paint) {
+        final Rect2f bounds = new Rect2f(cx - radius, cy - radius, cx + radius, cy + radius);
+        final Rect2i devBounds = mTmpDevBounds;
+        if (!computeDrawBounds(bounds, getStrokeOutset(paint), devBounds)) {
+            return;
+        }
+        final Paint p = copyPaint(paint);
+        recordDraw(devBounds, device -> device.drawChord(cx, cy, radius, startAngle,
+                sweepAngle, p));
+    }
+
+    /**
+     * Draws a path with the paint, see {@link RasterDevice#drawPath(Path, Paint)}.
+     */
+    public void drawPath(@Nonnull Path path, @Nonnull Paint paint) {
+        final Rect2i devBounds = mTmpDevBounds;
+        if (!computeDrawBounds(path.getBounds(), getStrokeOutset(paint), devBounds)) {
+            return;
+        }
+        final Path copy = new Path(path);
+        // tiles read the path concurrently, make the lazy bounds ready
+        copy.updateBoundsCache();
+        final Paint p = copyPaint(paint);
+        recordDraw(devBounds, device -> device.drawPath(copy, p));
+    }
+
+    @Override
+    public void drawImageRect(@RawPtr Image image, Rect2fc src, Rect2fc dst,
+                              SamplingOptions sampling, Paint paint, int constraint) {
+        final Rect2i devBounds = mTmpDevBounds;
+        if (!computeDrawBounds(dst, 0, devBounds)) {
+            return;
+        }
+        final Image ref = RefCnt.create(image);
+        mRefs.add(ref);
+        final Rect2f srcCopy = new Rect2f(src);
+        final Rect2f dstCopy = new Rect2f(dst);
+        final Paint p = paint != null ? copyPaint(paint) : null;
+        recordDraw(devBounds, device -> device.drawImageRect(ref, srcCopy, dstCopy,
+                sampling, p, constraint));
+    }
+
+    @Override
+    protected void onDrawGlyphRunList(Canvas canvas, GlyphRunList glyphRunList, Paint paint) {
+        final Rect2f bounds = new Rect2f();
+        glyphRunList.getSourceBoundsWithOrigin(bounds);
+        final Rect2i devBounds = mTmpDevBounds;
+        if (bounds.isEmpty()) {
+            return;
+        }
+        if (!computeDrawBounds(bounds, 0, devBounds)) {
+            return;
+        }
+        devBounds.inset(BOUNDS_OUTSET - GLYPH_BOUNDS_OUTSET, BOUNDS_OUTSET - GLYPH_BOUNDS_OUTSET);
+        // the glyph run list is a view of the caller's buffers
+        final int runCount = glyphRunList.mGlyphRunCount;
+        final GlyphRun[] runs = new GlyphRun[runCount];
+        for (int i = 0; i < runCount; i++) {
+            final GlyphRun run = glyphRunList.mGlyphRuns[i];
+            final int count = run.mGlyphCount;
+            final int[] glyphs = new int[count];
+            System.arraycopy(run.mGlyphs, run.mGlyphOffset, glyphs, 0, count);
+            final float[] positions = new float[count * 2];
+            System.arraycopy(run.mPositions, run.mPositionOffset, positions, 0, count * 2);
+            runs[i] = new GlyphRun();
+            runs[i].set(glyphs, 0, positions, 0, count, new Font(run.font()));
+        }
+        final GlyphRunList copy = new GlyphRunList();
+        copy.set(runs, runCount, null, glyphRunList.getSourceBounds(),
+                glyphRunList.mOriginX, glyphRunList.mOriginY);
+        final Paint p = copyPaint(paint);
+        recordDraw(devBounds, device -> device.onDrawGlyphRunList(canvas, copy, p));
+    }
+
+    @Override
+    public void drawVertices(Vertices vertices, @SharedPtr Blender blender, Paint paint) {
+        final Rect2i devBounds = mTmpDevBounds;
+        if (!computeDrawBounds(vertices.getBounds(), 0, devBounds)) {
+            RefCnt.move(blender);
+            return;
+        }
+        if (blender != null) {
+            mRefs.add(blender);
+        }
+        final Paint p = copyPaint(paint);
+        recordDraw(devBounds, device -> device.drawVertices(vertices,
+                RefCnt.create(blender), p));
+    }
+}
@@ -81,6 +81,12 @@ public final class ContextOptions {
      */
     public Boolean mAllowMultipleGlyphCacheTextures = null;
 
+    /**
+     * The maximum number of textures each glyph atlas can grow to, 1..4. This has no effect
+     * if {@link #mAllowMultipleGlyphCacheTextures} is false.
+     */
+    public int mMaxGlyphCacheTextures = 4;
+
     /**
      * Below this threshold size in device space distance field fonts won't be used. Distance field
      * fonts don't support hinting which is more important at smaller sizes.
@@ -45,6 +45,7 @@ public final class RecordingContext extends Context {
     private final DrawAtlas.AtlasTokenTracker mAtlasTokenTracker;
     private final GlyphStrikeCache mGlyphStrikeCache;
     private final TextBlobCache mTextBlobCache;
+    private final DrawKeySorter mDrawKeySorter;
 
     private final ReferenceArrayList<@SharedPtr GraniteDevice> mTrackedDevices =
             new ReferenceArrayList<>();
@@ -60,6 +61,7 @@ public final class RecordingContext extends Context {
         mAtlasTokenTracker = new DrawAtlas.AtlasTokenTracker();
         mGlyphStrikeCache = new GlyphStrikeCache();
         mTextBlobCache = new TextBlobCache();
+        mDrawKeySorter = new DrawKeySorter();
     }
 
     @Override
@@ -167,6 +169,11 @@ public final class RecordingContext extends Context {
         return mTextBlobCache;
     }
 
+    @ApiStatus.Internal
+    public DrawKeySorter getDrawKeySorter() {
+        return mDrawKeySorter;
+    }
+
     public void trackDevice(@SharedPtr GraniteDevice device) {
         assert isOwnerThread();
         assert device != null;
@@ -0,0 +1,103 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.engine.tessellate;
+
+import java.util.Arrays;
+
+/**
+ * Triangulates a polygon in "middle-out" order, as vertices are pushed one by one.
+ * Every other vertex is connected first, then every fourth vertex, and so on, and
+ * the remaining vertices are fanned from the first vertex when the polygon is closed.
+ * This produces far fewer thin triangles than a simple fan, which helps rasterization.
+ * <p>
+ * The polygon doesn't need to be simple or convex. The triangles wind the same way
+ * as the edges they were made from, so the sum of signed coverage at any point equals
+ * the winding number of the polygon there, suitable for stencil-then-cover.
+ */
+public final class MiddleOutPolygonTriangulator {
+
+    // stack of x, y pairs and vertex index deltas, the bottom is the first vertex
+    private float[] mPoints = new float[32];
+    private int[] mDeltas = new int[16];
+    private int mTop = -1;
+
+    private final PathTessellator mOut;
+
+    MiddleOutPolygonTriangulator(PathTessellator out) {
+        mOut = out;
+    }
+
+    /**
+     * Starts a new polygon at the given vertex, this discards the current polygon.
+     */
+    public void moveTo(float x, float y) {
+        mTop = 0;
+        mPoints[0] = x;
+        mPoints[1] = y;
+        // the first vertex is never popped
+        mDeltas[0] = 0;
+    }
+
+    /**
+     * Pushes the next vertex of the polygon, and emits the triangles that are closed by it.
+     */
+    public void pushVertex(float x, float y) {
+        assert mTop >= 0;
+        if (mPoints[mTop << 1] == x && mPoints[(mTop << 1) | 1] == y) {
+            return;
+        }
+        int delta = 1;
+        // connect the vertex to the one that is 2x as far back, if the top vertex
+        // was connected by the same delta
+        while (mDeltas[mTop] == delta) {
+            int prev = mTop - 1;
+            mOut.appendTriangle(
+                    mPoints[prev << 1], mPoints[(prev << 1) | 1],
+                    mPoints[mTop << 1], mPoints[(mTop << 1) | 1],
+                    x, y
+            );
+            delta <<= 1;
+            mTop = prev;
+        }
+        if (++mTop == mDeltas.length) {
+            mDeltas = Arrays.copyOf(mDeltas, mTop << 1);
+            mPoints = Arrays.copyOf(mPoints, mTop << 2);
+        }
+        mPoints[mTop << 1] = x;
+        mPoints[(mTop << 1) | 1] = y;
+        mDeltas[mTop] = delta;
+    }
+
+    /**
+     * Closes the polygon by fanning the remaining vertices from the first vertex.
+     */
+    public void close() {
+        final float x0 = mPoints[0];
+        final float y0 = mPoints[1];
+        for (int i = mTop; i >= 2; i--) {
+            mOut.appendTriangle(
+                    mPoints[(i - 1) << 1], mPoints[((i - 1) << 1) | 1],
+                    mPoints[i << 1], mPoints[(i << 1) | 1],
+                    x0, y0
+            );
+        }
+        mTop = -1;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.engine.tessellate;
+
+import icyllis.arc3d.core.*;
+import icyllis.arc3d.engine.PathUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * Caches the results of {@link PathTessellator}, so that static paths (icons, charts)
+ * drawn every frame are tessellated once.
+ * <p>
+ * Results are keyed by {@link Path#getGenerationID()}, the tessellation mode and the
+ * matrix scale quantized to half powers of two. Tessellating at the upper bound of the
+ * scale bucket keeps the device space tolerance. Modifying a path changes its generation
+ * ID, so stale results are never returned, and they are evicted in least recently used
+ * order when the cache is over its byte budget.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class PathTessellationCache {
+
+    // float[] header and the entry
+    private static final int ENTRY_OVERHEAD = 16 + 32;
+
+    private static final double INV_LOG_SQRT2 = 2 / Math.log(2);
+
+    private static final class Key {
+
+        final GenerationID mGenerationID;
+        final int mScaleBucket;
+        final int mMode;
+
+        Key(GenerationID generationID, int scaleBucket, int mode) {
+            mGenerationID = generationID;
+            mScaleBucket = scaleBucket;
+            mMode = mode;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = mGenerationID.hashCode();
+            h = 31 * h + mScaleBucket;
+            h = 31 * h + mMode;
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o instanceof Key key) {
+                return mGenerationID == key.mGenerationID &&
+                        mScaleBucket == key.mScaleBucket &&
+                        mMode == key.mMode;
+            }
+            return false;
+        }
+    }
+
+    private final Object mLock = new Object();
+
+    // access order
+    private final LinkedHashMap<Key, float[]> mMap = new LinkedHashMap<>(16, 0.75f, true);
+    private final PathTessellator mTessellator = new PathTessellator();
+
+    private long mSizeBudget;
+    private long mCurrentSize;
+
+    private int mHitCount;
+    private int mMissCount;
+
+    public PathTessellationCache(long sizeBudget) {
+        mSizeBudget = sizeBudget;
+    }
+
+    /**
+     * Finds or tessellates the given path. The result is a triangle list of x, y pairs
+     * in local coordinates, see {@link PathTessellator}. The returned array is shared
+     * and must not be modified.
+     *
+     * @param path       the path to fill, in local coordinates
+     * @param viewMatrix local to device transform, or null if identity
+     * @param mode       {@link PathTessellator#MODE_MIDDLE_OUT} or {@link PathTessellator#MODE_WEDGES}
+     * @return the triangle vertices
+     */
+    @Nonnull
+    public float[] findOrTessellate(@Nonnull Path path, @Nullable Matrixc viewMatrix, int mode) {
+        float scale = viewMatrix != null ? viewMatrix.getMaxScale() : 1;
+        if (!(scale > 0)) {
+            scale = 1;
+        }
+        // quantize to half powers of two, round up
+        int bucket = MathUtil.clamp((int) Math.ceil(Math.log(scale) * INV_LOG_SQRT2), -64, 64);
+        var key = new Key(path.getGenerationID(), bucket, mode);
+        synchronized (mLock) {
+            float[] vertices = mMap.get(key);
+            if (vertices != null) {
+                mHitCount++;
+                return vertices;
+            }
+            mMissCount++;
+            float precision = (float) Math.pow(2, bucket * 0.5) / PathUtils.DEFAULT_TOLERANCE;
+            mTessellator.tessellate(path, precision, mode);
+            vertices = Arrays.copyOf(mTessellator.getVertices(),
+                    mTessellator.getVertexCount() << 1);
+            mMap.put(key, vertices);
+            mCurrentSize += sizeOf(vertices);
+            purgeAsNeeded();
+            return vertices;
+        }
+    }
+
+    public void setSizeBudget(long sizeBudget) {
+        synchronized (mLock) {
+            mSizeBudget = sizeBudget;
+            purgeAsNeeded();
+        }
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void purgeAll() {
+        synchronized (mLock) {
+            mMap.clear();
+            mCurrentSize = 0;
+        }
+    }
+
+    public long getCurrentSize() {
+        synchronized (mLock) {
+            return mCurrentSize;
+        }
+    }
+
+    public int getHitCount() {
+        synchronized (mLock) {
+            return mHitCount;
+        }
+    }
+
+    public int getMissCount() {
+        synchronized (mLock) {
+            return mMissCount;
+        }
+    }
+
+    private static long sizeOf(float[] vertices) {
+        return ENTRY_OVERHEAD + ((long) vertices.length << 2);
+    }
+
+    private void purgeAsNeeded() {
+        var it = mMap.values().iterator();
+        // keep the most recently used one
+        while (mCurrentSize > mSizeBudget && mMap.size() > 1) {
+            mCurrentSize -= sizeOf(it.next());
+            it.remove();
+        }
+    }
+}
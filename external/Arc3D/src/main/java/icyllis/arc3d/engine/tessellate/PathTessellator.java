@@ -0,0 +1,349 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.engine.tessellate;
+
+import icyllis.arc3d.core.*;
+import icyllis.arc3d.engine.PathUtils;
+import icyllis.arc3d.granite.MeshDrawWriter;
+import org.lwjgl.system.MemoryUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Tessellates path fills into triangles on the CPU, for stencil-then-cover.
+ * <p>
+ * Curves are flattened into line segments, the number of segments is given by
+ * {@link WangsFormula}. The output is a triangle list in the local coordinates of
+ * the path, each vertex is a float2 position. This matches the vertex stream of
+ * {@link icyllis.arc3d.granite.geom.VerticesStep} without color and texture
+ * coordinates, see {@link #writeMesh(MeshDrawWriter)}.
+ * <p>
+ * The triangles are not disjoint, instead, front-facing triangles increment the
+ * winding and back-facing triangles decrement it. When drawn to the stencil buffer with
+ * a winding or even-odd stencil pass, the stencil value of each sample equals the
+ * winding number of the path (or its parity), then the path bounds can be covered
+ * with a stencil test that passes if non-zero.
+ * <p>
+ * This class is not thread-safe, and may be reused to reduce allocation.
+ */
+public final class PathTessellator implements PathConsumer {
+
+    /**
+     * The polygon of each contour's on-curve points is triangulated in middle-out order,
+     * and each curve is triangulated separately against its chord.
+     */
+    public static final int MODE_MIDDLE_OUT = 0;
+    /**
+     * Each line and curve segment is fanned from the center of its contour.
+     * This produces more overdraw but needs no inner polygon.
+     */
+    public static final int MODE_WEDGES = 1;
+
+    private final MiddleOutPolygonTriangulator mInnerFan = new MiddleOutPolygonTriangulator(this);
+    private final MiddleOutPolygonTriangulator mCurveFan = new MiddleOutPolygonTriangulator(this);
+
+    // x, y pairs, 3 vertices per triangle
+    private float[] mVertices = new float[96];
+    private int mVertexCount;
+
+    private int mMode;
+    private float mPrecision;
+    private int mFillRule;
+
+    // the current contour
+    private boolean mContourOpen;
+    private float mStartX;
+    private float mStartY;
+    private float mLastX;
+    private float mLastY;
+
+    // flattened points of the current contour, for wedges
+    private float[] mContour = new float[64];
+    private int mContourSize;
+
+    /**
+     * Tessellates the given path, replacing the previous result. The precision is
+     * derived from the view matrix, so the flattened curves are within
+     * {@link PathUtils#DEFAULT_TOLERANCE} of the exact curves in device space.
+     *
+     * @param path       the path to fill, in local coordinates
+     * @param viewMatrix local to device transform, or null if identity
+     * @param mode       {@link #MODE_MIDDLE_OUT} or {@link #MODE_WEDGES}
+     * @return the number of triangles
+     */
+    public int tessellate(@Nonnull Path path, @Nullable Matrixc viewMatrix, int mode) {
+        float scale = viewMatrix != null ? viewMatrix.getMaxScale() : 1;
+        if (!(scale > 0)) {
+            // perspective is not supported, tessellate in local precision
+            scale = 1;
+        }
+        return tessellate(path, scale / PathUtils.DEFAULT_TOLERANCE, mode);
+    }
+
+    /**
+     * Tessellates the given path, replacing the previous result.
+     *
+     * @param path      the path to fill, in local coordinates
+     * @param precision the reciprocal of the tolerance in local coordinates
+     * @param mode      {@link #MODE_MIDDLE_OUT} or {@link #MODE_WEDGES}
+     * @return the number of triangles
+     */
+    public int tessellate(@Nonnull Path path, float precision, int mode) {
+        if (mode != MODE_MIDDLE_OUT && mode != MODE_WEDGES) {
+            throw new IllegalArgumentException();
+        }
+        mMode = mode;
+        mPrecision = precision;
+        mFillRule = path.getFillRule();
+        mVertexCount = 0;
+        mContourOpen = false;
+        if (path.isFinite()) {
+            path.forEach(this);
+        }
+        return mVertexCount / 3;
+    }
+
+    /**
+     * @return the fill rule of the last tessellated path
+     * @see PathIterator#FILL_NON_ZERO
+     * @see PathIterator#FILL_EVEN_ODD
+     */
+    public int getFillRule() {
+        return mFillRule;
+    }
+
+    /**
+     * @return the number of vertices, a multiple of 3
+     */
+    public int getVertexCount() {
+        return mVertexCount;
+    }
+
+    /**
+     * Returns the backing array of x, y pairs, valid up to {@link #getVertexCount()} * 2.
+     * Read only!
+     */
+    public float[] getVertices() {
+        return mVertices;
+    }
+
+    /**
+     * Writes the triangles to the given address, in float2 positions.
+     *
+     * @return the address after the written data
+     */
+    public long writeVertices(long vertexData) {
+        for (int i = 0, e = mVertexCount << 1; i < e; i++) {
+            MemoryUtil.memPutFloat(vertexData, mVertices[i]);
+            vertexData += 4;
+        }
+        return vertexData;
+    }
+
+    /**
+     * Appends the triangles to the vertices that the writer is currently writing.
+     * The writer must have begun vertices with a stride of 8 bytes.
+     */
+    public void writeMesh(@Nonnull MeshDrawWriter writer) {
+        if (mVertexCount > 0) {
+            writeVertices(writer.append(mVertexCount));
+        }
+    }
+
+    @Override
+    public void moveTo(float x, float y) {
+        closeContour();
+        mContourOpen = true;
+        mStartX = mLastX = x;
+        mStartY = mLastY = y;
+        if (mMode == MODE_MIDDLE_OUT) {
+            mInnerFan.moveTo(x, y);
+        } else {
+            mContourSize = 0;
+            addContourPoint(x, y);
+        }
+    }
+
+    @Override
+    public void lineTo(float x, float y) {
+        ensureContour();
+        if (mMode == MODE_MIDDLE_OUT) {
+            mInnerFan.pushVertex(x, y);
+        } else {
+            addContourPoint(x, y);
+        }
+        mLastX = x;
+        mLastY = y;
+    }
+
+    @Override
+    public void quadTo(float x1, float y1, float x2, float y2) {
+        ensureContour();
+        final float x0 = mLastX;
+        final float y0 = mLastY;
+        int n = segments(WangsFormula.quadratic(mPrecision,
+                x0, y0, x1, y1, x2, y2));
+        beginCurve(x0, y0);
+        final float dt = 1.0f / n;
+        for (int i = 1; i < n; i++) {
+            float t = i * dt;
+            float u = 1 - t;
+            float a = u * u, b = 2 * u * t, c = t * t;
+            curveVertex(a * x0 + b * x1 + c * x2,
+                    a * y0 + b * y1 + c * y2);
+        }
+        curveVertex(x2, y2);
+        endCurve(x2, y2);
+    }
+
+    @Override
+    public void cubicTo(float x1, float y1, float x2, float y2, float x3, float y3) {
+        ensureContour();
+        final float x0 = mLastX;
+        final float y0 = mLastY;
+        int n = segments(WangsFormula.cubic(mPrecision,
+                x0, y0, x1, y1, x2, y2, x3, y3));
+        beginCurve(x0, y0);
+        final float dt = 1.0f / n;
+        for (int i = 1; i < n; i++) {
+            float t = i * dt;
+            float u = 1 - t;
+            float a = u * u * u, b = 3 * u * u * t, c = 3 * u * t * t, d = t * t * t;
+            curveVertex(a * x0 + b * x1 + c * x2 + d * x3,
+                    a * y0 + b * y1 + c * y2 + d * y3);
+        }
+        curveVertex(x3, y3);
+        endCurve(x3, y3);
+    }
+
+    @Override
+    public void close() {
+        closeContour();
+    }
+
+    @Override
+    public void done() {
+        closeContour();
+    }
+
+    private static int segments(float n) {
+        // NaN becomes 1
+        return (int) Math.min(Math.max(Math.ceil(n), 1), PathUtils.MAX_POINTS_PER_CURVE);
+    }
+
+    private void beginCurve(float x0, float y0) {
+        if (mMode == MODE_MIDDLE_OUT) {
+            // the curve is triangulated against its chord, the chord is an edge of the inner fan
+            mCurveFan.moveTo(x0, y0);
+        }
+    }
+
+    private void curveVertex(float x, float y) {
+        if (mMode == MODE_MIDDLE_OUT) {
+            mCurveFan.pushVertex(x, y);
+        } else {
+            addContourPoint(x, y);
+        }
+    }
+
+    private void endCurve(float x, float y) {
+        if (mMode == MODE_MIDDLE_OUT) {
+            mCurveFan.close();
+            mInnerFan.pushVertex(x, y);
+        }
+        mLastX = x;
+        mLastY = y;
+    }
+
+    private void addContourPoint(float x, float y) {
+        if (mContourSize == mContour.length) {
+            mContour = Arrays.copyOf(mContour, mContourSize << 1);
+        }
+        mContour[mContourSize++] = x;
+        mContour[mContourSize++] = y;
+    }
+
+    // a segment after close() starts a new contour at the last move point
+    private void ensureContour() {
+        if (!mContourOpen) {
+            moveTo(mStartX, mStartY);
+        }
+    }
+
+    private void closeContour() {
+        if (!mContourOpen) {
+            return;
+        }
+        mContourOpen = false;
+        mLastX = mStartX;
+        mLastY = mStartY;
+        if (mMode == MODE_MIDDLE_OUT) {
+            mInnerFan.close();
+        } else {
+            final float[] pts = mContour;
+            final int size = mContourSize;
+            if (size < 6) {
+                return;
+            }
+            // fan from the center of the contour points
+            float cx = 0, cy = 0;
+            for (int i = 0; i < size; i += 2) {
+                cx += pts[i];
+                cy += pts[i + 1];
+            }
+            final float inv = 2.0f / size;
+            cx *= inv;
+            cy *= inv;
+            for (int i = 2; i < size; i += 2) {
+                appendTriangle(cx, cy,
+                        pts[i - 2], pts[i - 1],
+                        pts[i], pts[i + 1]);
+            }
+            // the implicit close
+            appendTriangle(cx, cy,
+                    pts[size - 2], pts[size - 1],
+                    mStartX, mStartY);
+        }
+    }
+
+    // called by MiddleOutPolygonTriangulator
+    void appendTriangle(float x0, float y0,
+                        float x1, float y1,
+                        float x2, float y2) {
+        // skip triangles with no area, they cover nothing
+        if ((x1 - x0) * (y2 - y0) == (y1 - y0) * (x2 - x0)) {
+            return;
+        }
+        int pos = mVertexCount << 1;
+        if (pos + 6 > mVertices.length) {
+            mVertices = Arrays.copyOf(mVertices, Math.max(pos + 6, pos + (pos >> 1)));
+        }
+        float[] v = mVertices;
+        v[pos] = x0;
+        v[pos + 1] = y0;
+        v[pos + 2] = x1;
+        v[pos + 3] = y1;
+        v[pos + 4] = x2;
+        v[pos + 5] = y2;
+        mVertexCount += 3;
+    }
+}
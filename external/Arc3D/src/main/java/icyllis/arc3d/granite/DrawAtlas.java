@@ -49,6 +49,12 @@ import java.util.Arrays;
  * plots in lower index pages, the higher index page will be deactivated, and its glyphs will
  * gradually migrate to other pages via the usual upload system.
  * <p>
+ * Migration through re-uploads happens when the data is needed again, that is, in the middle of
+ * a frame. When the atlas has not been used for kAtlasIdleCount flushes, compact() instead repacks
+ * the sub-images of recently used plots into as few pages as possible (see {@link Repacker}),
+ * moves their data on the CPU side and updates their AtlasLocators in place, then deactivates the
+ * pages that are no longer needed. The moved data is uploaded by the next {@link #recordUploads}.
+ * <p>
  * Garbage collection is initiated by the DrawAtlas's client via the compact() method.
  */
 public class DrawAtlas implements AutoCloseable {
@@ -175,7 +181,7 @@ public class DrawAtlas implements AutoCloseable {
         }
 
         public int getPlotIndex() {
-            return (int) (loc >> 48) & 0xFFFF;
+            return (int) (loc >> 48) & 0xFF;
         }
 
         public int getPageIndex() {
@@ -280,6 +286,141 @@ public class DrawAtlas implements AutoCloseable {
         void onEvict(PlotLocator locator);
     }
 
+    /**
+     * Repacks sub-images into as few plots as possible, using the same skyline packer
+     * as {@link Plot}. This is pure CPU work, the atlas replays the packing order on
+     * its plots to move the data. Larger sub-images are packed first, and each one goes
+     * into the first plot that fits it.
+     */
+    public static class Repacker {
+
+        private final int mPlotWidth;
+        private final int mPlotHeight;
+
+        // x, y, width, height, plot
+        private int[] mData = new int[5 * 16];
+        private int mCount;
+        // packing order, sub-image indices
+        private int[] mOrder;
+        private int mNumPlots;
+
+        private final ObjectArrayList<RectanglePacker> mPackers = new ObjectArrayList<>();
+        private final Rect2i mTmpRect = new Rect2i();
+
+        public Repacker(int plotWidth, int plotHeight) {
+            mPlotWidth = plotWidth;
+            mPlotHeight = plotHeight;
+        }
+
+        /**
+         * Adds a sub-image to pack and returns its index, the size must be non-empty
+         * and fit in a plot.
+         */
+        public int add(int width, int height) {
+            assert width > 0 && width <= mPlotWidth;
+            assert height > 0 && height <= mPlotHeight;
+            if (mCount * 5 >= mData.length) {
+                mData = Arrays.copyOf(mData, mData.length << 1);
+            }
+            int i = mCount * 5;
+            mData[i + 2] = width;
+            mData[i + 3] = height;
+            return mCount++;
+        }
+
+        /**
+         * Packs all the sub-images added since the last reset.
+         *
+         * @return the number of plots used
+         */
+        public int pack() {
+            final int count = mCount;
+            // sort by height then width, both descending, stable by index
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                long w = mData[i * 5 + 2], h = mData[i * 5 + 3];
+                keys[i] = ((0xFFFF - h) << 48) | ((0xFFFF - w) << 32) | i;
+            }
+            Arrays.sort(keys);
+            if (mOrder == null || mOrder.length < count) {
+                mOrder = new int[count];
+            }
+            mNumPlots = 0;
+            Rect2i rect = mTmpRect;
+            for (int k = 0; k < count; k++) {
+                int i = (int) keys[k];
+                mOrder[k] = i;
+                rect.set(0, 0, mData[i * 5 + 2], mData[i * 5 + 3]);
+                int plot = 0;
+                for (; plot < mNumPlots; plot++) {
+                    if (mPackers.get(plot).addRect(rect)) {
+                        break;
+                    }
+                }
+                if (plot == mNumPlots) {
+                    RectanglePacker packer;
+                    if (plot < mPackers.size()) {
+                        packer = mPackers.get(plot);
+                        packer.clear();
+                    } else {
+                        packer = RectanglePacker.make(mPlotWidth, mPlotHeight,
+                                RectanglePacker.ALGORITHM_SKYLINE);
+                        mPackers.add(packer);
+                    }
+                    mNumPlots++;
+                    boolean added = packer.addRect(rect);
+                    assert added;
+                }
+                mData[i * 5] = rect.x();
+                mData[i * 5 + 1] = rect.y();
+                mData[i * 5 + 4] = plot;
+            }
+            return mNumPlots;
+        }
+
+        public void reset() {
+            mCount = 0;
+            mNumPlots = 0;
+        }
+
+        public int count() {
+            return mCount;
+        }
+
+        /**
+         * Returns the index of the k-th sub-image in packing order.
+         */
+        public int orderAt(int k) {
+            return mOrder[k];
+        }
+
+        // the packed position in the plot
+        public int getX(int index) {
+            return mData[index * 5];
+        }
+
+        public int getY(int index) {
+            return mData[index * 5 + 1];
+        }
+
+        public int getWidth(int index) {
+            return mData[index * 5 + 2];
+        }
+
+        public int getHeight(int index) {
+            return mData[index * 5 + 3];
+        }
+
+        // the packed plot ordinal
+        public int getPlot(int index) {
+            return mData[index * 5 + 4];
+        }
+
+        public int getNumPlots() {
+            return mNumPlots;
+        }
+    }
+
     /**
      * A class which can be handed back to an atlas for updating plots in bulk.
      */
@@ -370,6 +511,12 @@ public class DrawAtlas implements AutoCloseable {
         private final Rect2i mDirtyRect = new Rect2i();
         private final Rect2i mTmpRect = new Rect2i();
 
+        // sub-images added since the last clear, they are moved when the atlas repacks
+        private AtlasLocator[] mLocators;
+        // 0-16: x, 16-32: y, 32-48: width, 48-64: height, in plot space
+        private long[] mRects;
+        private int mNumRects;
+
         public Plot(int pageIndex, int plotIndex, AtlasGenerationCounter generationCounter,
                     int plotX, int plotY, int width, int height, int colorType, int bpp) {
             mLastUseToken = AtlasToken.INVALID_TOKEN;
@@ -413,12 +560,36 @@ public class DrawAtlas implements AutoCloseable {
             }
 
             mDirtyRect.join(rect);
+            if (mLocators == null) {
+                mLocators = new AtlasLocator[4];
+                mRects = new long[4];
+            } else if (mNumRects == mLocators.length) {
+                mLocators = Arrays.copyOf(mLocators, mNumRects << 1);
+                mRects = Arrays.copyOf(mRects, mNumRects << 1);
+            }
+            mLocators[mNumRects] = atlasLocator;
+            mRects[mNumRects++] = (long) rect.x() | ((long) rect.y() << 16) |
+                    ((long) width << 32) | ((long) height << 48);
             rect.offset(mOffsetX, mOffsetY);
             atlasLocator.setRect(rect);
 
             return true;
         }
 
+        /**
+         * Returns the number of sub-images added since the last clear.
+         */
+        public int getNumRects() {
+            return mNumRects;
+        }
+
+        /**
+         * Returns the area in texels covered by sub-images.
+         */
+        public int getUsedArea() {
+            return mRectanglePacker.getArea();
+        }
+
         public long dataAt(AtlasLocator atlasLocator) {
             long bpp = mBytesPerPixel;
             if (mData == MemoryUtil.NULL) {
@@ -529,6 +700,10 @@ public class DrawAtlas implements AutoCloseable {
          */
         public void clear() {
             mRectanglePacker.clear();
+            if (mLocators != null) {
+                Arrays.fill(mLocators, 0, mNumRects, null);
+            }
+            mNumRects = 0;
             setGeneration(mGenerationCounter.next());
             mLastUseToken = AtlasToken.INVALID_TOKEN;
 
@@ -631,13 +806,17 @@ public class DrawAtlas implements AutoCloseable {
     // the number of flushes since this atlas has been last used
     private int mFlushesSinceLastUsed;
 
+    // the number of bytes recorded for uploads, for metrics
+    private long mUploadBytes;
+
     public DrawAtlas(@ColorInfo.ColorType int ct,
                      int width, int height,
                      int plotWidth, int plotHeight,
                      @Nonnull AtlasGenerationCounter generationCounter,
-                     boolean useMultiPages,
+                     int maxPages,
                      boolean useStorageTextures,
                      String label) {
+        assert maxPages >= 1 && maxPages <= PlotLocator.MAX_PAGES;
         mColorType = ct;
         mBytesPerPixel = ColorInfo.bytesPerPixel(ct);
 
@@ -664,9 +843,7 @@ public class DrawAtlas implements AutoCloseable {
         mFlushesSinceLastUsed = 0;
 
         // allocate pages
-        mPages = new Page[useMultiPages
-                ? PlotLocator.MAX_PAGES
-                : 1];
+        mPages = new Page[maxPages];
         for (int pageIndex = 0; pageIndex < mPages.length; pageIndex++) {
             Page page = mPages[pageIndex] = new Page();
             // set up allocated plots
@@ -698,7 +875,7 @@ public class DrawAtlas implements AutoCloseable {
      * @param plotWidth          The width of each plot. width/plotWidth should be an integer.
      * @param plotHeight         The height of each plot. height/plotHeight should be an integer.
      * @param generationCounter  A pointer to the context's generation counter.
-     * @param useMultiPages      Can the atlas use more than one texture.
+     * @param maxPages           The maximum number of textures the atlas can grow to, 1..4.
      * @param useStorageTextures Should the atlas use storage textures.
      * @param evictor            A pointer to an eviction callback class.
      * @param label              Label for texture resources.
@@ -708,7 +885,7 @@ public class DrawAtlas implements AutoCloseable {
                                  int width, int height,
                                  int plotWidth, int plotHeight,
                                  @Nonnull AtlasGenerationCounter generationCounter,
-                                 boolean useMultiPages,
+                                 int maxPages,
                                  boolean useStorageTextures,
                                  PlotEvictionCallback evictor,
                                  String label) {
@@ -717,7 +894,7 @@ public class DrawAtlas implements AutoCloseable {
                 width, height,
                 plotWidth, plotHeight,
                 generationCounter,
-                useMultiPages,
+                maxPages,
                 useStorageTextures,
                 label
         );
@@ -760,6 +937,9 @@ public class DrawAtlas implements AutoCloseable {
      * DrawAtlas must immediately call 'setLastUseToken' with the currentToken from the Recorder,
      * otherwise the next call to addToAtlas might cause the previous data to be overwritten before
      * it has been read.
+     * <p>
+     * The atlas keeps a reference to the atlasLocator until the plot is evicted, and updates it
+     * in place if the plot is repacked, so it must not be reused for other sub-images.
      */
     public int addRect(@Nonnull RecordingContext context,
                        int width, int height,
@@ -900,6 +1080,7 @@ public class DrawAtlas implements AutoCloseable {
                             levels, dstRect, /*uploadCondition*/ null)) {
                         return false;
                     }
+                    mUploadBytes += (long) mBytesPerPixel * dstRect.width() * dstRect.height();
                 }
             }
         }
@@ -935,6 +1116,49 @@ public class DrawAtlas implements AutoCloseable {
         return mPlotHeight;
     }
 
+    /**
+     * Returns the ratio of the area covered by sub-images to the area of active pages,
+     * or 0 if there's no active page.
+     *
+     * @return the occupancy, 0..1
+     */
+    public double getOccupancy() {
+        if (mNumActivePages == 0) {
+            return 0;
+        }
+        long usedArea = 0;
+        for (int pageIndex = 0; pageIndex < mNumActivePages; ++pageIndex) {
+            for (Plot plot : mPages[pageIndex].mPlots) {
+                usedArea += plot.getUsedArea();
+            }
+        }
+        return (double) usedArea / mNumActivePages / mTextureWidth / mTextureHeight;
+    }
+
+    /**
+     * Returns the number of plots in active pages that have been used within
+     * kPlotRecentlyUsedCount flushes and are not empty.
+     */
+    public int getNumLivePlots() {
+        int count = 0;
+        for (int pageIndex = 0; pageIndex < mNumActivePages; ++pageIndex) {
+            for (Plot plot : mPages[pageIndex].mPlots) {
+                if (plot.getNumRects() > 0 &&
+                        plot.numFlushesSinceLastUsed() <= kPlotRecentlyUsedCount) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the total number of bytes recorded for uploads since this atlas was created.
+     */
+    public long getUploadBytes() {
+        return mUploadBytes;
+    }
+
     public boolean contains(@Nonnull PlotLocator plotLocator) {
         if (!plotLocator.isValid()) {
             return false;
@@ -987,6 +1211,8 @@ public class DrawAtlas implements AutoCloseable {
     // to hang around for a bit in case it's needed.
     private static final int kPlotRecentlyUsedCount = 300;
     private static final int kAtlasRecentlyUsedCount = 1200;
+    // Number of flushes without using the atlas before we consider it idle and repack it.
+    private static final int kAtlasIdleCount = 16;
 
     // Reduce Page use as much as possible while retaining some temporal coherence.
     public void compact(long startTokenForNextFlush) {
@@ -1097,6 +1323,10 @@ public class DrawAtlas implements AutoCloseable {
                 deactivateLastPage();
                 mFlushesSinceLastUsed = 0;
             }
+        } else if (mFlushesSinceLastUsed == kAtlasIdleCount) {
+            // The atlas is idle (e.g. only a blinking cursor is drawn), move the data from
+            // the higher index pages now rather than re-uploading it in the next busy frame.
+            repack(startTokenForNextFlush);
         }
 
         mPrevFlushToken = startTokenForNextFlush;
@@ -1136,6 +1366,154 @@ public class DrawAtlas implements AutoCloseable {
         mPrevFlushToken = startTokenForNextFlush;
     }
 
+    /**
+     * Repacks the sub-images of recently used plots into as few pages as possible, and
+     * deactivates the remaining pages. The data is moved on the CPU side and re-uploaded,
+     * the AtlasLocators passed to {@link #addRect} are updated in place, while sub-images
+     * in plots that have aged out are evicted. The atlas generation is changed so that
+     * clients can update their texture coordinates.
+     * <p>
+     * This does nothing if any plot is used by the draws that have not been flushed, or
+     * if repacking would not free a page.
+     *
+     * @return true if any page was deactivated
+     */
+    public boolean repack(long startTokenForNextFlush) {
+        if (mNumActivePages <= 1) {
+            return false;
+        }
+        int numRects = 0;
+        for (int pageIndex = 0; pageIndex < mNumActivePages; ++pageIndex) {
+            for (Plot plot : mPages[pageIndex].mPlots) {
+                // the data of plots used by pending draws cannot be moved
+                if (AtlasToken.compare(plot.getLastUseToken(), startTokenForNextFlush) >= 0) {
+                    return false;
+                }
+                if (plot.numFlushesSinceLastUsed() <= kPlotRecentlyUsedCount) {
+                    numRects += plot.getNumRects();
+                }
+            }
+        }
+
+        // collect live sub-images
+        var repacker = new Repacker(mPlotWidth, mPlotHeight);
+        var locators = new AtlasLocator[numRects];
+        var sources = new Plot[numRects];
+        var rects = new long[numRects];
+        for (int pageIndex = 0; pageIndex < mNumActivePages; ++pageIndex) {
+            for (Plot plot : mPages[pageIndex].mPlots) {
+                if (plot.numFlushesSinceLastUsed() > kPlotRecentlyUsedCount) {
+                    continue;
+                }
+                for (int i = 0; i < plot.mNumRects; i++) {
+                    long rect = plot.mRects[i];
+                    int index = repacker.add((int) (rect >> 32) & 0xFFFF, (int) (rect >>> 48));
+                    locators[index] = plot.mLocators[i];
+                    sources[index] = plot;
+                    rects[index] = rect;
+                }
+            }
+        }
+        int numPages = (repacker.pack() + mNumPlots - 1) / mNumPlots;
+        if (numPages >= mNumActivePages) {
+            return false;
+        }
+
+        // save the data, as the destination plots are the source plots
+        long bpp = mBytesPerPixel;
+        long totalSize = 0;
+        for (int i = 0; i < numRects; i++) {
+            totalSize += bpp * repacker.getWidth(i) * repacker.getHeight(i);
+        }
+        long buffer = MemoryUtil.NULL;
+        if (totalSize > 0) {
+            buffer = MemoryUtil.nmemAlloc(totalSize);
+            if (buffer == MemoryUtil.NULL) {
+                return false;
+            }
+        }
+        var offsets = new long[numRects];
+        var tokens = new long[numRects];
+        var flushes = new int[numRects];
+        long offset = 0;
+        for (int i = 0; i < numRects; i++) {
+            Plot src = sources[i];
+            long rect = rects[i];
+            int w = repacker.getWidth(i);
+            int h = repacker.getHeight(i);
+            if (src.mData != MemoryUtil.NULL) {
+                long srcAddr = src.mData +
+                        bpp * (src.mWidth * ((rect >> 16) & 0xFFFF) + (rect & 0xFFFF));
+                PixelUtils.copyImage(
+                        null, srcAddr, bpp * src.mWidth,
+                        null, buffer + offset, bpp * w,
+                        bpp * w, h
+                );
+            } else {
+                MemoryUtil.memSet(buffer + offset, 0, bpp * w * h);
+            }
+            offsets[i] = offset;
+            offset += bpp * w * h;
+            tokens[i] = src.getLastUseToken();
+            flushes[i] = src.numFlushesSinceLastUsed();
+        }
+
+        for (int pageIndex = 0; pageIndex < mNumActivePages; ++pageIndex) {
+            for (Plot plot : mPages[pageIndex].mPlots) {
+                evictAndReset(plot);
+                plot.resetFlushesSinceLastUsed();
+            }
+        }
+        while (mNumActivePages > numPages) {
+            deactivateLastPage();
+        }
+
+        // replay the packing order on the real plots, which use the same packer
+        boolean[] touched = new boolean[numPages * mNumPlots];
+        for (int k = 0; k < numRects; k++) {
+            int i = repacker.orderAt(k);
+            int ordinal = repacker.getPlot(i);
+            Page page = mPages[ordinal / mNumPlots];
+            Plot plot = page.mPlots[ordinal % mNumPlots];
+            AtlasLocator locator = locators[i];
+            // the client may have inset the rect, keep it relative to the sub-image
+            long rect = rects[i];
+            int srcX = sources[i].mOffsetX + (int) (rect & 0xFFFF);
+            int srcY = sources[i].mOffsetY + (int) ((rect >> 16) & 0xFFFF);
+            int u1 = locator.u1 & 0xFFFF, v1 = locator.v1 & 0xFFFF;
+            int u2 = locator.u2 & 0xFFFF, v2 = locator.v2 & 0xFFFF;
+            boolean added = plot.addRect(repacker.getWidth(i), repacker.getHeight(i), locator);
+            assert added;
+            assert (locator.u1 & 0xFFFF) == plot.mOffsetX + repacker.getX(i);
+            assert (locator.v1 & 0xFFFF) == plot.mOffsetY + repacker.getY(i);
+            plot.copySubImage(locator, null, buffer + offsets[i]);
+            int dx = (locator.u1 & 0xFFFF) - srcX;
+            int dy = (locator.v1 & 0xFFFF) - srcY;
+            locator.u1 = (short) (u1 + dx);
+            locator.v1 = (short) (v1 + dy);
+            locator.u2 = (short) (u2 + dx);
+            locator.v2 = (short) (v2 + dy);
+            locator.setLocation(plot);
+
+            // the plot inherits the most recent use of its sub-images
+            if (!touched[ordinal]) {
+                touched[ordinal] = true;
+                plot.mLastUseToken = tokens[i];
+                plot.mFlushesSinceLastUsed = flushes[i];
+                page.moveToHead(plot);
+            } else {
+                if (AtlasToken.compare(tokens[i], plot.mLastUseToken) > 0) {
+                    plot.mLastUseToken = tokens[i];
+                }
+                plot.mFlushesSinceLastUsed = Math.min(plot.mFlushesSinceLastUsed, flushes[i]);
+            }
+        }
+        if (buffer != MemoryUtil.NULL) {
+            MemoryUtil.nmemFree(buffer);
+        }
+        return true;
+    }
+
     public void evictAllPlots() {
         for (int pageIndex = 0; pageIndex < mNumActivePages; ++pageIndex) {
             Page page = mPages[pageIndex];
@@ -0,0 +1,289 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.granite;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenCustomHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Sorts the render steps of a {@link DrawPass} with primitive keys, this produces exactly
+ * the same order as {@link DrawPass.SortKey}, but without creating an object per step.
+ * <p>
+ * Each step has a 128-bit key, stored in two parallel long arrays:
+ * <pre>
+ * hi: 64-32 painter's order and stencil disjoint set index, 32-0 high 32 bits of pipeline key
+ * lo: 64-44 low 20 bits of pipeline key, 44-0 texture binding rank
+ * </pre>
+ * where the pipeline key is the 52-bit (step, pipeline, geometry uniform, fragment uniform)
+ * tuple described by {@link DrawPass.SortKey}, and texture binding rank is the position of the
+ * texture binding in the lexicographic order of all distinct texture bindings. Keys are sorted
+ * with a stable LSD radix sort (8-bit digits), digits that are identical for all steps are skipped.
+ * <p>
+ * All arrays are retained and reused between passes. This class is not thread-safe, there is
+ * one instance per {@link icyllis.arc3d.engine.RecordingContext}.
+ */
+public final class DrawKeySorter implements AutoCloseable {
+
+    private static final int DIGIT_BITS = 8;
+    private static final int DIGIT_RADIX = 1 << DIGIT_BITS;
+    private static final int DIGIT_MASK = DIGIT_RADIX - 1;
+    // 8 digits for lo key, then 8 digits for hi key
+    private static final int NUM_DIGITS = 2 * Long.SIZE / DIGIT_BITS;
+
+    private static final int PIPELINE_KEY_LO_BITS = 20;
+    private static final long PIPELINE_KEY_LO_MASK = (1L << PIPELINE_KEY_LO_BITS) - 1;
+    private static final int PIPELINE_KEY_LO_OFFSET = Long.SIZE - PIPELINE_KEY_LO_BITS;
+    private static final long TEXTURE_RANK_MASK = (1L << PIPELINE_KEY_LO_OFFSET) - 1;
+
+    private long[] mHiKeys = new long[0];
+    private long[] mLoKeys = new long[0];
+    private int[] mIndices = new int[0];
+
+    private long[] mHiScratch = new long[0];
+    private long[] mLoScratch = new long[0];
+    private int[] mIndexScratch = new int[0];
+
+    // indexed by insertion order
+    private Draw[] mDraws = new Draw[0];
+    private int[][] mTextures = new int[0][];
+
+    private int mCount;
+
+    private final int[] mHistogram = new int[NUM_DIGITS * DIGIT_RADIX];
+
+    private final Object2IntOpenCustomHashMap<int[]> mTextureToRank =
+            new Object2IntOpenCustomHashMap<>(IntArrays.HASH_STRATEGY);
+    private final ObjectArrayList<int[]> mDistinctTextures = new ObjectArrayList<>();
+
+    public DrawKeySorter() {
+    }
+
+    /**
+     * Clears all keys and ensures there is enough storage for the given number of steps.
+     *
+     * @return this
+     */
+    public DrawKeySorter begin(int numSteps) {
+        close();
+        if (mHiKeys.length < numSteps) {
+            grow(numSteps);
+        }
+        return this;
+    }
+
+    private void grow(int minCapacity) {
+        int newCap = Math.max(minCapacity, mHiKeys.length + (mHiKeys.length >> 1));
+        mHiKeys = Arrays.copyOf(mHiKeys, newCap);
+        mLoKeys = Arrays.copyOf(mLoKeys, newCap);
+        mIndices = Arrays.copyOf(mIndices, newCap);
+        mHiScratch = new long[newCap];
+        mLoScratch = new long[newCap];
+        mIndexScratch = new int[newCap];
+        mDraws = Arrays.copyOf(mDraws, newCap);
+        mTextures = Arrays.copyOf(mTextures, newCap);
+    }
+
+    /**
+     * Adds a render step, parameters are the same as {@link DrawPass.SortKey}.
+     */
+    public void add(Draw draw,
+                    int stepIndex,
+                    int pipelineIndex,
+                    int geometryUniformIndex,
+                    int fragmentUniformIndex,
+                    int[] textures) {
+        assert (stepIndex & DrawPass.SortKey.STEP_INDEX_MASK) == stepIndex;
+        int i = mCount;
+        if (i == mHiKeys.length) {
+            grow(i + 1);
+        }
+        long pipelineKey = ((long) stepIndex << DrawPass.SortKey.STEP_INDEX_OFFSET) |
+                ((long) pipelineIndex << DrawPass.SortKey.PIPELINE_INDEX_OFFSET) |
+                ((long) geometryUniformIndex << DrawPass.SortKey.GEOMETRY_UNIFORM_INDEX_OFFSET) |
+                ((long) fragmentUniformIndex << DrawPass.SortKey.FRAGMENT_UNIFORM_INDEX_OFFSET);
+        // the 16-48 bits are just we want
+        long orderKey = (draw.mDrawOrder >>> DrawOrder.STENCIL_INDEX_SHIFT) & 0xFFFFFFFFL;
+        mHiKeys[i] = (orderKey << 32) | (pipelineKey >>> PIPELINE_KEY_LO_BITS);
+        // texture rank is filled later
+        mLoKeys[i] = (pipelineKey & PIPELINE_KEY_LO_MASK) << PIPELINE_KEY_LO_OFFSET;
+        mIndices[i] = i;
+        mDraws[i] = draw;
+        mTextures[i] = textures;
+        mCount = i + 1;
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Sorts all the added steps, the sort is stable.
+     */
+    public void sort() {
+        final int n = mCount;
+        if (n <= 1) {
+            return;
+        }
+        rankTextures();
+
+        final int[] histogram = mHistogram;
+        Arrays.fill(histogram, 0);
+        final long[] hiKeys = mHiKeys;
+        final long[] loKeys = mLoKeys;
+        // count all digits in one pass
+        for (int i = 0; i < n; i++) {
+            long lo = loKeys[i];
+            long hi = hiKeys[i];
+            for (int d = 0, base = 0; d < Long.SIZE; d += DIGIT_BITS, base += DIGIT_RADIX) {
+                histogram[base + (int) ((lo >>> d) & DIGIT_MASK)]++;
+            }
+            for (int d = 0, base = NUM_DIGITS / 2 * DIGIT_RADIX; d < Long.SIZE;
+                 d += DIGIT_BITS, base += DIGIT_RADIX) {
+                histogram[base + (int) ((hi >>> d) & DIGIT_MASK)]++;
+            }
+        }
+
+        long[] srcHi = hiKeys, srcLo = loKeys, dstHi = mHiScratch, dstLo = mLoScratch;
+        int[] srcIdx = mIndices, dstIdx = mIndexScratch;
+        for (int digit = 0; digit < NUM_DIGITS; digit++) {
+            final int base = digit * DIGIT_RADIX;
+            final boolean useHi = digit >= NUM_DIGITS / 2;
+            final int shift = (digit % (NUM_DIGITS / 2)) * DIGIT_BITS;
+            long firstKey = useHi ? srcHi[0] : srcLo[0];
+            if (histogram[base + (int) ((firstKey >>> shift) & DIGIT_MASK)] == n) {
+                // all steps have the same digit, nothing to do
+                continue;
+            }
+            // exclusive prefix sum
+            for (int b = 0, sum = 0; b < DIGIT_RADIX; b++) {
+                int c = histogram[base + b];
+                histogram[base + b] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                long hi = srcHi[i];
+                long lo = srcLo[i];
+                int bucket = base + (int) (((useHi ? hi : lo) >>> shift) & DIGIT_MASK);
+                int pos = histogram[bucket]++;
+                dstHi[pos] = hi;
+                dstLo[pos] = lo;
+                dstIdx[pos] = srcIdx[i];
+            }
+            long[] tmp = srcHi;
+            srcHi = dstHi;
+            dstHi = tmp;
+            tmp = srcLo;
+            srcLo = dstLo;
+            dstLo = tmp;
+            int[] tmpIdx = srcIdx;
+            srcIdx = dstIdx;
+            dstIdx = tmpIdx;
+        }
+        // the sorted keys are the primary storage from now on
+        mHiKeys = srcHi;
+        mLoKeys = srcLo;
+        mIndices = srcIdx;
+        mHiScratch = dstHi;
+        mLoScratch = dstLo;
+        mIndexScratch = dstIdx;
+    }
+
+    /**
+     * Assign each distinct texture binding a rank that respects {@link Arrays#compare(int[], int[])}.
+     */
+    private void rankTextures() {
+        final int n = mCount;
+        final var textureToRank = mTextureToRank;
+        final var distinctTextures = mDistinctTextures;
+        for (int i = 0; i < n; i++) {
+            int[] textures = mTextures[i];
+            if (textureToRank.putIfAbsent(textures, 0) == null) {
+                distinctTextures.add(textures);
+            }
+        }
+        if (distinctTextures.size() > 1) {
+            distinctTextures.unstableSort(Arrays::compare);
+            for (int rank = 0; rank < distinctTextures.size(); rank++) {
+                textureToRank.put(distinctTextures.get(rank), rank);
+            }
+            for (int i = 0; i < n; i++) {
+                // keys are not yet permuted
+                long rank = textureToRank.getInt(mTextures[i]);
+                assert (rank & TEXTURE_RANK_MASK) == rank;
+                mLoKeys[i] |= rank;
+            }
+        }
+        textureToRank.clear();
+        distinctTextures.clear();
+    }
+
+    /**
+     * Returns the draw of the i-th step in sorted order.
+     */
+    public Draw draw(int i) {
+        return mDraws[mIndices[i]];
+    }
+
+    /**
+     * Returns the texture binding of the i-th step in sorted order.
+     */
+    public int[] textures(int i) {
+        return mTextures[mIndices[i]];
+    }
+
+    private long pipelineKey(int i) {
+        return ((mHiKeys[i] & 0xFFFFFFFFL) << PIPELINE_KEY_LO_BITS) |
+                (mLoKeys[i] >>> PIPELINE_KEY_LO_OFFSET);
+    }
+
+    public GeometryStep step(int i) {
+        return draw(i).mRenderer.step(
+                (int) ((pipelineKey(i) >>> DrawPass.SortKey.STEP_INDEX_OFFSET) &
+                        DrawPass.SortKey.STEP_INDEX_MASK));
+    }
+
+    public int pipelineIndex(int i) {
+        return (int) ((pipelineKey(i) >>> DrawPass.SortKey.PIPELINE_INDEX_OFFSET) &
+                DrawPass.SortKey.PIPELINE_INDEX_MASK);
+    }
+
+    public int geometryUniformIndex(int i) {
+        return (int) ((pipelineKey(i) >>> DrawPass.SortKey.GEOMETRY_UNIFORM_INDEX_OFFSET) &
+                DrawPass.SortKey.GEOMETRY_UNIFORM_INDEX_MASK);
+    }
+
+    public int fragmentUniformIndex(int i) {
+        return (int) ((pipelineKey(i) >>> DrawPass.SortKey.FRAGMENT_UNIFORM_INDEX_OFFSET) &
+                DrawPass.SortKey.FRAGMENT_UNIFORM_INDEX_MASK);
+    }
+
+    /**
+     * Releases the references to draws and texture bindings, the storage is retained.
+     */
+    @Override
+    public void close() {
+        Arrays.fill(mDraws, 0, mCount, null);
+        Arrays.fill(mTextures, 0, mCount, null);
+        mCount = 0;
+    }
+}
@@ -122,10 +122,8 @@ public class DrawPass implements AutoCloseable {
         var geometryUniformTracker = new UniformTracker();
         var fragmentUniformTracker = new UniformTracker();
 
-        SortKey[] keys = new SortKey[numSteps];
-        int keyIndex = 0;
-
-        try (var textureDataGatherer = new TextureDataGatherer();
+        try (var keys = context.getDrawKeySorter().begin(numSteps);
+             var textureDataGatherer = new TextureDataGatherer();
              var drawWriter = new MeshDrawWriter(bufferManager, commandList)) {
             var textureTracker = new TextureTracker();
 
@@ -205,7 +203,7 @@ public class DrawPass implements AutoCloseable {
                                 fragmentUniforms
                         );
 
-                        keys[keyIndex++] = new SortKey(
+                        keys.add(
                                 draw,
                                 stepIndex,
                                 pipelineIndex,
@@ -225,9 +223,9 @@ public class DrawPass implements AutoCloseable {
                 }
             }
 
-            assert keyIndex == keys.length;
-            // TimSort - stable
-            Arrays.sort(keys);
+            assert keys.size() == numSteps;
+            // LSD radix sort - stable
+            keys.sort();
 
             Rect2ic lastScissor = new Rect2i(0, 0, deviceInfo.width(), deviceInfo.height());
             int lastPipelineIndex = INVALID_INDEX;
@@ -235,22 +233,22 @@ public class DrawPass implements AutoCloseable {
 
             commandList.setScissor(lastScissor, surfaceHeight, surfaceOrigin);
 
-            for (var key : keys) {
-                var draw = key.mDraw;
-                var step = key.step();
-                int pipelineIndex = key.pipelineIndex();
+            for (int keyIndex = 0, numKeys = keys.size(); keyIndex < numKeys; keyIndex++) {
+                var draw = keys.draw(keyIndex);
+                var step = keys.step(keyIndex);
+                int pipelineIndex = keys.pipelineIndex(keyIndex);
 
                 boolean pipelineStateChange = pipelineIndex != lastPipelineIndex;
 
                 Rect2ic newScissor = !draw.mScissorRect.equals(lastScissor)
                         ? draw.mScissorRect : null;
                 boolean geometryBindingChange = geometryUniformTracker.setCurrentUniforms(
-                        pipelineIndex, key.geometryUniformIndex()
+                        pipelineIndex, keys.geometryUniformIndex(keyIndex)
                 );
                 boolean fragmentBindingChange = fragmentUniformTracker.setCurrentUniforms(
-                        pipelineIndex, key.fragmentUniformIndex()
+                        pipelineIndex, keys.fragmentUniformIndex(keyIndex)
                 );
-                boolean textureBindingChange = textureTracker.setCurrentTextures(key.mTextures);
+                boolean textureBindingChange = textureTracker.setCurrentTextures(keys.textures(keyIndex));
 
                 boolean dynamicStateChange = newScissor != null ||
                         geometryBindingChange ||
@@ -512,6 +510,9 @@ public class DrawPass implements AutoCloseable {
      * painter's order, stencil disjoint set index,
      * render step index, pipeline index, geometry uniform index,
      * fragment uniform index, texture and sampler binding
+     * <p>
+     * {@link DrawPass#make} sorts with {@link DrawKeySorter} instead, which gives the same order
+     * without allocating a key object per step. This class remains as the reference ordering.
      */
     public static final class SortKey implements Comparable<SortKey> {
 
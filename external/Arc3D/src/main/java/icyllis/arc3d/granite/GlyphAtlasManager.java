@@ -49,10 +49,15 @@ public class GlyphAtlasManager extends DrawAtlas.AtlasGenerationCounter
     private final DrawAtlas[] mAtlases = new DrawAtlas[Engine.MASK_FORMAT_COUNT];
 
     private final int mMaxTextureSize;
+    private final int mMaxPages;
 
     public GlyphAtlasManager(RecordingContext rc) {
         mRC = rc;
         mMaxTextureSize = Math.min(rc.getCaps().maxTextureSize(), MAX_ATLAS_SIZE);
+        var options = rc.getOptions();
+        mMaxPages = options.mAllowMultipleGlyphCacheTextures == Boolean.FALSE
+                ? 1
+                : MathUtil.clamp(options.mMaxGlyphCacheTextures, 1, DrawAtlas.PlotLocator.MAX_PAGES);
     }
 
     @Override
@@ -84,13 +89,13 @@ public class GlyphAtlasManager extends DrawAtlas.AtlasGenerationCounter
             int plotSize = atlasSize == MAX_ATLAS_SIZE
                     ? LARGE_PLOT_SIZE
                     : SMALL_PLOT_SIZE;
-            // no multi pages
+            // pages are activated on demand, then repacked when idle
             mAtlases[maskFormat] = DrawAtlas.make(
                     ct,
                     atlasSize, atlasSize,
                     plotSize, plotSize,
                     /*generationCounter*/ this,
-                    /*useMultiPages*/ false,
+                    mMaxPages,
                     /*useStorageTextures*/ false,
                     /*evictor*/ null,
                     "GlyphAtlas"
@@ -101,8 +106,8 @@ public class GlyphAtlasManager extends DrawAtlas.AtlasGenerationCounter
     }
 
     @RawPtr
-    public ImageViewProxy getCurrentTexture(int maskFormat) {
-        return getAtlas(maskFormat).getTexture(0);
+    public ImageViewProxy getTexture(int maskFormat, int pageIndex) {
+        return getAtlas(maskFormat).getTexture(pageIndex);
     }
 
     public boolean hasGlyph(int maskFormat, @Nonnull BakedGlyph glyph) {
@@ -184,6 +189,36 @@ public class GlyphAtlasManager extends DrawAtlas.AtlasGenerationCounter
         return getAtlas(maskFormat).getAtlasGeneration();
     }
 
+    /**
+     * Returns the number of textures used by the atlas of the given mask format,
+     * or 0 if the atlas is not initialized.
+     */
+    public int getNumActivePages(int maskFormat) {
+        var atlas = getAtlas(maskFormat);
+        return atlas != null ? atlas.getNumActivePages() : 0;
+    }
+
+    /**
+     * @see DrawAtlas#getOccupancy()
+     */
+    public double getOccupancy(int maskFormat) {
+        var atlas = getAtlas(maskFormat);
+        return atlas != null ? atlas.getOccupancy() : 0;
+    }
+
+    /**
+     * Returns the total number of bytes recorded for uploads by all the atlases.
+     */
+    public long getUploadBytes() {
+        long bytes = 0;
+        for (var atlas : mAtlases) {
+            if (atlas != null) {
+                bytes += atlas.getUploadBytes();
+            }
+        }
+        return bytes;
+    }
+
     public void setLastUseTokenBulk(int maskFormat,
                                     DrawAtlas.PlotBulkUseUpdater updater,
                                     long token) {
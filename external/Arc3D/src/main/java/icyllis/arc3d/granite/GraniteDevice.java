@@ -464,9 +464,6 @@ public final class GraniteDevice extends icyllis.arc3d.core.Device {
                         originX, originY,
                         subRunToLocal,
                         subRunToDevice);
-                SubRunData subRunData = new SubRunData(subRun,
-                        subRunToLocal, filter,
-                        subRunCursor, glyphsPrepared);
 
                 subRunPaint.set(paint);
                 if (subRun.getMaskFormat() == Engine.MASK_FORMAT_ARGB) {
@@ -474,9 +471,19 @@ public final class GraniteDevice extends icyllis.arc3d.core.Device {
                 }
                 subRunPaint.setStyle(Paint.FILL);
 
-                drawGeometry(subRunToDevice, subRunData, SubRunData::getBounds, paint,
-                        mRC.getRendererProvider().getRasterText(maskFormat),
-                        BlendMode.DST_IN);
+                // the atlas may have multiple pages, split into one draw per texture
+                for (int start = subRunCursor, end = subRunCursor + glyphsPrepared; start < end; ) {
+                    int count = subRun.countGlyphsInPage(start, end);
+                    SubRunData subRunData = new SubRunData(subRun,
+                            subRunToLocal, filter,
+                            start, count,
+                            subRun.getPageIndex(start));
+
+                    drawGeometry(subRunToDevice, subRunData, SubRunData::getBounds, paint,
+                            mRC.getRendererProvider().getRasterText(maskFormat),
+                            BlendMode.DST_IN);
+                    start += count;
+                }
             } else if (flushed) {
                 // Treat as an error.
                 break;
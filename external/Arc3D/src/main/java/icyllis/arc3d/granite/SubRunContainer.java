@@ -115,6 +115,29 @@ public class SubRunContainer {
                     mMaskFormat, context);
         }
 
+        /**
+         * Returns the number of glyphs from <var>start</var> that are in the same atlas page
+         * as the glyph at <var>start</var>, these glyphs can be drawn with one texture. This
+         * must be called after {@link #prepareGlyphs(int, int, RecordingContext)}.
+         */
+        public int countGlyphsInPage(int start, int end) {
+            assert start < end;
+            var glyphs = mGlyphs.getGlyphs();
+            int pageIndex = glyphs[start].getPageIndex();
+            int i = start + 1;
+            while (i < end && glyphs[i].getPageIndex() == pageIndex) {
+                ++i;
+            }
+            return i - start;
+        }
+
+        /**
+         * Returns the atlas page of the glyph at the given index.
+         */
+        public int getPageIndex(int index) {
+            return mGlyphs.getGlyphs()[index].getPageIndex();
+        }
+
         /**
          * @see icyllis.arc3d.granite.geom.RasterTextStep
          */
@@ -308,7 +331,11 @@ public class SubRunContainer {
 
         int mRejectedGlyphCount;
 
+        // digested source glyphs
+        final Glyph[] mGlyphs;
+
         Buffers(int maxGlyphRunSize) {
+            mGlyphs = new Glyph[maxGlyphRunSize];
             mAcceptedGlyphs = new int[maxGlyphRunSize];
             mAcceptedPositions = new float[maxGlyphRunSize * 2];
             mAcceptedFormats = new byte[maxGlyphRunSize];
@@ -346,49 +373,48 @@ public class SubRunContainer {
                 Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
         var bounds = new Rect2f();
         var mappedPos = new float[2];
-        strike.lock();
-        try {
-            for (int i = buffers.mSourceGlyphOffset, j = buffers.mSourcePositionOffset,
-                 e = buffers.mSourceGlyphOffset + buffers.mSourceGlyphCount; i < e; i += 1, j += 2) {
-                float posX = buffers.mSourcePositions[j];
-                float posY = buffers.mSourcePositions[j + 1];
-                if (!Float.isFinite(posX) || !Float.isFinite(posY)) {
-                    continue;
+        // digest the whole run at once, the digests are immutable
+        strike.digest(Glyph.kDirectMask,
+                buffers.mSourceGlyphs, buffers.mSourceGlyphOffset, buffers.mSourceGlyphCount,
+                buffers.mGlyphs, null);
+        for (int i = buffers.mSourceGlyphOffset, j = buffers.mSourcePositionOffset, k = 0,
+             e = buffers.mSourceGlyphOffset + buffers.mSourceGlyphCount; i < e; i += 1, j += 2, k += 1) {
+            float posX = buffers.mSourcePositions[j];
+            float posY = buffers.mSourcePositions[j + 1];
+            if (!Float.isFinite(posX) || !Float.isFinite(posY)) {
+                continue;
+            }
+            int glyphID = buffers.mSourceGlyphs[i];
+            var glyph = buffers.mGlyphs[k];
+            switch (glyph.actionFor(Glyph.kDirectMask)) {
+                case Glyph.kAccept_Action -> {
+                    creationMatrix.mapPoints(
+                            buffers.mSourcePositions, j,
+                            mappedPos, 0, 1
+                    );
+                    float roundedPosX = (float) Math.floor(mappedPos[0] + 0.5f);
+                    float roundedPosY = (float) Math.floor(mappedPos[1] + 0.5f);
+                    glyph.getBounds(bounds);
+                    bounds.offset(roundedPosX, roundedPosY);
+                    runBounds.joinNoCheck(bounds);
+                    buffers.mAcceptedGlyphs[acceptedSize] = glyphID;
+                    // accepted buffer index starts from zero, it's safe to use OR
+                    buffers.mAcceptedPositions[acceptedSize << 1] = bounds.x();
+                    buffers.mAcceptedPositions[(acceptedSize << 1) | 1] = bounds.y();
+                    buffers.mAcceptedFormats[acceptedSize] = glyph.getMaskFormat();
+                    acceptedSize++;
                 }
-                int glyphID = buffers.mSourceGlyphs[i];
-                var glyph = strike.digestFor(Glyph.kDirectMask, glyphID);
-                switch (glyph.actionFor(Glyph.kDirectMask)) {
-                    case Glyph.kAccept_Action -> {
-                        creationMatrix.mapPoints(
-                                buffers.mSourcePositions, j,
-                                mappedPos, 0, 1
-                        );
-                        float roundedPosX = (float) Math.floor(mappedPos[0] + 0.5f);
-                        float roundedPosY = (float) Math.floor(mappedPos[1] + 0.5f);
-                        glyph.getBounds(bounds);
-                        bounds.offset(roundedPosX, roundedPosY);
-                        runBounds.joinNoCheck(bounds);
-                        buffers.mAcceptedGlyphs[acceptedSize] = glyphID;
-                        // accepted buffer index starts from zero, it's safe to use OR
-                        buffers.mAcceptedPositions[acceptedSize << 1] = bounds.x();
-                        buffers.mAcceptedPositions[(acceptedSize << 1) | 1] = bounds.y();
-                        buffers.mAcceptedFormats[acceptedSize] = glyph.getMaskFormat();
-                        acceptedSize++;
-                    }
-                    case Glyph.kReject_Action -> {
-                        buffers.mRejectedGlyphs[rejectedSize] = glyphID;
-                        // rejected buffer index starts from zero, it's safe to use OR
-                        buffers.mRejectedPositions[rejectedSize << 1] = posX;
-                        buffers.mRejectedPositions[(rejectedSize << 1) | 1] = posY;
-                        rejectedSize++;
-                    }
-                    case Glyph.kDrop_Action -> {
-                        // empty glyphs are dropped
-                    }
+                case Glyph.kReject_Action -> {
+                    buffers.mRejectedGlyphs[rejectedSize] = glyphID;
+                    // rejected buffer index starts from zero, it's safe to use OR
+                    buffers.mRejectedPositions[rejectedSize << 1] = posX;
+                    buffers.mRejectedPositions[(rejectedSize << 1) | 1] = posY;
+                    rejectedSize++;
+                }
+                case Glyph.kDrop_Action -> {
+                    // empty glyphs are dropped
                 }
             }
-        } finally {
-            strike.unlock();
         }
 
         buffers.mAcceptedGlyphCount = acceptedSize;
@@ -405,47 +431,46 @@ public class SubRunContainer {
                 Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
         var bounds = new Rect2f();
         var mappedPos = new float[2];
-        strike.lock();
-        try {
-            for (int i = buffers.mSourceGlyphOffset, j = buffers.mSourcePositionOffset,
-                 e = buffers.mSourceGlyphOffset + buffers.mSourceGlyphCount; i < e; i += 1, j += 2) {
-                float posX = buffers.mSourcePositions[j];
-                float posY = buffers.mSourcePositions[j + 1];
-                if (!Float.isFinite(posX) || !Float.isFinite(posY)) {
-                    continue;
+        // digest the whole run at once, the digests are immutable
+        strike.digest(Glyph.kTransformedMask,
+                buffers.mSourceGlyphs, buffers.mSourceGlyphOffset, buffers.mSourceGlyphCount,
+                buffers.mGlyphs, null);
+        for (int i = buffers.mSourceGlyphOffset, j = buffers.mSourcePositionOffset, k = 0,
+             e = buffers.mSourceGlyphOffset + buffers.mSourceGlyphCount; i < e; i += 1, j += 2, k += 1) {
+            float posX = buffers.mSourcePositions[j];
+            float posY = buffers.mSourcePositions[j + 1];
+            if (!Float.isFinite(posX) || !Float.isFinite(posY)) {
+                continue;
+            }
+            int glyphID = buffers.mSourceGlyphs[i];
+            var glyph = buffers.mGlyphs[k];
+            switch (glyph.actionFor(Glyph.kTransformedMask)) {
+                case Glyph.kAccept_Action -> {
+                    creationMatrix.mapPoints(
+                            buffers.mSourcePositions, j,
+                            mappedPos, 0, 1
+                    );
+                    glyph.getBounds(bounds);
+                    bounds.offset(mappedPos[0], mappedPos[1]);
+                    runBounds.joinNoCheck(bounds);
+                    buffers.mAcceptedGlyphs[acceptedSize] = glyphID;
+                    // accepted buffer index starts from zero, it's safe to use OR
+                    buffers.mAcceptedPositions[acceptedSize << 1] = bounds.x();
+                    buffers.mAcceptedPositions[(acceptedSize << 1) | 1] = bounds.y();
+                    buffers.mAcceptedFormats[acceptedSize] = glyph.getMaskFormat();
+                    acceptedSize++;
                 }
-                int glyphID = buffers.mSourceGlyphs[i];
-                var glyph = strike.digestFor(Glyph.kTransformedMask, glyphID);
-                switch (glyph.actionFor(Glyph.kTransformedMask)) {
-                    case Glyph.kAccept_Action -> {
-                        creationMatrix.mapPoints(
-                                buffers.mSourcePositions, j,
-                                mappedPos, 0, 1
-                        );
-                        glyph.getBounds(bounds);
-                        bounds.offset(mappedPos[0], mappedPos[1]);
-                        runBounds.joinNoCheck(bounds);
-                        buffers.mAcceptedGlyphs[acceptedSize] = glyphID;
-                        // accepted buffer index starts from zero, it's safe to use OR
-                        buffers.mAcceptedPositions[acceptedSize << 1] = bounds.x();
-                        buffers.mAcceptedPositions[(acceptedSize << 1) | 1] = bounds.y();
-                        buffers.mAcceptedFormats[acceptedSize] = glyph.getMaskFormat();
-                        acceptedSize++;
-                    }
-                    case Glyph.kReject_Action -> {
-                        buffers.mRejectedGlyphs[rejectedSize] = glyphID;
-                        // rejected buffer index starts from zero, it's safe to use OR
-                        buffers.mRejectedPositions[rejectedSize << 1] = posX;
-                        buffers.mRejectedPositions[(rejectedSize << 1) | 1] = posY;
-                        rejectedSize++;
-                    }
-                    case Glyph.kDrop_Action -> {
-                        // empty glyphs are dropped
-                    }
+                case Glyph.kReject_Action -> {
+                    buffers.mRejectedGlyphs[rejectedSize] = glyphID;
+                    // rejected buffer index starts from zero, it's safe to use OR
+                    buffers.mRejectedPositions[rejectedSize << 1] = posX;
+                    buffers.mRejectedPositions[(rejectedSize << 1) | 1] = posY;
+                    rejectedSize++;
+                }
+                case Glyph.kDrop_Action -> {
+                    // empty glyphs are dropped
                 }
             }
-        } finally {
-            strike.unlock();
         }
 
         buffers.mAcceptedGlyphCount = acceptedSize;
@@ -513,18 +538,16 @@ public class SubRunContainer {
     }
 
     static float find_max_glyph_dimension(Strike strike, int[] glyphs,
-                                          int glyphOffset, int glyphCount) {
-        strike.lock();
-        try {
-            float maxDimension = 0;
-            for (int i = glyphOffset, e = glyphOffset + glyphCount; i < e; i++) {
-                var glyph = strike.digestFor(Glyph.kTransformedMask, glyphs[i]);
-                maxDimension = Math.max(maxDimension, glyph.getMaxDimension());
-            }
-            return maxDimension;
-        } finally {
-            strike.unlock();
+                                          int glyphOffset, int glyphCount,
+                                          Glyph[] results) {
+        strike.digest(Glyph.kTransformedMask,
+                glyphs, glyphOffset, glyphCount,
+                results, null);
+        float maxDimension = 0;
+        for (int i = 0; i < glyphCount; i++) {
+            maxDimension = Math.max(maxDimension, results[i].getMaxDimension());
         }
+        return maxDimension;
     }
 
     @Nonnull
@@ -645,7 +668,8 @@ public class SubRunContainer {
                     );
                     Strike gaugingStrike = strikeDesc.findOrCreateStrike(strikeCache);
                     float maxDimension = find_max_glyph_dimension(gaugingStrike,
-                            buffers.mSourceGlyphs, buffers.mSourceGlyphOffset, buffers.mSourceGlyphCount);
+                            buffers.mSourceGlyphs, buffers.mSourceGlyphOffset, buffers.mSourceGlyphCount,
+                            buffers.mGlyphs);
                     if (maxDimension <= Glyph.MAX_BILERP_ATLAS_DIMENSION) {
                         break;
                     }
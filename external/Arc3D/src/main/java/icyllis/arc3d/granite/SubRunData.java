@@ -28,16 +28,19 @@ public class SubRunData {
     private final int mFilter;
     private final int mStartGlyphIndex;
     private final int mGlyphCount;
+    private final int mPageIndex;
 
     // subRunToLocal is affine, no copy
     public SubRunData(SubRunContainer.AtlasSubRun subRun,
                       Matrix subRunToLocal, int filter,
-                      int startGlyphIndex, int glyphCount) {
+                      int startGlyphIndex, int glyphCount,
+                      int pageIndex) {
         mSubRun = subRun;
         mSubRunToLocal = subRunToLocal;
         mFilter = filter;
         mStartGlyphIndex = startGlyphIndex;
         mGlyphCount = glyphCount;
+        mPageIndex = pageIndex;
     }
 
     public SubRunContainer.AtlasSubRun getSubRun() {
@@ -64,6 +67,13 @@ public class SubRunData {
         return mGlyphCount;
     }
 
+    /**
+     * Returns the atlas page that all the glyphs are in.
+     */
+    public int getPageIndex() {
+        return mPageIndex;
+    }
+
     public Rect2fc getBounds() {
         return mSubRun.getBounds();
     }
@@ -206,8 +206,9 @@ public class RasterTextStep extends GeometryStep {
                                          boolean mayRequireLocalCoords) {
         var subRunData = (SubRunData) draw.mGeometry;
         @RawPtr
-        var texture = context.getAtlasProvider().getGlyphAtlasManager().getCurrentTexture(
-                subRunData.getSubRun().getMaskFormat()
+        var texture = context.getAtlasProvider().getGlyphAtlasManager().getTexture(
+                subRunData.getSubRun().getMaskFormat(),
+                subRunData.getPageIndex()
         );
         assert texture != null;
 
@@ -0,0 +1,132 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.test;
+
+import icyllis.arc3d.core.*;
+import icyllis.arc3d.core.j2d.RasterDevice;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sun.misc.Unsafe;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link RasterDevice} in fills per second, each fill is
+ * a 128x128 shape with a translucent color blended into a 512x512 pixmap.
+ */
+@Fork(2)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class RasterFillBenchmark {
+
+    public static final int SIZE = 512;
+    public static final int SHAPE = 128;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RasterFillBenchmark.class.getSimpleName())
+                .shouldFailOnError(true).shouldDoGC(true)
+                .build())
+                .run();
+    }
+
+    private RasterDevice mDevice;
+    private Paint mPaint;
+    private final Matrix4 mCTM = new Matrix4();
+    private final Rect2f mRect = new Rect2f();
+    private final Rect2f mFracRect = new Rect2f();
+    private final RoundRect mRoundRect = new RoundRect();
+    private final Path mPath = new Path();
+    private int mIndex;
+
+    @Setup
+    public void setup() {
+        var info = new ImageInfo(SIZE, SIZE, ColorInfo.CT_RGBA_8888, ColorInfo.AT_PREMUL);
+        var pixmap = new Pixmap(info, new int[SIZE * SIZE], Unsafe.ARRAY_INT_BASE_OFFSET, SIZE * 4);
+        mDevice = new RasterDevice(pixmap);
+        mPaint = new Paint();
+        mPaint.setRGBA(40, 120, 200, 160);
+        mRect.set(0, 0, SHAPE, SHAPE);
+        mFracRect.set(0.3f, 0.6f, SHAPE - 0.4f, SHAPE - 0.2f);
+        mRoundRect.setRectXY(mRect, 16, 16);
+        // a star, non-convex with self intersections
+        mPath.moveTo(64, 0);
+        mPath.lineTo(102, 118);
+        mPath.lineTo(2, 45);
+        mPath.lineTo(126, 45);
+        mPath.lineTo(26, 118);
+        mPath.close();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPaint.close();
+        mDevice.unref();
+    }
+
+    // walk the shapes over the pixmap so that the results are not cache-friendly
+    private void next() {
+        int i = mIndex = (mIndex + 1) & 15;
+        float dx = (i & 3) * SHAPE;
+        float dy = (i >> 2) * SHAPE;
+        mCTM.setTranslate(dx, dy, 0);
+        mDevice.setLocalToDevice(mCTM);
+    }
+
+    @Benchmark
+    public void fillRect() {
+        next();
+        mPaint.setAntiAlias(false);
+        mDevice.drawRect(mRect, mPaint);
+    }
+
+    @Benchmark
+    public void fillRectAA() {
+        next();
+        mPaint.setAntiAlias(true);
+        mDevice.drawRect(mFracRect, mPaint);
+    }
+
+    @Benchmark
+    public void fillRoundRectAA() {
+        next();
+        mPaint.setAntiAlias(true);
+        mDevice.drawRoundRect(mRoundRect, mPaint);
+    }
+
+    @Benchmark
+    public void fillCircleAA() {
+        next();
+        mPaint.setAntiAlias(true);
+        mDevice.drawCircle(SHAPE * 0.5f, SHAPE * 0.5f, SHAPE * 0.5f - 0.5f, mPaint);
+    }
+
+    @Benchmark
+    public void fillPathAA() {
+        next();
+        mPaint.setAntiAlias(true);
+        mDevice.drawPath(mPath, mPaint);
+    }
+}
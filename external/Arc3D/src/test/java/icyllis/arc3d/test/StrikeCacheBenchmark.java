@@ -0,0 +1,125 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.test;
+
+import icyllis.arc3d.core.*;
+import icyllis.arc3d.core.j2d.Typeface_JDK;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.font.FontRenderContext;
+
+/**
+ * Measures {@link StrikeCache} lookups and {@link Strike#digest(int, int)} of a warm
+ * glyph run from 1 to 16 threads, all threads cycle through the same few strikes.
+ * {@link #locked()} is the per-glyph locking baseline.
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class StrikeCacheBenchmark {
+
+    public static final String TEXT = "The quick brown fox jumps over the lazy dog.";
+    public static final float[] SIZES = {12, 14, 16, 20, 24, 32};
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StrikeCacheBenchmark.class.getSimpleName())
+                .shouldFailOnError(true).shouldDoGC(true)
+                .build())
+                .run();
+    }
+
+    private Typeface_JDK mTypeface;
+    private int[] mGlyphs;
+
+    @Setup
+    public void setup() {
+        mTypeface = new Typeface_JDK(
+                new java.awt.Font(java.awt.Font.SANS_SERIF, java.awt.Font.PLAIN, 1));
+        mGlyphs = mTypeface.getFont().createGlyphVector(
+                new FontRenderContext(null, true, false),
+                TEXT).getGlyphCodes(0, TEXT.length(), null);
+    }
+
+    @State(Scope.Thread)
+    public static class Context {
+
+        final Font mFont = new Font();
+        final Paint mPaint = new Paint();
+        final Matrix mMatrix = new Matrix();
+        final StrikeDesc mDesc = new StrikeDesc();
+        int mIndex;
+
+        @Setup
+        public void setup(StrikeCacheBenchmark benchmark) {
+            mFont.setTypeface(benchmark.mTypeface);
+            mFont.setEdging(Font.kAntiAlias_Edging);
+        }
+
+        Strike nextStrike() {
+            mFont.setSize(SIZES[mIndex++ % SIZES.length]);
+            return mDesc.update(mFont, mPaint, mMatrix).findOrCreateStrike();
+        }
+    }
+
+    private void digest(Context context, Blackhole blackhole) {
+        Strike strike = context.nextStrike();
+        for (int glyphID : mGlyphs) {
+            blackhole.consume(strike.digest(Glyph.kDirectMask, glyphID));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void threads1(Context context, Blackhole blackhole) {
+        digest(context, blackhole);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void threads4(Context context, Blackhole blackhole) {
+        digest(context, blackhole);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void threads16(Context context, Blackhole blackhole) {
+        digest(context, blackhole);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void locked(Context context, Blackhole blackhole) {
+        Strike strike = context.nextStrike();
+        for (int glyphID : mGlyphs) {
+            strike.lock();
+            try {
+                blackhole.consume(strike.digestFor(Glyph.kDirectMask, glyphID));
+            } finally {
+                strike.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.test;
+
+import icyllis.arc3d.core.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+
+/**
+ * Measures stroking a chart-like polyline of 10k points that is redrawn every frame.
+ * {@link #allocating()} is the baseline that creates a new stroker and a new path,
+ * {@link #reused()} reuses both, and {@link #cached()} hits the {@link StrokeCache}.
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class StrokeBenchmark {
+
+    public static final int POINT_COUNT = 10_000;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StrokeBenchmark.class.getSimpleName())
+                .shouldFailOnError(true).shouldDoGC(true)
+                .build())
+                .run();
+    }
+
+    @Param({"0", "1", "2"})
+    public int mJoin;
+    @Param({"0", "1"})
+    public int mCap;
+
+    private final Path mPolyline = new Path();
+    private final StrokeRec mStrokeRec = new StrokeRec();
+
+    private final PathStroker mStroker = new PathStroker();
+    private final Path mResult = new Path();
+    private final StrokeCache mCache = new StrokeCache(64 << 20);
+
+    @Setup
+    public void setup() {
+        var random = new Random(0x5EED);
+        float y = 500;
+        mPolyline.moveTo(0, y);
+        for (int i = 1; i < POINT_COUNT; i++) {
+            y += random.nextFloat() * 20 - 10;
+            mPolyline.lineTo(i * 0.2f, y);
+        }
+        mStrokeRec.setStrokeStyle(3, false);
+        mStrokeRec.setStrokeParams(mCap, mJoin, Paint.ALIGN_CENTER, 4);
+    }
+
+    @Benchmark
+    public void allocating(Blackhole blackhole) {
+        var result = new Path();
+        mStrokeRec.applyToPath(mPolyline, result);
+        blackhole.consume(result);
+    }
+
+    @Benchmark
+    public void reused(Blackhole blackhole) {
+        mResult.clear();
+        mStrokeRec.applyToPath(mPolyline, mResult, mStroker);
+        blackhole.consume(mResult);
+    }
+
+    @Benchmark
+    public void cached(Blackhole blackhole) {
+        mCache.findOrStroke(mPolyline, mStrokeRec, mResult);
+        blackhole.consume(mResult);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.test;
+
+import icyllis.arc3d.core.*;
+
+import javax.annotation.Nonnull;
+
+public class TestDisplayList {
+
+    public static void main(String[] args) {
+        var recorder = new DisplayListRecorder();
+
+        // a drawable that changes between replays
+        var drawable = new Drawable() {
+            int mFrame;
+
+            @Override
+            protected void onDraw(@Nonnull Canvas canvas) {
+                canvas.translate(mFrame * 10, 0);
+                var paint = new Paint();
+                paint.setARGB(255, 0, 255, 0);
+                canvas.drawCircle(0, 0, 5, paint);
+                paint.close();
+            }
+        };
+
+        Canvas canvas = recorder.beginRecording(100, 100);
+        var paint = new Paint();
+        paint.setARGB(255, 255, 0, 0);
+        canvas.save();
+        canvas.translate(10, 20);
+        canvas.clipRect(0, 0, 50, 50);
+        canvas.drawRect(0, 0, 20, 20, paint);
+        // same paint, shared
+        canvas.drawRect(20, 20, 40, 40, paint);
+        canvas.restore();
+        canvas.drawDrawable(drawable);
+        // no effect, deferred save
+        canvas.save();
+        canvas.restore();
+        paint.close();
+        DisplayList displayList = recorder.finishRecording();
+
+        System.out.println("Op count: " + displayList.getOpCount());
+        System.out.println("Memory size: " + displayList.getMemorySize());
+
+        var logger = new LoggingCanvas();
+        logger.translate(1, 1);
+        for (int frame = 0; frame < 2; frame++) {
+            drawable.mFrame = frame;
+            System.out.println("Replay " + frame);
+            displayList.draw(logger);
+        }
+        System.out.println("Save count after replay: " + logger.getSaveCount());
+
+        displayList.close();
+        recorder.close();
+        logger.close();
+    }
+
+    private static class LoggingCanvas extends NoDrawCanvas {
+
+        LoggingCanvas() {
+            super(100, 100);
+        }
+
+        @Override
+        protected void willSave() {
+            System.out.println("  save");
+        }
+
+        @Override
+        protected void willRestore() {
+            System.out.println("  restore");
+        }
+
+        @Override
+        protected void didTranslate(float dx, float dy, float dz) {
+            System.out.printf("  translate %s %s%n", dx, dy);
+        }
+
+        @Override
+        protected void onClipRect(Rect2fc rect, int clipOp, boolean doAA) {
+            System.out.println("  clipRect " + rect);
+            super.onClipRect(rect, clipOp, doAA);
+        }
+
+        @Override
+        protected void onDrawRect(Rect2fc r, Paint paint) {
+            var m = new Matrix4();
+            getLocalToDevice(m);
+            System.out.printf("  drawRect %s at (%s, %s)%n", r, m.m41, m.m42);
+        }
+
+        @Override
+        protected void onDrawCircle(float cx, float cy, float radius, Paint paint) {
+            var m = new Matrix4();
+            getLocalToDevice(m);
+            System.out.printf("  drawCircle %s at (%s, %s)%n", radius, m.m41, m.m42);
+        }
+    }
+}
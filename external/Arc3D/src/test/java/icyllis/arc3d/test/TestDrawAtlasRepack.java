@@ -0,0 +1,153 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.test;
+
+import icyllis.arc3d.core.*;
+import icyllis.arc3d.granite.DrawAtlas;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Simulates a CJK-heavy screen that overflows the glyph atlas into multiple pages,
+ * then checks that {@link DrawAtlas.Repacker} packs the glyphs that are still in use
+ * into fewer plots without overlaps, and that replaying the packing order on plots
+ * gives the same positions, which the atlas relies on to move the data.
+ */
+public class TestDrawAtlasRepack {
+
+    public static final int PLOT_SIZE = 256;
+    public static final int PLOTS_PER_PAGE = 16;
+
+    public static void main(String[] args) {
+        var random = new Random(0x5EED);
+        var counter = new DrawAtlas.AtlasGenerationCounter();
+        var plots = new ArrayList<DrawAtlas.Plot>();
+        var glyphs = new ArrayList<DrawAtlas.AtlasLocator>();
+        var sizes = new ArrayList<int[]>();
+
+        // arrival order, first fit, like DrawAtlas.addRect without eviction
+        int pages = 4;
+        FILL:
+        while (true) {
+            // CJK glyphs at 16..40px with 1px padding, some Latin glyphs
+            int w, h;
+            if (random.nextInt(4) == 0) {
+                w = 8 + random.nextInt(16);
+                h = 16 + random.nextInt(24);
+            } else {
+                w = h = 18 + random.nextInt(25);
+            }
+            var locator = new DrawAtlas.AtlasLocator();
+            for (var plot : plots) {
+                if (plot.addRect(w, h, locator)) {
+                    glyphs.add(locator);
+                    sizes.add(new int[]{w, h});
+                    continue FILL;
+                }
+            }
+            if (plots.size() == pages * PLOTS_PER_PAGE) {
+                break;
+            }
+            int index = plots.size();
+            var plot = new DrawAtlas.Plot(index / PLOTS_PER_PAGE, index % PLOTS_PER_PAGE, counter,
+                    index % 4, (index / 4) % 4, PLOT_SIZE, PLOT_SIZE, ColorInfo.CT_ALPHA_8, 1);
+            plots.add(plot);
+            boolean added = plot.addRect(w, h, locator);
+            assert added;
+            glyphs.add(locator);
+            sizes.add(new int[]{w, h});
+        }
+        int numRects = 0;
+        long usedArea = 0;
+        for (var plot : plots) {
+            numRects += plot.getNumRects();
+            usedArea += plot.getUsedArea();
+        }
+        if (numRects != glyphs.size()) {
+            throw new AssertionError("rect tracking " + numRects + " != " + glyphs.size());
+        }
+        System.out.printf("%d glyphs in %d plots, %.1f%% occupancy\n", glyphs.size(), plots.size(),
+                100.0 * usedArea / plots.size() / PLOT_SIZE / PLOT_SIZE);
+
+        // the next screen uses a third of them
+        var repacker = new DrawAtlas.Repacker(PLOT_SIZE, PLOT_SIZE);
+        for (int pass = 0; pass < 2; pass++) {
+            repacker.reset();
+            long liveArea = 0;
+            for (int i = 0; i < glyphs.size(); i++) {
+                if (random.nextInt(3) == 0) {
+                    int[] size = sizes.get(i);
+                    repacker.add(size[0], size[1]);
+                    liveArea += (long) size[0] * size[1];
+                }
+            }
+            long time = System.nanoTime();
+            int numPlots = repacker.pack();
+            time = System.nanoTime() - time;
+            int minPlots = (int) ((liveArea + PLOT_SIZE * PLOT_SIZE - 1) / (PLOT_SIZE * PLOT_SIZE));
+            System.out.printf("repacked %d live glyphs into %d plots (at least %d), %d pages, %.2f ms\n",
+                    repacker.count(), numPlots, minPlots,
+                    (numPlots + PLOTS_PER_PAGE - 1) / PLOTS_PER_PAGE, time / 1e6);
+            check(repacker, numPlots, counter);
+            if (numPlots > (int) (minPlots * 1.25) + 1) {
+                throw new AssertionError("poor packing");
+            }
+            if ((numPlots + PLOTS_PER_PAGE - 1) / PLOTS_PER_PAGE >= pages) {
+                throw new AssertionError("no page freed");
+            }
+        }
+        System.out.println("OK");
+    }
+
+    static void check(DrawAtlas.Repacker repacker, int numPlots,
+                      DrawAtlas.AtlasGenerationCounter counter) {
+        var occupied = new boolean[numPlots][PLOT_SIZE * PLOT_SIZE];
+        var plots = new DrawAtlas.Plot[numPlots];
+        for (int i = 0; i < numPlots; i++) {
+            plots[i] = new DrawAtlas.Plot(0, i % PLOTS_PER_PAGE, counter,
+                    0, 0, PLOT_SIZE, PLOT_SIZE, ColorInfo.CT_ALPHA_8, 1);
+        }
+        var locator = new DrawAtlas.AtlasLocator();
+        for (int k = 0; k < repacker.count(); k++) {
+            int i = repacker.orderAt(k);
+            int x = repacker.getX(i), y = repacker.getY(i);
+            int w = repacker.getWidth(i), h = repacker.getHeight(i);
+            int plot = repacker.getPlot(i);
+            if (plot < 0 || plot >= numPlots || x < 0 || y < 0 ||
+                    x + w > PLOT_SIZE || y + h > PLOT_SIZE) {
+                throw new AssertionError("out of bounds");
+            }
+            for (int yy = y; yy < y + h; yy++) {
+                for (int xx = x; xx < x + w; xx++) {
+                    if (occupied[plot][yy * PLOT_SIZE + xx]) {
+                        throw new AssertionError("overlap");
+                    }
+                    occupied[plot][yy * PLOT_SIZE + xx] = true;
+                }
+            }
+            // replay
+            if (!plots[plot].addRect(w, h, locator) ||
+                    (locator.u1 & 0xFFFF) != x || (locator.v1 & 0xFFFF) != y) {
+                throw new AssertionError("replay mismatch");
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.test;
+
+import icyllis.arc3d.granite.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares sorting render steps with {@link DrawPass.SortKey} objects against
+ * {@link DrawKeySorter} packed long keys.
+ */
+@Fork(2)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class TestDrawPassSort {
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TestDrawPassSort.class.getSimpleName())
+                .shouldFailOnError(true).shouldDoGC(true)
+                .build())
+                .run();
+    }
+
+    @Param({"1000", "10000", "100000"})
+    public int mNumDraws;
+
+    private Draw[] mDraws;
+    private int[] mPipelineIndices;
+    private int[] mGeometryUniformIndices;
+    private int[] mFragmentUniformIndices;
+    private int[][] mTextures;
+
+    private final DrawKeySorter mSorter = new DrawKeySorter();
+
+    @Setup
+    public void setup() {
+        var random = new Random(0x5EED);
+        int n = mNumDraws;
+        mDraws = new Draw[n];
+        mPipelineIndices = new int[n];
+        mGeometryUniformIndices = new int[n];
+        mFragmentUniformIndices = new int[n];
+        mTextures = new int[n][];
+        int[][] textureBindings = {{}, {0, 0}, {1, 0}, {0, 0, 1, 0}, {2, 1}};
+        for (int i = 0; i < n; i++) {
+            var draw = new Draw();
+            // roughly 1/4 of the draws depend on a previous draw
+            int paintersOrder = random.nextInt(Math.max(1, Math.min(n / 4, DrawOrder.MAX_VALUE)));
+            int stencilIndex = random.nextInt(8) == 0 ? random.nextInt(16) : 0;
+            long drawOrder = DrawOrder.makeFromDepthAndPaintersOrder(i & DrawOrder.BIT_MASK, paintersOrder);
+            if (stencilIndex != 0) {
+                drawOrder = DrawOrder.updateWithStencilIndex(drawOrder, stencilIndex);
+            }
+            draw.mDrawOrder = drawOrder;
+            mDraws[i] = draw;
+            mPipelineIndices[i] = random.nextInt(12);
+            mGeometryUniformIndices[i] = random.nextInt(256);
+            mFragmentUniformIndices[i] = random.nextInt(64);
+            mTextures[i] = textureBindings[random.nextInt(textureBindings.length)].clone();
+        }
+        // sanity check, both paths must agree
+        var keys = makeSortKeys();
+        Arrays.sort(keys);
+        sortPackedKeys();
+        for (int i = 0; i < n; i++) {
+            if (keys[i].pipelineIndex() != mSorter.pipelineIndex(i) ||
+                    keys[i].geometryUniformIndex() != mSorter.geometryUniformIndex(i) ||
+                    keys[i].fragmentUniformIndex() != mSorter.fragmentUniformIndex(i)) {
+                throw new AssertionError("Order mismatch at " + i);
+            }
+        }
+        mSorter.close();
+    }
+
+    private DrawPass.SortKey[] makeSortKeys() {
+        int n = mNumDraws;
+        var keys = new DrawPass.SortKey[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = new DrawPass.SortKey(mDraws[i], 0,
+                    mPipelineIndices[i],
+                    mGeometryUniformIndices[i],
+                    mFragmentUniformIndices[i],
+                    mTextures[i]);
+        }
+        return keys;
+    }
+
+    private void sortPackedKeys() {
+        int n = mNumDraws;
+        var sorter = mSorter.begin(n);
+        for (int i = 0; i < n; i++) {
+            sorter.add(mDraws[i], 0,
+                    mPipelineIndices[i],
+                    mGeometryUniformIndices[i],
+                    mFragmentUniformIndices[i],
+                    mTextures[i]);
+        }
+        sorter.sort();
+    }
+
+    @Benchmark
+    public void sortKeyObjects(Blackhole bh) {
+        var keys = makeSortKeys();
+        Arrays.sort(keys);
+        for (var key : keys) {
+            bh.consume(key.pipelineIndex());
+            bh.consume(key.geometryUniformIndex());
+            bh.consume(key.fragmentUniformIndex());
+        }
+    }
+
+    @Benchmark
+    public void sortPackedKeys(Blackhole bh) {
+        sortPackedKeys();
+        var sorter = mSorter;
+        for (int i = 0, n = sorter.size(); i < n; i++) {
+            bh.consume(sorter.pipelineIndex(i));
+            bh.consume(sorter.geometryUniformIndex(i));
+            bh.consume(sorter.fragmentUniformIndex(i));
+        }
+        sorter.close();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.test;
+
+import icyllis.arc3d.core.*;
+
+import java.util.Random;
+
+/**
+ * Checks {@link PathOps} against the scanline reference of {@link TestPathTessellator}.
+ * The fill of the result must equal the operation applied to the fills of the operands,
+ * pixels may only differ near the outlines. Then measures operations on large SVG-like
+ * inputs, such as merging many clip shapes into one path.
+ */
+public class TestPathOps {
+
+    public static final String[] OP_NAMES = {
+            "difference", "intersect", "union", "xor", "reverse difference"
+    };
+
+    public static void main(String[] args) {
+        var ops = new PathOps();
+        var paths = TestPathTessellator.makePaths();
+        var result = new Path();
+        int failures = 0;
+        for (int i = 0; i < paths.length; i++) {
+            var one = paths[i];
+            var two = paths[(i + 1) % paths.length];
+            one.setFillRule(i % 2 == 0 ? PathIterator.FILL_NON_ZERO : PathIterator.FILL_EVEN_ODD);
+            var expectedOne = TestPathTessellator.scanline(one);
+            var expectedTwo = TestPathTessellator.scanline(two);
+            var outline = new Path(one);
+            two.forEach(outline);
+            for (int op = PathOps.OP_DIFFERENCE; op <= PathOps.OP_REVERSE_DIFFERENCE; op++) {
+                if (!ops.op(one, two, op, result)) {
+                    throw new AssertionError("op failed");
+                }
+                var expected = new boolean[expectedOne.length];
+                for (int p = 0; p < expected.length; p++) {
+                    boolean a = expectedOne[p], b = expectedTwo[p];
+                    expected[p] = switch (op) {
+                        case PathOps.OP_DIFFERENCE -> a && !b;
+                        case PathOps.OP_INTERSECT -> a && b;
+                        case PathOps.OP_UNION -> a || b;
+                        case PathOps.OP_XOR -> a != b;
+                        default -> b && !a;
+                    };
+                }
+                int diff = TestPathTessellator.compare(outline, expected,
+                        TestPathTessellator.scanline(result));
+                System.out.printf("paths %d, %d, %s: %d verbs, %d bad pixels\n",
+                        i, (i + 1) % paths.length, OP_NAMES[op], result.countVerbs(), diff);
+                if (diff != 0) {
+                    failures++;
+                }
+            }
+            // simplify
+            ops.simplify(one, result);
+            int diff = TestPathTessellator.compare(one, expectedOne,
+                    TestPathTessellator.scanline(result));
+            System.out.printf("path %d, simplify: %d verbs, %d bad pixels\n",
+                    i, result.countVerbs(), diff);
+            if (diff != 0) {
+                failures++;
+            }
+        }
+        // shared edges and vertices
+        var a = new Path();
+        a.moveTo(16, 16);
+        a.lineTo(128, 16);
+        a.lineTo(128, 128);
+        a.lineTo(16, 128);
+        a.close();
+        var b = new Path();
+        b.moveTo(128, 16);
+        b.lineTo(240, 16);
+        b.lineTo(240, 128);
+        b.lineTo(128, 128);
+        b.close();
+        b.moveTo(16, 128);
+        b.lineTo(128, 128);
+        b.lineTo(72, 240);
+        b.close();
+        ops.op(a, b, PathOps.OP_UNION, result);
+        var expected = TestPathTessellator.scanline(a);
+        var expectedTwo = TestPathTessellator.scanline(b);
+        for (int p = 0; p < expected.length; p++) {
+            expected[p] |= expectedTwo[p];
+        }
+        var outline = new Path(a);
+        b.forEach(outline);
+        int diff = TestPathTessellator.compare(outline, expected, TestPathTessellator.scanline(result));
+        System.out.printf("shared edges, union: %d verbs, %d bad pixels\n", result.countVerbs(), diff);
+        if (diff != 0 || result.countVerbs() != 7) {
+            // one contour of 5 vertices after merging
+            failures++;
+        }
+        if (failures != 0) {
+            throw new AssertionError(failures + " cases failed");
+        }
+        benchmark();
+        System.out.println("OK");
+    }
+
+    // merges many overlapping shapes, like flattening a complex clip or an SVG layer
+    static void benchmark() {
+        var random = new Random(0x5EED);
+        var circles = new Path();
+        for (int i = 0; i < 1000; i++) {
+            TestPathTessellator.addCircle(circles,
+                    random.nextFloat() * 2048, random.nextFloat() * 2048,
+                    8 + random.nextFloat() * 64, random.nextBoolean());
+        }
+        var polygons = new Path();
+        for (int i = 0; i < 200; i++) {
+            float cx = random.nextFloat() * 2048, cy = random.nextFloat() * 2048;
+            polygons.moveTo(cx, cy);
+            for (int v = 0; v < 16; v++) {
+                polygons.lineTo(cx + random.nextFloat() * 128 - 64,
+                        cy + random.nextFloat() * 128 - 64);
+            }
+            polygons.close();
+        }
+        var ops = new PathOps();
+        var result = new Path();
+        for (int op = PathOps.OP_DIFFERENCE; op <= PathOps.OP_XOR; op++) {
+            // warm up
+            ops.op(circles, polygons, op, result);
+            final int iterations = 5;
+            long time = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                ops.op(circles, polygons, op, result);
+            }
+            time = System.nanoTime() - time;
+            System.out.printf("%d + %d verbs, %s: %.2f ms, %d verbs\n",
+                    circles.countVerbs(), polygons.countVerbs(), OP_NAMES[op],
+                    time / 1e6 / iterations, result.countVerbs());
+        }
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.test;
+
+import icyllis.arc3d.core.*;
+import icyllis.arc3d.engine.tessellate.PathTessellationCache;
+import icyllis.arc3d.engine.tessellate.PathTessellator;
+
+import java.util.*;
+
+/**
+ * Checks {@link PathTessellator} on the CPU. The triangles are accumulated into a winding
+ * buffer like a stencil pass, then covered with the fill rule, and compared against a
+ * scanline reference of the path. Pixels may only differ near the outline, within the
+ * flattening tolerance. Then checks {@link PathTessellationCache} hits and invalidation.
+ */
+public class TestPathTessellator {
+
+    public static final int SIZE = 256;
+    // sample off pixel centers, so samples don't land on shared triangle edges
+    public static final float SAMPLE_X = 0.5f + 0.0012345f;
+    public static final float SAMPLE_Y = 0.5f + 0.0023456f;
+
+    public static void main(String[] args) {
+        var tessellator = new PathTessellator();
+        int failures = 0;
+        for (var path : makePaths()) {
+            for (int fillRule : new int[]{PathIterator.FILL_NON_ZERO, PathIterator.FILL_EVEN_ODD}) {
+                path.setFillRule(fillRule);
+                for (int mode : new int[]{PathTessellator.MODE_MIDDLE_OUT, PathTessellator.MODE_WEDGES}) {
+                    int triangles = tessellator.tessellate(path, null, mode);
+                    var expected = scanline(path);
+                    var actual = stencilThenCover(tessellator);
+                    int diff = compare(path, expected, actual);
+                    System.out.printf("verbs %d, fill rule %d, mode %d: %d triangles, %d bad pixels\n",
+                            path.countVerbs(), fillRule, mode, triangles, diff);
+                    if (diff != 0) {
+                        failures++;
+                    }
+                }
+            }
+        }
+        if (failures != 0) {
+            throw new AssertionError(failures + " cases failed");
+        }
+        testCache();
+        System.out.println("OK");
+    }
+
+    static void testCache() {
+        var cache = new PathTessellationCache(1 << 20);
+        var paths = makePaths();
+        var matrix = new Matrix();
+        matrix.setScale(2, 2);
+        float[] first = cache.findOrTessellate(paths[1], matrix, PathTessellator.MODE_MIDDLE_OUT);
+        // a copy shares the generation ID
+        var copy = new Path(paths[1]);
+        if (cache.findOrTessellate(copy, matrix, PathTessellator.MODE_MIDDLE_OUT) != first) {
+            throw new AssertionError("copy missed");
+        }
+        // a nearby scale is in the same bucket
+        matrix.setScale(1.9f, 1.9f);
+        if (cache.findOrTessellate(paths[1], matrix, PathTessellator.MODE_MIDDLE_OUT) != first) {
+            throw new AssertionError("same bucket missed");
+        }
+        // mutation invalidates
+        GenerationID id = copy.getGenerationID();
+        copy.moveTo(0, 0);
+        copy.lineTo(10, 0);
+        copy.lineTo(0, 10);
+        if (copy.getGenerationID() == id || paths[1].getGenerationID() != id) {
+            throw new AssertionError("generation ID");
+        }
+        if (cache.findOrTessellate(copy, matrix, PathTessellator.MODE_MIDDLE_OUT) == first) {
+            throw new AssertionError("mutated path hit");
+        }
+        // budget
+        cache.setSizeBudget(0);
+        if (cache.getCurrentSize() > first.length * 4L + 1024) {
+            throw new AssertionError("over budget");
+        }
+        cache.setSizeBudget(1 << 20);
+
+        // draw the same icons for many frames
+        final int frames = 2000;
+        var tessellator = new PathTessellator();
+        long time = System.nanoTime();
+        for (int f = 0; f < frames; f++) {
+            for (var path : paths) {
+                tessellator.tessellate(path, null, PathTessellator.MODE_MIDDLE_OUT);
+            }
+        }
+        long uncached = System.nanoTime() - time;
+        time = System.nanoTime();
+        for (int f = 0; f < frames; f++) {
+            for (var path : paths) {
+                cache.findOrTessellate(path, null, PathTessellator.MODE_MIDDLE_OUT);
+            }
+        }
+        long cached = System.nanoTime() - time;
+        System.out.printf("%d frames: uncached %.2f ms, cached %.2f ms, %d hits, %d misses\n",
+                frames, uncached / 1e6, cached / 1e6, cache.getHitCount(), cache.getMissCount());
+    }
+
+    static Path[] makePaths() {
+        // self-intersecting star
+        var star = new Path();
+        for (int i = 0; i < 5; i++) {
+            double a = Math.PI / 2 + i * Math.PI * 4 / 5;
+            float x = (float) (128 + 110 * Math.cos(a));
+            float y = (float) (128 - 110 * Math.sin(a));
+            if (i == 0) {
+                star.moveTo(x, y);
+            } else {
+                star.lineTo(x, y);
+            }
+        }
+        star.close();
+
+        // donut of cubic circles, the inner one is reversed
+        var donut = new Path();
+        addCircle(donut, 128, 128, 100, false);
+        addCircle(donut, 128, 128, 50, true);
+
+        // overlapping quadratic blobs in the same direction
+        var blobs = new Path();
+        for (int i = 0; i < 3; i++) {
+            float cx = 80 + i * 48, cy = 128;
+            blobs.moveTo(cx - 60, cy);
+            blobs.quadTo(cx, cy - 120, cx + 60, cy);
+            blobs.quadTo(cx, cy + 120, cx - 60, cy);
+            blobs.close();
+        }
+
+        Path[] paths = new Path[8];
+        paths[0] = star;
+        paths[1] = donut;
+        paths[2] = blobs;
+        // random mixed contours
+        var random = new Random(0x5EED);
+        for (int i = 3; i < paths.length; i++) {
+            var path = new Path();
+            int contours = 1 + random.nextInt(3);
+            for (int c = 0; c < contours; c++) {
+                path.moveTo(rand(random), rand(random));
+                int segments = 2 + random.nextInt(6);
+                for (int s = 0; s < segments; s++) {
+                    switch (random.nextInt(3)) {
+                        case 0 -> path.lineTo(rand(random), rand(random));
+                        case 1 -> path.quadTo(rand(random), rand(random),
+                                rand(random), rand(random));
+                        case 2 -> path.cubicTo(rand(random), rand(random),
+                                rand(random), rand(random),
+                                rand(random), rand(random));
+                    }
+                }
+                // leave some contours open, fills close them implicitly
+                if (random.nextBoolean()) {
+                    path.close();
+                }
+            }
+            paths[i] = path;
+        }
+        return paths;
+    }
+
+    static float rand(Random random) {
+        return 8 + random.nextFloat() * (SIZE - 16);
+    }
+
+    static void addCircle(Path path, float cx, float cy, float r, boolean reverse) {
+        final float k = 0.5522848f * r;
+        float s = reverse ? -1 : 1;
+        path.moveTo(cx + r, cy);
+        path.cubicTo(cx + r, cy + k * s, cx + k, cy + r * s, cx, cy + r * s);
+        path.cubicTo(cx - k, cy + r * s, cx - r, cy + k * s, cx - r, cy);
+        path.cubicTo(cx - r, cy - k * s, cx - k, cy - r * s, cx, cy - r * s);
+        path.cubicTo(cx + k, cy - r * s, cx + r, cy - k * s, cx + r, cy);
+        path.close();
+    }
+
+    // simulates the stencil pass and the cover pass
+    static boolean[] stencilThenCover(PathTessellator tessellator) {
+        int[] stencil = new int[SIZE * SIZE];
+        float[] v = tessellator.getVertices();
+        for (int i = 0, e = tessellator.getVertexCount() * 2; i < e; i += 6) {
+            float x0 = v[i], y0 = v[i + 1], x1 = v[i + 2], y1 = v[i + 3], x2 = v[i + 4], y2 = v[i + 5];
+            float area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+            // increment for one facing, decrement for the other
+            int dir = area > 0 ? 1 : -1;
+            int left = Math.max((int) Math.floor(Math.min(x0, Math.min(x1, x2))), 0);
+            int top = Math.max((int) Math.floor(Math.min(y0, Math.min(y1, y2))), 0);
+            int right = Math.min((int) Math.ceil(Math.max(x0, Math.max(x1, x2))), SIZE - 1);
+            int bottom = Math.min((int) Math.ceil(Math.max(y0, Math.max(y1, y2))), SIZE - 1);
+            for (int y = top; y <= bottom; y++) {
+                float py = y + SAMPLE_Y;
+                for (int x = left; x <= right; x++) {
+                    float px = x + SAMPLE_X;
+                    float e0 = (x1 - x0) * (py - y0) - (y1 - y0) * (px - x0);
+                    float e1 = (x2 - x1) * (py - y1) - (y2 - y1) * (px - x1);
+                    float e2 = (x0 - x2) * (py - y2) - (y0 - y2) * (px - x2);
+                    if (dir > 0 ? (e0 > 0 && e1 > 0 && e2 > 0) : (e0 < 0 && e1 < 0 && e2 < 0)) {
+                        stencil[y * SIZE + x] += dir;
+                    }
+                }
+            }
+        }
+        boolean[] result = new boolean[SIZE * SIZE];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = tessellator.getFillRule() == PathIterator.FILL_EVEN_ODD
+                    ? (stencil[i] & 1) != 0
+                    : stencil[i] != 0;
+        }
+        return result;
+    }
+
+    // finely flattened polylines, each contour is closed
+    static float[][] flatten(Path path) {
+        var contours = new ArrayList<float[]>();
+        path.forEach(new PathConsumer() {
+            float[] current = new float[64];
+            int size;
+            float lastX, lastY;
+
+            void add(float x, float y) {
+                if (size + 2 > current.length) {
+                    current = Arrays.copyOf(current, size << 1);
+                }
+                current[size++] = x;
+                current[size++] = y;
+            }
+
+            void finish() {
+                if (size >= 4) {
+                    add(current[0], current[1]);
+                    contours.add(Arrays.copyOf(current, size));
+                }
+                size = 0;
+            }
+
+            @Override
+            public void moveTo(float x, float y) {
+                finish();
+                add(x, y);
+                lastX = x;
+                lastY = y;
+            }
+
+            @Override
+            public void lineTo(float x, float y) {
+                if (size == 0) {
+                    add(lastX, lastY);
+                }
+                add(x, y);
+                lastX = x;
+                lastY = y;
+            }
+
+            @Override
+            public void quadTo(float x1, float y1, float x2, float y2) {
+                float x0 = lastX, y0 = lastY;
+                for (int i = 1; i <= 256; i++) {
+                    float t = i / 256f, u = 1 - t;
+                    lineTo(u * u * x0 + 2 * u * t * x1 + t * t * x2,
+                            u * u * y0 + 2 * u * t * y1 + t * t * y2);
+                }
+            }
+
+            @Override
+            public void cubicTo(float x1, float y1, float x2, float y2, float x3, float y3) {
+                float x0 = lastX, y0 = lastY;
+                for (int i = 1; i <= 256; i++) {
+                    float t = i / 256f, u = 1 - t;
+                    lineTo(u * u * u * x0 + 3 * u * u * t * x1 + 3 * u * t * t * x2 + t * t * t * x3,
+                            u * u * u * y0 + 3 * u * u * t * y1 + 3 * u * t * t * y2 + t * t * t * y3);
+                }
+            }
+
+            @Override
+            public void close() {
+                if (size >= 2) {
+                    lastX = current[0];
+                    lastY = current[1];
+                }
+                finish();
+            }
+
+            @Override
+            public void done() {
+                finish();
+            }
+        });
+        return contours.toArray(new float[0][]);
+    }
+
+    // the scanline reference, samples each row with edge crossings
+    static boolean[] scanline(Path path) {
+        float[][] contours = flatten(path);
+        boolean[] result = new boolean[SIZE * SIZE];
+        float[] xs = new float[1024];
+        int[] dirs = new int[1024];
+        for (int y = 0; y < SIZE; y++) {
+            float py = y + SAMPLE_Y;
+            int n = 0;
+            for (float[] c : contours) {
+                for (int i = 2; i < c.length; i += 2) {
+                    float x0 = c[i - 2], y0 = c[i - 1], x1 = c[i], y1 = c[i + 1];
+                    if ((y0 <= py) != (y1 <= py)) {
+                        if (n == xs.length) {
+                            xs = Arrays.copyOf(xs, n << 1);
+                            dirs = Arrays.copyOf(dirs, n << 1);
+                        }
+                        xs[n] = x0 + (py - y0) * (x1 - x0) / (y1 - y0);
+                        dirs[n] = y1 > y0 ? 1 : -1;
+                        n++;
+                    }
+                }
+            }
+            for (int x = 0; x < SIZE; x++) {
+                float px = x + SAMPLE_X;
+                int winding = 0;
+                for (int i = 0; i < n; i++) {
+                    if (xs[i] < px) {
+                        winding += dirs[i];
+                    }
+                }
+                result[y * SIZE + x] = path.getFillRule() == PathIterator.FILL_EVEN_ODD
+                        ? (winding & 1) != 0
+                        : winding != 0;
+            }
+        }
+        return result;
+    }
+
+    // returns the number of differing pixels that are not near the outline
+    static int compare(Path path, boolean[] expected, boolean[] actual) {
+        float[][] contours = null;
+        int bad = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int i = y * SIZE + x;
+                if (expected[i] != actual[i]) {
+                    if (contours == null) {
+                        contours = flatten(path);
+                    }
+                    if (distanceToOutline(contours, x + SAMPLE_X, y + SAMPLE_Y) > 0.5f) {
+                        bad++;
+                    }
+                }
+            }
+        }
+        return bad;
+    }
+
+    static float distanceToOutline(float[][] contours, float px, float py) {
+        float min = Float.POSITIVE_INFINITY;
+        for (float[] c : contours) {
+            for (int i = 2; i < c.length; i += 2) {
+                float x0 = c[i - 2], y0 = c[i - 1], dx = c[i] - x0, dy = c[i + 1] - y0;
+                float len2 = dx * dx + dy * dy;
+                float t = len2 > 0 ? ((px - x0) * dx + (py - y0) * dy) / len2 : 0;
+                t = Math.min(Math.max(t, 0), 1);
+                float ex = x0 + t * dx - px, ey = y0 + t * dy - py;
+                min = Math.min(min, ex * ex + ey * ey);
+            }
+        }
+        return (float) Math.sqrt(min);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.test;
+
+import icyllis.arc3d.core.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+
+/**
+ * Compares {@link PixelUtils#convertPixels} against the generic per-pixel float path
+ * for common color type pairs. {@link TestPixelConvertEquivalence} checks that both
+ * produce the same pixels, keep its pairs in sync with {@link #mConversion}.
+ */
+@Fork(2)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class TestPixelConvert {
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TestPixelConvert.class.getSimpleName())
+                .shouldFailOnError(true).shouldDoGC(true)
+                .build())
+                .run();
+    }
+
+    private static final long BYTE_ARRAY_BASE = sun.misc.Unsafe.ARRAY_BYTE_BASE_OFFSET;
+
+    private static final int WIDTH = 512;
+    private static final int HEIGHT = 512;
+
+    /**
+     * src color type, src alpha type, src color space -> dst ...
+     */
+    @Param({
+            "RGBA_8888/PREMUL/SRGB->BGRA_8888/PREMUL/SRGB",
+            "BGRA_8888/PREMUL/SRGB->RGBA_8888/PREMUL/SRGB",
+            "RGBA_8888/PREMUL/SRGB->RGBA_8888/UNPREMUL/SRGB",
+            "RGBA_8888/UNPREMUL/SRGB->RGBA_8888/PREMUL/SRGB",
+            "RGBA_8888/UNPREMUL/SRGB->BGRA_8888/PREMUL/SRGB",
+            "RGB_888x/OPAQUE/SRGB->RGBA_8888/PREMUL/SRGB",
+            "RGBA_8888/UNPREMUL/SRGB->RGBA_8888/UNPREMUL/LINEAR",
+            "RGBA_8888/PREMUL/LINEAR->RGBA_8888/PREMUL/SRGB",
+    })
+    public String mConversion;
+
+    private ImageInfo mSrcInfo;
+    private ImageInfo mDstInfo;
+    private byte[] mSrc;
+    private byte[] mDst;
+
+    @Setup
+    public void setup() {
+        String[] infos = mConversion.split("->");
+        mSrcInfo = TestPixelConvertEquivalence.parseInfo(infos[0], WIDTH, HEIGHT);
+        mDstInfo = TestPixelConvertEquivalence.parseInfo(infos[1], WIDTH, HEIGHT);
+        mSrc = new byte[WIDTH * HEIGHT * 4];
+        mDst = new byte[WIDTH * HEIGHT * 4];
+        new Random(0x5EED).nextBytes(mSrc);
+        if (mSrcInfo.alphaType() == ColorInfo.AT_PREMUL) {
+            for (int i = 0; i < mSrc.length; i += 4) {
+                int a = mSrc[i + 3] & 0xFF;
+                for (int j = 0; j < 3; j++) {
+                    mSrc[i + j] = (byte) Math.min(mSrc[i + j] & 0xFF, a);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void convertPixels() {
+        boolean res = PixelUtils.convertPixels(
+                mSrcInfo, mSrc, BYTE_ARRAY_BASE, WIDTH * 4L,
+                mDstInfo, mDst, BYTE_ARRAY_BASE, WIDTH * 4L);
+        assert res;
+    }
+
+    /**
+     * The generic path, load(), transform() and store() for every pixel.
+     */
+    @Benchmark
+    public void genericPerPixel() {
+        TestPixelConvertEquivalence.convertGeneric(mSrcInfo, mSrc, mDstInfo, mDst, WIDTH * HEIGHT);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.test;
+
+import icyllis.arc3d.core.*;
+
+/**
+ * Checks that {@link PixelUtils#convertPixels} produces the same pixels as the generic
+ * per-pixel float path, for the color type pairs benchmarked by {@link TestPixelConvert}.
+ * The source has every (channel, alpha) combination, so edge values 0 and 255, alpha 0
+ * and the rounding of unpremul are all covered. The width is odd, so rows end in the
+ * middle of the kernels' two pixel steps.
+ * <p>
+ * Swizzle and alpha ops must be bit-identical, transfer functions may differ by 1 in
+ * color channels.
+ */
+public class TestPixelConvertEquivalence {
+
+    private static final long BYTE_ARRAY_BASE = sun.misc.Unsafe.ARRAY_BYTE_BASE_OFFSET;
+
+    private static final int WIDTH = 257;
+    private static final int HEIGHT = 256;
+
+    /**
+     * The same pairs as {@link TestPixelConvert#mConversion}.
+     */
+    public static final String[] CONVERSIONS = {
+            "RGBA_8888/PREMUL/SRGB->BGRA_8888/PREMUL/SRGB",
+            "BGRA_8888/PREMUL/SRGB->RGBA_8888/PREMUL/SRGB",
+            "RGBA_8888/PREMUL/SRGB->RGBA_8888/UNPREMUL/SRGB",
+            "RGBA_8888/UNPREMUL/SRGB->RGBA_8888/PREMUL/SRGB",
+            "RGBA_8888/UNPREMUL/SRGB->BGRA_8888/PREMUL/SRGB",
+            "RGB_888x/OPAQUE/SRGB->RGBA_8888/PREMUL/SRGB",
+            "RGBA_8888/UNPREMUL/SRGB->RGBA_8888/UNPREMUL/LINEAR",
+            "RGBA_8888/PREMUL/LINEAR->RGBA_8888/PREMUL/SRGB",
+    };
+
+    public static void main(String[] args) {
+        for (String conversion : CONVERSIONS) {
+            String[] infos = conversion.split("->");
+            ImageInfo srcInfo = parseInfo(infos[0], WIDTH, HEIGHT);
+            ImageInfo dstInfo = parseInfo(infos[1], WIDTH, HEIGHT);
+            byte[] src = new byte[WIDTH * HEIGHT * 4];
+            for (int i = 0, count = WIDTH * HEIGHT; i < count; i++) {
+                int c = i & 0xFF;
+                int a = (i >> 8) & 0xFF;
+                int r = c, g = 255 - c, b = (c * 7) & 0xFF;
+                if (srcInfo.alphaType() == ColorInfo.AT_PREMUL) {
+                    r = Math.min(r, a);
+                    g = Math.min(g, a);
+                    b = Math.min(b, a);
+                }
+                src[i * 4] = (byte) r;
+                src[i * 4 + 1] = (byte) g;
+                src[i * 4 + 2] = (byte) b;
+                src[i * 4 + 3] = (byte) a;
+            }
+            byte[] expected = new byte[src.length];
+            byte[] actual = new byte[src.length];
+            convertGeneric(srcInfo, src, dstInfo, expected, WIDTH * HEIGHT);
+            if (!PixelUtils.convertPixels(
+                    srcInfo, src, BYTE_ARRAY_BASE, WIDTH * 4L,
+                    dstInfo, actual, BYTE_ARRAY_BASE, WIDTH * 4L)) {
+                throw new AssertionError(conversion + ": not converted");
+            }
+            boolean transfer = !srcInfo.colorSpace().equals(dstInfo.colorSpace());
+            int maxDiff = 0;
+            for (int i = 0; i < src.length; i++) {
+                int diff = Math.abs((expected[i] & 0xFF) - (actual[i] & 0xFF));
+                // alpha is never transformed
+                int tolerance = transfer && (i & 3) != 3 ? 1 : 0;
+                if (diff > tolerance) {
+                    int p = i >> 2;
+                    throw new AssertionError(conversion + ": pixel " + p +
+                            " (src " + hex(src, p) + ") channel " + (i & 3) +
+                            ", expected " + hex(expected, p) + ", actual " + hex(actual, p));
+                }
+                maxDiff = Math.max(maxDiff, diff);
+            }
+            System.out.println(conversion + ": max diff " + maxDiff);
+        }
+        System.out.println("OK");
+    }
+
+    private static String hex(byte[] pixels, int p) {
+        return String.format("%02X%02X%02X%02X",
+                pixels[p * 4], pixels[p * 4 + 1], pixels[p * 4 + 2], pixels[p * 4 + 3]);
+    }
+
+    /**
+     * Parses "color type/alpha type/color space", see {@link #CONVERSIONS}.
+     */
+    public static ImageInfo parseInfo(String desc, int width, int height) {
+        String[] parts = desc.split("/");
+        int ct = switch (parts[0]) {
+            case "RGBA_8888" -> ColorInfo.CT_RGBA_8888;
+            case "BGRA_8888" -> ColorInfo.CT_BGRA_8888;
+            case "RGB_888x" -> ColorInfo.CT_RGB_888x;
+            default -> throw new IllegalArgumentException(parts[0]);
+        };
+        int at = switch (parts[1]) {
+            case "OPAQUE" -> ColorInfo.AT_OPAQUE;
+            case "PREMUL" -> ColorInfo.AT_PREMUL;
+            case "UNPREMUL" -> ColorInfo.AT_UNPREMUL;
+            default -> throw new IllegalArgumentException(parts[1]);
+        };
+        var cs = ColorSpace.get(parts[2].equals("LINEAR")
+                ? ColorSpace.Named.LINEAR_SRGB
+                : ColorSpace.Named.SRGB);
+        return new ImageInfo(width, height, ct, at, cs);
+    }
+
+    /**
+     * The generic path, load(), transform() and store() for every pixel,
+     * pixels are tightly packed.
+     */
+    public static void convertGeneric(ImageInfo srcInfo, byte[] src,
+                                      ImageInfo dstInfo, byte[] dst, int count) {
+        int srcCT = srcInfo.colorType();
+        int dstCT = dstInfo.colorType();
+        int srcAT = srcInfo.alphaType();
+        int dstAT = dstInfo.alphaType();
+        if (dstAT == ColorInfo.AT_OPAQUE) {
+            dstAT = srcAT;
+        }
+        var srcCS = srcInfo.colorSpace();
+        var dstCS = dstInfo.colorSpace();
+        boolean csXform = !srcCS.equals(dstCS);
+        boolean unpremul = (csXform || srcAT != dstAT) && srcAT == ColorInfo.AT_PREMUL;
+        boolean premul = (csXform || srcAT != dstAT) &&
+                srcAT != ColorInfo.AT_OPAQUE && dstAT == ColorInfo.AT_PREMUL;
+        var connector = csXform ? ColorSpace.connect(srcCS, dstCS) : null;
+        float[] col = new float[4];
+        long addr = BYTE_ARRAY_BASE;
+        for (int i = 0; i < count; i++) {
+            PixelUtils.load(srcCT, src, addr, col);
+            if (unpremul) {
+                float scale = 1.0f / col[3];
+                if (!Float.isFinite(scale)) {
+                    scale = 0;
+                }
+                col[0] *= scale;
+                col[1] *= scale;
+                col[2] *= scale;
+            }
+            if (connector != null) {
+                connector.transform(col);
+            }
+            if (premul) {
+                float scale = col[3];
+                col[0] *= scale;
+                col[1] *= scale;
+                col[2] *= scale;
+            }
+            PixelUtils.store(dstCT, dst, addr, col);
+            addr += 4;
+        }
+    }
+}
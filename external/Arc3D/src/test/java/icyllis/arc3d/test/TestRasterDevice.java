@@ -0,0 +1,326 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.test;
+
+import icyllis.arc3d.core.*;
+import icyllis.arc3d.core.image.RasterImage;
+import icyllis.arc3d.core.j2d.RasterDevice;
+import icyllis.arc3d.core.j2d.Typeface_JDK;
+import sun.misc.Unsafe;
+
+import javax.imageio.ImageIO;
+import java.awt.font.FontRenderContext;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Golden image tests of {@link RasterDevice}. Each scene is rendered into a 64x64
+ * RGBA_8888 pixmap and compared with the checksum of the reference image, then a few
+ * pixels are checked against their analytic values. Mismatched images are written to
+ * the working directory as PNG files for inspection.
+ * <p>
+ * Run with -ea.
+ */
+public class TestRasterDevice {
+
+    public static final int SIZE = 64;
+
+    private static int sFailures;
+
+    public static void main(String[] args) {
+        scene("fill_rect", 0xB3139A1EL, (device, canvas) -> {
+            var paint = new Paint();
+            paint.setRGBA(255, 0, 0, 255);
+            paint.setAntiAlias(false);
+            canvas.drawRect(8, 8, 24, 24, paint);
+            paint.close();
+        }, pixels -> {
+            checkPixel(pixels, 8, 8, 0xFF0000FF);
+            checkPixel(pixels, 23, 23, 0xFF0000FF);
+            checkPixel(pixels, 24, 24, 0);
+            checkPixel(pixels, 7, 8, 0);
+        });
+        scene("fill_rect_aa", 0x3CCEFCACL, (device, canvas) -> {
+            var paint = new Paint();
+            paint.setRGBA(0, 0, 255, 255);
+            canvas.drawRect(8.5f, 8, 24, 24.5f, paint);
+            paint.close();
+        }, pixels -> {
+            // half covered edges
+            checkPixel(pixels, 8, 12, 0x80800000);
+            checkPixel(pixels, 12, 24, 0x80800000);
+            checkPixel(pixels, 8, 24, 0x40400000);
+            checkPixel(pixels, 12, 12, 0xFFFF0000);
+        });
+        scene("src_over", 0x27F95D9AL, (device, canvas) -> {
+            var paint = new Paint();
+            paint.setRGBA(255, 255, 255, 255);
+            canvas.drawPaint(paint);
+            paint.setRGBA(0, 0, 0, 128);
+            canvas.drawRect(0, 0, 32, 64, paint);
+            paint.close();
+        }, pixels -> {
+            checkPixel(pixels, 0, 0, 0xFF7F7F7F);
+            checkPixel(pixels, 40, 0, 0xFFFFFFFF);
+        });
+        scene("circle", 0xAA9DD821L, (device, canvas) -> {
+            var paint = new Paint();
+            paint.setRGBA(0, 255, 0, 255);
+            canvas.drawCircle(32, 32, 20, paint);
+            paint.close();
+        }, pixels -> {
+            checkPixel(pixels, 32, 32, 0xFF00FF00);
+            checkPixel(pixels, 32, 13, 0xFF00FF00);
+            checkPixel(pixels, 2, 2, 0);
+            checkPixel(pixels, 47, 47, 0);
+        });
+        scene("stroke_round_rect", 0xFA235703L, (device, canvas) -> {
+            var paint = new Paint();
+            paint.setRGBA(255, 255, 0, 255);
+            paint.setStyle(Paint.STROKE);
+            paint.setStrokeWidth(4);
+            var rr = new RoundRect();
+            rr.setRectXY(10, 10, 54, 54, 8, 8);
+            canvas.drawRoundRect(rr, paint);
+            paint.close();
+        }, pixels -> {
+            checkPixel(pixels, 32, 10, 0xFF00FFFF);
+            checkPixel(pixels, 32, 32, 0);
+            checkPixel(pixels, 53, 32, 0xFF00FFFF);
+            checkPixel(pixels, 32, 57, 0);
+        });
+        scene("clip", 0x248DFA9BL, (device, canvas) -> {
+            var paint = new Paint();
+            paint.setRGBA(255, 0, 255, 255);
+            canvas.save();
+            canvas.clipRect(16, 16, 48, 48);
+            canvas.drawPaint(paint);
+            canvas.restore();
+            // rotated clip uses a coverage mask
+            canvas.save();
+            canvas.rotate(45, 32, 32);
+            canvas.clipRect(28, 28, 36, 36);
+            paint.setRGBA(0, 255, 255, 255);
+            canvas.drawPaint(paint);
+            canvas.restore();
+            paint.close();
+        }, pixels -> {
+            checkPixel(pixels, 16, 16, 0xFFFF00FF);
+            checkPixel(pixels, 15, 16, 0);
+            checkPixel(pixels, 48, 48, 0);
+            checkPixel(pixels, 32, 32, 0xFFFFFF00);
+            checkPixel(pixels, 20, 20, 0xFFFF00FF);
+        });
+        scene("path", 0x9DBC9AFEL, (device, canvas) -> {
+            var paint = new Paint();
+            paint.setRGBA(255, 128, 0, 255);
+            var path = new Path();
+            path.moveTo(32, 4);
+            path.lineTo(60, 60);
+            path.lineTo(4, 60);
+            path.close();
+            device.drawPath(path, paint);
+            paint.close();
+        }, pixels -> {
+            checkPixel(pixels, 32, 40, 0xFF0080FF);
+            checkPixel(pixels, 4, 4, 0);
+            checkPixel(pixels, 60, 4, 0);
+        });
+        scene("arc_and_line", 0x7A2D1C04L, (device, canvas) -> {
+            var paint = new Paint();
+            paint.setRGBA(255, 255, 255, 255);
+            paint.setStrokeWidth(6);
+            paint.setStrokeCap(Paint.CAP_BUTT);
+            canvas.drawArc(32, 32, 20, 0, 90, paint);
+            canvas.drawLine(4, 4, 28, 4, paint);
+            paint.close();
+        }, pixels -> {
+            checkPixel(pixels, 50, 36, 0xFFFFFFFF);
+            checkPixel(pixels, 36, 50, 0xFFFFFFFF);
+            checkPixel(pixels, 12, 32, 0);
+            checkPixel(pixels, 16, 4, 0xFFFFFFFF);
+            checkPixel(pixels, 16, 8, 0);
+        });
+        scene("difference_clip", 0x6655F3CEL, (device, canvas) -> {
+            var paint = new Paint();
+            paint.setRGBA(255, 255, 255, 255);
+            canvas.clipRect(new Rect2f(16, 16, 48, 48), ClipOp.CLIP_OP_DIFFERENCE);
+            canvas.drawPaint(paint);
+            paint.close();
+        }, pixels -> {
+            checkPixel(pixels, 15, 32, 0xFFFFFFFF);
+            checkPixel(pixels, 16, 32, 0);
+            checkPixel(pixels, 47, 47, 0);
+            checkPixel(pixels, 48, 48, 0xFFFFFFFF);
+        });
+        scene("image", 0x7EA23C0BL, (device, canvas) -> {
+            // 2x2 checker, scaled up with nearest sampling
+            int[] texels = {0xFF0000FF, 0xFF00FF00, 0xFFFF0000, 0xFFFFFFFF};
+            var info = new ImageInfo(2, 2, ColorInfo.CT_RGBA_8888, ColorInfo.AT_PREMUL);
+            var pixmap = new Pixmap(info, texels, Unsafe.ARRAY_INT_BASE_OFFSET, 8);
+            var pixels = new Pixels(2, 2, texels, Unsafe.ARRAY_INT_BASE_OFFSET, 8, null);
+            pixels.setImmutable();
+            var image = RasterImage.makeFromRasterBitmap(pixmap, pixels,
+                    RasterImage.COPY_MODE_NEVER);
+            pixels.unref();
+            assert image != null;
+            var paint = new Paint();
+            canvas.drawImageRect(image, new Rect2f(16, 16, 48, 48),
+                    SamplingOptions.POINT, paint);
+            paint.close();
+            image.unref();
+        }, pixels -> {
+            checkPixel(pixels, 20, 20, 0xFF0000FF);
+            checkPixel(pixels, 40, 20, 0xFF00FF00);
+            checkPixel(pixels, 20, 40, 0xFFFF0000);
+            checkPixel(pixels, 40, 40, 0xFFFFFFFF);
+            checkPixel(pixels, 10, 10, 0);
+        });
+        scene("vertices", 0xA970580BL, (device, canvas) -> {
+            float[] positions = {8, 8, 56, 8, 8, 56};
+            int[] colors = {0xFFFF0000, 0xFFFF0000, 0xFFFF0000};
+            var vertices = Vertices.makeCopy(Vertices.kTriangles_VertexMode, 3,
+                    positions, 0, null, 0, colors, 0);
+            var paint = new Paint();
+            canvas.drawVertices(vertices, BlendMode.MODULATE, paint);
+            paint.close();
+        }, pixels -> {
+            checkPixel(pixels, 16, 16, 0xFF0000FF);
+            checkPixel(pixels, 50, 50, 0);
+        });
+        // glyph rendering depends on the installed fonts, no checksum
+        scene("glyphs", 0L, (device, canvas) -> {
+            var typeface = new Typeface_JDK(
+                    new java.awt.Font(java.awt.Font.SANS_SERIF, java.awt.Font.PLAIN, 1));
+            int glyphID = typeface.getFont().createGlyphVector(
+                    new FontRenderContext(null, true, false), "H").getGlyphCode(0);
+            var font = new Font();
+            font.setTypeface(typeface);
+            font.setSize(40);
+            font.setEdging(Font.kAntiAlias_Edging);
+            var paint = new Paint();
+            canvas.drawGlyphs(new int[]{glyphID}, 0, new float[]{0, 0}, 0, 1,
+                    16, 48, font, paint);
+            paint.close();
+        }, pixels -> {
+            int covered = 0;
+            for (int c : pixels) {
+                if (c != 0) {
+                    covered++;
+                }
+            }
+            if (covered < 100) {
+                System.out.println("glyphs: " + covered + " pixels covered");
+                sFailures++;
+            }
+            // nothing above the cap height
+            checkPixel(pixels, 24, 2, 0);
+        });
+        if (sFailures != 0) {
+            throw new AssertionError(sFailures + " failures");
+        }
+        System.out.println("All scenes passed");
+    }
+
+    private interface Scene {
+        void draw(RasterDevice device, Canvas canvas);
+    }
+
+    /**
+     * @param golden the CRC32 of the reference image, or 0 to skip comparison
+     */
+    private static void scene(String name, long golden, Scene scene, Consumer<int[]> check) {
+        int[] pixels = new int[SIZE * SIZE];
+        var info = new ImageInfo(SIZE, SIZE,
+                ColorInfo.CT_RGBA_8888, ColorInfo.AT_PREMUL);
+        var pixmap = new Pixmap(info, pixels, Unsafe.ARRAY_INT_BASE_OFFSET, SIZE * 4);
+        var device = new RasterDevice(pixmap);
+        var canvas = new Canvas(RefCnt.create(device));
+        scene.draw(device, canvas);
+        canvas.close();
+        device.unref();
+        int failures = sFailures;
+        check.accept(pixels);
+        long checksum = checksum(pixels);
+        if (golden != 0 && checksum != golden) {
+            System.out.printf("%s: checksum 0x%08X, expected 0x%08X\n", name, checksum, golden);
+            sFailures++;
+        }
+        if (sFailures != failures) {
+            write(name, pixels);
+        } else {
+            System.out.printf("%s: OK (0x%08X)\n", name, checksum);
+        }
+    }
+
+    // RGBA byte order, independent of the native byte order
+    private static long checksum(int[] pixels) {
+        var crc = new CRC32();
+        for (int c : pixels) {
+            c = PixelUtils.NATIVE_BIG_ENDIAN ? c : Integer.reverseBytes(c);
+            crc.update(c >>> 24);
+            crc.update(c >>> 16);
+            crc.update(c >>> 8);
+            crc.update(c);
+        }
+        return crc.getValue();
+    }
+
+    // expected is 0xAABBGGRR, tolerance is 1 per channel
+    private static void checkPixel(int[] pixels, int x, int y, int expected) {
+        int actual = pixels[y * SIZE + x];
+        if (PixelUtils.NATIVE_BIG_ENDIAN) {
+            actual = Integer.reverseBytes(actual);
+        }
+        for (int shift = 0; shift < 32; shift += 8) {
+            int a = (actual >>> shift) & 0xFF;
+            int e = (expected >>> shift) & 0xFF;
+            if (Math.abs(a - e) > 1) {
+                System.out.printf("pixel (%d, %d): 0x%08X, expected 0x%08X\n", x, y, actual, expected);
+                sFailures++;
+                return;
+            }
+        }
+    }
+
+    private static void write(String name, int[] pixels) {
+        var image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        for (int i = 0; i < pixels.length; i++) {
+            int c = PixelUtils.NATIVE_BIG_ENDIAN ? Integer.reverseBytes(pixels[i]) : pixels[i];
+            // ABGR to ARGB, unpremultiplied
+            int a = c >>> 24;
+            int r = c & 0xFF, g = (c >>> 8) & 0xFF, b = (c >>> 16) & 0xFF;
+            if (a != 0 && a != 0xFF) {
+                r = Math.min(255, r * 255 / a);
+                g = Math.min(255, g * 255 / a);
+                b = Math.min(255, b * 255 / a);
+            }
+            image.setRGB(i % SIZE, i / SIZE, a << 24 | r << 16 | g << 8 | b);
+        }
+        try {
+            ImageIO.write(image, "png", new File("raster_" + name + ".png"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
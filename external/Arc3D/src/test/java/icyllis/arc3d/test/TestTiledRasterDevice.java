@@ -0,0 +1,223 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.test;
+
+import icyllis.arc3d.core.*;
+import icyllis.arc3d.core.image.RasterImage;
+import icyllis.arc3d.core.j2d.RasterDevice;
+import icyllis.arc3d.core.j2d.TiledRasterDevice;
+import icyllis.arc3d.core.j2d.Typeface_JDK;
+import sun.misc.Unsafe;
+
+import java.awt.font.FontRenderContext;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Renders random scenes with {@link RasterDevice} and {@link TiledRasterDevice}, the
+ * results must be bit-identical for any tile size and thread count.
+ * <p>
+ * Run with -ea.
+ */
+public class TestTiledRasterDevice {
+
+    public static final int WIDTH = 300;
+    public static final int HEIGHT = 200;
+
+    public static void main(String[] args) {
+        var pool = new ForkJoinPool(4);
+        var typeface = new Typeface_JDK(
+                new java.awt.Font(java.awt.Font.SANS_SERIF, java.awt.Font.PLAIN, 1));
+        int[] glyphs = new int[8];
+        var vector = typeface.getFont().createGlyphVector(
+                new FontRenderContext(null, true, false), "Tiled AA");
+        for (int i = 0; i < glyphs.length; i++) {
+            glyphs[i] = vector.getGlyphCode(i);
+        }
+        int[] texels = new int[16 * 16];
+        var random = new Random(1);
+        for (int i = 0; i < texels.length; i++) {
+            texels[i] = random.nextInt() | 0xFF000000;
+        }
+        var pixels = new Pixels(16, 16, texels, Unsafe.ARRAY_INT_BASE_OFFSET, 16 * 4, null);
+        pixels.setImmutable();
+        var image = RasterImage.makeFromRasterBitmap(
+                new Pixmap(new ImageInfo(16, 16, ColorInfo.CT_RGBA_8888, ColorInfo.AT_PREMUL),
+                        texels, Unsafe.ARRAY_INT_BASE_OFFSET, 16 * 4),
+                pixels, RasterImage.COPY_MODE_NEVER);
+        pixels.unref();
+        assert image != null;
+
+        int failures = 0;
+        for (long seed = 0; seed < 8; seed++) {
+            int[] expected = render(null, 0, seed, typeface, glyphs, image);
+            for (int tileSize : new int[]{7, 37, 64, 256}) {
+                for (ForkJoinPool p : new ForkJoinPool[]{null, pool}) {
+                    int[] actual = render(p, tileSize, seed, typeface, glyphs, image);
+                    if (!Arrays.equals(expected, actual)) {
+                        System.out.printf("seed %d, tile size %d, %s: %d pixels differ\n",
+                                seed, tileSize, p == null ? "serial" : "parallel",
+                                countDifferences(expected, actual));
+                        failures++;
+                    }
+                }
+            }
+        }
+        image.unref();
+        pool.shutdown();
+        if (failures != 0) {
+            throw new AssertionError(failures + " failures");
+        }
+        System.out.println("All scenes are bit-identical");
+    }
+
+    private static int countDifferences(int[] a, int[] b) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // tileSize = 0 renders with a RasterDevice
+    private static int[] render(ForkJoinPool pool, int tileSize, long seed,
+                                Typeface_JDK typeface, int[] glyphs, Image image) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        var info = new ImageInfo(WIDTH, HEIGHT, ColorInfo.CT_RGBA_8888, ColorInfo.AT_PREMUL);
+        var pixmap = new Pixmap(info, pixels, Unsafe.ARRAY_INT_BASE_OFFSET, WIDTH * 4);
+        final Device device = tileSize == 0
+                ? new RasterDevice(pixmap)
+                : new TiledRasterDevice(pixmap, tileSize);
+        var canvas = new Canvas(RefCnt.create(device));
+        var random = new Random(seed);
+        var paint = new Paint();
+        var path = new Path();
+        var font = new Font();
+        font.setTypeface(typeface);
+        font.setEdging(Font.kAntiAlias_Edging);
+        for (int i = 0; i < 120; i++) {
+            paint.setRGBA(random.nextInt(256), random.nextInt(256),
+                    random.nextInt(256), 64 + random.nextInt(192));
+            paint.setAntiAlias(random.nextBoolean());
+            paint.setStyle(random.nextInt(4) == 0 ? Paint.STROKE : Paint.FILL);
+            paint.setStrokeWidth(random.nextInt(3) == 0 ? 0 : random.nextFloat() * 12);
+            paint.setStrokeJoin(random.nextInt(3));
+            paint.setStrokeCap(random.nextInt(3));
+            paint.setBlendMode(random.nextInt(8) == 0 ? BlendMode.PLUS : BlendMode.SRC_OVER);
+            float x = random.nextFloat() * (WIDTH + 40) - 20;
+            float y = random.nextFloat() * (HEIGHT + 40) - 20;
+            float w = random.nextFloat() * 120;
+            float h = random.nextFloat() * 120;
+            int save = -1;
+            if (random.nextInt(4) == 0) {
+                save = canvas.save();
+                canvas.rotate(random.nextFloat() * 90 - 45, x, y);
+                if (random.nextBoolean()) {
+                    canvas.scale(0.5f + random.nextFloat(), 0.5f + random.nextFloat());
+                }
+            }
+            if (random.nextInt(5) == 0) {
+                if (save == -1) {
+                    save = canvas.save();
+                }
+                canvas.clipRect(new Rect2f(x - 30, y - 30, x + random.nextFloat() * 150,
+                                y + random.nextFloat() * 150),
+                        random.nextInt(3) == 0 ? ClipOp.CLIP_OP_DIFFERENCE : ClipOp.CLIP_OP_INTERSECT,
+                        random.nextBoolean());
+            }
+            switch (random.nextInt(12)) {
+                case 0 -> canvas.drawRect(new Rect2f(x, y, x + w, y + h), paint);
+                case 1 -> canvas.drawRoundRect(x, y, x + w, y + h, random.nextFloat() * 30, paint);
+                case 2 -> canvas.drawCircle(x, y, w * 0.5f, paint);
+                case 3 -> canvas.drawArc(x, y, w * 0.5f, random.nextFloat() * 360,
+                        random.nextFloat() * 300, random.nextInt(3), 1 + random.nextFloat() * 10, paint);
+                case 4 -> canvas.drawPie(x, y, w * 0.5f, random.nextFloat() * 360,
+                        random.nextFloat() * 300, paint);
+                case 5 -> canvas.drawLine(x, y, x + w, y + h - 60, random.nextInt(3),
+                        random.nextFloat() * 8, paint);
+                case 6 -> {
+                    path.reset();
+                    path.moveTo(x, y);
+                    for (int j = 0; j < 5; j++) {
+                        path.cubicTo(x + random.nextFloat() * w, y + random.nextFloat() * h,
+                                x + random.nextFloat() * w, y + random.nextFloat() * h,
+                                x + random.nextFloat() * w, y + random.nextFloat() * h);
+                    }
+                    path.close();
+                    path.setFillRule(random.nextBoolean() ? Path.FILL_NON_ZERO : Path.FILL_EVEN_ODD);
+                    if (device instanceof TiledRasterDevice tiled) {
+                        tiled.drawPath(path, paint);
+                    } else {
+                        ((RasterDevice) device).drawPath(path, paint);
+                    }
+                }
+                case 7 -> {
+                    float[] pts = new float[16];
+                    for (int j = 0; j < pts.length; j += 2) {
+                        pts[j] = x + random.nextFloat() * w;
+                        pts[j + 1] = y + random.nextFloat() * h;
+                    }
+                    canvas.drawPoints(random.nextInt(3), pts, 0, 8, paint);
+                }
+                case 8 -> canvas.drawImageRect(image, new Rect2f(x, y, x + w, y + h),
+                        random.nextBoolean() ? SamplingOptions.POINT : SamplingOptions.LINEAR,
+                        paint);
+                case 9 -> {
+                    float[] positions = {x, y, x + w, y + 10, x + 10, y + h};
+                    int[] colors = {0xFFFF0000, 0xFF00FF00, 0xFF0000FF};
+                    var vertices = Vertices.makeCopy(Vertices.kTriangles_VertexMode, 3,
+                            positions, 0, null, 0, colors, 0);
+                    canvas.drawVertices(vertices, BlendMode.MODULATE, paint);
+                }
+                case 10 -> {
+                    font.setSize(8 + random.nextFloat() * 40);
+                    float[] positions = new float[glyphs.length * 2];
+                    for (int j = 0; j < glyphs.length; j++) {
+                        positions[j * 2] = j * font.getSize() * 0.6f;
+                    }
+                    paint.setStyle(Paint.FILL);
+                    canvas.drawGlyphs(glyphs, 0, positions, 0, glyphs.length, x, y, font, paint);
+                }
+                default -> {
+                    paint.setAlphaF(0.1f);
+                    canvas.drawPaint(paint);
+                }
+            }
+            if (save != -1) {
+                canvas.restoreToCount(save);
+            }
+            // flush in the middle to test the state kept between flushes
+            if (i == 60 && device instanceof TiledRasterDevice tiled) {
+                tiled.flush(pool);
+            }
+        }
+        if (device instanceof TiledRasterDevice tiled) {
+            tiled.flush(pool);
+        }
+        path.recycle();
+        paint.close();
+        canvas.close();
+        device.unref();
+        return pixels;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * This file is part of Arc3D.
+ *
+ * Copyright (C) 2024 BloCamLimb <pocamelards@gmail.com>
+ *
+ * Arc3D is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Arc3D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Arc3D. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package icyllis.arc3d.test;
+
+import icyllis.arc3d.core.*;
+import icyllis.arc3d.core.j2d.RasterDevice;
+import icyllis.arc3d.core.j2d.TiledRasterDevice;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sun.misc.Unsafe;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how {@link TiledRasterDevice} scales with the number of threads, in frames
+ * per second of a 4K scene. {@link #serial()} is the single RasterDevice baseline.
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class TiledRasterBenchmark {
+
+    public static final int WIDTH = 3840;
+    public static final int HEIGHT = 2160;
+    public static final int DRAW_COUNT = 2000;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TiledRasterBenchmark.class.getSimpleName())
+                .shouldFailOnError(true).shouldDoGC(true)
+                .build())
+                .run();
+    }
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int threads;
+
+    @Param({"256"})
+    public int tileSize;
+
+    private Pixmap mPixmap;
+    private RasterDevice mDevice;
+    private TiledRasterDevice mTiledDevice;
+    private ForkJoinPool mPool;
+
+    private final Paint mPaint = new Paint();
+    private final Path mPath = new Path();
+    private final float[] mShapes = new float[DRAW_COUNT * 5];
+
+    @Setup
+    public void setup() {
+        var info = new ImageInfo(WIDTH, HEIGHT, ColorInfo.CT_RGBA_8888, ColorInfo.AT_PREMUL);
+        mPixmap = new Pixmap(info, new int[WIDTH * HEIGHT], Unsafe.ARRAY_INT_BASE_OFFSET, WIDTH * 4);
+        mDevice = new RasterDevice(mPixmap);
+        mTiledDevice = new TiledRasterDevice(mPixmap, tileSize);
+        mPool = new ForkJoinPool(threads);
+        var random = new Random(0);
+        for (int i = 0; i < DRAW_COUNT; i++) {
+            mShapes[i * 5] = random.nextInt(4);
+            mShapes[i * 5 + 1] = random.nextFloat() * WIDTH;
+            mShapes[i * 5 + 2] = random.nextFloat() * HEIGHT;
+            mShapes[i * 5 + 3] = 20 + random.nextFloat() * 300;
+            mShapes[i * 5 + 4] = random.nextInt();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPool.shutdown();
+        mTiledDevice.unref();
+        mDevice.unref();
+        mPaint.close();
+    }
+
+    private void drawScene(Device device) {
+        final Paint paint = mPaint;
+        final float[] shapes = mShapes;
+        for (int i = 0; i < DRAW_COUNT; i++) {
+            float x = shapes[i * 5 + 1], y = shapes[i * 5 + 2], size = shapes[i * 5 + 3];
+            int color = (int) shapes[i * 5 + 4];
+            paint.setRGBA(color & 0xFF, (color >> 8) & 0xFF, (color >> 16) & 0xFF, 160);
+            paint.setAntiAlias((color & 0x1000000) != 0);
+            switch ((int) shapes[i * 5]) {
+                case 0 -> device.drawRect(new Rect2f(x, y, x + size, y + size * 0.5f), paint);
+                case 1 -> device.drawCircle(x, y, size * 0.5f, paint);
+                case 2 -> {
+                    var rr = new RoundRect();
+                    rr.setRectXY(x, y, x + size, y + size, size * 0.2f, size * 0.2f);
+                    device.drawRoundRect(rr, paint);
+                }
+                default -> {
+                    final Path path = mPath;
+                    path.reset();
+                    path.moveTo(x, y);
+                    path.lineTo(x + size, y + size * 0.3f);
+                    path.quadTo(x + size * 0.5f, y + size * 2, x, y + size);
+                    path.close();
+                    if (device instanceof TiledRasterDevice tiled) {
+                        tiled.drawPath(path, paint);
+                    } else {
+                        ((RasterDevice) device).drawPath(path, paint);
+                    }
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void serial() {
+        drawScene(mDevice);
+    }
+
+    @Benchmark
+    public void tiled() {
+        drawScene(mTiledDevice);
+        mTiledDevice.flush(mPool);
+    }
+}